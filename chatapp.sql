@@ -56,14 +56,24 @@ INSERT INTO `conversations` (`id`, `title`, `type`, `participant1_id`, `particip
 
 CREATE TABLE `file_attachments` (
   `id` bigint(20) NOT NULL,
-  `message_id` bigint(20) NOT NULL,
+  `message_id` bigint(20) DEFAULT NULL,
   `file_name` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
   `original_file_name` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
   `file_path` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
   `file_type` enum('IMAGE','VOICE','DOCUMENT','VIDEO','OTHER') COLLATE utf8mb4_unicode_ci NOT NULL,
   `file_size` bigint(20) NOT NULL,
   `mime_type` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `width` int(11) DEFAULT NULL,
+  `height` int(11) DEFAULT NULL,
+  `derivative_status` enum('PENDING','PROCESSING','READY','FAILED') COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `derivative_claimed_at` timestamp NULL DEFAULT NULL,
   `thumbnail_path` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `thumbnail_width` int(11) DEFAULT NULL,
+  `thumbnail_height` int(11) DEFAULT NULL,
+  `preview_path` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `preview_width` int(11) DEFAULT NULL,
+  `preview_height` int(11) DEFAULT NULL,
+  `checksum` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `uploaded_by` bigint(20) NOT NULL,
   `uploaded_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -296,6 +306,32 @@ INSERT INTO `message_reactions` (`id`, `message_id`, `user_id`, `type`, `created
 
 -- --------------------------------------------------------
 
+--
+-- Cấu trúc bảng cho bảng `message_reaction_stats`
+--
+
+CREATE TABLE `message_reaction_stats` (
+  `id` bigint(20) NOT NULL,
+  `message_id` bigint(20) NOT NULL,
+  `type` enum('LIKE','LOVE','LAUGH','CRY','ANGRY','WOW') COLLATE utf8mb4_unicode_ci NOT NULL,
+  `count` bigint(20) NOT NULL,
+  `recent_user_ids` varchar(500) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `last_reaction_at` timestamp NULL DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+--
+-- Đang đổ dữ liệu cho bảng `message_reaction_stats` (tổng hợp từ `message_reactions`, 3 user gần nhất)
+--
+
+INSERT INTO `message_reaction_stats` (`message_id`, `type`, `count`, `recent_user_ids`, `last_reaction_at`)
+SELECT `message_id`, `type`, COUNT(*),
+       SUBSTRING_INDEX(GROUP_CONCAT(`user_id` ORDER BY `created_at` DESC, `id` DESC), ',', 3),
+       MAX(`created_at`)
+FROM `message_reactions`
+GROUP BY `message_id`, `type`;
+
+-- --------------------------------------------------------
+
 --
 -- Cấu trúc bảng cho bảng `roles`
 --
@@ -365,7 +401,8 @@ CREATE TABLE `room_members` (
   `is_pinned` tinyint(1) DEFAULT '0',
   `joined_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `last_read_at` timestamp NULL DEFAULT NULL,
-  `left_at` timestamp NULL DEFAULT NULL
+  `left_at` timestamp NULL DEFAULT NULL,
+  `last_read_message_id` bigint(20) DEFAULT NULL
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 --
@@ -388,6 +425,41 @@ INSERT INTO `room_members` (`id`, `room_id`, `user_id`, `role`, `is_muted`, `is_
 
 -- --------------------------------------------------------
 
+--
+-- Cấu trúc bảng cho bảng `stored_blobs`
+--
+
+CREATE TABLE `stored_blobs` (
+  `id` bigint(20) NOT NULL,
+  `checksum` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `path` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `size` bigint(20) DEFAULT NULL,
+  `ref_count` bigint(20) NOT NULL,
+  `created_at` timestamp NULL DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- --------------------------------------------------------
+
+--
+-- Cấu trúc bảng cho bảng `upload_sessions`
+--
+
+CREATE TABLE `upload_sessions` (
+  `id` varchar(36) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `user_id` bigint(20) NOT NULL,
+  `file_name` varchar(255) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `total_size` bigint(20) NOT NULL,
+  `chunk_size` int(11) NOT NULL,
+  `chunk_count` int(11) NOT NULL,
+  `received_count` int(11) NOT NULL,
+  `received_chunks` varbinary(8192) DEFAULT NULL,
+  `state` enum('UPLOADING','COMPLETING') COLLATE utf8mb4_unicode_ci NOT NULL DEFAULT 'UPLOADING',
+  `created_at` timestamp NULL DEFAULT NULL,
+  `expires_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- --------------------------------------------------------
+
 --
 -- Cấu trúc bảng cho bảng `users`
 --
@@ -511,7 +583,9 @@ ALTER TABLE `file_attachments`
   ADD KEY `idx_message` (`message_id`),
   ADD KEY `idx_file_name` (`file_name`),
   ADD KEY `idx_uploaded_by` (`uploaded_by`),
-  ADD KEY `idx_file_type` (`file_type`);
+  ADD KEY `idx_file_type` (`file_type`),
+  ADD KEY `idx_checksum` (`checksum`),
+  ADD KEY `idx_derivative_status` (`derivative_status`);
 
 --
 -- Chỉ mục cho bảng `messages`
@@ -554,6 +628,13 @@ ALTER TABLE `message_reactions`
   ADD KEY `user_id` (`user_id`),
   ADD KEY `idx_message_type` (`message_id`,`type`);
 
+--
+-- Chỉ mục cho bảng `message_reaction_stats`
+--
+ALTER TABLE `message_reaction_stats`
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `uk_message_reaction_stats_message_type` (`message_id`,`type`);
+
 --
 -- Chỉ mục cho bảng `roles`
 --
@@ -580,6 +661,20 @@ ALTER TABLE `room_members`
   ADD KEY `idx_room_active` (`room_id`,`left_at`),
   ADD KEY `idx_user_rooms` (`user_id`,`left_at`);
 
+--
+-- Chỉ mục cho bảng `stored_blobs`
+--
+ALTER TABLE `stored_blobs`
+  ADD PRIMARY KEY (`id`),
+  ADD UNIQUE KEY `uk_stored_blobs_checksum` (`checksum`);
+
+--
+-- Chỉ mục cho bảng `upload_sessions`
+--
+ALTER TABLE `upload_sessions`
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `idx_upload_sessions_expires` (`expires_at`);
+
 --
 -- Chỉ mục cho bảng `users`
 --
@@ -650,6 +745,11 @@ ALTER TABLE `message_deliveries`
 ALTER TABLE `message_reactions`
   MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=81;
 --
+-- AUTO_INCREMENT cho bảng `message_reaction_stats`
+--
+ALTER TABLE `message_reaction_stats`
+  MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT;
+--
 -- AUTO_INCREMENT cho bảng `roles`
 --
 ALTER TABLE `roles`
@@ -665,6 +765,11 @@ ALTER TABLE `rooms`
 ALTER TABLE `room_members`
   MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT, AUTO_INCREMENT=13;
 --
+-- AUTO_INCREMENT cho bảng `stored_blobs`
+--
+ALTER TABLE `stored_blobs`
+  MODIFY `id` bigint(20) NOT NULL AUTO_INCREMENT;
+--
 -- AUTO_INCREMENT cho bảng `users`
 --
 ALTER TABLE `users`
@@ -721,6 +826,12 @@ ALTER TABLE `message_reactions`
   ADD CONSTRAINT `message_reactions_ibfk_1` FOREIGN KEY (`message_id`) REFERENCES `messages` (`id`) ON DELETE CASCADE,
   ADD CONSTRAINT `message_reactions_ibfk_2` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`) ON DELETE CASCADE;
 
+--
+-- Các ràng buộc cho bảng `message_reaction_stats`
+--
+ALTER TABLE `message_reaction_stats`
+  ADD CONSTRAINT `message_reaction_stats_ibfk_1` FOREIGN KEY (`message_id`) REFERENCES `messages` (`id`) ON DELETE CASCADE;
+
 --
 -- Các ràng buộc cho bảng `rooms`
 --
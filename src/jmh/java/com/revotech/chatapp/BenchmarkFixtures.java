@@ -0,0 +1,132 @@
+package com.revotech.chatapp;
+
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.dto.MessageReactionDTO;
+import com.revotech.chatapp.model.dto.UserSummaryDTO;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.MessageReaction;
+import com.revotech.chatapp.model.entity.Room;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.ReactionType;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Dữ liệu dựng sẵn cho benchmark: một page message, user và reaction giống tải thật của một room.
+ */
+public final class BenchmarkFixtures {
+
+    private static final ReactionType[] REACTION_TYPES = ReactionType.values();
+
+    private BenchmarkFixtures() {
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            users.add(User.builder()
+                    .id(i)
+                    .username("user" + i)
+                    .email("user" + i + "@example.com")
+                    .fullName("User Number " + i)
+                    .avatarUrl("/avatars/" + i + ".png")
+                    .isOnline(i % 2 == 0)
+                    .lastSeen(LocalDateTime.now())
+                    .build());
+        }
+        return users;
+    }
+
+    /**
+     * Messages trong một room, mỗi message thứ 5 reply message trước đó
+     */
+    public static List<Message> messages(int count, List<User> users) {
+        Room room = Room.builder().id(1L).name("general").build();
+        LocalDateTime base = LocalDateTime.now().minusHours(1);
+
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Message message = Message.builder()
+                    .id((long) i + 1)
+                    .messageId(UUID.randomUUID().toString())
+                    .room(room)
+                    .sender(users.get(i % users.size()))
+                    .content("Message " + i + " - hôm nay team mình deploy lúc mấy giờ vậy?")
+                    .type(MessageType.CHAT)
+                    .createdAt(base.plusSeconds(i))
+                    .build();
+            if (i > 0 && i % 5 == 0) {
+                message.setReplyTo(messages.get(i - 1));
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * reactionsPerMessage reaction cho mỗi message, xoay vòng qua các ReactionType
+     */
+    public static List<MessageReaction> reactions(List<Message> messages, List<User> users, int reactionsPerMessage) {
+        List<MessageReaction> reactions = new ArrayList<>(messages.size() * reactionsPerMessage);
+        long id = 1;
+        for (Message message : messages) {
+            for (int i = 0; i < reactionsPerMessage; i++) {
+                reactions.add(MessageReaction.builder()
+                        .id(id++)
+                        .message(message)
+                        .user(users.get(i % users.size()))
+                        .type(REACTION_TYPES[i % REACTION_TYPES.length])
+                        .createdAt(message.getCreatedAt().plusSeconds(i))
+                        .build());
+            }
+        }
+        return reactions;
+    }
+
+    public static ChatMessage chatMessage() {
+        return ChatMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .content("Message - hôm nay team mình deploy lúc mấy giờ vậy?")
+                .senderId(1L)
+                .senderName("User Number 1")
+                .senderUsername("user1")
+                .senderAvatar("/avatars/1.png")
+                .type(MessageType.CHAT)
+                .timestamp(LocalDateTime.now())
+                .roomId(1L)
+                .isEdited(false)
+                .isPinned(false)
+                .reactions(List.of(MessageReactionDTO.builder()
+                        .type(ReactionType.LIKE)
+                        .emoji(ReactionType.LIKE.getEmoji())
+                        .count(2L)
+                        .users(List.of(
+                                UserSummaryDTO.builder().id(2L).username("user2").fullName("User Number 2").build(),
+                                UserSummaryDTO.builder().id(3L).username("user3").fullName("User Number 3").build()))
+                        .currentUserReacted(false)
+                        .lastReactionAt(LocalDateTime.now())
+                        .build()))
+                .build();
+    }
+
+    /**
+     * Repository stub: mỗi method trả về kết quả dựng sẵn theo tên, không có DB hay Mockito overhead
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer == null) {
+                throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+            }
+            return answer.apply(args);
+        });
+    }
+}
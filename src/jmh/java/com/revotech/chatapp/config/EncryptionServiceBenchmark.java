@@ -0,0 +1,88 @@
+package com.revotech.chatapp.config;
+
+import com.revotech.chatapp.BenchmarkFixtures;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.service.impl.EncryptionServiceImpl;
+import com.revotech.chatapp.util.AesGcmCipher;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encrypt / decrypt nội dung tin nhắn khi app.encryption.enabled=true: AES-GCM với Cipher cache theo thread,
+ * giải mã cả một page history, và bản ECB cũ (Cipher.getInstance mỗi lần gọi) để so sánh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EncryptionServiceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"64", "1024"})
+    private int contentLength;
+
+    private AesGcmCipher cipher;
+    private EncryptionServiceImpl encryptionService;
+    private SecretKey key;
+    private String messageId;
+    private String plainText;
+    private String cipherText;
+    private String legacyCipherText;
+    private List<Message> page;
+
+    @Setup
+    public void setUp() throws Exception {
+        key = AesGcmCipher.parseKey(AesGcmCipher.generateKey());
+        cipher = new AesGcmCipher(Map.of("k1", key), "k1");
+        encryptionService = new EncryptionServiceImpl(cipher, true);
+
+        messageId = UUID.randomUUID().toString();
+        plainText = "x".repeat(contentLength);
+        cipherText = cipher.encrypt(plainText, messageId);
+        legacyCipherText = legacyEncrypt();
+
+        page = BenchmarkFixtures.messages(PAGE_SIZE, BenchmarkFixtures.users(10));
+        for (Message message : page) {
+            message.setContent(plainText);
+            encryptionService.seal(message);
+        }
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return cipher.encrypt(plainText, messageId);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return cipher.decrypt(cipherText, messageId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public Map<Long, String> decryptPage() {
+        return encryptionService.contentsOf(page);
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        Cipher ecb = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        ecb.init(Cipher.ENCRYPT_MODE, key);
+        return Base64.getEncoder().encodeToString(ecb.doFinal(plainText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        Cipher ecb = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        ecb.init(Cipher.DECRYPT_MODE, key);
+        return new String(ecb.doFinal(Base64.getDecoder().decode(legacyCipherText)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package com.revotech.chatapp.config;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory RateLimitingService.isAllowed dưới tranh chấp: nhiều thread cùng một key (hot user)
+ * và nhiều thread trên nhiều key khác nhau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class RateLimitingBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+
+    private RateLimitingConfig.RateLimitingService rateLimitingService;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        // Limit cao để benchmark đo đường allowed, không phải đường reject
+        rateLimitingService = new RateLimitingConfig.RateLimitingService(null, true,
+                Integer.MAX_VALUE / 2, Integer.MAX_VALUE, 0);
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "user:" + i;
+        }
+    }
+
+    @Benchmark
+    public boolean sameKey() {
+        return rateLimitingService.isAllowed("user:hot");
+    }
+
+    @Benchmark
+    public boolean spreadKeys() {
+        return rateLimitingService.isAllowed(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]);
+    }
+}
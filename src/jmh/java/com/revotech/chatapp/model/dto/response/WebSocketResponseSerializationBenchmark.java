@@ -0,0 +1,50 @@
+package com.revotech.chatapp.model.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.revotech.chatapp.BenchmarkFixtures;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization của payload broadcast qua STOMP, cấu hình giống spring.jackson trong application.yml
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WebSocketResponseSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private WebSocketResponse<ChatMessage> response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        response = WebSocketResponse.<ChatMessage>builder()
+                .type("MESSAGE")
+                .action("SEND")
+                .data(BenchmarkFixtures.chatMessage())
+                .destination("1")
+                .senderId(1L)
+                .senderUsername("user1")
+                .timestamp(LocalDateTime.now())
+                .correlationId(UUID.randomUUID().toString())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
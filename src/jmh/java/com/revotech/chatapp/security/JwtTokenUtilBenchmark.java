@@ -0,0 +1,28 @@
+package com.revotech.chatapp.security;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT verify trên mỗi HTTP request và STOMP CONNECT
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtTokenUtilBenchmark {
+
+    private JwtTokenUtil jwtTokenUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtTokenUtil = new JwtTokenUtil("benchmark-secret-key-that-is-long-enough-for-hs512-signing-0123456789", 3600, 86400);
+        token = jwtTokenUtil.generateAccessToken("user1");
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtTokenUtil.validateToken(token);
+    }
+}
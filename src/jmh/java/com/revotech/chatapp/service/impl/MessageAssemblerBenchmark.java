@@ -0,0 +1,92 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.BenchmarkFixtures;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.dto.MessageReactionDTO;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.MessageReaction;
+import com.revotech.chatapp.model.entity.MessageReactionStat;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.ReactionType;
+import com.revotech.chatapp.repository.MessageReactionRepository;
+import com.revotech.chatapp.repository.MessageReactionStatRepository;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.util.AesGcmCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Message -> ChatMessage conversion (thay cho convertMessageToDTO) và reaction stats -> DTO.
+ * Repository là stub in-memory nên số đo chỉ gồm phần mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageAssemblerBenchmark {
+
+    @Param({"20", "50"})
+    private int pageSize;
+
+    @Param({"0", "12"})
+    private int reactionsPerMessage;
+
+    private MessageAssembler assembler;
+    private List<Message> messages;
+    private List<MessageReactionStat> singleMessageStats;
+    private Map<Long, UserDirectory.Entry> usersById;
+
+    @Setup
+    public void setUp() {
+        List<User> users = BenchmarkFixtures.users(30);
+        messages = BenchmarkFixtures.messages(pageSize, users);
+        List<MessageReaction> reactions = BenchmarkFixtures.reactions(messages, users, reactionsPerMessage);
+        List<MessageReactionStat> stats = ReactionAggregator.aggregate(reactions, 3);
+
+        Map<Long, Message> messagesById = messages.stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+        usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, user -> new UserDirectory.Entry(
+                        user.getId(), user.getUsername(), user.getFullName(), user.getAvatarUrl())));
+        singleMessageStats = stats.stream()
+                .filter(stat -> stat.getMessageId().equals(messages.get(0).getId()))
+                .collect(Collectors.toList());
+
+        MessageRepository messageRepository = BenchmarkFixtures.repository(MessageRepository.class, Map.of(
+                "findAllByIdInWithAttachment", args -> ((java.util.Collection<?>) args[0]).stream()
+                        .map(messagesById::get)
+                        .collect(Collectors.toList())));
+        MessageReactionStatRepository statRepository = BenchmarkFixtures.repository(MessageReactionStatRepository.class, Map.of(
+                "findByMessageIdIn", args -> stats));
+        MessageReactionRepository reactionRepository = BenchmarkFixtures.repository(MessageReactionRepository.class, Map.of(
+                "findUserReactions", args -> List.of()));
+        UserRepository userRepository = BenchmarkFixtures.repository(UserRepository.class, Map.of(
+                "findDirectoryRows", args -> List.of()));
+        // Directory đã warm: số đo không gồm lần load đầu tiên
+        UserDirectory userDirectory = new UserDirectory(userRepository, new InMemorySessionStore(), 1000,
+                new SimpleMeterRegistry());
+        userDirectory.summariesOf(users);
+
+        ReactionAggregator reactionAggregator = new ReactionAggregator(statRepository, reactionRepository, null);
+
+        EncryptionServiceImpl encryptionService = new EncryptionServiceImpl(new AesGcmCipher(Map.of(), null), false);
+
+        assembler = new MessageAssembler(messageRepository, reactionAggregator, userDirectory, encryptionService);
+    }
+
+    @Benchmark
+    public List<ChatMessage> assemblePage() {
+        return assembler.assemble(messages);
+    }
+
+    @Benchmark
+    public List<MessageReactionDTO> groupReactions() {
+        return MessageAssembler.groupReactions(singleMessageStats, usersById, ReactionType.LIKE);
+    }
+}
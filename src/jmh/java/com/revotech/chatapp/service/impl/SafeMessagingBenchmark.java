@@ -0,0 +1,40 @@
+package com.revotech.chatapp.service.impl;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spam check và profanity filter chạy trên mọi tin nhắn gửi đi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SafeMessagingBenchmark {
+
+    @Param({"short", "long", "repetitive"})
+    private String shape;
+
+    private SafeMessagingServiceImpl service;
+    private String content;
+
+    @Setup
+    public void setUp() {
+        service = new SafeMessagingServiceImpl();
+        content = switch (shape) {
+            case "short" -> "Ok, 5 phút nữa mình vào meeting nhé";
+            case "long" -> "Tóm tắt sprint: đã xong API upload, còn lại search và notification. ".repeat(30);
+            default -> "hahahahahahahahahahahahahahahaha ".repeat(10);
+        };
+    }
+
+    @Benchmark
+    public boolean containsSpam() {
+        return service.containsSpam(content);
+    }
+
+    @Benchmark
+    public String filterProfanity() {
+        return service.filterProfanity(content);
+    }
+}
@@ -0,0 +1,115 @@
+package com.revotech.chatapp.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi một file ra socket loopback (đầu kia đọc bỏ):
+ * - resourceStreamCopy: đường cũ, UrlResource.getInputStream() copy qua buffer heap như ResourceHttpMessageConverter
+ * - transferTo: FileChannel.transferTo thẳng vào socket, cũng là cách connector thực hiện sendfile
+ * - rangeTransferTo: seek giữa video, chỉ gửi 1MB thay vì tải lại cả file
+ *
+ * Score là số lần tải / giây; nhân với fileSizeMb để ra MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileDownloadBenchmark {
+
+    private static final long RANGE_LENGTH = 1024 * 1024;
+
+    @Param({"1", "32"})
+    private int fileSizeMb;
+
+    private Path file;
+    private long size;
+    private Resource resource;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private OutputStream clientStream;
+    private Thread drain;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("download-benchmark", ".mp4");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < fileSizeMb; i++) {
+                out.write(block);
+            }
+        }
+        size = Files.size(file);
+        resource = new UrlResource(file.toUri());
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        clientStream = Channels.newOutputStream(client);
+        SocketChannel accepted = server.accept();
+        drain = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+            try {
+                while (accepted.read(buffer) >= 0) {
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                // socket đóng ở tearDown
+            }
+        }, "download-benchmark-drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        client.close();
+        server.close();
+        drain.join(1000);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long resourceStreamCopy() throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copy(in, clientStream);
+        }
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        return transfer(0, size);
+    }
+
+    @Benchmark
+    public long rangeTransferTo() throws IOException {
+        return transfer(size / 2, Math.min(RANGE_LENGTH, size - size / 2));
+    }
+
+    private long transfer(long start, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, client);
+            }
+            return position - start;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.revotech.chatapp.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.revotech.chatapp.BenchmarkFixtures;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out một broadcast room tới RECIPIENTS subscriber: serialize lại cho từng recipient
+ * so với serialize một lần rồi dùng chung body, chỉ encode STOMP header riêng cho từng session.
+ *
+ * Score và gc.alloc.rate.norm (-PjmhProfilers=gc) được tính theo từng recipient.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreEncodedBroadcastBenchmark {
+
+    private static final int RECIPIENTS = 200;
+
+    private final StompEncoder stompEncoder = new StompEncoder();
+    private ObjectMapper objectMapper;
+    private WebSocketResponse<ChatMessage> response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        response = WebSocketResponse.<ChatMessage>builder()
+                .type("MESSAGE")
+                .action("SEND")
+                .data(BenchmarkFixtures.chatMessage())
+                .senderId(1L)
+                .senderUsername("user1")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public void serializePerRecipient(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < RECIPIENTS; i++) {
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            blackhole.consume(frame(i, body));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECIPIENTS)
+    public void serializeOnce(Blackhole blackhole) throws Exception {
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        for (int i = 0; i < RECIPIENTS; i++) {
+            blackhole.consume(frame(i, body));
+        }
+    }
+
+    private byte[] frame(int session, byte[] body) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/room/1");
+        accessor.setSubscriptionId("sub-" + session);
+        accessor.setMessageId("m-" + session);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return stompEncoder.encode(accessor.getMessageHeaders(), body);
+    }
+}
@@ -0,0 +1,257 @@
+package com.revotech.chatapp.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.revotech.chatapp.ChatappApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * End-to-end load test cho /ws: khởi động server trong cùng process (profile loadtest, H2 in-memory),
+ * tạo user / room / conversation qua REST, rồi cho N user ảo gửi, typing, react và đánh dấu đã đọc qua STOMP.
+ *
+ * Báo cáo: fan-out latency (send -> receipt ở từng subscriber và khi subscriber cuối cùng nhận),
+ * throughput và tỉ lệ lỗi. Exit code 1 nếu tỉ lệ lỗi vượt loadtest.max-error-rate.
+ */
+@Slf4j
+public class ChatLoadTest {
+
+    private static final String PASSWORD = "loadtest123";
+
+    private final LoadTestOptions options;
+    private final LoadStats stats = new LoadStats();
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private RestClient restClient;
+
+    ChatLoadTest(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.fromSystemProperties();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ChatappApplication.class)
+                .profiles("loadtest")
+                .run(args);
+
+        boolean passed = false;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            passed = new ChatLoadTest(options).run(port);
+        } catch (Exception e) {
+            log.error("Load test aborted", e);
+        } finally {
+            context.close();
+        }
+        // Exit tường minh: STOMP client / scheduler của app có thể còn thread non-daemon
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run(int port) throws Exception {
+        restClient = RestClient.builder().baseUrl("http://localhost:" + port).build();
+
+        List<VirtualUser> users = seed();
+
+        ThreadPoolTaskScheduler stompScheduler = new ThreadPoolTaskScheduler();
+        stompScheduler.setPoolSize(2);
+        stompScheduler.setThreadNamePrefix("loadtest-stomp-");
+        stompScheduler.initialize();
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(converter);
+        stompClient.setTaskScheduler(stompScheduler);
+
+        String url = "http://localhost:" + port + "/ws";
+        long connectStart = System.nanoTime();
+        for (VirtualUser user : users) {
+            try {
+                user.connect(stompClient, url);
+            } catch (Exception e) {
+                stats.error("connect");
+                log.warn("STOMP connect failed: {}", e.getMessage());
+            }
+        }
+        log.info("Connected {} STOMP sessions in {} ms", users.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+        // Mỗi user một nhịp riêng, lệch pha ngẫu nhiên để không dồn tải vào cùng một thời điểm
+        ScheduledExecutorService driver = Executors.newScheduledThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        for (VirtualUser user : users) {
+            long initialDelay = ThreadLocalRandom.current().nextLong(options.actionIntervalMs());
+            driver.scheduleAtFixedRate(() -> user.act(options, restClient),
+                    initialDelay, options.actionIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Warming up for {}s", options.warmupSeconds());
+        TimeUnit.SECONDS.sleep(options.warmupSeconds());
+
+        log.info("Measuring for {}s", options.durationSeconds());
+        stats.startMeasuring();
+        long measureStart = System.nanoTime();
+        TimeUnit.SECONDS.sleep(options.durationSeconds());
+        stats.stopMeasuring();
+        double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+
+        driver.shutdownNow();
+        driver.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Chờ các delivery còn đang trên đường trước khi tính missing
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drainSeconds());
+        while (stats.missingDeliveries() > 0 && System.nanoTime() < drainDeadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        stats.close();
+        users.forEach(VirtualUser::disconnect);
+        stompClient.stop();
+        stompScheduler.shutdown();
+
+        return report(users.size(), measuredSeconds);
+    }
+
+    /**
+     * Tạo user, room (mỗi user thuộc một room theo round-robin) và conversation 1-1 giữa từng cặp user
+     */
+    private List<VirtualUser> seed() throws Exception {
+        String runId = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+
+        ExecutorService signupPool = Executors.newFixedThreadPool(8);
+        List<Future<JsonNode>> signups = IntStream.range(0, options.users())
+                .mapToObj(i -> signupPool.submit(() -> signUp("lt" + runId + "u" + i)))
+                .collect(Collectors.toList());
+
+        List<JsonNode> accounts = new ArrayList<>(options.users());
+        for (Future<JsonNode> signup : signups) {
+            accounts.add(signup.get());
+        }
+        signupPool.shutdown();
+
+        List<VirtualUser> users = accounts.stream()
+                .map(account -> new VirtualUser(account.path("username").asText(), account.path("accessToken").asText(), stats))
+                .collect(Collectors.toList());
+
+        for (int room = 0; room < options.rooms(); room++) {
+            List<Integer> members = new ArrayList<>();
+            for (int i = room; i < options.users(); i += options.rooms()) {
+                members.add(i);
+            }
+
+            JsonNode owner = accounts.get(members.get(0));
+            List<Long> memberIds = members.stream()
+                    .map(i -> accounts.get(i).path("userId").asLong())
+                    .collect(Collectors.toList());
+
+            JsonNode created = post("/api/rooms", owner.path("accessToken").asText(), Map.of(
+                    "name", "loadtest-" + runId + "-" + room,
+                    "type", "GROUP",
+                    "memberIds", memberIds));
+
+            long roomId = created.path("id").asLong();
+            members.forEach(i -> users.get(i).addRoom(roomId, members.size()));
+        }
+
+        for (int i = 0; i + 1 < options.users(); i += 2) {
+            JsonNode conversation = post("/api/conversations/start", accounts.get(i).path("accessToken").asText(),
+                    Map.of("participantId", accounts.get(i + 1).path("userId").asLong()));
+
+            long conversationId = conversation.path("id").asLong();
+            users.get(i).addConversation(conversationId);
+            users.get(i + 1).addConversation(conversationId);
+        }
+
+        log.info("Seeded {} users, {} rooms, {} conversations", options.users(), options.rooms(), options.users() / 2);
+        return users;
+    }
+
+    private JsonNode signUp(String username) {
+        return restClient.post()
+                .uri("/api/auth/signup")
+                .body(Map.of(
+                        "username", username,
+                        "email", username + "@loadtest.local",
+                        "password", PASSWORD,
+                        "fullName", "Load Test " + username))
+                .retrieve()
+                .body(JsonNode.class);
+    }
+
+    private JsonNode post(String uri, String token, Object body) {
+        return restClient.post()
+                .uri(uri)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .body(body)
+                .retrieve()
+                .body(JsonNode.class);
+    }
+
+    private boolean report(int sessions, double measuredSeconds) throws Exception {
+        long sent = stats.sentMessages();
+        long delivered = stats.deliveries();
+        long missing = stats.missingDeliveries();
+        long operations = stats.totalActions() + stats.expectedDeliveries();
+        long failures = stats.totalErrors() + missing;
+        double errorRate = operations == 0 ? 0 : (double) failures / operations;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", sessions);
+        result.put("rooms", options.rooms());
+        result.put("conversations", options.users() / 2);
+        result.put("measuredSeconds", round(measuredSeconds));
+        result.put("actions", stats.actionCounts());
+        result.put("messagesPerSecond", round(sent / measuredSeconds));
+        result.put("deliveriesPerSecond", round(delivered / measuredSeconds));
+        result.put("expectedDeliveries", stats.expectedDeliveries());
+        result.put("deliveries", delivered);
+        result.put("missingDeliveries", missing);
+        result.put("deliveryLatencyMs", stats.deliveryLatency().summaryMillis());
+        result.put("fanOutCompleteLatencyMs", stats.fanOutCompleteLatency().summaryMillis());
+        result.put("errors", stats.errorCounts());
+        result.put("errorRate", errorRate);
+
+        System.out.println();
+        System.out.println("=== Chat load test ===");
+        System.out.printf("Sessions            %d (%d rooms, %d conversations), %.1fs measured%n",
+                sessions, options.rooms(), options.users() / 2, measuredSeconds);
+        System.out.printf("Actions             %s%n", stats.actionCounts());
+        System.out.printf("Throughput          %.1f msg/s sent, %.1f deliveries/s%n",
+                sent / measuredSeconds, delivered / measuredSeconds);
+        System.out.printf("Delivery latency    %s (ms, send -> each subscriber)%n", stats.deliveryLatency().summaryMillis());
+        System.out.printf("Fan-out complete    %s (ms, send -> last subscriber)%n", stats.fanOutCompleteLatency().summaryMillis());
+        System.out.printf("Deliveries          %d / %d expected, %d missing%n", delivered, stats.expectedDeliveries(), missing);
+        System.out.printf("Errors              %s, error rate %.4f%%%n", stats.errorCounts(), errorRate * 100);
+
+        Path reportFile = Path.of(options.reportFile());
+        Files.createDirectories(reportFile.toAbsolutePath().getParent());
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile.toFile(), result);
+        System.out.println("Report written to " + reportFile);
+
+        return errorRate <= options.maxErrorRate();
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.revotech.chatapp.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Giữ toàn bộ sample (nanos) để tính percentile chính xác sau khi chạy xong.
+ * Một lần chạy trên laptop chỉ vài triệu sample nên không cần histogram nén.
+ */
+class LatencyRecorder {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private long[] samples = new long[1 << 16];
+    private int count;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * p50 / p90 / p99 / p99.9 / max tính bằng millisecond
+     */
+    synchronized Map<String, Double> summaryMillis() {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        if (count == 0) {
+            return summary;
+        }
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            summary.put("p" + formatPercentile(percentile), toMillis(sorted[Math.max(index, 0)]));
+        }
+        summary.put("max", toMillis(sorted[count - 1]));
+        return summary;
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
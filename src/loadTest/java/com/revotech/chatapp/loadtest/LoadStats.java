@@ -0,0 +1,148 @@
+package com.revotech.chatapp.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đếm action / lỗi và đo fan-out latency: mỗi message gửi đi được đánh số (seq) trong content,
+ * mỗi subscriber nhận được thì ghi một sample send -> receipt.
+ */
+class LoadStats {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, PendingSend> pending = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> actions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private final LatencyRecorder deliveryLatency = new LatencyRecorder();
+    private final LatencyRecorder fanOutCompleteLatency = new LatencyRecorder();
+    private final LongAdder expectedDeliveries = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+
+    private volatile boolean measuring;
+    private volatile boolean closed;
+
+    void startMeasuring() {
+        measuring = true;
+    }
+
+    void stopMeasuring() {
+        measuring = false;
+    }
+
+    /**
+     * Sau khi bắt đầu disconnect, lỗi transport / STOMP là do teardown, không tính
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Đăng ký một message sắp gửi; chỉ message gửi trong cửa sổ đo mới được tính
+     */
+    long registerSend(int expectedSubscribers) {
+        long seq = sequence.incrementAndGet();
+        if (measuring) {
+            pending.put(seq, new PendingSend(System.nanoTime(), expectedSubscribers));
+            expectedDeliveries.add(expectedSubscribers);
+            action("send");
+        }
+        return seq;
+    }
+
+    void cancelSend(long seq) {
+        PendingSend send = pending.remove(seq);
+        if (send != null) {
+            expectedDeliveries.add(-send.remaining.get());
+        }
+    }
+
+    void recordDelivery(long seq) {
+        PendingSend send = pending.get(seq);
+        if (send == null) {
+            return;
+        }
+
+        long latency = System.nanoTime() - send.sentAt;
+        deliveryLatency.record(latency);
+        deliveries.increment();
+        if (send.remaining.decrementAndGet() == 0) {
+            fanOutCompleteLatency.record(latency);
+            pending.remove(seq);
+        }
+    }
+
+    void action(String name) {
+        if (measuring) {
+            actions.computeIfAbsent(name, key -> new LongAdder()).increment();
+        }
+    }
+
+    void error(String kind) {
+        if (closed) {
+            return;
+        }
+        errors.computeIfAbsent(kind, key -> new LongAdder()).increment();
+    }
+
+    long missingDeliveries() {
+        return pending.values().stream().mapToLong(send -> send.remaining.get()).sum();
+    }
+
+    long sentMessages() {
+        LongAdder sent = actions.get("send");
+        return sent == null ? 0 : sent.sum();
+    }
+
+    long deliveries() {
+        return deliveries.sum();
+    }
+
+    long expectedDeliveries() {
+        return expectedDeliveries.sum();
+    }
+
+    long totalActions() {
+        return actions.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    long totalErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    Map<String, Long> actionCounts() {
+        return snapshot(actions);
+    }
+
+    Map<String, Long> errorCounts() {
+        return snapshot(errors);
+    }
+
+    LatencyRecorder deliveryLatency() {
+        return deliveryLatency;
+    }
+
+    LatencyRecorder fanOutCompleteLatency() {
+        return fanOutCompleteLatency;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((key, value) -> snapshot.put(key, value.sum()));
+        return snapshot;
+    }
+
+    private static final class PendingSend {
+        private final long sentAt;
+        private final AtomicInteger remaining;
+
+        private PendingSend(long sentAt, int expectedSubscribers) {
+            this.sentAt = sentAt;
+            this.remaining = new AtomicInteger(expectedSubscribers);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.revotech.chatapp.loadtest;
+
+/**
+ * Tham số load test, đọc từ system property loadtest.* (Gradle: -Ploadtest.users=200)
+ */
+public record LoadTestOptions(
+        int users,
+        int rooms,
+        int warmupSeconds,
+        int durationSeconds,
+        int drainSeconds,
+        long actionIntervalMs,
+        int sendWeight,
+        int typingWeight,
+        int reactWeight,
+        int readWeight,
+        double maxErrorRate,
+        String reportFile
+) {
+
+    public static LoadTestOptions fromSystemProperties() {
+        LoadTestOptions options = new LoadTestOptions(
+                intProperty("loadtest.users", 50),
+                intProperty("loadtest.rooms", 5),
+                intProperty("loadtest.warmup-seconds", 5),
+                intProperty("loadtest.duration-seconds", 30),
+                intProperty("loadtest.drain-seconds", 5),
+                intProperty("loadtest.action-interval-ms", 1000),
+                intProperty("loadtest.mix.send", 50),
+                intProperty("loadtest.mix.typing", 25),
+                intProperty("loadtest.mix.react", 10),
+                intProperty("loadtest.mix.read", 15),
+                Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01")),
+                System.getProperty("loadtest.report-file", "build/reports/loadtest/result.json"));
+
+        if (options.users < 2) {
+            throw new IllegalArgumentException("loadtest.users must be at least 2");
+        }
+        if (options.rooms < 1 || options.rooms > options.users) {
+            throw new IllegalArgumentException("loadtest.rooms must be between 1 and loadtest.users");
+        }
+        if (options.totalWeight() <= 0) {
+            throw new IllegalArgumentException("loadtest.mix.* weights must add up to a positive number");
+        }
+        return options;
+    }
+
+    public int totalWeight() {
+        return sendWeight + typingWeight + reactWeight + readWeight;
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,194 @@
+package com.revotech.chatapp.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.simp.stomp.*;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Một user ảo: một STOMP session, subscribe các room / conversation của mình,
+ * và mỗi tick thực hiện một action ngẫu nhiên (send, typing, react, read) theo tỉ lệ cấu hình.
+ */
+@Slf4j
+class VirtualUser {
+
+    static final String CONTENT_PREFIX = "lt-";
+    private static final int RECENT_MESSAGES = 50;
+
+    private final String username;
+    private final String token;
+    private final LoadStats stats;
+    private final List<Target> targets = new ArrayList<>();
+    private final Deque<String> recentMessageIds = new ConcurrentLinkedDeque<>();
+
+    private StompSession session;
+
+    VirtualUser(String username, String token, LoadStats stats) {
+        this.username = username;
+        this.token = token;
+        this.stats = stats;
+    }
+
+    void addRoom(long roomId, int subscribers) {
+        targets.add(new Target("/topic/room/" + roomId, "/app/chat/room/" + roomId, "/app/chat/typing/room/" + roomId, subscribers));
+    }
+
+    void addConversation(long conversationId) {
+        targets.add(new Target("/topic/conversation/" + conversationId, "/app/chat/conversation/" + conversationId,
+                "/app/chat/typing/conversation/" + conversationId, 2));
+    }
+
+    void connect(WebSocketStompClient stompClient, String url) throws Exception {
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + token);
+
+        session = stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, new SessionHandler())
+                .get(30, TimeUnit.SECONDS);
+
+        for (Target target : targets) {
+            session.subscribe(target.topic, new TopicHandler());
+            session.send(target.sendDestination + "/enter", Map.of());
+        }
+    }
+
+    void act(LoadTestOptions options, RestClient restClient) {
+        if (session == null || !session.isConnected() || targets.isEmpty()) {
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Target target = targets.get(random.nextInt(targets.size()));
+        int roll = random.nextInt(options.totalWeight());
+
+        try {
+            if ((roll -= options.sendWeight()) < 0) {
+                send(target);
+            } else if ((roll -= options.typingWeight()) < 0) {
+                session.send(target.typingDestination, Map.of("typing", true));
+                stats.action("typing");
+            } else if ((roll -= options.reactWeight()) < 0) {
+                react(restClient);
+            } else {
+                markRead();
+            }
+        } catch (Exception e) {
+            stats.error("action");
+            log.debug("Action failed for {}: {}", username, e.getMessage());
+        }
+    }
+
+    void disconnect() {
+        if (session != null && session.isConnected()) {
+            session.disconnect();
+        }
+    }
+
+    private void send(Target target) {
+        long seq = stats.registerSend(target.subscribers);
+        try {
+            session.send(target.sendDestination, Map.of(
+                    "content", CONTENT_PREFIX + seq + " tin nhắn load test từ " + username,
+                    "type", "CHAT"));
+        } catch (RuntimeException e) {
+            stats.cancelSend(seq);
+            throw e;
+        }
+    }
+
+    private void react(RestClient restClient) {
+        String messageId = recentMessageIds.peekFirst();
+        if (messageId == null) {
+            return;
+        }
+        restClient.post()
+                .uri("/api/messages/{messageId}/reactions", messageId)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .body(Map.of("messageId", messageId, "type", "LIKE"))
+                .retrieve()
+                .toBodilessEntity();
+        stats.action("react");
+    }
+
+    private void markRead() {
+        String messageId = recentMessageIds.peekFirst();
+        if (messageId == null) {
+            return;
+        }
+        session.send("/app/message/visibility", Map.of("messageId", messageId, "visible", true));
+        stats.action("read");
+    }
+
+    private void onTopicMessage(JsonNode response) {
+        try {
+            if (!"MESSAGE".equals(response.path("type").asText()) || !"SEND".equals(response.path("action").asText())) {
+                return;
+            }
+
+            JsonNode data = response.path("data");
+            String messageId = data.path("id").asText(null);
+            if (messageId != null) {
+                recentMessageIds.addFirst(messageId);
+                if (recentMessageIds.size() > RECENT_MESSAGES) {
+                    recentMessageIds.pollLast();
+                }
+            }
+
+            String content = data.path("content").asText("");
+            if (content.startsWith(CONTENT_PREFIX)) {
+                int end = content.indexOf(' ');
+                stats.recordDelivery(Long.parseLong(content.substring(CONTENT_PREFIX.length(), end < 0 ? content.length() : end)));
+            }
+        } catch (Exception e) {
+            stats.error("payload");
+        }
+    }
+
+    private record Target(String topic, String sendDestination, String typingDestination, int subscribers) {
+    }
+
+    private class TopicHandler implements StompFrameHandler {
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return JsonNode.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            onTopicMessage((JsonNode) payload);
+        }
+    }
+
+    private class SessionHandler extends StompSessionHandlerAdapter {
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            // ERROR frame từ server
+            stats.error("stomp");
+            log.debug("STOMP error for {}: {}", username, headers.getFirst("message"));
+        }
+
+        @Override
+        public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                    byte[] payload, Throwable exception) {
+            stats.error("stomp");
+            log.debug("STOMP exception for {}: {}", username, exception.getMessage());
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            stats.error("transport");
+            log.debug("Transport error for {}: {}", username, exception.getMessage());
+        }
+    }
+}
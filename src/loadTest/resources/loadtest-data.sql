@@ -0,0 +1,2 @@
+-- Roles mà signup cần (MySQL có sẵn từ chatapp.sql)
+INSERT INTO roles (id, name) VALUES (1, 'USER'), (2, 'ADMIN');
@@ -0,0 +1,130 @@
+package com.revotech.chatapp.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fan-out size mỗi broadcast: interceptor trên brokerChannel đọc số subscription local của destination,
+ * được đếm từ SUBSCRIBE / UNSUBSCRIBE / DISCONNECT event.
+ *
+ * Tag chỉ là loại destination (room, conversation, topic, user) - không tag theo room id.
+ */
+@Component
+public class BroadcastFanoutMetrics implements ChannelInterceptor {
+
+    private final Map<String, Integer> subscribers = new ConcurrentHashMap<>();
+    // sessionId -> (subscriptionId -> destination)
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    private final DistributionSummary roomFanout;
+    private final DistributionSummary conversationFanout;
+    private final DistributionSummary topicFanout;
+    private final DistributionSummary userFanout;
+
+    public BroadcastFanoutMetrics(MeterRegistry meterRegistry) {
+        roomFanout = fanoutSummary(meterRegistry, "room");
+        conversationFanout = fanoutSummary(meterRegistry, "conversation");
+        topicFanout = fanoutSummary(meterRegistry, "topic");
+        userFanout = fanoutSummary(meterRegistry, "user");
+
+        Gauge.builder("chat.websocket.subscriptions", sessionSubscriptions,
+                        sessions -> sessions.values().stream().mapToInt(Map::size).sum())
+                .description("Active STOMP subscriptions on this node")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || destination == null) {
+            return message;
+        }
+
+        if (accessor.getHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION) != null) {
+            // /user/... đã resolve thành destination riêng của một session
+            userFanout.record(1);
+        } else if (destination.startsWith("/topic/room/")) {
+            roomFanout.record(subscriberCount(destination));
+        } else if (destination.startsWith("/topic/conversation/")) {
+            conversationFanout.record(subscriberCount(destination));
+        } else if (destination.startsWith("/topic/")) {
+            topicFanout.record(subscriberCount(destination));
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null || destination == null) {
+            return;
+        }
+
+        String previous = sessionSubscriptions
+                .computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), destination);
+        if (previous != null) {
+            decrement(previous);
+        }
+        subscribers.merge(destination, 1, Integer::sum);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = accessor.getSessionId() != null
+                ? sessionSubscriptions.get(accessor.getSessionId())
+                : null;
+        if (subscriptions == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+
+        String destination = subscriptions.remove(accessor.getSubscriptionId());
+        if (destination != null) {
+            decrement(destination);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::decrement);
+        }
+    }
+
+    /**
+     * Số subscription local hiện tại của destination (TypingService dùng để bỏ qua chat không ai nghe)
+     */
+    public int subscriberCount(String destination) {
+        return subscribers.getOrDefault(destination, 0);
+    }
+
+    private void decrement(String destination) {
+        subscribers.computeIfPresent(destination, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static DistributionSummary fanoutSummary(MeterRegistry meterRegistry, String destinationType) {
+        return DistributionSummary.builder("chat.broadcast.fanout")
+                .description("Local subscribers reached by one broadcast")
+                .baseUnit("sessions")
+                .tag("destination", destinationType)
+                .register(meterRegistry);
+    }
+}
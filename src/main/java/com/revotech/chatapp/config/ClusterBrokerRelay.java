@@ -0,0 +1,99 @@
+package com.revotech.chatapp.config;
+
+import com.revotech.chatapp.model.dto.ClusterEnvelope;
+import com.revotech.chatapp.service.ClusterBackplane;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Interceptor trên brokerChannel: frame do app trên node này gửi (convertAndSend / convertAndSendToUser)
+ * được publish lên backplane, frame nhận từ node khác được đưa vào brokerChannel local.
+ *
+ * Không có duplicate: node gốc bỏ qua frame của chính nó, frame đã relay mang header
+ * RELAYED_HEADER nên không bị publish lại, và user destination chỉ relay bản chưa resolve
+ * (mỗi node tự resolve cho session của mình).
+ */
+@Slf4j
+public class ClusterBrokerRelay implements ChannelInterceptor {
+
+    static final String RELAYED_HEADER = "clusterOriginNodeId";
+
+    @Getter
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ClusterBackplane backplane;
+    private final Supplier<MessageChannel> brokerChannel;
+
+    public ClusterBrokerRelay(ClusterBackplane backplane, Supplier<MessageChannel> brokerChannel) {
+        this.backplane = backplane;
+        this.brokerChannel = brokerChannel;
+        backplane.subscribe(this::deliverLocally);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE ||
+                accessor.getDestination() == null ||
+                accessor.getHeader(RELAYED_HEADER) != null ||
+                accessor.getHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION) != null) {
+            return message;
+        }
+
+        byte[] payload = toBytes(message.getPayload());
+        if (payload == null) {
+            log.debug("Not relaying non-binary payload to {}", accessor.getDestination());
+            return message;
+        }
+
+        MimeType contentType = accessor.getContentType();
+        backplane.publish(ClusterEnvelope.builder()
+                .originNodeId(nodeId)
+                .destination(accessor.getDestination())
+                .contentType(contentType != null ? contentType.toString() : null)
+                .frameClass(accessor.getFirstNativeHeader(SlowConsumerGuard.FRAME_CLASS_HEADER))
+                .payload(payload)
+                .build());
+
+        return message;
+    }
+
+    private void deliverLocally(ClusterEnvelope envelope) {
+        if (nodeId.equals(envelope.getOriginNodeId())) {
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(envelope.getDestination());
+        if (envelope.getContentType() != null) {
+            accessor.setContentType(MimeType.valueOf(envelope.getContentType()));
+        }
+        if (envelope.getFrameClass() != null) {
+            accessor.setNativeHeader(SlowConsumerGuard.FRAME_CLASS_HEADER, envelope.getFrameClass());
+        }
+        accessor.setHeader(RELAYED_HEADER, envelope.getOriginNodeId());
+
+        brokerChannel.get().send(MessageBuilder.createMessage(envelope.getPayload(), accessor.getMessageHeaders()));
+    }
+
+    private static byte[] toBytes(Object payload) {
+        if (payload instanceof byte[] bytes) {
+            return bytes;
+        }
+        if (payload instanceof String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+}
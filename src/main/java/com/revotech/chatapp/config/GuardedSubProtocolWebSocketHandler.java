@@ -0,0 +1,35 @@
+package com.revotech.chatapp.config;
+
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * SubProtocolWebSocketHandler bọc session bằng decorator của SlowConsumerGuard thay cho
+ * ConcurrentWebSocketSessionDecorator mặc định, để guard đọc được số frame thật sự đang chờ client.
+ * Bọc thêm một lớp bên trong decorator mặc định không đủ: decorator ngoài gửi tuần tự nên frame dồn ở buffer của nó.
+ */
+public class GuardedSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final SlowConsumerGuard slowConsumerGuard;
+
+    public GuardedSubProtocolWebSocketHandler(MessageChannel clientInboundChannel,
+                                              SubscribableChannel clientOutboundChannel,
+                                              SlowConsumerGuard slowConsumerGuard) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.slowConsumerGuard = slowConsumerGuard;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        return slowConsumerGuard.track(session, getSendTimeLimit(), getSendBufferSizeLimit());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        slowConsumerGuard.untrack(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
@@ -3,6 +3,7 @@ package com.revotech.chatapp.config;
 import com.revotech.chatapp.security.JwtAuthenticationFilter;
 import com.revotech.chatapp.security.UserDetailsServiceImpl;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -17,6 +18,8 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @Configuration
 @EnableWebSecurity
@@ -27,6 +30,9 @@ public class SecurityConfig {
     private final UserDetailsServiceImpl userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -57,6 +63,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/ws/**").permitAll()
                         .requestMatchers("/actuator/health").permitAll()
+                        // Scrape không có JWT: chỉ mở trên management port (mạng nội bộ), không qua port public
+                        .requestMatchers(onManagementPort("/actuator/prometheus")).permitAll()
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
                         .requestMatchers("/error").permitAll()
 
@@ -69,4 +77,10 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    // Security filter chain cũng được áp cho child context của management port; phân biệt theo port nhận request
+    private RequestMatcher onManagementPort(String path) {
+        RequestMatcher pathMatcher = PathPatternRequestMatcher.withDefaults().matcher(path);
+        return request -> managementPort > 0 && request.getLocalPort() == managementPort && pathMatcher.matches(request);
+    }
 }
\ No newline at end of file
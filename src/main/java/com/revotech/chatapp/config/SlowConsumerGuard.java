@@ -0,0 +1,184 @@
+package com.revotech.chatapp.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backpressure cho client chậm trên clientOutboundChannel.
+ *
+ * Mỗi session STOMP được bọc bằng {@link GuardedSession} (thay cho ConcurrentWebSocketSessionDecorator
+ * mặc định, xem GuardedSubProtocolWebSocketHandler): khi client đọc chậm, frame dồn lại trong buffer
+ * của decorator đó chứ không phải trong executor outbound, nên depth là số frame đang nằm trong buffer.
+ * Trước khi frame vào executor: vượt typing-drop-depth thì bỏ frame transient (typing...), vượt
+ * disconnect-depth thì đóng session. Giới hạn byte / thời gian gửi của Spring vẫn áp như cũ.
+ */
+@Component
+@Slf4j
+public class SlowConsumerGuard implements ChannelInterceptor {
+
+    // Native header đánh dấu frame có thể bỏ khi client chậm
+    public static final String FRAME_CLASS_HEADER = "x-frame-class";
+    public static final String TRANSIENT_FRAME = "transient";
+
+    @Value("${app.websocket.slow-consumer.typing-drop-depth:50}")
+    private int typingDropDepth;
+
+    @Value("${app.websocket.slow-consumer.disconnect-depth:500}")
+    private int disconnectDepth;
+
+    private final Map<String, GuardedSession> sessions = new ConcurrentHashMap<>();
+
+    private final DistributionSummary queueDepth;
+    private final Counter droppedTransient;
+    private final Counter slowDisconnects;
+
+    public SlowConsumerGuard(MeterRegistry meterRegistry) {
+        queueDepth = DistributionSummary.builder("chat.websocket.session.queue.depth")
+                .description("Frames buffered for the target session when a frame is queued")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        droppedTransient = Counter.builder("chat.websocket.frames.dropped")
+                .description("Transient frames dropped for slow consumers")
+                .tag("reason", "slow-consumer")
+                .register(meterRegistry);
+        slowDisconnects = Counter.builder("chat.websocket.sessions.disconnected")
+                .description("Sessions closed because their send buffer grew too deep")
+                .tag("reason", "slow-consumer")
+                .register(meterRegistry);
+        Gauge.builder("chat.websocket.session.queue.depth.max", this, SlowConsumerGuard::maxDepth)
+                .description("Deepest outbound queue across sessions")
+                .register(meterRegistry);
+        Gauge.builder("chat.websocket.sessions.tracked", sessions, Map::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        GuardedSession session = sessionId != null ? sessions.get(sessionId) : null;
+        if (session == null) {
+            return message;
+        }
+
+        int depth = session.getPendingFrames();
+        queueDepth.record(depth);
+        if (depth >= disconnectDepth) {
+            closeSlowSession(sessionId, session, depth);
+            return null;
+        }
+        if (depth >= typingDropDepth && isTransient(message)) {
+            droppedTransient.increment();
+            return null;
+        }
+        return message;
+    }
+
+    /**
+     * Decorator cho session mới, cùng giới hạn gửi của Spring; guard theo dõi buffer của nó tới khi {@link #untrack}
+     */
+    public WebSocketSession track(WebSocketSession session, int sendTimeLimit, int bufferSizeLimit) {
+        GuardedSession guarded = new GuardedSession(session, sendTimeLimit, bufferSizeLimit);
+        sessions.put(session.getId(), guarded);
+        return guarded;
+    }
+
+    public void untrack(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /**
+     * Session có queue sâu nhất, cho actuator endpoint websocketsessions
+     */
+    public Map<String, Integer> getDeepestQueues(int limit) {
+        List<Map.Entry<String, GuardedSession>> deepest = sessions.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, GuardedSession> e) -> e.getValue().getPendingFrames()).reversed())
+                .limit(limit)
+                .toList();
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        deepest.forEach(entry -> result.put(entry.getKey(), entry.getValue().getPendingFrames()));
+        return result;
+    }
+
+    private double maxDepth() {
+        return sessions.values().stream()
+                .mapToInt(GuardedSession::getPendingFrames)
+                .max()
+                .orElse(0);
+    }
+
+    private void closeSlowSession(String sessionId, GuardedSession session, int depth) {
+        if (!session.closing.compareAndSet(false, true)) {
+            return;
+        }
+        slowDisconnects.increment();
+        log.warn("Closing slow WebSocket session {} with {} buffered frames", sessionId, depth);
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.debug("Error closing slow session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private static boolean isTransient(Message<?> message) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        return TRANSIENT_FRAME.equals(accessor.getFirstNativeHeader(FRAME_CLASS_HEADER));
+    }
+
+    /**
+     * Đếm frame đã vào buffer nhưng chưa được lấy ra để ghi: tăng khi sendMessage, giảm khi decorator chuyển frame
+     * xuống socket. Frame gửi sau khi session đã đóng không bao giờ được lấy ra, nhưng lúc đó session đã bị untrack.
+     */
+    static class GuardedSession extends ConcurrentWebSocketSessionDecorator {
+        private final AtomicInteger pending;
+        private final AtomicBoolean closing = new AtomicBoolean();
+
+        GuardedSession(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit) {
+            this(delegate, sendTimeLimit, bufferSizeLimit, new AtomicInteger());
+        }
+
+        private GuardedSession(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit, AtomicInteger pending) {
+            super(new WebSocketSessionDecorator(delegate) {
+                @Override
+                public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                    pending.decrementAndGet();
+                    super.sendMessage(message);
+                }
+            }, sendTimeLimit, bufferSizeLimit);
+            this.pending = pending;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            pending.incrementAndGet();
+            super.sendMessage(message);
+        }
+
+        int getPendingFrames() {
+            return pending.get();
+        }
+    }
+}
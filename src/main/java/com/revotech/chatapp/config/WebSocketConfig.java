@@ -1,14 +1,20 @@
 package com.revotech.chatapp.config;
 
-import com.revotech.chatapp.security.JwtTokenUtil;
+import com.revotech.chatapp.security.TokenAuthenticator;
 import com.revotech.chatapp.security.UserPrincipal;
+import com.revotech.chatapp.service.ClusterBackplane;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.messaging.simp.stomp.StompCommand;
@@ -17,12 +23,12 @@ import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
@@ -33,20 +39,93 @@ import java.util.Map;
 @Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
-    private final JwtTokenUtil jwtTokenUtil;
-    private final UserDetailsService userDetailsService;
+    private final TokenAuthenticator tokenAuthenticator;
+    private final ObjectProvider<ClusterBackplane> clusterBackplane;
+    private final ApplicationContext applicationContext;
+    private final SlowConsumerGuard slowConsumerGuard;
+    private final BroadcastFanoutMetrics broadcastFanoutMetrics;
 
     @Value("${app.websocket.allowed-origins:http://localhost:8080}")
     private String[] allowedOrigins;
 
+    // simple (một node) | redis / local (simple broker + backplane) | relay (STOMP broker ngoài)
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.broker.relay-host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.broker.relay-port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.broker.relay-login:guest}")
+    private String relayLogin;
+
+    @Value("${app.websocket.broker.relay-passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${app.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${app.websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.transport.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${app.websocket.heartbeat-pool-size:2}")
+    private int heartbeatPoolSize;
+
     // CRITICAL FIX: Store session data để persist qua events
     private final Map<String, Map<String, Object>> sessionDataStore = new ConcurrentHashMap<>();
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue")
-                .setTaskScheduler(heartBeatScheduler())
-                .setHeartbeatValue(new long[]{10000, 10000});
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            // External STOMP broker (RabbitMQ/ActiveMQ) - subscriptions sống ở broker, mọi node thấy nhau
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(10000)
+                    .setSystemHeartbeatReceiveInterval(10000)
+                    // /user/... destinations của session ở node khác
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp-user-registry");
+            log.info("WebSocket broker: STOMP relay {}:{}", relayHost, relayPort);
+        } else {
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setTaskScheduler(heartBeatScheduler())
+                    .setHeartbeatValue(new long[]{10000, 10000});
+            log.info("WebSocket broker: simple ({})", brokerMode);
+
+            // Chỉ có backplane khi mode = redis | local
+            clusterBackplane.ifAvailable(backplane -> config.configureBrokerChannel().interceptors(new ClusterBrokerRelay(
+                    backplane, () -> applicationContext.getBean("brokerChannel", MessageChannel.class))));
+        }
+        // Fan-out size của mọi broadcast (subscriber local của node này)
+        config.configureBrokerChannel().interceptors(broadcastFanoutMetrics);
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
     }
@@ -60,8 +139,49 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setHeartbeatTime(25000);
     }
 
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Mỗi session: buffer tối đa khi client đọc chậm, quá limit (size hoặc thời gian) thì Spring đóng session
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
+    // Thay SubProtocolWebSocketHandler mặc định: session được bọc bằng decorator của SlowConsumerGuard
+    @Bean
+    public static BeanPostProcessor guardedSubProtocolWebSocketHandler(BeanFactory beanFactory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (!(bean instanceof SubProtocolWebSocketHandler handler) || bean instanceof GuardedSubProtocolWebSocketHandler) {
+                    return bean;
+                }
+                GuardedSubProtocolWebSocketHandler guarded = new GuardedSubProtocolWebSocketHandler(
+                        beanFactory.getBean("clientInboundChannel", MessageChannel.class),
+                        beanFactory.getBean("clientOutboundChannel", SubscribableChannel.class),
+                        beanFactory.getBean(SlowConsumerGuard.class));
+                guarded.setPhase(handler.getPhase());
+                return guarded;
+            }
+        };
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+        // Bỏ typing frame rồi ngắt kết nối với session có buffer gửi quá sâu
+        registration.interceptors(slowConsumerGuard);
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
         registration.interceptors(new ChannelInterceptor() {
             @Override
             public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -76,17 +196,16 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                         if (authHeader != null && authHeader.startsWith("Bearer ")) {
                             String token = authHeader.substring(7);
 
-                            if (jwtTokenUtil.validateToken(token)) {
-                                String username = jwtTokenUtil.getUsernameFromToken(token);
-
-                                var userDetails = userDetailsService.loadUserByUsername(username);
-                                var auth = new UsernamePasswordAuthenticationToken(
-                                        userDetails, null, userDetails.getAuthorities());
+                            // Một lần parse JWT, principal từ cache
+                            var auth = tokenAuthenticator.authenticate(token);
+                            if (auth != null) {
+                                UserPrincipal principal = (UserPrincipal) auth.getPrincipal();
+                                String username = principal.getUsername();
 
                                 SecurityContextHolder.getContext().setAuthentication(auth);
                                 accessor.setUser(auth);
 
-                                Long userId = ((UserPrincipal) userDetails).getId();
+                                Long userId = principal.getId();
 
                                 // CRITICAL FIX: Store session data persistently
                                 Map<String, Object> sessionData = new ConcurrentHashMap<>();
@@ -138,7 +257,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Bean
     public TaskScheduler heartBeatScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(1);
+        scheduler.setPoolSize(heartbeatPoolSize);
         scheduler.setThreadNamePrefix("websocket-heartbeat-");
         scheduler.setDaemon(true);
         scheduler.initialize();
@@ -0,0 +1,26 @@
+package com.revotech.chatapp.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/websocketsessions - số frame đang chờ trong buffer gửi của các session sâu nhất
+ */
+@Component
+@Endpoint(id = "websocketsessions")
+@RequiredArgsConstructor
+public class WebSocketSessionsEndpoint {
+
+    private static final int LIMIT = 50;
+
+    private final SlowConsumerGuard slowConsumerGuard;
+
+    @ReadOperation
+    public Map<String, Integer> queueDepths() {
+        return slowConsumerGuard.getDeepestQueues(LIMIT);
+    }
+}
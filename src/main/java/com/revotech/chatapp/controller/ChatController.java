@@ -5,6 +5,7 @@ import com.revotech.chatapp.model.dto.request.MessageVisibilityRequest;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
 import com.revotech.chatapp.service.ConversationService;
 import com.revotech.chatapp.service.MessageService;
+import com.revotech.chatapp.service.TypingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
@@ -20,6 +21,7 @@ public class ChatController {
 
     private final MessageService messageService;
     private final ConversationService conversationService;
+    private final TypingService typingService;
 
     @MessageMapping("/chat/room/{roomId}")
     public void sendMessageToRoom(@DestinationVariable Long roomId,
@@ -114,7 +116,7 @@ public class ChatController {
         Long userId = (Long) headerAccessor.getSessionAttributes().get("userId");
         String username = (String) headerAccessor.getSessionAttributes().get("username");
 
-        messageService.notifyTyping(roomId, null, userId, username, notification.isTyping());
+        typingService.updateTyping(roomId, null, userId, username, notification.isTyping());
     }
 
     @MessageMapping("/chat/typing/conversation/{conversationId}")
@@ -124,7 +126,7 @@ public class ChatController {
         Long userId = (Long) headerAccessor.getSessionAttributes().get("userId");
         String username = (String) headerAccessor.getSessionAttributes().get("username");
 
-        messageService.notifyTyping(null, conversationId, userId, username, notification.isTyping());
+        typingService.updateTyping(null, conversationId, userId, username, notification.isTyping());
     }
 
     // Inner class for typing notifications
@@ -5,8 +5,11 @@ import com.revotech.chatapp.model.dto.ConversationDTO;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
 import com.revotech.chatapp.model.dto.request.StartConversationRequest;
 import com.revotech.chatapp.model.dto.response.ConversationListResponse;
+import com.revotech.chatapp.model.dto.response.MessageHistoryResponse;
+import com.revotech.chatapp.model.enums.HistoryDirection;
 import com.revotech.chatapp.security.UserPrincipal;
 import com.revotech.chatapp.service.ConversationService;
+import com.revotech.chatapp.service.MessageService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,6 +27,7 @@ import java.util.List;
 public class ConversationController {
 
     private final ConversationService conversationService;
+    private final MessageService messageService;
 
     @PostMapping("/start")
     public ResponseEntity<ConversationDTO> startConversation(
@@ -80,6 +84,18 @@ public class ConversationController {
         return ResponseEntity.ok(messages);
     }
 
+    @GetMapping("/{conversationId}/messages/history")
+    public ResponseEntity<MessageHistoryResponse> getConversationHistory(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "BEFORE") HistoryDirection direction,
+            @RequestParam(defaultValue = "50") int limit,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        MessageHistoryResponse history = messageService.getConversationHistory(
+                conversationId, currentUser.getId(), cursor, direction, limit);
+        return ResponseEntity.ok(history);
+    }
+
     @PostMapping("/{conversationId}/messages")
     public ResponseEntity<ChatMessage> sendMessage(
             @PathVariable Long conversationId,
@@ -1,12 +1,16 @@
 package com.revotech.chatapp.controller;
 
+import com.revotech.chatapp.model.dto.FileDownload;
 import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.UploadSessionStatus;
+import com.revotech.chatapp.model.dto.request.CreateUploadRequest;
+import com.revotech.chatapp.model.enums.ImageVariant;
 import com.revotech.chatapp.security.UserPrincipal;
 import com.revotech.chatapp.service.FileService;
+import com.revotech.chatapp.service.UploadSessionService;
+import com.revotech.chatapp.util.FileStreamer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -14,7 +18,11 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 
 @RestController
 @RequestMapping("/api/files")
@@ -23,8 +31,10 @@ import java.io.IOException;
 public class FileController {
 
     private final FileService fileService;
+    private final FileStreamer fileStreamer;
+    private final UploadSessionService uploadSessionService;
 
-    @PostMapping("/upload")
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<FileMessage> uploadFile(
             @RequestParam("file") MultipartFile file,
             @AuthenticationPrincipal UserPrincipal currentUser) {
@@ -32,6 +42,62 @@ public class FileController {
         return ResponseEntity.ok(fileMessage);
     }
 
+    /**
+     * Body là nội dung file, tên file (URL-encoded) trong X-File-Name. Stream thẳng từ socket vào blob store,
+     * không spool multipart ra đĩa trước
+     */
+    @PostMapping(value = "/upload", consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileMessage> uploadStream(
+            @RequestHeader("X-File-Name") String fileName,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserPrincipal currentUser) throws IOException {
+        FileMessage fileMessage = fileService.uploadStream(request.getInputStream(),
+                URLDecoder.decode(fileName, StandardCharsets.UTF_8), currentUser.getId());
+        return ResponseEntity.ok(fileMessage);
+    }
+
+    /**
+     * Upload resumable theo chunk cho file lớn: tạo session, PUT từng chunk (body thô) tại offset là bội của chunkSize,
+     * GET để biết chunk nào còn thiếu sau khi mất kết nối, complete khi đủ
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadSessionStatus> createUpload(
+            @Valid @RequestBody CreateUploadRequest request,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        return ResponseEntity.ok(uploadSessionService.create(request, currentUser.getId()));
+    }
+
+    @PutMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadSessionStatus> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam long offset,
+            HttpServletRequest request,
+            @AuthenticationPrincipal UserPrincipal currentUser) throws IOException {
+        return ResponseEntity.ok(uploadSessionService.writeChunk(uploadId, offset, request.getInputStream(), currentUser.getId()));
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadSessionStatus> getUploadStatus(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        return ResponseEntity.ok(uploadSessionService.getStatus(uploadId, currentUser.getId()));
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<FileMessage> completeUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        return ResponseEntity.ok(uploadSessionService.complete(uploadId, currentUser.getId()));
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> cancelUpload(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        uploadSessionService.cancel(uploadId, currentUser.getId());
+        return ResponseEntity.ok().build();
+    }
+
     @GetMapping("/{fileId}")
     public ResponseEntity<FileMessage> getFileInfo(
             @PathVariable Long fileId) {
@@ -40,30 +106,18 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
-    @GetMapping("/{fileName}/download")
-    public ResponseEntity<Resource> downloadFile(
-            @PathVariable String fileName,
-            HttpServletRequest request) {
-
-        Resource resource = fileService.downloadFile(fileName);
-
-        // Try to determine file's content type
-        String contentType = null;
-        try {
-            contentType = request.getServletContext().getMimeType(resource.getFile().getAbsolutePath());
-        } catch (IOException ex) {
-            log.info("Could not determine file type.");
-        }
-
-        // Fallback to the default content type if type could not be determined
-        if (contentType == null) {
-            contentType = "application/octet-stream";
-        }
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                .body(resource);
+    /**
+     * fileRef: id của attachment (downloadUrl trong FileMessage) hoặc tên file. Hỗ trợ Range / ETag, body stream không qua heap
+     */
+    @GetMapping("/{fileRef}/download")
+    public void downloadFile(
+            @PathVariable String fileRef,
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        FileDownload file = fileService.getDownload(fileRef, currentUser.getId());
+        fileStreamer.stream(file, false, request, response);
     }
 
     @DeleteMapping("/{fileName}")
@@ -74,18 +128,23 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
-    @GetMapping("/{fileName}/thumbnail")
-    public ResponseEntity<Resource> getThumbnail(
-            @PathVariable String fileName,
-            HttpServletRequest request) {
+    @GetMapping("/{fileRef}/thumbnail")
+    public void getThumbnail(
+            @PathVariable String fileRef,
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        fileStreamer.stream(fileService.getDerivative(fileRef, ImageVariant.THUMBNAIL, currentUser.getId()), true, request, response);
+    }
 
-        // This would require modifications to FileService to handle thumbnails
-        String thumbnailFileName = "thumb_" + fileName;
-        Resource resource = fileService.downloadFile(thumbnailFileName);
+    @GetMapping("/{fileRef}/preview")
+    public void getPreview(
+            @PathVariable String fileRef,
+            @AuthenticationPrincipal UserPrincipal currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_JPEG)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + thumbnailFileName + "\"")
-                .body(resource);
+        fileStreamer.stream(fileService.getDerivative(fileRef, ImageVariant.PREVIEW, currentUser.getId()), true, request, response);
     }
-}
\ No newline at end of file
+}
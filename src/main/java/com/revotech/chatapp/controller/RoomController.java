@@ -5,6 +5,8 @@ import com.revotech.chatapp.model.dto.RoomDTO;
 import com.revotech.chatapp.model.dto.RoomMemberDTO;
 import com.revotech.chatapp.model.dto.request.CreateRoomRequest;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
+import com.revotech.chatapp.model.dto.response.MessageHistoryResponse;
+import com.revotech.chatapp.model.enums.HistoryDirection;
 import com.revotech.chatapp.security.UserPrincipal;
 import com.revotech.chatapp.service.MessageService;
 import com.revotech.chatapp.service.RoomService;
@@ -121,6 +123,17 @@ public class RoomController {
         return ResponseEntity.ok(messages);
     }
 
+    @GetMapping("/{roomId}/messages/history")
+    public ResponseEntity<MessageHistoryResponse> getRoomHistory(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "BEFORE") HistoryDirection direction,
+            @RequestParam(defaultValue = "50") int limit,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        MessageHistoryResponse history = messageService.getRoomHistory(roomId, currentUser.getId(), cursor, direction, limit);
+        return ResponseEntity.ok(history);
+    }
+
     @PostMapping("/{roomId}/messages")
     public ResponseEntity<ChatMessage> sendMessage(
             @PathVariable Long roomId,
@@ -131,6 +144,23 @@ public class RoomController {
         return ResponseEntity.ok(message);
     }
 
+    @PostMapping("/{roomId}/read")
+    public ResponseEntity<Void> markRoomAsRead(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) String messageId,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        messageService.markRoomAsRead(roomId, messageId, currentUser.getId());
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/{roomId}/unread-count")
+    public ResponseEntity<Long> getUnreadCount(
+            @PathVariable Long roomId,
+            @AuthenticationPrincipal UserPrincipal currentUser) {
+        Long count = messageService.getUnreadMessagesCount(roomId, null, currentUser.getId());
+        return ResponseEntity.ok(count);
+    }
+
     @GetMapping("/{roomId}/messages/search")
     public ResponseEntity<Page<ChatMessage>> searchRoomMessages(
             @PathVariable Long roomId,
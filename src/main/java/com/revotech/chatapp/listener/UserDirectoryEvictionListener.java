@@ -0,0 +1,32 @@
+package com.revotech.chatapp.listener;
+
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.service.impl.UserDirectory;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * JPA listener trên User: bỏ entry của UserDirectory khi username / fullName / avatar thay đổi.
+ * Bulk update presence không đi qua listener và cũng không chạm các field này.
+ */
+public class UserDirectoryEvictionListener {
+
+    @Autowired
+    private ObjectProvider<UserDirectory> userDirectory;
+
+    @PostUpdate
+    public void onUpdate(User user) {
+        if (userDirectory != null) {
+            userDirectory.ifAvailable(directory -> directory.refresh(user));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(User user) {
+        if (userDirectory != null) {
+            userDirectory.ifAvailable(directory -> directory.invalidate(user.getId()));
+        }
+    }
+}
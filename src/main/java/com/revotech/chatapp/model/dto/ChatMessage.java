@@ -34,4 +34,7 @@ public class ChatMessage {
     private String replyToSenderName;
 
     private List<MessageReactionDTO> reactions;
+
+    // Đoạn content có đánh dấu <mark> - chỉ có trong kết quả search
+    private String highlight;
 }
\ No newline at end of file
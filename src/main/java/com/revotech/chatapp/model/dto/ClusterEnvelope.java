@@ -0,0 +1,20 @@
+package com.revotech.chatapp.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Một frame broker được chuyển giữa các node qua ClusterBackplane
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class ClusterEnvelope {
+    // Node đã publish - node đó tự deliver cho session local nên bỏ qua khi nhận lại
+    private String originNodeId;
+    private String destination;
+    private String contentType;
+    // x-frame-class native header (typing... có thể bỏ khi client chậm)
+    private String frameClass;
+    private byte[] payload;
+}
@@ -0,0 +1,31 @@
+package com.revotech.chatapp.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * File đã resolve sẵn để stream: đường dẫn trên đĩa (BlobStore local) hoặc nguồn đọc theo range (object storage),
+ * kèm metadata cho Content-* / ETag / Last-Modified
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class FileDownload {
+    private Path path;
+    private RangeSource source;
+    private String fileName;
+    private String originalFileName;
+    private String mimeType;
+    private long size;
+    private String etag;
+    private long lastModified;
+
+    @FunctionalInterface
+    public interface RangeSource {
+        InputStream open(long start, long length) throws IOException;
+    }
+}
@@ -16,4 +16,8 @@ public class FileMessage {
     private Long fileSize;
     private String mimeType;
     private String thumbnailUrl;
+    private String previewUrl;
+    // Kích thước ảnh gốc, client giữ chỗ trước khi thumbnail sẵn sàng
+    private Integer width;
+    private Integer height;
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.revotech.chatapp.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageSearchResult {
+    // messages.id theo thứ tự kết quả (mới nhất trước)
+    private List<Long> messageIds;
+    private long totalHits;
+}
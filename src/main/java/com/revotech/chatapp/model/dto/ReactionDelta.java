@@ -0,0 +1,20 @@
+package com.revotech.chatapp.model.dto;
+
+import com.revotech.chatapp.model.enums.ReactionType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Thay đổi count của một loại reaction trên message (+1 / -1), client tự cộng vào danh sách đang hiển thị.
+ * Đổi loại reaction gửi hai delta: -1 loại cũ, +1 loại mới.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class ReactionDelta {
+    private String messageId;
+    private Long userId;
+    private ReactionType type;
+    private String emoji;
+    private Integer delta;
+}
@@ -17,6 +17,7 @@ public class RoomMemberDTO {
     private Boolean isPinned;
     private LocalDateTime joinedAt;
     private LocalDateTime lastReadAt;
+    private Long lastReadMessageId;
     private LocalDateTime leftAt;
     private Boolean isOnline;
 }
@@ -0,0 +1,21 @@
+package com.revotech.chatapp.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class TypingSnapshot {
+    private Long roomId;
+    private Long conversationId;
+    // Mỗi node chỉ biết người đang nhập qua session của chính nó: client gộp snapshot theo nodeId
+    private String nodeId;
+    // Client bỏ tập của node nếu không nhận snapshot mới trong khoảng này (node chết không gửi snapshot rỗng)
+    private Long expiresInMs;
+    private List<TypingIndicator> users;
+    private LocalDateTime timestamp;
+}
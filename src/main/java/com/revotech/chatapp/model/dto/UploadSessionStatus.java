@@ -0,0 +1,25 @@
+package com.revotech.chatapp.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Trạng thái upload theo chunk. committedOffset: số byte liên tục từ đầu file đã ghi bền (client tuần tự
+ * resume từ đây); missingOffsets: offset các chunk chưa nhận (client song song gửi lại đúng các chunk này).
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class UploadSessionStatus {
+    private String uploadId;
+    private String fileName;
+    private long size;
+    private int chunkSize;
+    private long committedOffset;
+    private long receivedBytes;
+    private List<Long> missingOffsets;
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,19 @@
+package com.revotech.chatapp.model.dto.response;
+
+import com.revotech.chatapp.model.dto.ChatMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageHistoryResponse {
+    // Newest first, cùng thứ tự với các API page cũ
+    private List<ChatMessage> content;
+    private String olderCursor;
+    private String newerCursor;
+    private Boolean hasOlder;
+    private Boolean hasNewer;
+}
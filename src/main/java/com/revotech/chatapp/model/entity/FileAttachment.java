@@ -1,5 +1,6 @@
 package com.revotech.chatapp.model.entity;
 
+import com.revotech.chatapp.model.enums.DerivativeStatus;
 import com.revotech.chatapp.model.enums.FileType;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
@@ -18,8 +19,9 @@ public class FileAttachment {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // null cho tới khi attachment được gắn vào message (upload xong trước khi gửi)
     @OneToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "message_id", nullable = false)
+    @JoinColumn(name = "message_id")
     private Message message;
 
     @Column(nullable = false)
@@ -28,8 +30,9 @@ public class FileAttachment {
     @Column(nullable = false)
     private String originalFileName;
 
-    @Column(nullable = false)
-    private String filePath;
+    // Key trong BlobStore (checksum, hoặc tên file với upload cũ). Giữ tên cột cũ: StorageMigrator đổi path -> key
+    @Column(name = "file_path", nullable = false)
+    private String storageKey;
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -39,7 +42,30 @@ public class FileAttachment {
     private Long fileSize;
 
     private String mimeType;
-    private String thumbnailPath;
+
+    // Ảnh: kích thước gốc + các bản thu nhỏ do MediaDerivativePipeline sinh ra sau upload
+    private Integer width;
+    private Integer height;
+
+    @Enumerated(EnumType.STRING)
+    private DerivativeStatus derivativeStatus;
+
+    // Lúc một worker nhận xử lý (PENDING -> PROCESSING); node chết giữa chừng thì quá hạn sẽ được đưa lại PENDING
+    private LocalDateTime derivativeClaimedAt;
+
+    @Column(name = "thumbnail_path")
+    private String thumbnailKey;
+    private Integer thumbnailWidth;
+    private Integer thumbnailHeight;
+
+    @Column(name = "preview_path")
+    private String previewKey;
+    private Integer previewWidth;
+    private Integer previewHeight;
+
+    // SHA-256 (hex) của nội dung, dùng làm ETag khi download
+    @Column(length = 64)
+    private String checksum;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "uploaded_by", nullable = false)
@@ -0,0 +1,41 @@
+package com.revotech.chatapp.model.entity;
+
+import com.revotech.chatapp.model.enums.ReactionType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate reaction của một message theo từng loại: số lượng + id các user react gần nhất.
+ * Được cập nhật incremental khi add / remove reaction (ReactionAggregator), không join bảng message_reactions khi đọc.
+ */
+@Entity
+@Table(name = "message_reaction_stats",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"message_id", "type"}))
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class MessageReactionStat {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // id (messages.id) của message
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReactionType type;
+
+    @Column(nullable = false)
+    private Long count;
+
+    // Tối đa app.reactions.recent-users id, mới nhất trước, phân cách bởi dấu phẩy
+    @Column(length = 500)
+    private String recentUserIds;
+
+    private LocalDateTime lastReactionAt;
+}
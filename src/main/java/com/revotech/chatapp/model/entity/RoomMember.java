@@ -40,5 +40,8 @@ public class RoomMember {
     private LocalDateTime joinedAt;
 
     private LocalDateTime lastReadAt;
+
+    // Read cursor: id (messages.id) của tin nhắn cuối cùng user đã đọc trong room
+    private Long lastReadMessageId;
     private LocalDateTime leftAt;
 }
\ No newline at end of file
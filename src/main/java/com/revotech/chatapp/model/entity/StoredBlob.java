@@ -0,0 +1,38 @@
+package com.revotech.chatapp.model.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Nội dung file lưu một lần theo SHA-256, mọi FileAttachment cùng checksum dùng chung blob.
+ * refCount = số attachment đang trỏ tới, về 0 thì row là tombstone cho tới khi blob bị xoá khỏi BlobStore (BlobRegistry).
+ */
+@Entity
+@Table(name = "stored_blobs")
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class StoredBlob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String checksum;
+
+    // Key trong BlobStore, null cho tới khi lần upload đầu tiên đặt nội dung vào store
+    @Column(name = "path")
+    private String storageKey;
+
+    private Long size;
+
+    @Column(nullable = false)
+    private Long refCount;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,60 @@
+package com.revotech.chatapp.model.entity;
+
+import com.revotech.chatapp.model.enums.UploadState;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload theo chunk đang dở: nội dung ghi thẳng vào file đã cấp phát sẵn (uploads/sessions/{id}.part),
+ * receivedChunks là bitmap (BitSet.toByteArray) các chunk đã ghi xong và fsync.
+ * Hết hạn sau app.storage.chunked.session-ttl-ms không nhận chunk mới thì bị UploadSessionCleanupTask dọn.
+ */
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_sessions_expires", columnList = "expiresAt")
+})
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class UploadSession {
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private String fileName;
+
+    @Column(nullable = false)
+    private Long totalSize;
+
+    @Column(nullable = false)
+    private Integer chunkSize;
+
+    @Column(nullable = false)
+    private Integer chunkCount;
+
+    @Column(nullable = false)
+    private Integer receivedCount;
+
+    @Column(length = 8192)
+    private byte[] receivedChunks;
+
+    // COMPLETING: complete đang hash / đưa vào BlobStore ngoài transaction, tới expiresAt thì coi như bỏ dở
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private UploadState state = UploadState.UPLOADING;
+
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
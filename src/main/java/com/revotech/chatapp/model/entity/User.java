@@ -1,5 +1,7 @@
 package com.revotech.chatapp.model.entity;
 
+import com.revotech.chatapp.listener.UserDirectoryEvictionListener;
+import com.revotech.chatapp.security.UserPrincipalEvictionListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,6 +15,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "users")
+@EntityListeners({UserPrincipalEvictionListener.class, UserDirectoryEvictionListener.class})
 @Data @NoArgsConstructor @AllArgsConstructor @Builder
 public class User {
     @Id
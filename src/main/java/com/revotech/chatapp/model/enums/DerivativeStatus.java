@@ -0,0 +1,5 @@
+package com.revotech.chatapp.model.enums;
+
+public enum DerivativeStatus {
+    PENDING, PROCESSING, READY, FAILED
+}
@@ -0,0 +1,14 @@
+package com.revotech.chatapp.model.enums;
+
+/**
+ * Bản thu nhỏ sinh ra cho ảnh upload, maxSide là cạnh dài nhất (px)
+ */
+public enum ImageVariant {
+    THUMBNAIL("thumb", 320), PREVIEW("preview", 1280);
+
+    private final String suffix;
+    private final int maxSide;
+    ImageVariant(String suffix, int maxSide) { this.suffix = suffix; this.maxSide = maxSide; }
+    public String getSuffix() { return suffix; }
+    public int getMaxSide() { return maxSide; }
+}
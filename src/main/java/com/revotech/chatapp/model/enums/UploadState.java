@@ -0,0 +1,5 @@
+package com.revotech.chatapp.model.enums;
+
+public enum UploadState {
+    UPLOADING, COMPLETING
+}
@@ -23,6 +23,15 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
                                              @Param("type") ConversationType type,
                                              Pageable pageable);
 
+    @Query("SELECT c.id FROM Conversation c WHERE " +
+            "(c.participant1Id = :userId OR c.participant2Id = :userId) " +
+            "AND c.type = :type")
+    List<Long> findUserConversationIds(@Param("userId") Long userId,
+                                       @Param("type") ConversationType type);
+
+    @Query("SELECT c.id FROM Conversation c WHERE c.participant1Id = :userId OR c.participant2Id = :userId")
+    List<Long> findAllUserConversationIds(@Param("userId") Long userId);
+
     @Query("SELECT c FROM Conversation c WHERE " +
             "c.type = 'DIRECT' AND " +
             "((c.participant1Id = :user1Id AND c.participant2Id = :user2Id) OR " +
@@ -3,10 +3,12 @@ package com.revotech.chatapp.repository;
 import com.revotech.chatapp.model.entity.FileAttachment;
 import com.revotech.chatapp.model.entity.Message;
 import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.DerivativeStatus;
 import com.revotech.chatapp.model.enums.FileType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -22,6 +24,9 @@ public interface FileAttachmentRepository extends JpaRepository<FileAttachment,
 
     Optional<FileAttachment> findByMessage(Message message);
 
+    // Upload trùng nội dung dùng lại thumbnail / preview đã sinh cho blob
+    Optional<FileAttachment> findFirstByChecksumAndDerivativeStatus(String checksum, DerivativeStatus derivativeStatus);
+
     @Query("SELECT fa FROM FileAttachment fa WHERE fa.uploadedBy.id = :userId ORDER BY fa.uploadedAt DESC")
     Page<FileAttachment> findByUploadedByOrderByUploadedAtDesc(@Param("userId") Long userId, Pageable pageable);
 
@@ -44,4 +49,67 @@ public interface FileAttachmentRepository extends JpaRepository<FileAttachment,
             "LOWER(fa.originalFileName) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
             "ORDER BY fa.uploadedAt DESC")
     Page<FileAttachment> searchByFileName(@Param("keyword") String keyword, Pageable pageable);
-}
+
+    // Derivative pipeline: chỉ ghi các cột của pipeline, không đè thay đổi khác trên attachment
+    @Modifying
+    @Query("UPDATE FileAttachment fa SET fa.derivativeStatus = :status, fa.width = :width, fa.height = :height, " +
+            "fa.thumbnailKey = :thumbnailKey, fa.thumbnailWidth = :thumbnailWidth, fa.thumbnailHeight = :thumbnailHeight, " +
+            "fa.previewKey = :previewKey, fa.previewWidth = :previewWidth, fa.previewHeight = :previewHeight " +
+            "WHERE fa.id = :id")
+    int updateDerivatives(@Param("id") Long id,
+                          @Param("status") DerivativeStatus status,
+                          @Param("width") Integer width,
+                          @Param("height") Integer height,
+                          @Param("thumbnailKey") String thumbnailKey,
+                          @Param("thumbnailWidth") Integer thumbnailWidth,
+                          @Param("thumbnailHeight") Integer thumbnailHeight,
+                          @Param("previewKey") String previewKey,
+                          @Param("previewWidth") Integer previewWidth,
+                          @Param("previewHeight") Integer previewHeight);
+
+    @Modifying
+    @Query("UPDATE FileAttachment fa SET fa.derivativeStatus = :status WHERE fa.id = :id")
+    int updateDerivativeStatus(@Param("id") Long id, @Param("status") DerivativeStatus status);
+
+    // Chỉ một worker (trên mọi node) nhận được attachment: PENDING -> PROCESSING atomic
+    @Modifying
+    @Query("UPDATE FileAttachment fa SET fa.derivativeStatus = com.revotech.chatapp.model.enums.DerivativeStatus.PROCESSING, " +
+            "fa.derivativeClaimedAt = :claimedAt " +
+            "WHERE fa.id = :id AND fa.derivativeStatus = com.revotech.chatapp.model.enums.DerivativeStatus.PENDING")
+    int claimDerivative(@Param("id") Long id, @Param("claimedAt") LocalDateTime claimedAt);
+
+    @Modifying
+    @Query("UPDATE FileAttachment fa SET fa.derivativeStatus = com.revotech.chatapp.model.enums.DerivativeStatus.PENDING " +
+            "WHERE fa.derivativeStatus = com.revotech.chatapp.model.enums.DerivativeStatus.PROCESSING " +
+            "AND fa.derivativeClaimedAt < :claimedBefore")
+    int releaseStaleDerivativeClaims(@Param("claimedBefore") LocalDateTime claimedBefore);
+
+    @Query("SELECT fa.id FROM FileAttachment fa WHERE fa.derivativeStatus = :status ORDER BY fa.id")
+    List<Long> findIdsByDerivativeStatus(@Param("status") DerivativeStatus status, Pageable pageable);
+
+    // Người upload, hoặc thành viên còn trong room / participant của conversation chứa message của attachment
+    @Query("SELECT CASE WHEN COUNT(fa) > 0 THEN true ELSE false END FROM FileAttachment fa " +
+            "LEFT JOIN fa.message m LEFT JOIN m.conversation c " +
+            "WHERE fa.id = :id AND (fa.uploadedBy.id = :userId " +
+            "OR c.participant1Id = :userId OR c.participant2Id = :userId " +
+            "OR EXISTS (SELECT rm.id FROM RoomMember rm WHERE rm.room = m.room AND rm.user.id = :userId AND rm.leftAt IS NULL))")
+    boolean canAccess(@Param("id") Long id, @Param("userId") Long userId);
+
+    // Chat chứa message của attachment (nếu đã gắn vào message)
+    @Query("SELECT r.id AS roomId, c.id AS conversationId FROM FileAttachment fa JOIN fa.message m " +
+            "LEFT JOIN m.room r LEFT JOIN m.conversation c WHERE fa.id = :id")
+    Optional<ChatTarget> findChatTarget(@Param("id") Long id);
+
+    // StorageMigrator: row còn lưu đường dẫn trên đĩa (chứa '/') thay vì key của BlobStore
+    @Query("SELECT fa FROM FileAttachment fa WHERE fa.storageKey LIKE '%/%' " +
+            "OR fa.thumbnailKey LIKE '%/%' OR fa.previewKey LIKE '%/%' ORDER BY fa.id")
+    List<FileAttachment> findWithLegacyPaths(Pageable pageable);
+
+    @Query("SELECT fa FROM FileAttachment fa WHERE fa.id > :afterId ORDER BY fa.id")
+    List<FileAttachment> findByIdAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    interface ChatTarget {
+        Long getRoomId();
+        Long getConversationId();
+    }
+}
\ No newline at end of file
@@ -11,6 +11,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,9 +23,23 @@ public interface MessageReactionRepository extends JpaRepository<MessageReaction
     @Query("SELECT mr FROM MessageReaction mr WHERE mr.message.messageId = :messageId ORDER BY mr.createdAt DESC")
     List<MessageReaction> findByMessageId(@Param("messageId") String messageId);
 
+    @Query("SELECT mr FROM MessageReaction mr WHERE mr.message.id IN :messageIds ORDER BY mr.createdAt DESC")
+    List<MessageReaction> findByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+
     @Query("SELECT mr FROM MessageReaction mr WHERE mr.message.id = :messageId AND mr.type = :type ORDER BY mr.createdAt DESC")
     List<MessageReaction> findByMessageIdAndType(@Param("messageId") Long messageId, @Param("type") ReactionType type);
 
+    // Reactor mới nhất của một loại, dùng để bù danh sách recent của MessageReactionStat
+    @Query("SELECT mr.user.id FROM MessageReaction mr WHERE mr.message.id = :messageId AND mr.type = :type ORDER BY mr.createdAt DESC, mr.id DESC")
+    List<Long> findRecentUserIds(@Param("messageId") Long messageId, @Param("type") ReactionType type, Pageable pageable);
+
+    // Reaction của một user trên cả page, cho currentUserReacted
+    @Query("SELECT mr.message.id AS messageId, mr.type AS type FROM MessageReaction mr WHERE mr.user.id = :userId AND mr.message.id IN :messageIds")
+    List<UserReaction> findUserReactions(@Param("userId") Long userId, @Param("messageIds") Collection<Long> messageIds);
+
+    @Query("SELECT DISTINCT mr.message.id FROM MessageReaction mr WHERE mr.message.id > :afterId ORDER BY mr.message.id")
+    List<Long> findReactedMessageIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     @Query("SELECT COUNT(mr) FROM MessageReaction mr WHERE mr.message.messageId = :messageId")
     Long countReactionsByMessageId(@Param("messageId") String messageId);
 
@@ -38,4 +53,9 @@ public interface MessageReactionRepository extends JpaRepository<MessageReaction
     Page<Message> findByRoomIdAndIsDeletedFalseWithReactions(@Param("roomId") Long roomId, Pageable pageable);
 
     void deleteByMessageAndUser(Message message, User user);
+
+    interface UserReaction {
+        Long getMessageId();
+        ReactionType getType();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.revotech.chatapp.repository;
+
+import com.revotech.chatapp.model.entity.MessageReactionStat;
+import com.revotech.chatapp.model.enums.ReactionType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MessageReactionStatRepository extends JpaRepository<MessageReactionStat, Long> {
+
+    Optional<MessageReactionStat> findByMessageIdAndType(Long messageId, ReactionType type);
+
+    @Query("SELECT s FROM MessageReactionStat s WHERE s.messageId IN :messageIds ORDER BY s.messageId, s.count DESC, s.type")
+    List<MessageReactionStat> findByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+
+    @Modifying
+    @Query("DELETE FROM MessageReactionStat s WHERE s.messageId IN :messageIds")
+    int deleteByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+
+    // Dựng stats của một batch message bằng một INSERT ... SELECT ... GROUP BY, recent = recentUsers reactor mới nhất
+    @Modifying
+    @Query("""
+            INSERT INTO MessageReactionStat (messageId, type, count, recentUserIds, lastReactionAt)
+            SELECT r.messageId, r.type, COUNT(*),
+                   LISTAGG(CASE WHEN r.rn <= :recentUsers THEN CAST(r.userId AS String) END, ',') WITHIN GROUP (ORDER BY r.rn),
+                   MAX(r.createdAt)
+            FROM (SELECT mr.message.id AS messageId, mr.type AS type, mr.user.id AS userId, mr.createdAt AS createdAt,
+                         ROW_NUMBER() OVER (PARTITION BY mr.message.id, mr.type ORDER BY mr.createdAt DESC, mr.id DESC) AS rn
+                  FROM MessageReaction mr
+                  WHERE mr.message.id IN :messageIds) r
+            GROUP BY r.messageId, r.type""")
+    int insertAggregated(@Param("messageIds") Collection<Long> messageIds, @Param("recentUsers") int recentUsers);
+}
@@ -1,14 +1,20 @@
 package com.revotech.chatapp.repository;
 
 import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.model.enums.MessageType;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +23,31 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     Optional<Message> findByMessageId(String messageId);
 
+    // Row lock trên message: serialize các thay đổi reaction của cùng một message
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT m FROM Message m WHERE m.messageId = :messageId")
+    Optional<Message> findByMessageIdForUpdate(@Param("messageId") String messageId);
+
+    // Batch loading for MessageAssembler - fileAttachment is the inverse side of a OneToOne,
+    // fetch join it here so it is not loaded one message at a time
+    @Query("SELECT m FROM Message m LEFT JOIN FETCH m.fileAttachment WHERE m.id IN :ids")
+    List<Message> findAllByIdInWithAttachment(@Param("ids") Collection<Long> ids);
+
+    // Id-only page queries, entities are loaded afterwards by MessageAssembler
+    @Query(value = "SELECT m.id FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false ORDER BY m.createdAt DESC, m.id DESC",
+            countQuery = "SELECT COUNT(m) FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false")
+    Page<Long> findIdsByRoomId(@Param("roomId") Long roomId, Pageable pageable);
+
+    @Query(value = "SELECT m.id FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false ORDER BY m.createdAt DESC, m.id DESC",
+            countQuery = "SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false")
+    Page<Long> findIdsByConversationId(@Param("conversationId") Long conversationId, Pageable pageable);
+
+    @Query("SELECT m.id FROM Message m WHERE m.room.id = :roomId AND m.isPinned = true AND m.isDeleted = false ORDER BY m.pinnedAt DESC")
+    List<Long> findPinnedIdsByRoomId(@Param("roomId") Long roomId);
+
+    @Query("SELECT m.id FROM Message m WHERE m.conversation.id = :conversationId AND m.isPinned = true AND m.isDeleted = false ORDER BY m.pinnedAt DESC")
+    List<Long> findPinnedIdsByConversationId(@Param("conversationId") Long conversationId);
+
     @Query("SELECT m FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false ORDER BY m.createdAt DESC")
     Page<Message> findByRoomIdAndIsDeletedFalse(@Param("roomId") Long roomId, Pageable pageable);
 
@@ -62,41 +93,44 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
             "ORDER BY m.createdAt ASC")
     List<Message> findUndeliveredMessagesInConversation(@Param("conversationId") Long conversationId, @Param("userId") Long userId);
 
-    // Search methods
-    @Query("SELECT m FROM Message m WHERE " +
-            "LOWER(m.content) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-            "AND m.isDeleted = false " +
-            "ORDER BY m.createdAt DESC")
-    Page<Message> findByContentContainingIgnoreCaseAndIsDeletedFalse(@Param("keyword") String keyword, Pageable pageable);
-
-    @Query("SELECT m FROM Message m WHERE " +
-            "m.room.id = :roomId " +
-            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-            "AND m.isDeleted = false " +
-            "ORDER BY m.createdAt DESC")
-    Page<Message> findByRoomIdAndContentContainingIgnoreCaseAndIsDeletedFalse(
-            @Param("roomId") Long roomId,
-            @Param("keyword") String keyword,
-            Pageable pageable);
-
-    @Query("SELECT m FROM Message m WHERE " +
-            "m.conversation.id = :conversationId " +
-            "AND LOWER(m.content) LIKE LOWER(CONCAT('%', :keyword, '%')) " +
-            "AND m.isDeleted = false " +
-            "ORDER BY m.createdAt DESC")
-    Page<Message> findByConversationIdAndContentContainingIgnoreCaseAndIsDeletedFalse(
-            @Param("conversationId") Long conversationId,
-            @Param("keyword") String keyword,
-            Pageable pageable);
-
     @Query("SELECT COUNT(m) FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false")
     Long countByRoomIdAndIsDeletedFalse(@Param("roomId") Long roomId);
 
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.room.id = :roomId AND m.createdAt > :timestamp AND m.sender.id != :userId AND m.isDeleted = false")
-    Long countMessagesAfterTimestamp(@Param("roomId") Long roomId, @Param("timestamp") LocalDateTime timestamp, @Param("userId") Long userId);
+    // Unread theo read cursor (RoomMember.lastReadMessageId), chạy trên PK range
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.room.id = :roomId AND m.id > :afterId AND m.sender.id != :userId AND m.isDeleted = false")
+    Long countUnreadInRoomAfter(@Param("roomId") Long roomId, @Param("afterId") Long afterId, @Param("userId") Long userId);
+
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId AND m.sender.id != :userId AND m.status IN :statuses AND m.isDeleted = false")
+    Long countUnreadInConversation(@Param("conversationId") Long conversationId,
+                                   @Param("userId") Long userId,
+                                   @Param("statuses") Collection<MessageStatus> statuses);
+
+    interface ConversationUnread {
+        Long getConversationId();
+        Long getUnread();
+    }
+
+    // Unread của nhiều conversation trong một query; conversation không có dòng nào nghĩa là 0
+    @Query("SELECT m.conversation.id AS conversationId, COUNT(m) AS unread FROM Message m " +
+            "WHERE m.conversation.id IN :conversationIds AND m.sender.id != :userId AND m.status IN :statuses AND m.isDeleted = false " +
+            "GROUP BY m.conversation.id")
+    List<ConversationUnread> countUnreadByConversation(@Param("conversationIds") Collection<Long> conversationIds,
+                                                       @Param("userId") Long userId,
+                                                       @Param("statuses") Collection<MessageStatus> statuses);
+
+    interface RoomUnread {
+        Long getRoomId();
+        Long getUnread();
+    }
 
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId AND m.sender.id != :userId AND m.status != 'read' AND m.isDeleted = false")
-    Long countUnreadMessagesInConversation(@Param("conversationId") Long conversationId, @Param("userId") Long userId);
+    // Unread của nhiều room theo read cursor đã ghi của user (RoomMember.lastReadMessageId); room không có dòng nào là 0
+    @Query("SELECT m.room.id AS roomId, COUNT(m) AS unread FROM Message m, RoomMember rm " +
+            "WHERE rm.room.id = m.room.id AND rm.user.id = :userId AND rm.leftAt IS NULL " +
+            "AND m.room.id IN :roomIds AND m.id > COALESCE(rm.lastReadMessageId, 0) " +
+            "AND m.sender.id != :userId AND m.isDeleted = false " +
+            "GROUP BY m.room.id")
+    List<RoomUnread> countUnreadByRoomAfterReadCursor(@Param("roomIds") Collection<Long> roomIds,
+                                                      @Param("userId") Long userId);
 
     // Pinned messages queries
     @Query("SELECT m FROM Message m WHERE m.room.id = :roomId AND m.isPinned = true AND m.isDeleted = false ORDER BY m.pinnedAt DESC")
@@ -105,10 +139,124 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND m.isPinned = true AND m.isDeleted = false ORDER BY m.pinnedAt DESC")
     List<Message> findPinnedMessagesByConversationId(@Param("conversationId") Long conversationId);
 
-    // Page calculation queries
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false AND m.createdAt > :targetTime")
-    Long countMessagesNewerThanInRoom(@Param("roomId") Long roomId, @Param("targetTime") LocalDateTime targetTime);
+    // Read/delivery receipts (ReadReceiptAggregator) - projection để không load cả entity + attachment
+    interface ReceiptTarget {
+        Long getId();
+        String getMessageId();
+        Long getConversationId();
+        Long getRoomId();
+        Long getSenderId();
+        String getSenderUsername();
+        MessageStatus getStatus();
+    }
+
+    @Query("SELECT m.id AS id, m.messageId AS messageId, c.id AS conversationId, r.id AS roomId, " +
+            "s.id AS senderId, s.username AS senderUsername, m.status AS status " +
+            "FROM Message m JOIN m.sender s LEFT JOIN m.conversation c LEFT JOIN m.room r " +
+            "WHERE m.messageId IN :messageIds AND m.isDeleted = false")
+    List<ReceiptTarget> findReceiptTargets(@Param("messageIds") Collection<String> messageIds);
+
+    // Nguồn cho search index (MessageSearchService) - keyset theo id, chỉ các cột cần index
+    interface SearchSource {
+        Long getId();
+        String getMessageId();
+        String getContent();
+        String getEncryptedContent();
+        Long getRoomId();
+        Long getConversationId();
+        Long getSenderId();
+        LocalDateTime getCreatedAt();
+    }
+
+    @Query("SELECT m.id AS id, m.messageId AS messageId, m.content AS content, m.encryptedContent AS encryptedContent, " +
+            "r.id AS roomId, c.id AS conversationId, " +
+            "m.sender.id AS senderId, m.createdAt AS createdAt " +
+            "FROM Message m LEFT JOIN m.room r LEFT JOIN m.conversation c " +
+            "WHERE m.id > :afterId AND m.isDeleted = false AND m.type IN :types " +
+            "ORDER BY m.id ASC")
+    List<SearchSource> findSearchSourcesAfter(@Param("afterId") Long afterId,
+                                              @Param("types") Collection<MessageType> types,
+                                              Pageable pageable);
+
+    interface StoredContent {
+        Long getId();
+        String getMessageId();
+        String getContent();
+        String getEncryptedContent();
+    }
+
+    // Keyset theo id cho MessageEncryptionMigrator (encrypt row cũ / encrypt lại khi đổi key)
+    @Query("SELECT m.id AS id, m.messageId AS messageId, m.content AS content, m.encryptedContent AS encryptedContent " +
+            "FROM Message m WHERE m.id > :afterId AND (m.content IS NOT NULL OR m.encryptedContent IS NOT NULL) " +
+            "ORDER BY m.id ASC")
+    List<StoredContent> findStoredContentAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Chỉ ghi đè content nếu row chưa bị edit kể từ lúc đọc, không đụng các cột khác (pin, status...)
+    @Modifying
+    @Query("UPDATE Message m SET m.content = :content, m.encryptedContent = :encryptedContent " +
+            "WHERE m.id = :id AND m.encryptedContent = :expectedEncryptedContent")
+    int replaceEncryptedContent(@Param("id") Long id,
+                                @Param("expectedEncryptedContent") String expectedEncryptedContent,
+                                @Param("content") String content,
+                                @Param("encryptedContent") String encryptedContent);
+
+    // Row plaintext chỉ cần encrypt khi encryption bật; edit trong lúc đó đã set encryptedContent nên không khớp
+    @Modifying
+    @Query("UPDATE Message m SET m.content = NULL, m.encryptedContent = :encryptedContent " +
+            "WHERE m.id = :id AND m.encryptedContent IS NULL")
+    int encryptPlainContent(@Param("id") Long id, @Param("encryptedContent") String encryptedContent);
+
+    @Query("SELECT m.messageId FROM Message m WHERE m.conversation.id = :conversationId " +
+            "AND m.sender.id <> :userId AND m.status IN :statuses AND m.isDeleted = false")
+    List<String> findMessageIdsInConversationWithStatus(@Param("conversationId") Long conversationId,
+                                                        @Param("userId") Long userId,
+                                                        @Param("statuses") Collection<MessageStatus> statuses);
+
+    @Modifying
+    @Query("UPDATE Message m SET m.status = :status WHERE m.id IN :ids AND m.status IN :fromStatuses")
+    int updateStatusByIdIn(@Param("ids") Collection<Long> ids,
+                           @Param("status") MessageStatus status,
+                           @Param("fromStatuses") Collection<MessageStatus> fromStatuses);
+
+    // Keyset (cursor) history queries - chạy trên idx_messages_room_created / idx_messages_conversation_created,
+    // không cần COUNT. Pageable chỉ dùng để giới hạn số dòng.
+    @Query("SELECT m.id FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Long> findLatestIdsInRoom(@Param("roomId") Long roomId, Pageable limit);
+
+    @Query("SELECT m.id FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false " +
+            "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Long> findIdsInRoomBefore(@Param("roomId") Long roomId,
+                                   @Param("createdAt") LocalDateTime createdAt,
+                                   @Param("id") Long id,
+                                   Pageable limit);
+
+    @Query("SELECT m.id FROM Message m WHERE m.room.id = :roomId AND m.isDeleted = false " +
+            "AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id)) " +
+            "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Long> findIdsInRoomAfter(@Param("roomId") Long roomId,
+                                  @Param("createdAt") LocalDateTime createdAt,
+                                  @Param("id") Long id,
+                                  Pageable limit);
+
+    @Query("SELECT m.id FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Long> findLatestIdsInConversation(@Param("conversationId") Long conversationId, Pageable limit);
+
+    @Query("SELECT m.id FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false " +
+            "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) " +
+            "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Long> findIdsInConversationBefore(@Param("conversationId") Long conversationId,
+                                           @Param("createdAt") LocalDateTime createdAt,
+                                           @Param("id") Long id,
+                                           Pageable limit);
 
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false AND m.createdAt > :targetTime")
-    Long countMessagesNewerThanInConversation(@Param("conversationId") Long conversationId, @Param("targetTime") LocalDateTime targetTime);
-}
\ No newline at end of file
+    @Query("SELECT m.id FROM Message m WHERE m.conversation.id = :conversationId AND m.isDeleted = false " +
+            "AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id)) " +
+            "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Long> findIdsInConversationAfter(@Param("conversationId") Long conversationId,
+                                          @Param("createdAt") LocalDateTime createdAt,
+                                          @Param("id") Long id,
+                                          Pageable limit);
+}
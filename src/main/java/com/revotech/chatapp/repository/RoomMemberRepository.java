@@ -5,10 +5,13 @@ import com.revotech.chatapp.model.entity.RoomMember;
 import com.revotech.chatapp.model.entity.User;
 import com.revotech.chatapp.model.enums.RoomRole;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,9 +29,40 @@ public interface RoomMemberRepository extends JpaRepository<RoomMember, Long> {
     @Query("SELECT rm FROM RoomMember rm WHERE rm.user.id = :userId AND rm.leftAt IS NULL ORDER BY rm.joinedAt DESC")
     List<RoomMember> findActiveRoomMembershipsByUser(@Param("userId") Long userId);
 
+    @Query("SELECT rm.room.id FROM RoomMember rm WHERE rm.user.id = :userId AND rm.leftAt IS NULL")
+    List<Long> findActiveRoomIdsByUser(@Param("userId") Long userId);
+
     @Query("SELECT COUNT(rm) FROM RoomMember rm WHERE rm.room.id = :roomId AND rm.leftAt IS NULL")
     Long countActiveMembers(@Param("roomId") Long roomId);
 
     @Query("SELECT rm FROM RoomMember rm WHERE rm.room.id = :roomId AND rm.user.id = :userId AND rm.leftAt IS NULL")
     Optional<RoomMember> findActiveRoomMember(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Read cursor flush - chỉ tiến về phía trước, không ghi đè cursor mới hơn
+    @Modifying
+    @Query("UPDATE RoomMember rm SET rm.lastReadMessageId = :messageId, rm.lastReadAt = :readAt " +
+            "WHERE rm.room.id = :roomId AND rm.user.id = :userId AND rm.leftAt IS NULL " +
+            "AND (rm.lastReadMessageId IS NULL OR rm.lastReadMessageId < :messageId)")
+    int advanceReadCursor(@Param("roomId") Long roomId,
+                          @Param("userId") Long userId,
+                          @Param("messageId") Long messageId,
+                          @Param("readAt") LocalDateTime readAt);
+
+    @Query("SELECT rm.lastReadMessageId FROM RoomMember rm " +
+            "WHERE rm.room.id = :roomId AND rm.user.id = :userId AND rm.leftAt IS NULL")
+    Optional<Long> findLastReadMessageId(@Param("roomId") Long roomId, @Param("userId") Long userId);
+
+    // Presence fan-out: room của các subject, rồi member của các room đó (tránh join subject x member trong DB)
+    interface Membership {
+        Long getRoomId();
+        Long getUserId();
+    }
+
+    @Query("SELECT rm.room.id AS roomId, rm.user.id AS userId FROM RoomMember rm " +
+            "WHERE rm.user.id IN :userIds AND rm.leftAt IS NULL")
+    List<Membership> findActiveMembershipsByUsers(@Param("userIds") Collection<Long> userIds);
+
+    @Query("SELECT rm.room.id AS roomId, rm.user.id AS userId FROM RoomMember rm " +
+            "WHERE rm.room.id IN :roomIds AND rm.leftAt IS NULL")
+    List<Membership> findActiveMembershipsByRooms(@Param("roomIds") Collection<Long> roomIds);
 }
@@ -0,0 +1,29 @@
+package com.revotech.chatapp.repository;
+
+import com.revotech.chatapp.model.entity.StoredBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, Long> {
+
+    boolean existsByChecksum(String checksum);
+
+    Optional<StoredBlob> findByChecksum(String checksum);
+
+    // Row lock: acquire / release trên cùng blob chạy lần lượt
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM StoredBlob b WHERE b.checksum = :checksum")
+    Optional<StoredBlob> findByChecksumForUpdate(@Param("checksum") String checksum);
+
+    @Query("SELECT b FROM StoredBlob b WHERE b.storageKey LIKE '%/%' ORDER BY b.id")
+    List<StoredBlob> findWithLegacyPaths(Pageable pageable);
+}
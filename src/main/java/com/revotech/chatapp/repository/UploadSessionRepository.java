@@ -0,0 +1,29 @@
+package com.revotech.chatapp.repository;
+
+import com.revotech.chatapp.model.entity.UploadSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    // Chunk song song chỉ tuần tự hoá ở bước đánh dấu bitmap, không phải lúc ghi dữ liệu
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.id = :id")
+    Optional<UploadSession> findByIdForUpdate(@Param("id") String id);
+
+    @Query("SELECT COUNT(s) FROM UploadSession s WHERE s.userId = :userId")
+    long countByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < :now ORDER BY s.expiresAt")
+    List<String> findExpiredIds(@Param("now") LocalDateTime now, Pageable pageable);
+}
@@ -4,10 +4,13 @@ import com.revotech.chatapp.model.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,4 +46,45 @@ public interface UserRepository extends JpaRepository<User, Long> {
             " LOWER(u.email) LIKE LOWER(CONCAT('%', :keyword, '%'))) " +
             "ORDER BY u.fullName ASC")
     Page<User> searchAllUsers(@Param("keyword") String keyword, Pageable pageable);
-}
\ No newline at end of file
+
+    // Presence (PresenceServiceImpl) - ai cần nhận thay đổi online/offline của subject
+    interface PresenceLink {
+        Long getWatcherId();
+        Long getSubjectId();
+    }
+
+    @Query("SELECT uc.user.id AS watcherId, uc.contact.id AS subjectId FROM UserContact uc " +
+            "WHERE uc.contact.id IN :subjectIds AND uc.status = com.revotech.chatapp.model.enums.ContactStatus.ACCEPTED")
+    List<PresenceLink> findContactWatchers(@Param("subjectIds") Collection<Long> subjectIds);
+
+    @Query("SELECT uc.contact.id AS watcherId, uc.user.id AS subjectId FROM UserContact uc " +
+            "WHERE uc.user.id IN :subjectIds AND uc.status = com.revotech.chatapp.model.enums.ContactStatus.ACCEPTED")
+    List<PresenceLink> findContactsOfSubjects(@Param("subjectIds") Collection<Long> subjectIds);
+
+    @Query("SELECT c.participant2Id AS watcherId, c.participant1Id AS subjectId FROM Conversation c " +
+            "WHERE c.participant1Id IN :subjectIds AND c.participant2Id IS NOT NULL")
+    List<PresenceLink> findConversationWatchersAsFirst(@Param("subjectIds") Collection<Long> subjectIds);
+
+    @Query("SELECT c.participant1Id AS watcherId, c.participant2Id AS subjectId FROM Conversation c " +
+            "WHERE c.participant2Id IN :subjectIds AND c.participant1Id IS NOT NULL")
+    List<PresenceLink> findConversationWatchersAsSecond(@Param("subjectIds") Collection<Long> subjectIds);
+
+    // Projection cho UserDirectory: chỉ các cột hiển thị, không load cả entity
+    interface DirectoryRow {
+        Long getId();
+        String getUsername();
+        String getFullName();
+        String getAvatarUrl();
+    }
+
+    @Query("SELECT u.id AS id, u.username AS username, u.fullName AS fullName, u.avatarUrl AS avatarUrl " +
+            "FROM User u WHERE u.id IN :ids")
+    List<DirectoryRow> findDirectoryRows(@Param("ids") Collection<Long> ids);
+
+    // Write-behind isOnline / lastSeen - bulk update, không qua entity listener
+    @Modifying
+    @Query("UPDATE User u SET u.isOnline = :online, u.lastSeen = :lastSeen WHERE u.id IN :ids")
+    int updatePresence(@Param("ids") Collection<Long> ids,
+                       @Param("online") Boolean online,
+                       @Param("lastSeen") LocalDateTime lastSeen);
+}
@@ -17,6 +17,8 @@ import java.util.Map;
 public class JwtTokenUtil {
 
     private final SecretKey key;
+    // Parser immutable + thread-safe, build một lần
+    private final JwtParser parser;
     private final long jwtExpiration;
     private final long refreshExpiration;
 
@@ -24,6 +26,7 @@ public class JwtTokenUtil {
                         @Value("${app.jwt.expiration}") long jwtExpiration,
                         @Value("${app.jwt.refresh-expiration}") long refreshExpiration) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
         this.jwtExpiration = jwtExpiration * 1000; // Convert to milliseconds
         this.refreshExpiration = refreshExpiration * 1000;
 
@@ -62,11 +65,7 @@ public class JwtTokenUtil {
 
     public String getUsernameFromToken(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = parser.parseClaimsJws(token).getBody();
 
             return claims.getSubject();
         } catch (Exception e) {
@@ -77,11 +76,7 @@ public class JwtTokenUtil {
 
     public Date getExpirationDateFromToken(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = parser.parseClaimsJws(token).getBody();
 
             return claims.getExpiration();
         } catch (Exception e) {
@@ -92,11 +87,7 @@ public class JwtTokenUtil {
 
     public String getTokenTypeFromToken(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            Claims claims = parser.parseClaimsJws(token).getBody();
 
             return (String) claims.get("type");
         } catch (Exception e) {
@@ -106,13 +97,15 @@ public class JwtTokenUtil {
     }
 
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
+        return parseToken(token) != null;
+    }
 
-            return true;
+    /**
+     * Verify chữ ký + hạn và trả claims trong một lần parse, null nếu token không hợp lệ
+     */
+    public Claims parseToken(String token) {
+        try {
+            return parser.parseClaimsJws(token).getBody();
         } catch (SecurityException e) {
             log.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -127,7 +120,7 @@ public class JwtTokenUtil {
             log.error("JWT token validation error: {}", e.getMessage());
         }
 
-        return false;
+        return null;
     }
 
     public boolean isTokenExpired(String token) {
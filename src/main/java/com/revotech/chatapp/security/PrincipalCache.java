@@ -0,0 +1,81 @@
+package com.revotech.chatapp.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache UserPrincipal theo username cho JWT filter và STOMP CONNECT, để xác thực không cần query DB.
+ *
+ * Entry hết hạn sau ttl-seconds; user bị disable / đổi roles thì evict qua UserPrincipalEvictionListener.
+ * Cache là local per node nên TTL cũng là giới hạn trễ giữa các node.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+    private final int maxSize;
+
+    public PrincipalCache(@Value("${app.security.principal-cache.ttl-seconds:60}") long ttlSeconds,
+                          @Value("${app.security.principal-cache.max-size:10000}") int maxSize,
+                          MeterRegistry meterRegistry) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxSize = maxSize;
+        Gauge.builder("chat.auth.principal.cache.size", entries, Map::size)
+                .register(meterRegistry);
+    }
+
+    public UserPrincipal get(String username) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(username, entry);
+            return null;
+        }
+        return entry.principal;
+    }
+
+    public void put(UserPrincipal principal) {
+        if (entries.size() >= maxSize) {
+            trim();
+        }
+        entries.put(principal.getUsername(), new Entry(principal, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void evict(String username) {
+        if (username != null && entries.remove(username) != null) {
+            log.debug("Evicted cached principal for {}", username);
+        }
+    }
+
+    public void evictAll() {
+        entries.clear();
+    }
+
+    // Bỏ entry hết hạn, nếu vẫn đầy thì bỏ bớt 10% (thứ tự bất kỳ)
+    private void trim() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt < now);
+
+        int toRemove = entries.size() - maxSize + Math.max(1, maxSize / 10);
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (toRemove-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private record Entry(UserPrincipal principal, long expiresAt) {
+    }
+}
@@ -1,11 +1,12 @@
 package com.revotech.chatapp.security;
 
 import com.revotech.chatapp.config.RateLimitingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -13,13 +14,21 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class RateLimitingFilter extends OncePerRequestFilter {
 
     private final RateLimitingConfig.RateLimitingService rateLimitingService;
+    private final Counter rejections;
     private static final int SC_TOO_MANY_REQUESTS = 429;
 
+    public RateLimitingFilter(RateLimitingConfig.RateLimitingService rateLimitingService, MeterRegistry meterRegistry) {
+        this.rateLimitingService = rateLimitingService;
+        // Không tag theo IP / URI để giữ cardinality cố định
+        this.rejections = Counter.builder("chat.ratelimit.rejections")
+                .description("Requests rejected with 429 by the rate limiter")
+                .register(meterRegistry);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
@@ -33,6 +42,7 @@ public class RateLimitingFilter extends OncePerRequestFilter {
         String rateLimitKey = clientIp + ":" + request.getRequestURI();
 
         if (!rateLimitingService.isAllowed(rateLimitKey)) {
+            rejections.increment();
             response.setStatus(SC_TOO_MANY_REQUESTS);
             response.setContentType("application/json");
             response.getWriter().write("{\"error\":\"Rate limit exceeded\",\"message\":\"Too many requests\"}");
@@ -0,0 +1,41 @@
+package com.revotech.chatapp.security;
+
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+/**
+ * JWT -> Authentication cho HTTP filter và STOMP CONNECT: parse token một lần,
+ * principal lấy từ PrincipalCache, chỉ xuống DB khi cache miss.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenAuthenticator {
+
+    private final JwtTokenUtil jwtTokenUtil;
+    private final UserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
+
+    /**
+     * @return authentication, hoặc null nếu token không hợp lệ
+     */
+    public UsernamePasswordAuthenticationToken authenticate(String token) {
+        Claims claims = jwtTokenUtil.parseToken(token);
+        if (claims == null || claims.getSubject() == null) {
+            return null;
+        }
+
+        String username = claims.getSubject();
+        UserPrincipal principal = principalCache.get(username);
+        if (principal == null) {
+            principal = (UserPrincipal) userDetailsService.loadUserByUsername(username);
+            principalCache.put(principal);
+        }
+
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+}
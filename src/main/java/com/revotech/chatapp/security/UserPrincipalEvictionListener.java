@@ -0,0 +1,63 @@
+package com.revotech.chatapp.security;
+
+import com.revotech.chatapp.model.entity.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * JPA listener trên User: evict principal đã cache khi user bị disable, đổi password hoặc đổi roles.
+ * Update chỉ chạm lastSeen / isOnline (rất thường xuyên) không làm mất cache.
+ */
+public class UserPrincipalEvictionListener {
+
+    // Hibernate tạo listener qua Spring bean container; ObjectProvider để slice test không có cache vẫn chạy
+    @Autowired
+    private ObjectProvider<PrincipalCache> principalCache;
+
+    @PostUpdate
+    public void onUpdate(User user) {
+        withCache(cache -> {
+            UserPrincipal cached = cache.get(user.getUsername());
+            if (cached != null && authChanged(cached, user)) {
+                cache.evict(user.getUsername());
+            }
+        });
+    }
+
+    @PostRemove
+    public void onRemove(User user) {
+        withCache(cache -> cache.evict(user.getUsername()));
+    }
+
+    private void withCache(Consumer<PrincipalCache> action) {
+        if (principalCache != null) {
+            principalCache.ifAvailable(action);
+        }
+    }
+
+    private static boolean authChanged(UserPrincipal cached, User user) {
+        if (cached.isEnabled() != Boolean.TRUE.equals(user.getEnabled()) ||
+                !Objects.equals(cached.getPassword(), user.getPassword())) {
+            return true;
+        }
+        // Roles chưa load thì không thể đổi trong transaction này
+        if (!Hibernate.isInitialized(user.getRoles())) {
+            return false;
+        }
+        Set<String> roles = user.getRoles().stream()
+                .map(role -> "ROLE_" + role.getName().name())
+                .collect(Collectors.toSet());
+        Set<String> cachedRoles = cached.getAuthorities().stream()
+                .map(Object::toString)
+                .collect(Collectors.toSet());
+        return !roles.equals(cachedRoles);
+    }
+}
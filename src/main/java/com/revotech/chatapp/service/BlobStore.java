@@ -0,0 +1,42 @@
+package com.revotech.chatapp.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Nơi lưu nội dung file, địa chỉ theo key phẳng (không chứa '/'): blob theo checksum, derivative
+ * "{checksum}_thumb.jpg", file upload trước khi có blob store theo tên UUID của nó.
+ * Backend chọn bằng app.storage.backend: local (thư mục sharded) hoặc s3 (S3-compatible).
+ */
+public interface BlobStore {
+
+    /**
+     * Đưa file tạm vào store. Local backend move (rename) source, backend khác upload rồi để lại source cho caller xoá
+     */
+    void put(String key, Path source) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    // null nếu key không tồn tại
+    BlobInfo stat(String key) throws IOException;
+
+    // Đọc đúng length byte từ start
+    InputStream open(String key, long start, long length) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * File thật trên đĩa (sendfile / ImageIO đọc trực tiếp) nếu backend lưu local, ngược lại null
+     */
+    Path localPath(String key);
+
+    record BlobInfo(long size, long lastModified) {
+    }
+
+    static void validateKey(String key) {
+        if (key == null || key.isEmpty() || key.contains("/") || key.contains("\\") || key.equals(".") || key.equals("..")) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+    }
+}
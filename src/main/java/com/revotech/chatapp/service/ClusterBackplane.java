@@ -0,0 +1,14 @@
+package com.revotech.chatapp.service;
+
+import com.revotech.chatapp.model.dto.ClusterEnvelope;
+
+import java.util.function.Consumer;
+
+/**
+ * Kênh fan-out giữa các node cho simple broker (app.websocket.broker.mode = redis | local)
+ */
+public interface ClusterBackplane {
+    void publish(ClusterEnvelope envelope);
+
+    void subscribe(Consumer<ClusterEnvelope> listener);
+}
@@ -1,8 +1,36 @@
 package com.revotech.chatapp.service;
 
+import com.revotech.chatapp.model.entity.Message;
+
+import java.util.Collection;
+import java.util.Map;
+
 public interface EncryptionService {
-    String encrypt(String plainText);
-    String decrypt(String encryptedText);
+
+    /**
+     * Chuyển content của message sang encryptedContent (content = null) khi encryption bật, gọi trước khi save.
+     * Tắt encryption thì content giữ nguyên và encryptedContent bị xoá. Message không có content mới thì bỏ qua.
+     */
+    void seal(Message message);
+
+    /**
+     * Plaintext content, decrypting if the message was stored encrypted. Null nếu không giải mã được.
+     */
+    String contentOf(Message message);
+
+    String contentOf(String messageId, String content, String encryptedContent);
+
+    /**
+     * Plaintext content của cả batch (page history + reply targets) theo message id
+     */
+    Map<Long, String> contentsOf(Collection<Message> messages);
+
+    /**
+     * Message chưa encrypt, hoặc encrypt bằng key không còn active
+     */
+    boolean needsReseal(Message message);
+
     String generateRandomKey();
+
     boolean isEncryptionEnabled();
-}
\ No newline at end of file
+}
@@ -1,12 +1,19 @@
 package com.revotech.chatapp.service;
 
+import com.revotech.chatapp.model.dto.FileDownload;
 import com.revotech.chatapp.model.dto.FileMessage;
-import org.springframework.core.io.Resource;
+import com.revotech.chatapp.model.enums.ImageVariant;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
 public interface FileService {
     FileMessage uploadFile(MultipartFile file, Long userId);
-    Resource downloadFile(String fileName);
+    FileMessage uploadStream(InputStream body, String fileName, Long userId);
+    // File đã ghép xong từ upload theo chunk; giới hạn kích thước là app.storage.chunked.max-file-size, kiểm tra lúc tạo session
+    FileMessage importFile(Path source, String fileName, Long userId);
+    FileDownload getDownload(String fileRef, Long userId);
+    FileDownload getDerivative(String fileRef, ImageVariant variant, Long userId);
     void deleteFile(String fileName, Long userId);
-    String generateThumbnail(String filePath, String fileName);
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.revotech.chatapp.service;
+
+import com.revotech.chatapp.model.dto.MessageSearchResult;
+import com.revotech.chatapp.model.entity.Message;
+
+import java.util.Collection;
+
+public interface MessageSearchService {
+    // Index / re-index một message (send, edit) - áp dụng sau khi transaction commit
+    void indexMessage(Message message);
+
+    // Xoá khỏi index (delete)
+    void removeMessage(Long messageId);
+
+    // Query hỗ trợ prefix (abc*) và phrase ("a b"), chỉ trả kết quả trong các room/conversation cho trước
+    MessageSearchResult search(String query, Collection<Long> roomIds, Collection<Long> conversationIds, int page, int size);
+
+    // Content đã giải mã của một kết quả, match bọc trong <mark> (HTML-escaped); index không lưu content
+    String highlight(String query, String content);
+
+    // Dựng lại toàn bộ index từ database (cold start)
+    long rebuildIndex();
+
+    boolean isIndexEmpty();
+
+    // Mở searcher mới để thấy các thay đổi gần đây
+    void refresh();
+
+    // Ghi index xuống đĩa
+    void commit();
+}
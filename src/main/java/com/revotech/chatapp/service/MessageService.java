@@ -5,8 +5,11 @@ import com.revotech.chatapp.model.dto.MessageReactionDTO;
 import com.revotech.chatapp.model.dto.request.AddReactionRequest;
 import com.revotech.chatapp.model.dto.request.MarkMessageReadRequest;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
+import com.revotech.chatapp.model.dto.response.MessageHistoryResponse;
+import com.revotech.chatapp.model.enums.HistoryDirection;
 import org.springframework.data.domain.Page;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +28,10 @@ public interface MessageService {
     // Room message history
     Page<ChatMessage> getRoomMessages(Long roomId, Long userId, int page, int size);
 
+    // Cursor-based history (keyset trên createdAt, id)
+    MessageHistoryResponse getRoomHistory(Long roomId, Long userId, String cursor, HistoryDirection direction, int limit);
+    MessageHistoryResponse getConversationHistory(Long conversationId, Long userId, String cursor, HistoryDirection direction, int limit);
+
     // Message status and reactions
     void markMessageAsRead(MarkMessageReadRequest request, Long userId);
     void trackMessageVisibility(String messageId, Long userId, String sessionId, boolean visible);
@@ -36,10 +43,13 @@ public interface MessageService {
     // Simplified message status tracking
     void autoMarkMessagesAsRead(Long roomId, Long conversationId, Long userId);
     Long getUnreadMessagesCount(Long roomId, Long conversationId, Long userId);
+    Long countUnreadInConversation(Long conversationId, Long userId);
+    // conversationId -> unread: một lần đọc counter store, các counter chưa có đếm bằng một query rồi lưu lại
+    Map<Long, Long> getUnreadConversationCounts(Collection<Long> conversationIds, Long userId);
+    void markRoomAsRead(Long roomId, String messageId, Long userId);
 
     // Real-time features
     void broadcastMessage(ChatMessage message);
-    void notifyTyping(Long roomId, Long conversationId, Long userId, String username, boolean isTyping);
 
     // Message search and filtering
     Page<ChatMessage> searchMessages(String keyword, Long userId, int page, int size);
@@ -0,0 +1,12 @@
+package com.revotech.chatapp.service;
+
+public interface PresenceService {
+    // User vừa có session đầu tiên (sau khi UserSessionService đã gộp nhiều tab / node)
+    void markOnline(Long userId);
+
+    // User không còn session nào - chỉ được công bố sau offline grace, reconnect trong grace thì huỷ
+    void markOffline(Long userId);
+
+    // Gửi diff đã ổn định cho các user liên quan và ghi isOnline / lastSeen theo batch
+    int flushChanges();
+}
@@ -0,0 +1,25 @@
+package com.revotech.chatapp.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface ReadCursorService {
+    // Ghi nhận user đã đọc tới messageId (messages.id) trong room - chỉ tiến, ghi DB theo batch
+    void advance(Long roomId, Long userId, Long messageId);
+
+    // Đánh dấu đọc hết room (cursor = message mới nhất)
+    void advanceToLatest(Long roomId, Long userId);
+
+    Long getLastReadMessageId(Long roomId, Long userId);
+    // Đọc từ unread counter, miss thì tính từ DB rồi lưu lại
+    Long getUnreadCount(Long roomId, Long userId);
+
+    // Unread của nhiều room: một lần đọc counter của user, room chưa có counter đếm chung một query
+    Map<Long, Long> getUnreadRoomCounts(Collection<Long> roomIds, Long userId);
+
+    // Luôn đếm từ DB (reconcile)
+    Long countUnread(Long roomId, Long userId);
+
+    // Ghi các cursor đang chờ xuống room_members
+    int flushPendingCursors();
+}
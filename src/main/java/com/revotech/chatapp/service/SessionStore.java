@@ -0,0 +1,37 @@
+package com.revotech.chatapp.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Session WebSocket theo user, dùng chung giữa các node khi có Redis.
+ * Mỗi thao tác ghi là một round trip và atomic: hai node cùng đóng session cuối của một user
+ * thì chỉ một node thấy user chuyển sang offline.
+ */
+public interface SessionStore {
+
+    // true nếu đây là session đầu tiên của user (user vừa online)
+    boolean addSession(Long userId, String sessionId, Duration ttl);
+
+    // true nếu user không còn session nào (user vừa offline)
+    boolean removeSession(Long userId, String sessionId);
+
+    // true nếu user đang online trước khi xoá
+    boolean removeAllSessions(Long userId);
+
+    Set<String> getSessions(Long userId);
+    boolean isOnline(Long userId);
+
+    // Những id đang online trong danh sách - cho list view (member, contact, user list)
+    Set<Long> filterOnline(Collection<Long> userIds);
+
+    long onlineCount();
+    Set<Long> onlineUserIds();
+
+    // User còn trong online set nhưng session set đã hết hạn (node chết không kịp disconnect)
+    Set<Long> removeOrphans();
+
+    // Trạng thái presence đã công bố, chung cho mọi node; true nếu khác trạng thái đã công bố trước đó
+    boolean announce(Long userId, boolean online);
+}
@@ -0,0 +1,9 @@
+package com.revotech.chatapp.service;
+
+public interface TypingService {
+    // START / STOP từ client - chỉ cập nhật trạng thái, không broadcast ngay
+    void updateTyping(Long roomId, Long conversationId, Long userId, String username, boolean isTyping);
+
+    // Gửi tối đa một snapshot "ai đang nhập" cho mỗi chat đã thay đổi, bỏ entry hết hạn
+    int publishSnapshots();
+}
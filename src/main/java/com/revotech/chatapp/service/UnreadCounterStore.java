@@ -0,0 +1,48 @@
+package com.revotech.chatapp.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Unread counter đã materialize theo (userId, chatKey), chatKey dạng "room:{id}" / "conversation:{id}".
+ * Counter chưa có (null) nghĩa là chưa biết - caller tự tính từ DB rồi set lại.
+ */
+public interface UnreadCounterStore {
+    Long get(Long userId, String chatKey);
+    Map<String, Long> getAll(Long userId);
+    void set(Long userId, String chatKey, long value);
+
+    // Chỉ tăng counter đã có, counter chưa biết giữ nguyên để lần đọc sau tính lại từ DB
+    void incrementIfPresent(Collection<Long> userIds, String chatKey);
+
+    /**
+     * incrementIfPresent sau khi transaction gửi message commit: rollback không làm lệch counter, và lần đếm lại
+     * từ DB (counter miss) không bị cộng trước một message chưa nhìn thấy được
+     */
+    default void incrementAfterCommit(Collection<Long> userIds, String chatKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            incrementIfPresent(userIds, chatKey);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                incrementIfPresent(userIds, chatKey);
+            }
+        });
+    }
+    void decrement(Long userId, String chatKey, long delta);
+    void invalidate(Long userId, String chatKey);
+
+    static String roomKey(Long roomId) {
+        return "room:" + roomId;
+    }
+
+    static String conversationKey(Long conversationId) {
+        return "conversation:" + conversationId;
+    }
+}
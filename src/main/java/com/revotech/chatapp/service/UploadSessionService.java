@@ -0,0 +1,22 @@
+package com.revotech.chatapp.service;
+
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.UploadSessionStatus;
+import com.revotech.chatapp.model.dto.request.CreateUploadRequest;
+
+import java.io.InputStream;
+
+/**
+ * Upload resumable theo chunk: tạo session -> PUT từng chunk tại offset (song song, thứ tự bất kỳ, gửi lại được)
+ * -> hỏi offset đã ghi khi mất kết nối -> complete đưa file vào blob store như upload thường.
+ */
+public interface UploadSessionService {
+    UploadSessionStatus create(CreateUploadRequest request, Long userId);
+    UploadSessionStatus writeChunk(String uploadId, long offset, InputStream body, Long userId);
+    UploadSessionStatus getStatus(String uploadId, Long userId);
+    FileMessage complete(String uploadId, Long userId);
+    void cancel(String uploadId, Long userId);
+
+    // Xoá session không nhận chunk nào trong session-ttl, trả về số session đã xoá
+    int expireAbandoned();
+}
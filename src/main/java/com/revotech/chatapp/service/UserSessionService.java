@@ -1,5 +1,6 @@
 package com.revotech.chatapp.service;
 
+import java.util.Collection;
 import java.util.Set;
 
 public interface UserSessionService {
@@ -11,4 +12,7 @@ public interface UserSessionService {
     void removeAllUserSessions(Long userId);
     Long getOnlineUserCount();
     Set<Long> getOnlineUserIds();
+
+    // Một round trip cho cả trang: list view không đọc User.isOnline (ghi write-behind) mà hỏi trạng thái thật
+    Set<Long> filterOnline(Collection<Long> userIds);
 }
\ No newline at end of file
@@ -10,7 +10,9 @@ import com.revotech.chatapp.model.enums.RoleName;
 import com.revotech.chatapp.repository.RoleRepository;
 import com.revotech.chatapp.repository.UserRepository;
 import com.revotech.chatapp.security.JwtTokenUtil;
+import com.revotech.chatapp.security.PrincipalCache;
 import com.revotech.chatapp.service.AuthService;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -34,6 +36,7 @@ public class AuthServiceImpl implements AuthService {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtTokenUtil jwtTokenUtil;
+    private final PrincipalCache principalCache;
 
     @Override
     public JwtAuthResponse signUp(SignUpRequest signUpRequest) {
@@ -118,11 +121,12 @@ public class AuthServiceImpl implements AuthService {
 
     @Override
     public JwtAuthResponse refreshToken(String refreshToken) {
-        if (!jwtTokenUtil.validateToken(refreshToken)) {
+        Claims claims = jwtTokenUtil.parseToken(refreshToken);
+        if (claims == null) {
             throw new AppException("Invalid refresh token");
         }
 
-        String username = jwtTokenUtil.getUsernameFromToken(refreshToken);
+        String username = claims.getSubject();
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new AppException("User not found"));
 
@@ -169,6 +173,7 @@ public class AuthServiceImpl implements AuthService {
         user.setIsOnline(false);
         user.setLastSeen(LocalDateTime.now());
         userRepository.save(user);
+        principalCache.evict(user.getUsername());
 
         // Invalidate all tokens for this user (implement token store if needed)
         // jwtTokenUtil.blacklistAllUserTokens(userId);
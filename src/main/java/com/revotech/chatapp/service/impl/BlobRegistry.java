@@ -0,0 +1,213 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.StoredBlob;
+import com.revotech.chatapp.repository.StoredBlobRepository;
+import com.revotech.chatapp.service.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Content-addressed blob: mỗi nội dung (SHA-256) chỉ lưu một lần trong BlobStore dưới key = checksum,
+ * attachment trỏ tới blob và giữ một reference.
+ *
+ * Nội dung được đưa vào store (stage) trước, ngoài transaction: key là checksum nên hai upload song song cùng
+ * nội dung có ghi đè nhau cũng ra cùng một object. acquire / release chạy trong transaction ngắn của upload /
+ * delete và khoá row StoredBlob chỉ để đếm reference, không upload dưới lock.
+ *
+ * Reference cuối không xoá row ngay mà để lại tombstone (refCount = 0). Sau khi transaction delete commit, một
+ * transaction mới khoá lại row: còn 0 thì xoá nội dung rồi mới xoá row, nếu acquire đã lấy lại blob thì giữ nguyên.
+ * Upload cùng nội dung chạy xen vào vì vậy hoặc dùng lại blob, hoặc chờ row lock và ghi lại sau khi nội dung bị xoá,
+ * không bao giờ bị lần xoá muộn xoá mất. Tombstone còn sót (process dừng trước khi kịp xoá) được acquire sau dùng lại.
+ */
+@Component
+@Slf4j
+public class BlobRegistry {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final StoredBlobRepository storedBlobRepository;
+    private final BlobStore blobStore;
+    private final TransactionTemplate newTransaction;
+    private final Counter storedCounter;
+    private final Counter deduplicatedCounter;
+
+    public BlobRegistry(StoredBlobRepository storedBlobRepository,
+                        BlobStore blobStore,
+                        PlatformTransactionManager transactionManager,
+                        MeterRegistry meterRegistry) {
+        this.storedBlobRepository = storedBlobRepository;
+        this.blobStore = blobStore;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.storedCounter = Counter.builder("chat.file.blobs").tag("result", "stored")
+                .description("Uploads by whether their content was already stored").register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("chat.file.blobs").tag("result", "deduplicated")
+                .description("Uploads by whether their content was already stored").register(meterRegistry);
+    }
+
+    public record Acquired(String storageKey, boolean deduplicated) {
+    }
+
+    // uploaded: stage đã ghi incoming vào store dưới key = checksum
+    public record Staged(String checksum, Path incoming, long size, boolean uploaded) {
+    }
+
+    /**
+     * Gọi ngoài transaction. Nếu store chưa có nội dung, incoming được đưa vào store (local: rename, không copy;
+     * S3: upload); nếu đã có thì incoming bị bỏ lại cho caller xoá.
+     */
+    public Staged stage(String checksum, Path incoming, long size) throws IOException {
+        String existingKey = storedBlobRepository.findByChecksum(checksum)
+                .map(StoredBlob::getStorageKey)
+                .orElse(null);
+        if (existingKey != null && blobStore.exists(existingKey)) {
+            return new Staged(checksum, incoming, size, false);
+        }
+
+        blobStore.put(checksum, incoming);
+        return new Staged(checksum, incoming, size, true);
+    }
+
+    /**
+     * Thêm một reference tới blob đã stage, trong transaction của caller.
+     */
+    public Acquired acquire(Staged staged) throws IOException {
+        String checksum = staged.checksum();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            ensureRow(checksum);
+
+            // Row có thể vừa bị release reference cuối xoá giữa hai bước: tạo lại
+            Optional<StoredBlob> locked = storedBlobRepository.findByChecksumForUpdate(checksum);
+            if (locked.isEmpty()) {
+                continue;
+            }
+
+            StoredBlob blob = locked.get();
+            boolean stored = staged.uploaded();
+            if (!stored && blob.getStorageKey() == null) {
+                // Reference cuối bị release giữa stage và lúc khoá row (hiếm): nội dung đã bị xoá, ghi lại dưới lock
+                log.debug("Blob {} was released while staging, storing it again", checksum);
+                blobStore.put(checksum, staged.incoming());
+                stored = true;
+            }
+            if (stored) {
+                blob.setStorageKey(checksum);
+                blob.setSize(staged.size());
+            }
+            blob.setRefCount(blob.getRefCount() + 1);
+            storedBlobRepository.save(blob);
+
+            (stored ? storedCounter : deduplicatedCounter).increment();
+            return new Acquired(blob.getStorageKey(), !stored);
+        }
+        throw new IOException("Could not register blob " + checksum);
+    }
+
+    /**
+     * Bỏ một reference. Trả về false nếu checksum không có blob (file upload trước khi có dedup, caller tự xoá).
+     * Reference cuối: row thành tombstone, sau commit xoá blob cùng các key phụ thuộc (thumbnail, preview) nếu
+     * chưa có ai acquire lại.
+     */
+    public boolean release(String checksum, Collection<String> dependentKeys) {
+        Optional<StoredBlob> locked = storedBlobRepository.findByChecksumForUpdate(checksum);
+        if (locked.isEmpty()) {
+            return false;
+        }
+
+        StoredBlob blob = locked.get();
+        if (blob.getRefCount() > 1) {
+            blob.setRefCount(blob.getRefCount() - 1);
+            storedBlobRepository.save(blob);
+            return true;
+        }
+
+        blob.setRefCount(0L);
+        storedBlobRepository.save(blob);
+        List<String> keys = List.copyOf(dependentKeys);
+        afterCommit(() -> purge(checksum, keys));
+        return true;
+    }
+
+    private void purge(String checksum, List<String> dependentKeys) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                StoredBlob blob = storedBlobRepository.findByChecksumForUpdate(checksum).orElse(null);
+                if (blob == null || blob.getRefCount() > 0) {
+                    // acquire song song đã lấy lại blob (hoặc đã bị xoá): nội dung đang được dùng
+                    return;
+                }
+
+                List<String> keys = new ArrayList<>(dependentKeys);
+                if (blob.getStorageKey() != null) {
+                    keys.add(blob.getStorageKey());
+                }
+                // Xoá nội dung dưới row lock, row chỉ biến mất khi nội dung đã bị xoá
+                delete(keys);
+                storedBlobRepository.delete(blob);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to purge blob {}: {}", checksum, e.getMessage());
+        }
+    }
+
+    /**
+     * Xoá các key khỏi store sau khi transaction hiện tại commit (ngay lập tức nếu không có transaction)
+     */
+    public void deleteAfterCommit(List<String> keys) {
+        afterCommit(() -> delete(keys));
+    }
+
+    private void delete(List<String> keys) {
+        for (String key : keys) {
+            try {
+                blobStore.delete(key);
+            } catch (IOException e) {
+                log.warn("Failed to delete blob {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void ensureRow(String checksum) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!storedBlobRepository.existsByChecksum(checksum)) {
+                    storedBlobRepository.saveAndFlush(StoredBlob.builder()
+                            .checksum(checksum)
+                            .refCount(0L)
+                            .build());
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Upload song song cùng nội dung đã tạo row trước
+            log.debug("Blob {} registered concurrently", checksum);
+        }
+    }
+}
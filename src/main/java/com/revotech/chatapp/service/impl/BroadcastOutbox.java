@@ -0,0 +1,81 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.impl.OrderedBroadcastDispatcher.OutboxEntry;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transactional outbox cho broadcast: trong transaction, frame chỉ được ghi vào buffer của transaction,
+ * sau commit mới được đưa sang {@link OrderedBroadcastDispatcher}; rollback thì bỏ.
+ *
+ * Connection DB không phải giữ trong lúc serialize + fan-out, và client không bao giờ nhận
+ * một tin nhắn mà sau đó bị rollback. Ngoài transaction thì dispatch ngay.
+ */
+@Component
+@Slf4j
+public class BroadcastOutbox {
+
+    private final OrderedBroadcastDispatcher dispatcher;
+    private final WebSocketSafeBroadcast safeBroadcast;
+    private final Counter discardedCounter;
+
+    public BroadcastOutbox(OrderedBroadcastDispatcher dispatcher, WebSocketSafeBroadcast safeBroadcast,
+                           MeterRegistry meterRegistry) {
+        this.dispatcher = dispatcher;
+        this.safeBroadcast = safeBroadcast;
+        this.discardedCounter = Counter.builder("chat.broadcast.outbox.discarded")
+                .description("Broadcasts dropped because their transaction rolled back")
+                .register(meterRegistry);
+    }
+
+    public void append(String destination, Object payload) {
+        append(destination, () -> safeBroadcast.safeSendPreEncoded(destination, payload));
+    }
+
+    /**
+     * Delivery chạy trên lane của destination, sau khi transaction hiện tại commit
+     */
+    public void append(String destination, Runnable delivery) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatcher.dispatch(destination, delivery);
+            return;
+        }
+
+        pendingEntries().add(new OutboxEntry(destination, delivery));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OutboxEntry> pendingEntries() {
+        List<OutboxEntry> entries = (List<OutboxEntry>) TransactionSynchronizationManager.getResource(this);
+        if (entries != null) {
+            return entries;
+        }
+
+        List<OutboxEntry> created = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatcher.dispatchAll(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(BroadcastOutbox.this);
+                if (status != STATUS_COMMITTED && !created.isEmpty()) {
+                    discardedCounter.increment(created.size());
+                    log.debug("Discarded {} broadcasts of a rolled back transaction", created.size());
+                }
+            }
+        });
+        return created;
+    }
+}
@@ -3,38 +3,35 @@ package com.revotech.chatapp.service.impl;
 import com.revotech.chatapp.exception.AppException;
 import com.revotech.chatapp.model.dto.ChatMessage;
 import com.revotech.chatapp.model.dto.ConversationDTO;
-import com.revotech.chatapp.model.dto.MessageReactionDTO;
 import com.revotech.chatapp.model.dto.UserSummaryDTO;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
 import com.revotech.chatapp.model.dto.request.StartConversationRequest;
 import com.revotech.chatapp.model.dto.response.ConversationListResponse;
 import com.revotech.chatapp.model.entity.Conversation;
 import com.revotech.chatapp.model.entity.Message;
-import com.revotech.chatapp.model.entity.MessageReaction; // THÊM IMPORT NÀY
 import com.revotech.chatapp.model.entity.User;
 import com.revotech.chatapp.model.enums.ConversationType;
 import com.revotech.chatapp.model.enums.MessageType;
-import com.revotech.chatapp.model.enums.ReactionType; // THÊM IMPORT NÀY
 import com.revotech.chatapp.repository.ConversationRepository;
 import com.revotech.chatapp.repository.MessageRepository;
 import com.revotech.chatapp.repository.UserRepository;
-import com.revotech.chatapp.security.UserPrincipal;
 import com.revotech.chatapp.service.ConversationService;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.service.MessageSearchService;
 import com.revotech.chatapp.service.MessageService;
+import com.revotech.chatapp.service.UnreadCounterStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -49,6 +46,12 @@ public class ConversationServiceImpl implements ConversationService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final MessageService messageService;
+    private final UnreadCounterStore unreadCounterStore;
+    private final MessageSearchService messageSearchService;
+    private final MessageAssembler messageAssembler;
+    private final MessageSendMetrics sendMetrics;
+    private final UserDirectory userDirectory;
+    private final EncryptionService encryptionService;
 
     @Override
     public ConversationDTO startDirectConversation(StartConversationRequest request, Long userId) {
@@ -117,15 +120,15 @@ public class ConversationServiceImpl implements ConversationService {
         Page<Conversation> conversationPage = conversationRepository
                 .findUserConversations(userId, ConversationType.DIRECT, pageable);
 
+        // Total trên mọi conversation, không chỉ page hiện tại: một lần đọc toàn bộ counter của user
+        Map<Long, Long> unreadCounts = messageService.getUnreadConversationCounts(
+                conversationRepository.findUserConversationIds(userId, ConversationType.DIRECT), userId);
+        Long totalUnreadCount = unreadCounts.values().stream().mapToLong(Long::longValue).sum();
+
         List<ConversationDTO> conversations = conversationPage.getContent().stream()
-                .map(conv -> convertToDTO(conv, userId))
+                .map(conv -> convertToDTO(conv, userId, unreadCounts.get(conv.getId())))
                 .collect(Collectors.toList());
 
-        // Calculate total unread count
-        Long totalUnreadCount = conversations.stream()
-                .mapToLong(ConversationDTO::getUnreadCount)
-                .sum();
-
         return ConversationListResponse.builder()
                 .conversations(conversations)
                 .totalUnreadCount(totalUnreadCount)
@@ -159,11 +162,10 @@ public class ConversationServiceImpl implements ConversationService {
             throw new AppException("You don't have access to this conversation");
         }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
+        // Thứ tự đã nằm trong query (createdAt DESC, id DESC)
+        Pageable pageable = PageRequest.of(page, size);
 
-        // TEMPORARY FIX: Sử dụng query cũ trước, sẽ fix sau
-        return messageRepository.findByConversationIdAndIsDeletedFalse(conversationId, pageable)
-                .map(this::convertMessageToDTO);
+        return messageAssembler.assemblePage(messageRepository.findIdsByConversationId(conversationId, pageable));
     }
 
     @Override
@@ -200,14 +202,27 @@ public class ConversationServiceImpl implements ConversationService {
                 log.warn("Reply target message not found for replyToId: {}", request.getReplyToId());
             }
         }
+        encryptionService.seal(message);
 
-        message = messageRepository.save(message);
+        Message unsaved = message;
+        message = sendMetrics.save(MessageSendMetrics.CONVERSATION, () -> {
+            Message saved = messageRepository.save(unsaved);
 
-        // Update conversation last message time
-        conversation.setLastMessageAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
+            // Update conversation last message time
+            conversation.setLastMessageAt(LocalDateTime.now());
+            conversationRepository.save(conversation);
+            return saved;
+        });
+        messageSearchService.indexMessage(message);
 
-        ChatMessage chatMessage = convertMessageToDTO(message);
+        Long recipientId = senderId.equals(conversation.getParticipant1Id())
+                ? conversation.getParticipant2Id()
+                : conversation.getParticipant1Id();
+        unreadCounterStore.incrementAfterCommit(List.of(recipientId),
+                UnreadCounterStore.conversationKey(conversation.getId()));
+
+        Message saved = message;
+        ChatMessage chatMessage = sendMetrics.assemble(MessageSendMetrics.CONVERSATION, () -> messageAssembler.assemble(saved));
 
         // Broadcast message via WebSocket
         messageService.broadcastMessage(chatMessage);
@@ -265,9 +280,8 @@ public class ConversationServiceImpl implements ConversationService {
     @Override
     @Transactional(readOnly = true)
     public Long getUnreadMessagesCount(Long conversationId, Long userId) {
-        // Implementation would count unread messages for the user
-        // This is a placeholder - implement based on MessageDelivery logic
-        return 0L;
+        // Materialized counter, miss thì MessageService đếm từ DB rồi lưu lại
+        return messageService.getUnreadMessagesCount(null, conversationId, userId);
     }
 
     @Override
@@ -290,24 +304,30 @@ public class ConversationServiceImpl implements ConversationService {
     }
 
     private ConversationDTO convertToDTO(Conversation conversation, Long currentUserId) {
+        return convertToDTO(conversation, currentUserId, null);
+    }
+
+    private ConversationDTO convertToDTO(Conversation conversation, Long currentUserId, Long knownUnreadCount) {
         // Get the other participant
         Long otherParticipantId = currentUserId.equals(conversation.getParticipant1Id())
                 ? conversation.getParticipant2Id()
                 : conversation.getParticipant1Id();
 
-        User otherParticipant = userRepository.findById(otherParticipantId)
-                .orElseThrow(() -> new AppException("Participant not found"));
-
-        UserSummaryDTO participantDTO = convertToUserSummary(otherParticipant);
+        UserSummaryDTO participantDTO = userDirectory.summary(otherParticipantId);
+        if (participantDTO == null) {
+            throw new AppException("Participant not found");
+        }
 
         // Get last message
         ChatMessage lastMessage = messageRepository
                 .findTopByConversationIdOrderByCreatedAtDesc(conversation.getId())
-                .map(this::convertMessageToDTO)
+                .map(messageAssembler::assemble)
                 .orElse(null);
 
-        // Get unread count (placeholder - implement based on your logic)
-        Long unreadCount = getUnreadMessagesCount(conversation.getId(), currentUserId);
+        // Get unread count
+        Long unreadCount = knownUnreadCount != null
+                ? knownUnreadCount
+                : getUnreadMessagesCount(conversation.getId(), currentUserId);
 
         return ConversationDTO.builder()
                 .id(conversation.getId())
@@ -322,126 +342,4 @@ public class ConversationServiceImpl implements ConversationService {
                 .lastMessageAt(conversation.getLastMessageAt())
                 .build();
     }
-
-    private ChatMessage convertMessageToDTO(Message message) {
-        List<MessageReactionDTO> reactions = getMessageReactions(message);
-
-        // Xử lý reply message trước
-        ChatMessage replyToMessage = null;
-        String replyToSenderName = null;
-
-        if (message.getReplyTo() != null) {
-            Message replyMsg = message.getReplyTo();
-            replyToMessage = ChatMessage.builder()
-                    .id(replyMsg.getMessageId()) // Sử dụng messageId cho frontend
-                    .content(replyMsg.getContent())
-                    .senderName(replyMsg.getSender().getFullName())
-                    .senderUsername(replyMsg.getSender().getUsername())
-                    .timestamp(replyMsg.getCreatedAt())
-                    .build();
-
-            replyToSenderName = replyMsg.getSender().getFullName();
-        }
-
-        // Get pinned by user info if message is pinned
-        String pinnedByUsername = null;
-        if (message.getIsPinned() && message.getPinnedBy() != null) {
-            User pinnedByUser = userRepository.findById(message.getPinnedBy()).orElse(null);
-            if (pinnedByUser != null) {
-                pinnedByUsername = pinnedByUser.getUsername();
-            }
-        }
-
-        // Tạo ChatMessage object với đầy đủ thông tin
-        ChatMessage chatMessage = ChatMessage.builder()
-                .id(message.getMessageId())
-                .content(message.getContent())
-                .senderId(message.getSender().getId())
-                .senderName(message.getSender().getFullName())
-                .senderUsername(message.getSender().getUsername())
-                .senderAvatar(message.getSender().getAvatarUrl())
-                .type(message.getType())
-                .status(message.getStatus())
-                .timestamp(message.getCreatedAt())
-                .roomId(message.getRoom() != null ? message.getRoom().getId() : null)
-                .conversationId(message.getConversation() != null ? message.getConversation().getId() : null)
-                .replyToId(message.getReplyTo() != null ? message.getReplyTo().getMessageId() : null) // Frontend nhận UUID
-                .replyToMessage(replyToMessage)
-                .replyToSenderName(replyToSenderName)
-                .isEdited(message.getIsEdited())
-                .editedAt(message.getEditedAt())
-                .isPinned(message.getIsPinned())
-                .pinnedAt(message.getPinnedAt())
-                .pinnedByUsername(pinnedByUsername)
-                .build();
-
-        // Set reactions
-        chatMessage.setReactions(reactions);
-
-        return chatMessage;
-    }
-
-    private List<MessageReactionDTO> getMessageReactions(Message message) {
-        if (message.getReactions() == null || message.getReactions().isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        return message.getReactions().stream()
-                .collect(Collectors.groupingBy(MessageReaction::getType))
-                .entrySet().stream()
-                .map(entry -> {
-                    ReactionType reactionType = entry.getKey(); // FIX: Explicitly cast
-                    List<MessageReaction> reactionList = entry.getValue();
-
-                    List<UserSummaryDTO> users = reactionList.stream()
-                            .map(reaction -> convertToUserSummary(reaction.getUser()))
-                            .collect(Collectors.toList());
-
-                    // Check if current user reacted with this type
-                    boolean currentUserReacted = false;
-                    Long currentUserId = getCurrentUserId();
-                    if (currentUserId != null) {
-                        currentUserReacted = reactionList.stream()
-                                .anyMatch(reaction -> reaction.getUser().getId().equals(currentUserId));
-                    }
-
-                    return MessageReactionDTO.builder()
-                            .type(reactionType) // FIX: Use explicit variable
-                            .emoji(reactionType.getEmoji()) // FIX: Use explicit variable
-                            .count((long) reactionList.size())
-                            .users(users)
-                            .currentUserReacted(currentUserReacted)
-                            .lastReactionAt(reactionList.stream()
-                                    .map(MessageReaction::getCreatedAt)
-                                    .max(LocalDateTime::compareTo)
-                                    .orElse(null))
-                            .build();
-                })
-                .collect(Collectors.toList());
-    }
-
-    private Long getCurrentUserId() {
-        try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
-                return ((UserPrincipal) authentication.getPrincipal()).getId();
-            }
-        } catch (Exception e) {
-            // Ignore
-        }
-        return null;
-    }
-
-    // THÊM METHOD NÀY
-    private UserSummaryDTO convertToUserSummary(User user) {
-        return UserSummaryDTO.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .fullName(user.getFullName())
-                .avatarUrl(user.getAvatarUrl())
-                .isOnline(user.getIsOnline())
-                .lastSeen(user.getLastSeen())
-                .bio(user.getBio())
-                .build();
-    }
 }
\ No newline at end of file
@@ -1,57 +1,102 @@
 package com.revotech.chatapp.service.impl;
 
-import com.revotech.chatapp.config.EncryptionConfig;
+import com.revotech.chatapp.exception.EncryptionException;
+import com.revotech.chatapp.model.entity.Message;
 import com.revotech.chatapp.service.EncryptionService;
-import lombok.RequiredArgsConstructor;
+import com.revotech.chatapp.util.AesGcmCipher;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encryption at rest cho nội dung message: AES-GCM với nonce riêng cho mỗi message, messageId làm
+ * associated data. Search index (Lucene) chỉ index content, không lưu lại bản plaintext.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class EncryptionServiceImpl implements EncryptionService {
 
-    private final EncryptionConfig.EncryptionService encryptionConfigService;
+    private final AesGcmCipher cipher;
+    private final boolean encryptionEnabled;
 
-    @Value("${app.encryption.enabled:false}")
-    private boolean encryptionEnabled;
+    public EncryptionServiceImpl(AesGcmCipher cipher,
+                                 @Value("${app.encryption.enabled:false}") boolean encryptionEnabled) {
+        this.cipher = cipher;
+        this.encryptionEnabled = encryptionEnabled;
+    }
 
     @Override
-    public String encrypt(String plainText) {
-        if (!encryptionEnabled || plainText == null) {
-            return plainText;
+    public void seal(Message message) {
+        if (message.getContent() == null) {
+            return;
+        }
+        if (!encryptionEnabled) {
+            message.setEncryptedContent(null);
+            return;
+        }
+
+        message.setEncryptedContent(cipher.encrypt(message.getContent(), message.getMessageId()));
+        message.setContent(null);
+    }
+
+    @Override
+    public String contentOf(Message message) {
+        return contentOf(message.getMessageId(), message.getContent(), message.getEncryptedContent());
+    }
+
+    @Override
+    public String contentOf(String messageId, String content, String encryptedContent) {
+        if (encryptedContent == null) {
+            return content;
         }
 
         try {
-            return encryptionConfigService.encrypt(plainText);
-        } catch (Exception e) {
-            log.error("Failed to encrypt message", e);
-            return plainText; // Fallback to plain text
+            return cipher.decrypt(encryptedContent, messageId);
+        } catch (EncryptionException e) {
+            // Một row hỏng / thiếu key không làm hỏng cả page
+            log.error("Failed to decrypt message {}: {}", messageId, e.getMessage());
+            return null;
         }
     }
 
     @Override
-    public String decrypt(String encryptedText) {
-        if (!encryptionEnabled || encryptedText == null) {
-            return encryptedText;
+    public Map<Long, String> contentsOf(Collection<Message> messages) {
+        Map<Long, String> contents = new HashMap<>(messages.size() * 2);
+        for (Message message : messages) {
+            // Reply target cũng nằm trong page thì chỉ giải mã một lần
+            if (!contents.containsKey(message.getId())) {
+                contents.put(message.getId(), contentOf(message));
+            }
         }
+        return contents;
+    }
 
+    @Override
+    public boolean needsReseal(Message message) {
+        if (message.getEncryptedContent() == null) {
+            return encryptionEnabled && message.getContent() != null;
+        }
+        if (!encryptionEnabled) {
+            return true;
+        }
         try {
-            return encryptionConfigService.decrypt(encryptedText);
-        } catch (Exception e) {
-            log.error("Failed to decrypt message", e);
-            return encryptedText; // Fallback to encrypted text
+            return !cipher.activeKeyId().equals(cipher.keyIdOf(message.getEncryptedContent()));
+        } catch (EncryptionException e) {
+            return false;
         }
     }
 
     @Override
     public String generateRandomKey() {
-        return encryptionConfigService.generateRandomKey();
+        return AesGcmCipher.generateKey();
     }
 
     @Override
     public boolean isEncryptionEnabled() {
         return encryptionEnabled;
     }
-}
\ No newline at end of file
+}
@@ -1,31 +1,47 @@
 package com.revotech.chatapp.service.impl;
 
 import com.revotech.chatapp.exception.AppException;
+import com.revotech.chatapp.model.dto.FileDownload;
 import com.revotech.chatapp.model.dto.FileMessage;
 import com.revotech.chatapp.model.entity.FileAttachment;
 import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.DerivativeStatus;
 import com.revotech.chatapp.model.enums.FileType;
+import com.revotech.chatapp.model.enums.ImageVariant;
 import com.revotech.chatapp.repository.FileAttachmentRepository;
 import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.service.BlobStore;
 import com.revotech.chatapp.service.FileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tika.Tika;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -35,6 +51,12 @@ public class FileServiceImpl implements FileService {
 
     private final FileAttachmentRepository fileAttachmentRepository;
     private final UserRepository userRepository;
+    private final MediaDerivativePipeline mediaDerivativePipeline;
+    private final BlobRegistry blobRegistry;
+    private final BlobStore blobStore;
+    private final PlatformTransactionManager transactionManager;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
 
     @Value("${app.storage.upload-dir}")
     private String uploadDir;
@@ -47,78 +69,195 @@ public class FileServiceImpl implements FileService {
 
     private final Tika tika = new Tika();
 
+    // Upload không giữ transaction / connection trong lúc đọc body: chỉ bước đăng ký blob + attachment chạy trong transaction
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public FileMessage uploadFile(MultipartFile file, Long userId) {
-        validateFile(file);
+        if (file.isEmpty()) {
+            throw new AppException("File is empty");
+        }
+        if (file.getSize() > maxFileSize) {
+            throw new AppException("File size exceeds maximum allowed size");
+        }
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new AppException("User not found"));
+        try (InputStream in = file.getInputStream()) {
+            return ingest(in, file.getOriginalFilename(), userId);
+        } catch (IOException e) {
+            log.error("Failed to upload file", e);
+            throw new AppException("Failed to upload file: " + e.getMessage());
+        }
+    }
 
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FileMessage uploadStream(InputStream body, String fileName, Long userId) {
         try {
-            // Create upload directory if it doesn't exist
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
+            return ingest(body, fileName, userId);
+        } catch (IOException e) {
+            log.error("Failed to upload file", e);
+            throw new AppException("Failed to upload file: " + e.getMessage());
+        }
+    }
 
-            // Generate unique filename
-            String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-            String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
-
-            // Determine file type
-            String mimeType = tika.detect(file.getInputStream(), originalFilename);
-            FileType fileType = determineFileType(mimeType);
-
-            // Save file to disk
-            Path targetLocation = uploadPath.resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-
-            // Create file attachment record (without message for now)
-            FileAttachment fileAttachment = FileAttachment.builder()
-                    .fileName(uniqueFilename)
-                    .originalFileName(originalFilename)
-                    .filePath(targetLocation.toString())
-                    .fileType(fileType)
-                    .fileSize(file.getSize())
-                    .mimeType(mimeType)
-                    .uploadedBy(user)
-                    .build();
+    /**
+     * Một lần đọc duy nhất: loại file nhận dạng từ các byte đầu (mark / reset trong buffer), SHA-256 tính trong
+     * lúc ghi, giới hạn kích thước kiểm tra trong lúc copy. File tạm cùng filesystem với BlobStore local nên bước
+     * cuối chỉ là rename; nội dung đã có thì file tạm bị bỏ và attachment dùng chung blob.
+     */
+    private FileMessage ingest(InputStream body, String fileName, Long userId) throws IOException {
+        String originalFilename = validateFileName(fileName);
+
+        BufferedInputStream in = new BufferedInputStream(body, STREAM_BUFFER_SIZE);
+        String mimeType = detectAllowedType(in, originalFilename);
 
-            // Generate thumbnail for images
-            if (fileType == FileType.IMAGE) {
-                String thumbnailPath = generateThumbnail(targetLocation.toString(), uniqueFilename);
-                fileAttachment.setThumbnailPath(thumbnailPath);
+        Path incomingDir = Paths.get(uploadDir, "incoming");
+        Files.createDirectories(incomingDir);
+        Path incoming = Files.createTempFile(incomingDir, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(incoming), digest)) {
+                size = copyWithLimit(in, out);
             }
+            if (size == 0) {
+                throw new AppException("File is empty");
+            }
+
+            return store(incoming, HexFormat.of().formatHex(digest.digest()), size, mimeType, originalFilename, userId);
+        } finally {
+            // Đã rename vào blob store thì không còn gì để xoá
+            Files.deleteIfExists(incoming);
+        }
+    }
 
-            fileAttachment = fileAttachmentRepository.save(fileAttachment);
+    /**
+     * File đã nằm sẵn trên filesystem upload (upload theo chunk): đọc một lần để nhận dạng + hash, rồi đưa vào
+     * BlobStore. Nội dung đã có thì source được giữ nguyên cho caller xoá.
+     *
+     * Không áp app.storage.max-file-size (giới hạn của upload một lần): upload theo chunk tồn tại để nhận file lớn hơn,
+     * với giới hạn riêng app.storage.chunked.max-file-size đã kiểm tra khi tạo session (file được cấp phát đúng
+     * kích thước đó nên không thể lớn thêm).
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FileMessage importFile(Path source, String fileName, Long userId) {
+        String originalFilename = validateFileName(fileName);
 
-            log.info("File {} uploaded by user {}", uniqueFilename, userId);
+        try {
+            long size = Files.size(source);
+            if (size == 0) {
+                throw new AppException("File is empty");
+            }
 
-            return convertToFileMessage(fileAttachment);
+            MessageDigest digest = sha256();
+            String mimeType;
+            try (BufferedInputStream in = new BufferedInputStream(
+                    new DigestInputStream(Files.newInputStream(source), digest), STREAM_BUFFER_SIZE)) {
+                mimeType = detectAllowedType(in, originalFilename);
+                in.transferTo(OutputStream.nullOutputStream());
+            }
 
+            return store(source, HexFormat.of().formatHex(digest.digest()), size, mimeType, originalFilename, userId);
         } catch (IOException e) {
-            log.error("Failed to upload file", e);
+            log.error("Failed to import file {}", source, e);
             throw new AppException("Failed to upload file: " + e.getMessage());
         }
     }
 
-    @Override
-    @Transactional(readOnly = true)
-    public Resource downloadFile(String fileName) {
+    /**
+     * Nội dung được đưa vào BlobStore trước (S3: upload), sau đó transaction ngắn giữ reference tới blob
+     * và lưu attachment
+     */
+    private FileMessage store(Path content, String checksum, long size, String mimeType,
+                              String originalFilename, Long userId) throws IOException {
+        BlobRegistry.Staged staged = blobRegistry.stage(checksum, content, size);
         try {
-            Path filePath = Paths.get(uploadDir).resolve(fileName).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+            return new TransactionTemplate(transactionManager).execute(status -> {
+                try {
+                    return register(staged, mimeType, originalFilename, userId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private FileMessage register(BlobRegistry.Staged staged, String mimeType, String originalFilename,
+                                 Long userId) throws IOException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new AppException("User not found"));
+
+        String checksum = staged.checksum();
+        long size = staged.size();
+        FileType fileType = determineFileType(mimeType);
+        BlobRegistry.Acquired blob = blobRegistry.acquire(staged);
+
+        // Mỗi attachment vẫn có tên riêng (URL / delete theo tên), nội dung trỏ tới blob
+        String uniqueFilename = UUID.randomUUID().toString() + getFileExtension(originalFilename);
+        FileAttachment fileAttachment = FileAttachment.builder()
+                .fileName(uniqueFilename)
+                .originalFileName(originalFilename)
+                .storageKey(blob.storageKey())
+                .fileType(fileType)
+                .fileSize(size)
+                .mimeType(mimeType)
+                .checksum(checksum)
+                .uploadedBy(user)
+                .build();
 
-            if (resource.exists() && resource.isReadable()) {
-                return resource;
+        // Thumbnail / preview được sinh sau commit trên worker pool, client nhận FILE/DERIVATIVES_READY khi xong.
+        // Ảnh trùng nội dung dùng lại derivative đã có của blob
+        boolean generate = false;
+        if (fileType == FileType.IMAGE) {
+            FileAttachment ready = blob.deduplicated()
+                    ? fileAttachmentRepository.findFirstByChecksumAndDerivativeStatus(checksum, DerivativeStatus.READY).orElse(null)
+                    : null;
+            if (ready != null) {
+                copyDerivatives(ready, fileAttachment);
             } else {
-                throw new AppException("File not found: " + fileName);
+                fileAttachment.setDerivativeStatus(DerivativeStatus.PENDING);
+                generate = true;
             }
-        } catch (MalformedURLException e) {
-            log.error("Invalid file path: {}", fileName, e);
-            throw new AppException("Invalid file path: " + fileName);
         }
+
+        fileAttachment = fileAttachmentRepository.save(fileAttachment);
+
+        if (generate) {
+            mediaDerivativePipeline.submitAfterCommit(fileAttachment.getId());
+        }
+
+        log.info("File {} uploaded by user {} ({} bytes, {})", uniqueFilename, user.getId(), size,
+                blob.deduplicated() ? "deduplicated" : "stored");
+
+        return MessageAssembler.convertToFileMessage(fileAttachment);
+    }
+
+    /**
+     * Resolve file theo id attachment (URL trong FileMessage) hoặc theo tên file của attachment.
+     * User không có quyền nhận 404 như file không tồn tại, để id tuần tự không dò được
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public FileDownload getDownload(String fileRef, Long userId) {
+        FileAttachment attachment = findAccessibleAttachment(fileRef, userId);
+
+        // Blob theo checksum không bao giờ đổi nội dung; upload cũ chưa có checksum thì key + size vẫn là validator đủ mạnh
+        return resolve(attachment.getStorageKey(), fileRef, attachment.getFileName(), attachment.getOriginalFileName(),
+                attachment.getMimeType(), attachment.getChecksum());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public FileDownload getDerivative(String fileRef, ImageVariant variant, Long userId) {
+        FileAttachment attachment = findAccessibleAttachment(fileRef, userId);
+
+        String derivativeKey = variant == ImageVariant.THUMBNAIL ? attachment.getThumbnailKey() : attachment.getPreviewKey();
+        if (derivativeKey == null) {
+            throw AppException.notFound("No " + variant.getSuffix() + " for file: " + fileRef);
+        }
+        return resolve(derivativeKey, fileRef, derivativeKey, derivativeKey, null, null);
     }
 
     @Override
@@ -131,69 +270,114 @@ public class FileServiceImpl implements FileService {
             throw new AppException("You don't have permission to delete this file");
         }
 
-        try {
-            // Delete file from disk
-            Path filePath = Paths.get(fileAttachment.getFilePath());
-            Files.deleteIfExists(filePath);
-
-            // Delete thumbnail if exists
-            if (fileAttachment.getThumbnailPath() != null) {
-                Path thumbnailPath = Paths.get(fileAttachment.getThumbnailPath());
-                Files.deleteIfExists(thumbnailPath);
-            }
-
-            // Delete database record
-            fileAttachmentRepository.delete(fileAttachment);
+        List<String> derivatives = Stream.of(fileAttachment.getThumbnailKey(), fileAttachment.getPreviewKey())
+                .filter(Objects::nonNull)
+                .toList();
 
-            log.info("File {} deleted by user {}", fileName, userId);
+        // Delete database record
+        fileAttachmentRepository.delete(fileAttachment);
 
-        } catch (IOException e) {
-            log.error("Failed to delete file: {}", fileName, e);
-            throw new AppException("Failed to delete file: " + e.getMessage());
+        // Blob dùng chung: chỉ bỏ một reference, nội dung bị xoá khi attachment cuối cùng bị xoá.
+        // Upload trước khi có dedup thuộc riêng attachment này, xoá luôn sau commit
+        if (fileAttachment.getChecksum() == null || !blobRegistry.release(fileAttachment.getChecksum(), derivatives)) {
+            List<String> keys = new ArrayList<>(derivatives);
+            keys.add(fileAttachment.getStorageKey());
+            blobRegistry.deleteAfterCommit(keys);
         }
-    }
 
-    @Override
-    public String generateThumbnail(String filePath, String fileName) {
-        // This is a placeholder implementation
-        // In a real application, you would use image processing libraries
-        // like ImageIO, Thumbnailator, or integrate with services like ImageMagick
+        log.info("File {} deleted by user {}", fileName, userId);
+    }
 
+    private FileDownload resolve(String storageKey, String fileRef, String fileName, String originalFileName,
+                                 String mimeType, String checksum) {
         try {
-            Path originalPath = Paths.get(filePath);
-            String thumbnailFileName = "thumb_" + fileName;
-            Path thumbnailPath = originalPath.getParent().resolve(thumbnailFileName);
-
-            // For now, just copy the original file as thumbnail
-            // In production, you would resize the image here
-            Files.copy(originalPath, thumbnailPath, StandardCopyOption.REPLACE_EXISTING);
-
-            return thumbnailPath.toString();
+            BlobStore.BlobInfo info = blobStore.stat(storageKey);
+            if (info == null) {
+                throw AppException.notFound("File not found: " + fileRef);
+            }
 
+            return FileDownload.builder()
+                    .path(blobStore.localPath(storageKey))
+                    .source((start, length) -> blobStore.open(storageKey, start, length))
+                    .fileName(fileName)
+                    .originalFileName(originalFileName)
+                    .mimeType(mimeType)
+                    .size(info.size())
+                    .etag("\"" + (checksum != null ? checksum : storageKey + "-" + info.size()) + "\"")
+                    .lastModified(info.lastModified())
+                    .build();
         } catch (IOException e) {
-            log.warn("Failed to generate thumbnail for {}", fileName, e);
-            return null;
+            log.error("Failed to read blob {} of {}", storageKey, fileRef, e);
+            throw new AppException("Failed to read file: " + fileRef);
         }
     }
 
     // Helper methods
-    private void validateFile(MultipartFile file) {
-        if (file.isEmpty()) {
-            throw new AppException("File is empty");
+    private static String validateFileName(String fileName) {
+        if (!StringUtils.hasText(fileName)) {
+            throw new AppException("Invalid filename");
         }
-
-        if (file.getSize() > maxFileSize) {
-            throw new AppException("File size exceeds maximum allowed size");
+        String cleaned = StringUtils.cleanPath(fileName);
+        if (cleaned.contains("..") || cleaned.contains("/")) {
+            throw new AppException("Invalid filename");
         }
+        return cleaned;
+    }
 
-        String contentType = file.getContentType();
-        if (contentType == null || !isAllowedFileType(contentType)) {
+    // Không tin Content-Type của client: Tika đọc các byte đầu (và đuôi file làm gợi ý) rồi reset về đầu stream
+    private String detectAllowedType(BufferedInputStream in, String fileName) throws IOException {
+        String mimeType = tika.detect(in, fileName);
+        if (!isAllowedFileType(mimeType)) {
             throw new AppException("File type not allowed");
         }
+        return mimeType;
+    }
 
-        String filename = file.getOriginalFilename();
-        if (filename == null || filename.contains("..")) {
-            throw new AppException("Invalid filename");
+    private long copyWithLimit(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
+            if (total > maxFileSize) {
+                throw new AppException("File size exceeds maximum allowed size");
+            }
+            out.write(buffer, 0, read);
+        }
+        return total;
+    }
+
+    private static void copyDerivatives(FileAttachment source, FileAttachment target) {
+        target.setDerivativeStatus(DerivativeStatus.READY);
+        target.setWidth(source.getWidth());
+        target.setHeight(source.getHeight());
+        target.setThumbnailKey(source.getThumbnailKey());
+        target.setThumbnailWidth(source.getThumbnailWidth());
+        target.setThumbnailHeight(source.getThumbnailHeight());
+        target.setPreviewKey(source.getPreviewKey());
+        target.setPreviewWidth(source.getPreviewWidth());
+        target.setPreviewHeight(source.getPreviewHeight());
+    }
+
+    private FileAttachment findAccessibleAttachment(String fileRef, Long userId) {
+        FileAttachment attachment = isNumeric(fileRef)
+                ? fileAttachmentRepository.findById(Long.valueOf(fileRef)).orElse(null)
+                : fileAttachmentRepository.findByFileName(fileRef).orElse(null);
+        if (attachment == null || userId == null || !fileAttachmentRepository.canAccess(attachment.getId(), userId)) {
+            throw AppException.notFound("File not found: " + fileRef);
+        }
+        return attachment;
+    }
+
+    private static boolean isNumeric(String value) {
+        return !value.isEmpty() && value.chars().allMatch(Character::isDigit);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
         }
     }
 
@@ -228,21 +412,4 @@ public class FileServiceImpl implements FileService {
             return FileType.OTHER;
         }
     }
-
-    private FileMessage convertToFileMessage(FileAttachment fileAttachment) {
-        String downloadUrl = "/api/files/" + fileAttachment.getId() + "/download";
-        String thumbnailUrl = fileAttachment.getThumbnailPath() != null ?
-                "/api/files/" + fileAttachment.getId() + "/thumbnail" : null;
-
-        return FileMessage.builder()
-                .id(fileAttachment.getId())
-                .fileName(fileAttachment.getFileName())
-                .originalFileName(fileAttachment.getOriginalFileName())
-                .downloadUrl(downloadUrl)
-                .fileType(fileAttachment.getFileType())
-                .fileSize(fileAttachment.getFileSize())
-                .mimeType(fileAttachment.getMimeType())
-                .thumbnailUrl(thumbnailUrl)
-                .build();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.SessionStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Fallback khi không có Redis (một node, và là store dùng trong test): cùng semantics với
+ * {@link RedisSessionStore}, mỗi thao tác ghi atomic theo user qua compute trên map.
+ * User online khi và chỉ khi còn entry trong map, nên không có orphan và ttl không cần thiết.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.data.redis.host", matchIfMissing = true, havingValue = "false")
+@Slf4j
+public class InMemorySessionStore implements SessionStore {
+
+    private final Map<Long, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    private final Set<Long> announcedOnline = ConcurrentHashMap.newKeySet();
+
+    public InMemorySessionStore() {
+        log.info("WebSocket sessions kept in memory (Redis not configured)");
+    }
+
+    @Override
+    public boolean addSession(Long userId, String sessionId, Duration ttl) {
+        boolean[] first = new boolean[1];
+        sessionsByUser.compute(userId, (id, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        return first[0];
+    }
+
+    @Override
+    public boolean removeSession(Long userId, String sessionId) {
+        boolean[] last = new boolean[1];
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.remove(sessionId);
+            last[0] = sessions.isEmpty();
+            return last[0] ? null : sessions;
+        });
+        return last[0];
+    }
+
+    @Override
+    public boolean removeAllSessions(Long userId) {
+        return sessionsByUser.remove(userId) != null;
+    }
+
+    @Override
+    public Set<String> getSessions(Long userId) {
+        Set<String> sessions = sessionsByUser.get(userId);
+        return sessions != null ? new HashSet<>(sessions) : Set.of();
+    }
+
+    @Override
+    public boolean isOnline(Long userId) {
+        return sessionsByUser.containsKey(userId);
+    }
+
+    @Override
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        return userIds.stream()
+                .filter(sessionsByUser::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public long onlineCount() {
+        return sessionsByUser.size();
+    }
+
+    @Override
+    public Set<Long> onlineUserIds() {
+        return new HashSet<>(sessionsByUser.keySet());
+    }
+
+    @Override
+    public Set<Long> removeOrphans() {
+        return Set.of();
+    }
+
+    @Override
+    public boolean announce(Long userId, boolean online) {
+        return online ? announcedOnline.add(userId) : announcedOnline.remove(userId);
+    }
+}
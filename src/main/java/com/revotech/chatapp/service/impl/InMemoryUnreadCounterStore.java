@@ -0,0 +1,84 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.UnreadCounterStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fallback khi không có Redis: map theo user, chia stripe theo userId để giảm tranh chấp
+ * khi fan-out increment cho room đông người.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.data.redis.host", matchIfMissing = true, havingValue = "false")
+@Slf4j
+public class InMemoryUnreadCounterStore implements UnreadCounterStore {
+
+    private static final int STRIPES = 64; // power of two
+
+    @SuppressWarnings("unchecked")
+    private final Map<Long, Map<String, Long>>[] stripes = new Map[STRIPES];
+
+    public InMemoryUnreadCounterStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+        log.info("Unread counters kept in memory (Redis not configured)");
+    }
+
+    @Override
+    public Long get(Long userId, String chatKey) {
+        Map<String, Long> counters = stripe(userId).get(userId);
+        return counters != null ? counters.get(chatKey) : null;
+    }
+
+    @Override
+    public Map<String, Long> getAll(Long userId) {
+        Map<String, Long> counters = stripe(userId).get(userId);
+        return counters != null ? new HashMap<>(counters) : new HashMap<>();
+    }
+
+    @Override
+    public void set(Long userId, String chatKey, long value) {
+        counters(userId).put(chatKey, Math.max(0, value));
+    }
+
+    @Override
+    public void incrementIfPresent(Collection<Long> userIds, String chatKey) {
+        for (Long userId : userIds) {
+            Map<String, Long> counters = stripe(userId).get(userId);
+            if (counters != null) {
+                counters.computeIfPresent(chatKey, (key, value) -> value + 1);
+            }
+        }
+    }
+
+    @Override
+    public void decrement(Long userId, String chatKey, long delta) {
+        Map<String, Long> counters = stripe(userId).get(userId);
+        if (counters != null) {
+            counters.computeIfPresent(chatKey, (key, value) -> Math.max(0, value - delta));
+        }
+    }
+
+    @Override
+    public void invalidate(Long userId, String chatKey) {
+        Map<String, Long> counters = stripe(userId).get(userId);
+        if (counters != null) {
+            counters.remove(chatKey);
+        }
+    }
+
+    private Map<String, Long> counters(Long userId) {
+        return stripe(userId).computeIfAbsent(userId, id -> new ConcurrentHashMap<>());
+    }
+
+    private Map<Long, Map<String, Long>> stripe(Long userId) {
+        return stripes[(int) (userId ^ (userId >>> 32)) & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,49 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.ClusterEnvelope;
+import com.revotech.chatapp.service.ClusterBackplane;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Backplane trong process: mọi instance trong cùng JVM dùng chung một danh sách listener,
+ * nên có thể chạy nhiều application context (nhiều "node") trên một máy để test multi-node.
+ */
+@Service
+@ConditionalOnProperty(name = "app.websocket.broker.mode", havingValue = "local")
+@Slf4j
+public class LocalClusterBackplane implements ClusterBackplane {
+
+    private static final List<Consumer<ClusterEnvelope>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<ClusterEnvelope>> ownListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        for (Consumer<ClusterEnvelope> listener : LISTENERS) {
+            try {
+                listener.accept(envelope);
+            } catch (Exception e) {
+                log.warn("Local backplane listener failed for {}: {}", envelope.getDestination(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        ownListeners.add(listener);
+        LISTENERS.add(listener);
+    }
+
+    @PreDestroy
+    public void close() {
+        LISTENERS.removeAll(ownListeners);
+        ownListeners.clear();
+    }
+}
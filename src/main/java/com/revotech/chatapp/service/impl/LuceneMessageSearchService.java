@@ -0,0 +1,392 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.exception.AppException;
+import com.revotech.chatapp.model.dto.MessageSearchResult;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.MessageRepository.SearchSource;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.service.MessageSearchService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.LowerCaseFilterFactory;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilterFactory;
+import org.apache.lucene.analysis.standard.StandardTokenizerFactory;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Inverted index (Lucene, trên đĩa local) cho nội dung message, thay cho LIKE '%keyword%'.
+ *
+ * Index được cập nhật theo send/edit/delete sau khi transaction commit. Searcher được refresh
+ * định kỳ bởi SearchIndexMaintenanceTask nên kết quả mới trễ tối đa một refresh interval.
+ * Mỗi document có field scope ("room:{id}" / "conversation:{id}") để lọc theo quyền của user.
+ *
+ * Content chỉ được index, không stored: message được mã hoá ở DB thì index không được giữ bản plaintext.
+ * Kết quả search chỉ trả id, nội dung đọc lại qua MessageAssembler và highlight trên content đã giải mã.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LuceneMessageSearchService implements MessageSearchService {
+
+    static final Set<MessageType> INDEXED_TYPES = EnumSet.of(MessageType.CHAT, MessageType.FILE);
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_ID_SORT = "idSort";
+    private static final String FIELD_SCOPE = "scope";
+    private static final String FIELD_SENDER = "senderId";
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_CREATED_AT = "createdAt";
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final int MAX_RESULT_WINDOW = 1000;
+
+    // Ghi trong commit user data; index cũ (content stored) không có format này thì bị xoá để rebuild
+    private static final String COMMIT_FORMAT_KEY = "format";
+    private static final String COMMIT_FORMAT = "content-not-stored";
+
+    private final MessageRepository messageRepository;
+    private final EncryptionService encryptionService;
+
+    @Value("${app.search.index-dir:./data/search-index}")
+    private String indexDir;
+
+    @Value("${app.search.max-highlight-length:300}")
+    private int maxHighlightLength;
+
+    private Analyzer analyzer;
+    private Directory directory;
+    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+
+    @PostConstruct
+    public void init() throws IOException {
+        // Lowercase + bỏ dấu để "tieng viet" khớp "Tiếng Việt"
+        analyzer = CustomAnalyzer.builder()
+                .withTokenizer(StandardTokenizerFactory.class)
+                .addTokenFilter(LowerCaseFilterFactory.class)
+                .addTokenFilter(ASCIIFoldingFilterFactory.class)
+                .build();
+
+        Path path = Paths.get(indexDir).toAbsolutePath();
+        directory = FSDirectory.open(path);
+        indexWriter = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        dropLegacyIndex();
+        searcherManager = new SearcherManager(indexWriter, null);
+
+        log.info("Message search index opened at {} ({} documents)", path, indexWriter.getDocStats().numDocs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            searcherManager.close();
+            indexWriter.close();
+            directory.close();
+        } catch (IOException e) {
+            log.warn("Could not close message search index: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void indexMessage(Message message) {
+        if (message.getId() == null) {
+            return;
+        }
+        if (Boolean.TRUE.equals(message.getIsDeleted()) || !INDEXED_TYPES.contains(message.getType())) {
+            removeMessage(message.getId());
+            return;
+        }
+
+        Document document = toDocument(
+                message.getId(),
+                encryptionService.contentOf(message),
+                message.getRoom() != null ? message.getRoom().getId() : null,
+                message.getConversation() != null ? message.getConversation().getId() : null,
+                message.getSender().getId(),
+                message.getCreatedAt());
+
+        Long id = message.getId();
+        afterCommit(() -> {
+            if (document == null) {
+                indexWriter.deleteDocuments(idTerm(id));
+            } else {
+                indexWriter.updateDocument(idTerm(id), document);
+            }
+        });
+    }
+
+    @Override
+    public void removeMessage(Long messageId) {
+        afterCommit(() -> indexWriter.deleteDocuments(idTerm(messageId)));
+    }
+
+    @Override
+    public MessageSearchResult search(String queryText, Collection<Long> roomIds, Collection<Long> conversationIds,
+                                      int page, int size) {
+        if (queryText == null || queryText.isBlank()) {
+            throw new AppException("Search keyword is required");
+        }
+
+        List<BytesRef> scopes = new ArrayList<>();
+        roomIds.forEach(roomId -> scopes.add(new BytesRef(roomScope(roomId))));
+        conversationIds.forEach(conversationId -> scopes.add(new BytesRef(conversationScope(conversationId))));
+        if (scopes.isEmpty()) {
+            return MessageSearchResult.builder()
+                    .messageIds(List.of())
+                    .totalHits(0)
+                    .build();
+        }
+
+        Query contentQuery = parseQuery(queryText);
+        Query query = new BooleanQuery.Builder()
+                .add(contentQuery, BooleanClause.Occur.MUST)
+                .add(new TermInSetQuery(FIELD_SCOPE, scopes), BooleanClause.Occur.FILTER)
+                .build();
+
+        int from = page * size;
+        if (from + size > MAX_RESULT_WINDOW) {
+            throw new AppException("Search results are limited to the first " + MAX_RESULT_WINDOW + " matches");
+        }
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+
+            // Newest first, giống thứ tự search cũ
+            Sort sort = new Sort(new SortField(FIELD_CREATED_AT, SortField.Type.LONG, true),
+                    new SortField(FIELD_ID_SORT, SortField.Type.LONG, true));
+            TopFieldDocs topDocs = searcher.search(query, from + size, sort);
+
+            ScoreDoc[] pageDocs = from >= topDocs.scoreDocs.length
+                    ? new ScoreDoc[0]
+                    : Arrays.copyOfRange(topDocs.scoreDocs, from, Math.min(topDocs.scoreDocs.length, from + size));
+
+            List<Long> ids = new ArrayList<>(pageDocs.length);
+            StoredFields storedFields = searcher.storedFields();
+            for (ScoreDoc scoreDoc : pageDocs) {
+                ids.add(Long.parseLong(storedFields.document(scoreDoc.doc, Set.of(FIELD_ID)).get(FIELD_ID)));
+            }
+
+            return MessageSearchResult.builder()
+                    .messageIds(ids)
+                    .totalHits(topDocs.totalHits.value)
+                    .build();
+        } catch (IOException e) {
+            log.error("Message search failed for query '{}'", queryText, e);
+            throw new AppException("Search is temporarily unavailable");
+        } finally {
+            if (searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException e) {
+                    log.warn("Could not release index searcher: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String highlight(String queryText, String content) {
+        if (content == null || content.isBlank()) {
+            return null;
+        }
+        // Không có offsets/stored content trong index: analyze lại content (message ngắn, chỉ một trang kết quả)
+        UnifiedHighlighter highlighter = UnifiedHighlighter.builderWithoutSearcher(analyzer)
+                .withFormatter(new DefaultPassageFormatter("<mark>", "</mark>", "... ", true))
+                .withMaxLength(Math.max(maxHighlightLength, 1))
+                .build();
+        try {
+            Object highlighted = highlighter.highlightWithoutSearcher(FIELD_CONTENT, parseQuery(queryText), content, 1);
+            return highlighted != null ? highlighted.toString() : null;
+        } catch (IOException e) {
+            log.warn("Could not highlight search result: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public long rebuildIndex() {
+        long started = System.currentTimeMillis();
+        long indexed = 0;
+        try {
+            indexWriter.deleteAll();
+
+            Long afterId = 0L;
+            while (true) {
+                List<SearchSource> batch = messageRepository.findSearchSourcesAfter(
+                        afterId, INDEXED_TYPES, PageRequest.of(0, REBUILD_BATCH_SIZE));
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                for (SearchSource source : batch) {
+                    String content = encryptionService.contentOf(source.getMessageId(), source.getContent(), source.getEncryptedContent());
+                    Document document = toDocument(source.getId(), content, source.getRoomId(),
+                            source.getConversationId(), source.getSenderId(), source.getCreatedAt());
+                    if (document != null) {
+                        indexWriter.addDocument(document);
+                        indexed++;
+                    }
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+
+            indexWriter.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not rebuild message search index", e);
+        }
+
+        log.info("Rebuilt message search index: {} messages in {} ms", indexed, System.currentTimeMillis() - started);
+        return indexed;
+    }
+
+    @Override
+    public boolean isIndexEmpty() {
+        return indexWriter.getDocStats().numDocs == 0;
+    }
+
+    @Override
+    public void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.warn("Could not refresh message search index: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (IOException e) {
+            log.error("Could not commit message search index", e);
+        }
+    }
+
+    private Query parseQuery(String queryText) {
+        // QueryParser không thread-safe, tạo mới mỗi lần
+        QueryParser parser = new QueryParser(FIELD_CONTENT, analyzer);
+        parser.setDefaultOperator(QueryParser.Operator.AND);
+        parser.setAllowLeadingWildcard(false);
+        try {
+            return parser.parse(queryText.trim());
+        } catch (ParseException e) {
+            // Cú pháp lỗi (ngoặc kép lẻ...) - tìm như text thường
+            try {
+                return parser.parse(QueryParser.escape(queryText.trim()));
+            } catch (ParseException escaped) {
+                throw new AppException("Invalid search query");
+            }
+        }
+    }
+
+    private void dropLegacyIndex() throws IOException {
+        Map<String, String> commitData = new HashMap<>();
+        Iterable<Map.Entry<String, String>> existing = indexWriter.getLiveCommitData();
+        if (existing != null) {
+            existing.forEach(entry -> commitData.put(entry.getKey(), entry.getValue()));
+        }
+        if (COMMIT_FORMAT.equals(commitData.get(COMMIT_FORMAT_KEY))) {
+            return;
+        }
+
+        if (indexWriter.getDocStats().numDocs > 0) {
+            // Index cũ lưu plaintext content, xoá hẳn để SearchIndexMaintenanceTask rebuild
+            log.warn("Message search index stores message content, deleting it so it is rebuilt without content");
+            indexWriter.deleteAll();
+        }
+        commitData.put(COMMIT_FORMAT_KEY, COMMIT_FORMAT);
+        indexWriter.setLiveCommitData(commitData.entrySet());
+        indexWriter.commit();
+    }
+
+    private Document toDocument(Long id, String content, Long roomId, Long conversationId,
+                                Long senderId, LocalDateTime createdAt) {
+        if (content == null || content.isBlank() || (roomId == null && conversationId == null)) {
+            return null;
+        }
+
+        long createdAtMillis = createdAt != null ? createdAt.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, id.toString(), Field.Store.YES));
+        document.add(new NumericDocValuesField(FIELD_ID_SORT, id));
+        document.add(new StringField(FIELD_SCOPE,
+                roomId != null ? roomScope(roomId) : conversationScope(conversationId), Field.Store.NO));
+        document.add(new StringField(FIELD_SENDER, senderId.toString(), Field.Store.NO));
+        document.add(new TextField(FIELD_CONTENT, content, Field.Store.NO));
+        document.add(new NumericDocValuesField(FIELD_CREATED_AT, createdAtMillis));
+        return document;
+    }
+
+    private void afterCommit(IndexOperation operation) {
+        Runnable task = () -> {
+            try {
+                operation.run();
+            } catch (IOException e) {
+                // Index lệch với DB đến lần rebuild tiếp theo, không làm hỏng request gửi tin
+                log.error("Could not update message search index", e);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    private static Term idTerm(Long id) {
+        return new Term(FIELD_ID, id.toString());
+    }
+
+    private static String roomScope(Long roomId) {
+        return "room:" + roomId;
+    }
+
+    private static String conversationScope(Long conversationId) {
+        return "conversation:" + conversationId;
+    }
+
+    @FunctionalInterface
+    private interface IndexOperation {
+        void run() throws IOException;
+    }
+}
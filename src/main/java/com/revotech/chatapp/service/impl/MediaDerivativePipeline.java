@@ -0,0 +1,312 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import com.revotech.chatapp.model.entity.FileAttachment;
+import com.revotech.chatapp.model.enums.DerivativeStatus;
+import com.revotech.chatapp.model.enums.ImageVariant;
+import com.revotech.chatapp.repository.FileAttachmentRepository;
+import com.revotech.chatapp.service.BlobStore;
+import com.revotech.chatapp.util.ImageDerivativeGenerator;
+import com.revotech.chatapp.util.ImageDerivativeGenerator.Derivative;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Sinh thumbnail / preview cho ảnh upload trên một worker pool riêng, ngoài request thread.
+ *
+ * Upload chỉ đánh dấu attachment PENDING và trả về ngay; sau commit attachment được đưa vào hàng đợi
+ * (bounded, đầy thì để lại PENDING cho MediaDerivativeTask thử lại). Worker nhận attachment bằng update có điều kiện
+ * PENDING -> PROCESSING nên mỗi ảnh chỉ được xử lý bởi một node. Derivative sinh trong thư mục tạm rồi
+ * đưa vào BlobStore; xong thì ghi key + kích thước lên
+ * FileAttachment và báo FILE/DERIVATIVES_READY cho người upload (/user/queue/files) và cho chat chứa message.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MediaDerivativePipeline {
+
+    private final FileAttachmentRepository fileAttachmentRepository;
+    private final BlobStore blobStore;
+    private final UserDirectory userDirectory;
+    private final WebSocketSafeBroadcast safeBroadcast;
+    private final BroadcastOutbox broadcastOutbox;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.storage.upload-dir}")
+    private String uploadDir;
+
+    @Value("${app.media.workers:2}")
+    private int workers;
+
+    @Value("${app.media.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${app.media.max-pixels:50000000}")
+    private long maxPixels;
+
+    @Value("${app.media.processing-timeout-ms:600000}")
+    private long processingTimeoutMs;
+
+    private ThreadPoolExecutor executor;
+    private TransactionTemplate transactionTemplate;
+
+    // Attachment đang nằm trong hàng đợi / đang xử lý, để lần retry không enqueue trùng
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private Timer successTimer;
+    private Timer failureTimer;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "media-derivatives-" + count++);
+                        thread.setDaemon(true);
+                        // Encode ảnh tốn CPU, không tranh với request / broadcast thread
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.AbortPolicy());
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        successTimer = Timer.builder("chat.media.derivatives").tag("result", "success")
+                .description("Time to build the derivatives of one image").register(meterRegistry);
+        failureTimer = Timer.builder("chat.media.derivatives").tag("result", "failure")
+                .description("Time to build the derivatives of one image").register(meterRegistry);
+        rejectedCounter = Counter.builder("chat.media.derivatives.rejected")
+                .description("Images left PENDING because the derivative queue was full")
+                .register(meterRegistry);
+        Gauge.builder("chat.media.derivatives.backlog", executor, e -> e.getQueue().size())
+                .description("Images waiting for derivatives")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Enqueue sau khi transaction hiện tại commit (worker phải thấy row attachment)
+     */
+    public void submitAfterCommit(Long attachmentId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(attachmentId);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                submit(attachmentId);
+            }
+        });
+    }
+
+    public boolean submit(Long attachmentId) {
+        if (!inFlight.add(attachmentId)) {
+            return false;
+        }
+
+        try {
+            executor.execute(() -> process(attachmentId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(attachmentId);
+            rejectedCounter.increment();
+            log.debug("Derivative queue full, attachment {} stays PENDING", attachmentId);
+            return false;
+        }
+    }
+
+    /**
+     * Đưa lại các attachment còn PENDING (hàng đợi từng đầy), kể cả PROCESSING quá hạn (node chết giữa chừng)
+     */
+    public int resubmitPending() {
+        LocalDateTime claimedBefore = LocalDateTime.now().minus(Duration.ofMillis(processingTimeoutMs));
+        Integer released = transactionTemplate.execute(status ->
+                fileAttachmentRepository.releaseStaleDerivativeClaims(claimedBefore));
+        if (released != null && released > 0) {
+            log.warn("Released {} derivative claims older than {} ms", released, processingTimeoutMs);
+        }
+
+        int free = executor.getQueue().remainingCapacity();
+        if (free == 0) {
+            return 0;
+        }
+
+        int submitted = 0;
+        for (Long attachmentId : fileAttachmentRepository.findIdsByDerivativeStatus(DerivativeStatus.PENDING, PageRequest.of(0, free))) {
+            if (submit(attachmentId)) {
+                submitted++;
+            }
+        }
+        return submitted;
+    }
+
+    void process(Long attachmentId) {
+        long startNanos = System.nanoTime();
+        try {
+            // Node khác (hoặc lần submit trước) đã nhận thì bỏ qua
+            Integer claimed = transactionTemplate.execute(status ->
+                    fileAttachmentRepository.claimDerivative(attachmentId, LocalDateTime.now()));
+            if (claimed == null || claimed == 0) {
+                return;
+            }
+
+            FileAttachment attachment = fileAttachmentRepository.findById(attachmentId).orElse(null);
+            if (attachment == null) {
+                return;
+            }
+
+            // Blob có key = checksum: derivative cũng đặt tên theo blob, dùng chung cho mọi attachment cùng nội dung
+            String baseName = stripExtension(attachment.getStorageKey());
+            ImageDerivativeGenerator.Result result;
+            Path workDir = null;
+            try {
+                workDir = Files.createTempDirectory(Files.createDirectories(Paths.get(uploadDir, "incoming")), "derivatives-");
+                result = ImageDerivativeGenerator.generate(localSource(attachment.getStorageKey(), workDir),
+                        workDir, baseName, maxPixels);
+                for (Derivative derivative : result.derivatives()) {
+                    blobStore.put(derivative.path().getFileName().toString(), derivative.path());
+                }
+            } catch (Exception e) {
+                log.warn("Failed to build derivatives of attachment {}: {}", attachmentId, e.getMessage());
+                transactionTemplate.executeWithoutResult(status ->
+                        fileAttachmentRepository.updateDerivativeStatus(attachmentId, DerivativeStatus.FAILED));
+                failureTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                return;
+            } finally {
+                deleteRecursively(workDir);
+            }
+
+            Map<ImageVariant, Derivative> byVariant = result.derivatives().stream()
+                    .collect(Collectors.toMap(Derivative::variant, Function.identity()));
+            Derivative thumbnail = byVariant.get(ImageVariant.THUMBNAIL);
+            Derivative preview = byVariant.get(ImageVariant.PREVIEW);
+
+            FileAttachmentRepository.ChatTarget chat = transactionTemplate.execute(status -> {
+                fileAttachmentRepository.updateDerivatives(attachmentId, DerivativeStatus.READY,
+                        result.width(), result.height(),
+                        key(thumbnail), thumbnail.width(), thumbnail.height(),
+                        key(preview), preview.width(), preview.height());
+                return fileAttachmentRepository.findChatTarget(attachmentId).orElse(null);
+            });
+
+            attachment.setDerivativeStatus(DerivativeStatus.READY);
+            attachment.setWidth(result.width());
+            attachment.setHeight(result.height());
+            attachment.setThumbnailKey(key(thumbnail));
+            attachment.setThumbnailWidth(thumbnail.width());
+            attachment.setThumbnailHeight(thumbnail.height());
+            attachment.setPreviewKey(key(preview));
+            attachment.setPreviewWidth(preview.width());
+            attachment.setPreviewHeight(preview.height());
+            announce(attachment, chat);
+
+            successTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            log.debug("Built derivatives of attachment {} ({}x{})", attachmentId, result.width(), result.height());
+        } catch (Exception e) {
+            log.error("Derivative pipeline error for attachment {}", attachmentId, e);
+        } finally {
+            inFlight.remove(attachmentId);
+        }
+    }
+
+    private void announce(FileAttachment attachment, FileAttachmentRepository.ChatTarget chat) {
+        WebSocketResponse<FileMessage> response = WebSocketResponse.<FileMessage>builder()
+                .type("FILE")
+                .action("DERIVATIVES_READY")
+                .data(MessageAssembler.convertToFileMessage(attachment))
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        String uploader = userDirectory.username(attachment.getUploadedBy().getId());
+        if (uploader != null) {
+            safeBroadcast.safeConvertAndSendToUser(uploader, "/queue/files", response);
+        }
+
+        if (chat != null) {
+            String destination = chat.getRoomId() != null ?
+                    "/topic/room/" + chat.getRoomId() :
+                    "/topic/conversation/" + chat.getConversationId();
+            broadcastOutbox.append(destination, response);
+        }
+    }
+
+    /**
+     * ImageIO cần file trên đĩa: BlobStore local đọc thẳng, object storage tải về thư mục tạm
+     */
+    private Path localSource(String storageKey, Path workDir) throws IOException {
+        Path local = blobStore.localPath(storageKey);
+        if (local != null) {
+            return local;
+        }
+
+        BlobStore.BlobInfo info = blobStore.stat(storageKey);
+        if (info == null) {
+            throw new IOException("Blob not found: " + storageKey);
+        }
+        Path copy = workDir.resolve("source");
+        try (InputStream in = blobStore.open(storageKey, 0, info.size())) {
+            Files.copy(in, copy);
+        }
+        return copy;
+    }
+
+    private static String key(Derivative derivative) {
+        return derivative.path().getFileName().toString();
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Failed to clean up {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
@@ -0,0 +1,284 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.MessageReactionDTO;
+import com.revotech.chatapp.model.dto.UserSummaryDTO;
+import com.revotech.chatapp.model.entity.FileAttachment;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.MessageReactionStat;
+import com.revotech.chatapp.model.enums.ReactionType;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.security.UserPrincipal;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.service.impl.UserDirectory.Entry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Builds {@link ChatMessage} DTOs for a batch of messages with a fixed number of queries.
+ *
+ * Thay vì convert từng message (reactions, sender, reply, pinnedBy lazy-load riêng lẻ),
+ * một page luôn tốn đúng: messages + reply targets + reaction stats
+ * (+ reaction của user hiện tại, + users chưa có trong UserDirectory), bất kể page size.
+ * Nội dung encrypt at rest được giải mã một lần cho cả page trước khi map.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageAssembler {
+
+    private final MessageRepository messageRepository;
+    private final ReactionAggregator reactionAggregator;
+    private final UserDirectory userDirectory;
+    private final EncryptionService encryptionService;
+
+    /**
+     * Assemble a page of message ids, keeping the page order and paging metadata
+     */
+    public Page<ChatMessage> assemblePage(Page<Long> messageIdPage) {
+        List<ChatMessage> content = assembleByIds(messageIdPage.getContent());
+        return new PageImpl<>(content, messageIdPage.getPageable(), messageIdPage.getTotalElements());
+    }
+
+    /**
+     * Load and assemble messages by entity id, keeping the order of the given ids
+     */
+    public List<ChatMessage> assembleByIds(List<Long> messageIds) {
+        return assemble(loadByIds(messageIds));
+    }
+
+    /**
+     * Load messages by entity id in the order of the given ids; ids no longer present are dropped
+     */
+    public List<Message> loadByIds(List<Long> messageIds) {
+        if (messageIds == null || messageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, Message> loaded = messageRepository.findAllByIdInWithAttachment(messageIds).stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+
+        return messageIds.stream()
+                .map(loaded::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public ChatMessage assemble(Message message) {
+        return assemble(List.of(message)).get(0);
+    }
+
+    public List<ChatMessage> assemble(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Long> messageIds = messages.stream()
+                .map(Message::getId)
+                .collect(Collectors.toList());
+
+        // 1. Reply targets - chỉ đọc id từ proxy, không trigger lazy load
+        Set<Long> replyIds = messages.stream()
+                .map(Message::getReplyTo)
+                .filter(Objects::nonNull)
+                .map(Message::getId)
+                .collect(Collectors.toSet());
+
+        Map<Long, Message> replyTargets = replyIds.isEmpty()
+                ? Map.of()
+                : messageRepository.findAllByIdInWithAttachment(replyIds).stream()
+                        .collect(Collectors.toMap(Message::getId, Function.identity()));
+
+        // 2. Reaction aggregates (count + recent reactors) per message, và reaction của user hiện tại
+        Map<Long, List<MessageReactionStat>> reactionsByMessage = reactionAggregator.load(messageIds);
+        Map<Long, ReactionType> currentUserReactions = reactionAggregator.reactionsOf(getCurrentUserId(), messageIds);
+
+        // 3. Every user referenced by the batch: senders, reply senders, pinnedBy, reactors
+        Set<Long> userIds = new HashSet<>();
+        for (Message message : messages) {
+            userIds.add(message.getSender().getId());
+            if (Boolean.TRUE.equals(message.getIsPinned()) && message.getPinnedBy() != null) {
+                userIds.add(message.getPinnedBy());
+            }
+        }
+        replyTargets.values().forEach(reply -> userIds.add(reply.getSender().getId()));
+        reactionsByMessage.values().forEach(stats ->
+                stats.forEach(stat -> userIds.addAll(ReactionAggregator.recentUserIds(stat))));
+
+        Map<Long, Entry> users = userDirectory.getAll(userIds);
+
+        // 4. Plaintext content của page và reply targets, không query thêm
+        List<Message> contentSources = new ArrayList<>(messages.size() + replyTargets.size());
+        contentSources.addAll(messages);
+        contentSources.addAll(replyTargets.values());
+        Map<Long, String> contents = encryptionService.contentsOf(contentSources);
+
+        return messages.stream()
+                .map(message -> toChatMessage(message, contents, replyTargets, reactionsByMessage, currentUserReactions, users))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reaction summary for a single message, same shape as the page pipeline
+     */
+    public List<MessageReactionDTO> assembleReactions(Long messageId) {
+        List<MessageReactionStat> stats = reactionAggregator.load(List.of(messageId)).getOrDefault(messageId, List.of());
+        if (stats.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> userIds = new HashSet<>();
+        stats.forEach(stat -> userIds.addAll(ReactionAggregator.recentUserIds(stat)));
+
+        Map<Long, Entry> users = userDirectory.getAll(userIds);
+        ReactionType currentUserReaction = reactionAggregator.reactionsOf(getCurrentUserId(), List.of(messageId)).get(messageId);
+
+        return groupReactions(stats, users, currentUserReaction);
+    }
+
+    private ChatMessage toChatMessage(Message message,
+                                      Map<Long, String> contents,
+                                      Map<Long, Message> replyTargets,
+                                      Map<Long, List<MessageReactionStat>> reactionsByMessage,
+                                      Map<Long, ReactionType> currentUserReactions,
+                                      Map<Long, Entry> users) {
+        Entry sender = users.get(message.getSender().getId());
+
+        // Xử lý reply message trước
+        ChatMessage replyToMessage = null;
+        String replyToSenderName = null;
+        String replyToId = null;
+
+        if (message.getReplyTo() != null) {
+            Message replyMsg = replyTargets.get(message.getReplyTo().getId());
+            if (replyMsg != null) {
+                Entry replySender = users.get(replyMsg.getSender().getId());
+                replyToMessage = ChatMessage.builder()
+                        .id(replyMsg.getMessageId()) // Sử dụng messageId cho frontend
+                        .content(contents.get(replyMsg.getId()))
+                        .senderName(replySender != null ? replySender.fullName() : null)
+                        .senderUsername(replySender != null ? replySender.username() : null)
+                        .timestamp(replyMsg.getCreatedAt())
+                        .build();
+
+                replyToSenderName = replySender != null ? replySender.fullName() : null;
+                replyToId = replyMsg.getMessageId(); // Frontend nhận UUID
+            }
+        }
+
+        // Get pinned by user info if message is pinned
+        String pinnedByUsername = null;
+        if (Boolean.TRUE.equals(message.getIsPinned()) && message.getPinnedBy() != null) {
+            Entry pinnedByUser = users.get(message.getPinnedBy());
+            if (pinnedByUser != null) {
+                pinnedByUsername = pinnedByUser.username();
+            }
+        }
+
+        List<MessageReactionStat> reactions = reactionsByMessage.getOrDefault(message.getId(), List.of());
+
+        return ChatMessage.builder()
+                .id(message.getMessageId())
+                .content(contents.get(message.getId()))
+                .senderId(message.getSender().getId())
+                .senderName(sender != null ? sender.fullName() : null)
+                .senderUsername(sender != null ? sender.username() : null)
+                .senderAvatar(sender != null ? sender.avatarUrl() : null)
+                .type(message.getType())
+                .status(message.getStatus())
+                .timestamp(message.getCreatedAt())
+                .roomId(message.getRoom() != null ? message.getRoom().getId() : null)
+                .conversationId(message.getConversation() != null ? message.getConversation().getId() : null)
+                .replyToId(replyToId)
+                .replyToMessage(replyToMessage)
+                .replyToSenderName(replyToSenderName)
+                .isEdited(message.getIsEdited())
+                .editedAt(message.getEditedAt())
+                .isPinned(message.getIsPinned())
+                .pinnedAt(message.getPinnedAt())
+                .pinnedByUsername(pinnedByUsername)
+                .fileAttachment(convertToFileMessage(message.getFileAttachment()))
+                .reactions(groupReactions(reactions, users, currentUserReactions.get(message.getId())))
+                .build();
+    }
+
+    /**
+     * Reaction stats -> DTO, users chỉ gồm các reactor gần nhất của mỗi loại. Pure in-memory, reused by the single-message path.
+     */
+    static List<MessageReactionDTO> groupReactions(List<MessageReactionStat> stats,
+                                                   Map<Long, Entry> users,
+                                                   ReactionType currentUserReaction) {
+        if (stats.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<MessageReactionDTO> result = new ArrayList<>(stats.size());
+        for (MessageReactionStat stat : stats) {
+            List<Long> recentUserIds = ReactionAggregator.recentUserIds(stat);
+            List<UserSummaryDTO> reactors = new ArrayList<>(recentUserIds.size());
+            for (Long reactorId : recentUserIds) {
+                Entry reactor = users.get(reactorId);
+                if (reactor != null) {
+                    reactors.add(reactor.toSummary(null));
+                }
+            }
+
+            result.add(MessageReactionDTO.builder()
+                    .type(stat.getType())
+                    .emoji(stat.getType().getEmoji())
+                    .count(stat.getCount())
+                    .users(reactors)
+                    .currentUserReacted(stat.getType() == currentUserReaction)
+                    .lastReactionAt(stat.getLastReactionAt())
+                    .build());
+        }
+
+        return result;
+    }
+
+    /**
+     * Shared with FileServiceImpl / MediaDerivativePipeline so every FileMessage has the same URLs
+     */
+    static FileMessage convertToFileMessage(FileAttachment fileAttachment) {
+        if (fileAttachment == null) {
+            return null;
+        }
+
+        String fileUrl = "/api/files/" + fileAttachment.getId();
+        return FileMessage.builder()
+                .id(fileAttachment.getId())
+                .fileName(fileAttachment.getFileName())
+                .originalFileName(fileAttachment.getOriginalFileName())
+                .downloadUrl(fileUrl + "/download")
+                .fileType(fileAttachment.getFileType())
+                .fileSize(fileAttachment.getFileSize())
+                .mimeType(fileAttachment.getMimeType())
+                .thumbnailUrl(fileAttachment.getThumbnailKey() != null ? fileUrl + "/thumbnail" : null)
+                .previewUrl(fileAttachment.getPreviewKey() != null ? fileUrl + "/preview" : null)
+                .width(fileAttachment.getWidth())
+                .height(fileAttachment.getHeight())
+                .build();
+    }
+
+    private Long getCurrentUserId() {
+        try {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
+                return ((UserPrincipal) authentication.getPrincipal()).getId();
+            }
+        } catch (Exception e) {
+            // Ignore
+        }
+        return null;
+    }
+}
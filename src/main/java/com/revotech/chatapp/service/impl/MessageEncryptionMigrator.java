@@ -0,0 +1,90 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.MessageRepository.StoredContent;
+import com.revotech.chatapp.service.EncryptionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Đưa nội dung message đã lưu về cấu hình encryption hiện tại: encrypt row còn plaintext, encrypt lại row
+ * dùng key đã retire, hoặc giải mã về plaintext khi encryption đã tắt.
+ *
+ * Keyset theo id, mỗi batch một transaction; chạy lại sau khi bị ngắt chỉ xử lý các row còn lại.
+ * Ghi bằng UPDATE có điều kiện trên content cũ, nên chạy được khi app đang nhận traffic.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageEncryptionMigrator {
+
+    private final MessageRepository messageRepository;
+    private final EncryptionService encryptionService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.encryption.migration.batch-size:500}")
+    private int batchSize;
+
+    public int reseal() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long startNanos = System.nanoTime();
+        long[] afterId = {0L};
+        int resealed = 0;
+
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> {
+                List<StoredContent> rows = messageRepository.findStoredContentAfter(afterId[0], PageRequest.of(0, batchSize));
+                if (rows.isEmpty()) {
+                    return null;
+                }
+
+                int changed = 0;
+                for (StoredContent row : rows) {
+                    // Bản sao tách rời: không load entity nên không ghi đè pin/status/edit đang diễn ra
+                    Message message = Message.builder()
+                            .id(row.getId())
+                            .messageId(row.getMessageId())
+                            .content(row.getContent())
+                            .encryptedContent(row.getEncryptedContent())
+                            .build();
+                    if (!encryptionService.needsReseal(message)) {
+                        continue;
+                    }
+                    String content = encryptionService.contentOf(message);
+                    if (content == null) {
+                        // Không giải mã được (đã log), giữ nguyên row
+                        continue;
+                    }
+                    message.setContent(content);
+                    encryptionService.seal(message);
+
+                    // Row bị edit sau khi đọc thì update không khớp: bản edit đã seal bằng cấu hình hiện tại
+                    int updated = row.getEncryptedContent() != null
+                            ? messageRepository.replaceEncryptedContent(row.getId(), row.getEncryptedContent(),
+                                    message.getContent(), message.getEncryptedContent())
+                            : messageRepository.encryptPlainContent(row.getId(), message.getEncryptedContent());
+                    changed += updated;
+                }
+                afterId[0] = rows.get(rows.size() - 1).getId();
+                return changed;
+            });
+            if (batch == null) {
+                break;
+            }
+            resealed += batch;
+            log.info("Re-sealed {} messages so far (message id {})", resealed, afterId[0]);
+        }
+
+        log.info("Message encryption migration finished: {} messages in {} ms", resealed,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        return resealed;
+    }
+}
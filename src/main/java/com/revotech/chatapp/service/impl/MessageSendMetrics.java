@@ -0,0 +1,54 @@
+package com.revotech.chatapp.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Send latency chia theo phase (save -> assemble -> broadcast), tag scope=room|conversation.
+ * Không tag theo room / conversation id để giữ cardinality cố định.
+ */
+@Component
+public class MessageSendMetrics {
+
+    public static final String ROOM = "room";
+    public static final String CONVERSATION = "conversation";
+
+    private final Timer roomSave;
+    private final Timer roomAssemble;
+    private final Timer roomBroadcast;
+    private final Timer conversationSave;
+    private final Timer conversationAssemble;
+    private final Timer conversationBroadcast;
+
+    public MessageSendMetrics(MeterRegistry meterRegistry) {
+        roomSave = timer(meterRegistry, ROOM, "save");
+        roomAssemble = timer(meterRegistry, ROOM, "assemble");
+        roomBroadcast = timer(meterRegistry, ROOM, "broadcast");
+        conversationSave = timer(meterRegistry, CONVERSATION, "save");
+        conversationAssemble = timer(meterRegistry, CONVERSATION, "assemble");
+        conversationBroadcast = timer(meterRegistry, CONVERSATION, "broadcast");
+    }
+
+    public <T> T save(String scope, Supplier<T> action) {
+        return (ROOM.equals(scope) ? roomSave : conversationSave).record(action);
+    }
+
+    public <T> T assemble(String scope, Supplier<T> action) {
+        return (ROOM.equals(scope) ? roomAssemble : conversationAssemble).record(action);
+    }
+
+    public void broadcast(String scope, Runnable action) {
+        (ROOM.equals(scope) ? roomBroadcast : conversationBroadcast).record(action);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String scope, String phase) {
+        return Timer.builder("chat.message.send")
+                .description("Message send latency by phase")
+                .tag("scope", scope)
+                .tag("phase", phase)
+                .register(meterRegistry);
+    }
+}
@@ -3,35 +3,38 @@ package com.revotech.chatapp.service.impl;
 import com.revotech.chatapp.exception.AppException;
 import com.revotech.chatapp.model.dto.ChatMessage;
 import com.revotech.chatapp.model.dto.MessageReactionDTO;
-import com.revotech.chatapp.model.dto.TypingIndicator;
-import com.revotech.chatapp.model.dto.UserSummaryDTO;
+import com.revotech.chatapp.model.dto.MessageSearchResult;
+import com.revotech.chatapp.model.dto.ReactionDelta;
 import com.revotech.chatapp.model.dto.request.AddReactionRequest;
 import com.revotech.chatapp.model.dto.request.MarkMessageReadRequest;
 import com.revotech.chatapp.model.dto.request.SendMessageRequest;
+import com.revotech.chatapp.model.dto.response.MessageHistoryResponse;
 import com.revotech.chatapp.model.dto.response.WebSocketResponse;
 import com.revotech.chatapp.model.entity.*;
+import com.revotech.chatapp.model.enums.HistoryDirection;
 import com.revotech.chatapp.model.enums.MessageStatus;
 import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.ReactionType;
 import com.revotech.chatapp.repository.*;
-import com.revotech.chatapp.security.UserPrincipal;
+import com.revotech.chatapp.service.EncryptionService;
 import com.revotech.chatapp.service.MessageService;
+import com.revotech.chatapp.service.MessageSearchService;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
 import com.revotech.chatapp.service.UserSessionService;
+import com.revotech.chatapp.util.MessageCursor;
 import com.revotech.chatapp.util.WebSocketSafeBroadcast;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -46,7 +49,6 @@ public class MessageServiceImpl implements MessageService {
     private final RoomRepository roomRepository;
     private final ConversationRepository conversationRepository;
     private final MessageReactionRepository messageReactionRepository;
-    private final SimpMessageSendingOperations messagingTemplate;
     private final RoomMemberRepository roomMemberRepository;
     private final UserSessionService userSessionService;
 
@@ -54,13 +56,25 @@ public class MessageServiceImpl implements MessageService {
     private final Map<String, Set<String>> activeChatSessions = new ConcurrentHashMap<>();
     private final Map<String, Long> sessionToUser = new ConcurrentHashMap<>();
 
-    // Last read tracking for rooms (Discord-style)
-    private final Map<String, Map<Long, LocalDateTime>> lastReadTimestamps = new ConcurrentHashMap<>();
-
     // Message visibility tracking for mobile/web
     private final Map<String, Set<String>> visibleMessages = new ConcurrentHashMap<>();
 
     private final WebSocketSafeBroadcast safeBroadcast;
+    private final MessageAssembler messageAssembler;
+    private final ReactionAggregator reactionAggregator;
+    private final ReadReceiptAggregator readReceiptAggregator;
+    private final ReadCursorService readCursorService;
+    private final UnreadCounterStore unreadCounterStore;
+    private final MessageSearchService messageSearchService;
+    private final MessageSendMetrics sendMetrics;
+    private final BroadcastOutbox broadcastOutbox;
+    private final EncryptionService encryptionService;
+
+    private static final int MAX_HISTORY_LIMIT = 100;
+
+    // Message conversation chưa đọc: người nhận chưa READ
+    private static final List<MessageStatus> UNREAD_STATUSES =
+            List.of(MessageStatus.SENDING, MessageStatus.SENT, MessageStatus.DELIVERED);
 
     @Override
     public void trackUserEnterChat(Long roomId, Long conversationId, Long userId, String sessionId) {
@@ -70,12 +84,8 @@ public class MessageServiceImpl implements MessageService {
                 .add(sessionId);
         sessionToUser.put(sessionId, userId);
 
-        // CHỈ auto-mark cho 1:1 conversations khi user enter
-        if (conversationId != null) {
-            CompletableFuture.runAsync(() -> {
-                autoMarkMessagesAsRead(null, conversationId, userId);
-            });
-        }
+        // 1:1 conversations: mark READ; room: đẩy read cursor tới tin mới nhất
+        autoMarkMessagesAsRead(roomId, conversationId, userId);
 
         log.debug("User {} entered chat {} with session {}", userId, chatKey, sessionId);
     }
@@ -113,23 +123,9 @@ public class MessageServiceImpl implements MessageService {
             }
         }
 
-        // Auto-mark as read for 1:1 conversations nếu message visible
+        // Auto-mark as read for 1:1 conversations nếu message visible (Telegram-style delay trong aggregator)
         if (visible) {
-            CompletableFuture.runAsync(() -> {
-                try {
-                    Thread.sleep(1000); // Telegram-style delay
-                    Message message = messageRepository.findByMessageId(messageId).orElse(null);
-                    if (message != null && message.getConversation() != null &&
-                            !message.getSender().getId().equals(userId)) {
-
-                        message.setStatus(MessageStatus.READ);
-                        messageRepository.save(message);
-                        broadcastReadStatusUpdate(messageId, userId);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            });
+            readReceiptAggregator.scheduleRead(messageId, userId);
         }
     }
 
@@ -168,14 +164,28 @@ public class MessageServiceImpl implements MessageService {
                     .orElseThrow(() -> new AppException("Reply message not found"));
             message.setReplyTo(replyToMessage);
         }
+        encryptionService.seal(message);
 
-        message = messageRepository.save(message);
+        Message unsaved = message;
+        message = sendMetrics.save(MessageSendMetrics.ROOM, () -> {
+            Message saved = messageRepository.save(unsaved);
 
-        // Update room activity
-        room.setLastActivityAt(LocalDateTime.now());
-        roomRepository.save(room);
+            // Update room activity
+            room.setLastActivityAt(LocalDateTime.now());
+            roomRepository.save(room);
+            return saved;
+        });
+        messageSearchService.indexMessage(message);
 
-        ChatMessage chatMessage = convertMessageToDTO(message);
+        List<Long> recipientIds = room.getMembers().stream()
+                .filter(member -> member.getLeftAt() == null)
+                .map(member -> member.getUser().getId())
+                .filter(memberId -> !memberId.equals(senderId))
+                .collect(Collectors.toList());
+        unreadCounterStore.incrementAfterCommit(recipientIds, UnreadCounterStore.roomKey(room.getId()));
+
+        Message saved = message;
+        ChatMessage chatMessage = sendMetrics.assemble(MessageSendMetrics.ROOM, () -> messageAssembler.assemble(saved));
         broadcastMessage(chatMessage);
 
         return chatMessage;
@@ -222,14 +232,22 @@ public class MessageServiceImpl implements MessageService {
                 log.warn("Reply message not found for replyToId: {}", request.getReplyToId());
             }
         }
-        message = messageRepository.save(message);
-        log.debug("Saved message with id: {}, replyToId: {}", message.getId(), message.getReplyTo() != null ? message.getReplyTo().getId() : null);
+        encryptionService.seal(message);
 
-        // Update conversation
-        conversation.setLastMessageAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
+        Message unsaved = message;
+        message = sendMetrics.save(MessageSendMetrics.CONVERSATION, () -> {
+            Message saved = messageRepository.save(unsaved);
+
+            // Update conversation
+            conversation.setLastMessageAt(LocalDateTime.now());
+            conversationRepository.save(conversation);
+            return saved;
+        });
+        messageSearchService.indexMessage(message);
+        log.debug("Saved message with id: {}, replyToId: {}", message.getId(), message.getReplyTo() != null ? message.getReplyTo().getId() : null);
 
-        ChatMessage chatMessage = convertMessageToDTO(message);
+        Message saved = message;
+        ChatMessage chatMessage = sendMetrics.assemble(MessageSendMetrics.CONVERSATION, () -> messageAssembler.assemble(saved));
         broadcastMessage(chatMessage);
 
         // Enhanced delivery & read logic
@@ -237,12 +255,13 @@ public class MessageServiceImpl implements MessageService {
                 ? conversation.getParticipant2Id()
                 : conversation.getParticipant1Id();
 
-        final String messageId = message.getMessageId();
+        unreadCounterStore.incrementAfterCommit(List.of(recipientId),
+                UnreadCounterStore.conversationKey(conversation.getId()));
+
         final Long finalRecipientId = recipientId;
-        final Long finalMessageEntityId = message.getId();
 
         // Check recipient status using session tracking
-        boolean recipientHasActiveSessions = userSessionService.getUserSessions(finalRecipientId).size() > 0;
+        boolean recipientHasActiveSessions = userSessionService.isUserOnline(finalRecipientId);
 
         String chatKey = "conversation:" + conversation.getId();
         Set<String> activeSessions = activeChatSessions.get(chatKey);
@@ -253,38 +272,12 @@ public class MessageServiceImpl implements MessageService {
                         .anyMatch(userId -> finalRecipientId.equals(userId));
 
         if (recipientHasActiveSessions) {
-            // Mark as DELIVERED after short delay
-            CompletableFuture.runAsync(() -> {
-                try {
-                    Thread.sleep(200); // Short delay for delivery
-                    messageRepository.findById(finalMessageEntityId).ifPresent(msg -> {
-                        if (msg.getStatus() == MessageStatus.SENT) {
-                            msg.setStatus(MessageStatus.DELIVERED);
-                            messageRepository.save(msg);
-                            broadcastStatusUpdate(messageId, MessageStatus.DELIVERED);
-                        }
-                    });
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            });
+            // DELIVERED / READ được ghi theo batch bởi ReadReceiptAggregator
+            readReceiptAggregator.scheduleDelivered(message.getMessageId(), finalRecipientId);
 
             // Mark as READ if recipient is actively viewing conversation
             if (recipientActiveInConversation) {
-                CompletableFuture.runAsync(() -> {
-                    try {
-                        Thread.sleep(1000); // Realistic reading delay
-                        messageRepository.findById(finalMessageEntityId).ifPresent(msg -> {
-                            if (msg.getStatus() != MessageStatus.READ) {
-                                msg.setStatus(MessageStatus.READ);
-                                messageRepository.save(msg);
-                                broadcastReadStatusUpdate(messageId, finalRecipientId);
-                            }
-                        });
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                });
+                readReceiptAggregator.scheduleRead(message.getMessageId(), finalRecipientId);
             }
         }
 
@@ -293,97 +286,103 @@ public class MessageServiceImpl implements MessageService {
 
     @Override
     public void markMessageAsRead(MarkMessageReadRequest request, Long userId) {
+        log.debug("Processing mark as read: messageId={}, userId={}", request.getMessageId(), userId);
 
-        log.info("Processing mark as read: messageId={}, userId={}",
-                request.getMessageId(), userId);
-
-        Message message = messageRepository.findByMessageId(request.getMessageId())
-                .orElseThrow(() -> new AppException("Message not found"));
+        // Aggregator bỏ qua tin của chính mình, tin room và tin đã READ khi flush
+        readReceiptAggregator.markRead(List.of(request.getMessageId()), userId);
+    }
 
-        // Don't mark own messages
-        if (message.getSender().getId().equals(userId)) {
-            return;
-        }
+    @Override
+    public void autoMarkMessagesAsRead(Long roomId, Long conversationId, Long userId) {
+        if (conversationId != null) {
+            // Chỉ lấy messageId, update + broadcast MESSAGE_BATCH_READ do aggregator làm theo batch
+            List<String> unreadMessageIds = messageRepository.findMessageIdsInConversationWithStatus(
+                    conversationId, userId, List.of(MessageStatus.SENDING, MessageStatus.SENT, MessageStatus.DELIVERED));
 
-        // Only handle conversation messages (1:1 chat)
-        if (message.getConversation() != null) {
-            // Avoid duplicate updates
-            if (message.getStatus() == MessageStatus.READ) {
-                return;
+            if (!unreadMessageIds.isEmpty()) {
+                readReceiptAggregator.markRead(unreadMessageIds, userId);
+                log.debug("Queued {} messages as read in conversation {}", unreadMessageIds.size(), conversationId);
             }
+        } else if (roomId != null) {
+            // Room: Discord-style read cursor, ghi DB theo batch
+            readCursorService.advanceToLatest(roomId, userId);
 
-            // Update message status
-            message.setStatus(MessageStatus.READ);
-            messageRepository.save(message);
-
-            log.info("Message status updated to READ, broadcasting receipt");
-            // CRITICAL FIX: Ensure read receipt is broadcasted
-            broadcastReadStatusUpdate(message.getMessageId(), userId);
-
-            log.info("Read receipt broadcast completed for message {}", request.getMessageId());
+            log.debug("Advanced read cursor for user {} in room {}", userId, roomId);
         }
     }
 
     @Override
-    public void autoMarkMessagesAsRead(Long roomId, Long conversationId, Long userId) {
-        if (conversationId != null) {
-            // Get unread messages in conversation
-            List<Message> unreadMessages = messageRepository
-                    .findUnreadMessagesInConversation(conversationId, userId);
-
-            if (!unreadMessages.isEmpty()) {
-                // Batch update for better performance
-                List<String> markedMessageIds = new ArrayList<>();
-
-                for (Message message : unreadMessages) {
-                    if (!message.getSender().getId().equals(userId) &&
-                            message.getStatus() != MessageStatus.READ) {
-
-                        message.setStatus(MessageStatus.READ);
-                        messageRepository.save(message);
-                        markedMessageIds.add(message.getMessageId());
-                    }
-                }
+    public void markRoomAsRead(Long roomId, String messageId, Long userId) {
+        if (roomMemberRepository.findActiveRoomMember(roomId, userId).isEmpty()) {
+            throw new AppException("You are not a member of this room");
+        }
 
-                // Broadcast batch read status update
-                if (!markedMessageIds.isEmpty()) {
-                    broadcastBatchReadStatusUpdate(markedMessageIds, userId);
-                    log.debug("Auto-marked {} messages as read in conversation {}",
-                            markedMessageIds.size(), conversationId);
-                }
-            }
-        } else if (roomId != null) {
-            // Room: only update timestamp
-            String roomKey = "room:" + roomId;
-            lastReadTimestamps.computeIfAbsent(roomKey, k -> new ConcurrentHashMap<>())
-                    .put(userId, LocalDateTime.now());
+        if (messageId == null) {
+            readCursorService.advanceToLatest(roomId, userId);
+            return;
+        }
 
-            log.debug("Auto-updated last read timestamp for user {} in room {}", userId, roomId);
+        Message message = messageRepository.findByMessageId(messageId)
+                .orElseThrow(() -> new AppException("Message not found"));
+        if (message.getRoom() == null || !message.getRoom().getId().equals(roomId)) {
+            throw new AppException("Message does not belong to this room");
         }
+        readCursorService.advance(roomId, userId, message.getId());
     }
 
     @Override
     public Long getUnreadMessagesCount(Long roomId, Long conversationId, Long userId) {
         if (roomId != null) {
-            // Discord-style: count based on last read timestamp
-            String roomKey = "room:" + roomId;
-            LocalDateTime lastRead = lastReadTimestamps
-                    .getOrDefault(roomKey, Collections.emptyMap())
-                    .get(userId);
-
-            if (lastRead == null) {
-                return messageRepository.countByRoomIdAndIsDeletedFalse(roomId);
-            } else {
-                return messageRepository.countMessagesAfterTimestamp(roomId, lastRead, userId);
-            }
+            // Discord-style: count based on read cursor
+            return readCursorService.getUnreadCount(roomId, userId);
         } else if (conversationId != null) {
             // WhatsApp-style: count unread status messages
-            return messageRepository.countUnreadMessagesInConversation(conversationId, userId);
+            String chatKey = UnreadCounterStore.conversationKey(conversationId);
+            Long cached = unreadCounterStore.get(userId, chatKey);
+            if (cached != null) {
+                return cached;
+            }
+
+            Long count = countUnreadInConversation(conversationId, userId);
+            unreadCounterStore.set(userId, chatKey, count);
+            return count;
         }
 
         return 0L;
     }
 
+    @Override
+    public Long countUnreadInConversation(Long conversationId, Long userId) {
+        return messageRepository.countUnreadInConversation(conversationId, userId, UNREAD_STATUSES);
+    }
+
+    @Override
+    public Map<Long, Long> getUnreadConversationCounts(Collection<Long> conversationIds, Long userId) {
+        Map<String, Long> counters = unreadCounterStore.getAll(userId);
+        Map<Long, Long> counts = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long conversationId : conversationIds) {
+            Long cached = counters.get(UnreadCounterStore.conversationKey(conversationId));
+            if (cached != null) {
+                counts.put(conversationId, cached);
+            } else {
+                missing.add(conversationId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, Long> counted = messageRepository.countUnreadByConversation(missing, userId, UNREAD_STATUSES).stream()
+                    .collect(Collectors.toMap(MessageRepository.ConversationUnread::getConversationId,
+                            MessageRepository.ConversationUnread::getUnread));
+            for (Long conversationId : missing) {
+                long count = counted.getOrDefault(conversationId, 0L);
+                counts.put(conversationId, count);
+                unreadCounterStore.set(userId, UnreadCounterStore.conversationKey(conversationId), count);
+            }
+        }
+        return counts;
+    }
+
     @Override
     public void cleanupUserSessionFromAllChats(Long userId, String sessionId) {
         // Cleanup từ active sessions
@@ -422,12 +421,14 @@ public class MessageServiceImpl implements MessageService {
         }
 
         message.setContent(newContent);
+        encryptionService.seal(message);
         message.setIsEdited(true);
         message.setEditedAt(LocalDateTime.now());
 
         message = messageRepository.save(message);
+        messageSearchService.indexMessage(message);
 
-        ChatMessage chatMessage = convertMessageToDTO(message);
+        ChatMessage chatMessage = messageAssembler.assemble(message);
 
         // Broadcast updated message
         WebSocketResponse<ChatMessage> response = WebSocketResponse.<ChatMessage>builder()
@@ -441,7 +442,7 @@ public class MessageServiceImpl implements MessageService {
                 "/topic/room/" + message.getRoom().getId() :
                 "/topic/conversation/" + message.getConversation().getId();
 
-        messagingTemplate.convertAndSend(destination, response);
+        broadcastOutbox.append(destination, response);
 
         return chatMessage;
     }
@@ -460,6 +461,7 @@ public class MessageServiceImpl implements MessageService {
         message.setDeletedBy(userId);
 
         messageRepository.save(message);
+        messageSearchService.removeMessage(message.getId());
 
         // Broadcast message deletion
         WebSocketResponse<String> response = WebSocketResponse.<String>builder()
@@ -473,7 +475,7 @@ public class MessageServiceImpl implements MessageService {
                 "/topic/room/" + message.getRoom().getId() :
                 "/topic/conversation/" + message.getConversation().getId();
 
-        messagingTemplate.convertAndSend(destination, response);
+        broadcastOutbox.append(destination, response);
 
         log.info("Message {} deleted by user {}", messageId, userId);
     }
@@ -498,7 +500,7 @@ public class MessageServiceImpl implements MessageService {
             throw new AppException("You don't have access to this message");
         }
 
-        return convertMessageToDTO(message);
+        return messageAssembler.assemble(message);
     }
 
     @Override
@@ -515,15 +517,48 @@ public class MessageServiceImpl implements MessageService {
             throw new AppException("You are not a member of this room");
         }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
+        // Thứ tự đã nằm trong query (createdAt DESC, id DESC)
+        Pageable pageable = PageRequest.of(page, size);
+
+        return messageAssembler.assemblePage(messageRepository.findIdsByRoomId(roomId, pageable));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MessageHistoryResponse getRoomHistory(Long roomId, Long userId, String cursor, HistoryDirection direction, int limit) {
+        Room room = roomRepository.findById(roomId)
+                .orElseThrow(() -> new AppException("Room not found"));
+
+        // Check if user is member
+        boolean isMember = room.getMembers().stream()
+                .anyMatch(member -> member.getUser().getId().equals(userId));
+
+        if (!isMember) {
+            throw new AppException("You are not a member of this room");
+        }
+
+        return loadHistory(roomId, null, cursor, direction, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MessageHistoryResponse getConversationHistory(Long conversationId, Long userId, String cursor, HistoryDirection direction, int limit) {
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new AppException("Conversation not found"));
+
+        // Check if user is participant
+        if (!userId.equals(conversation.getParticipant1Id()) &&
+                !userId.equals(conversation.getParticipant2Id())) {
+            throw new AppException("You are not a participant in this conversation");
+        }
 
-        return messageRepository.findByRoomIdAndIsDeletedFalse(roomId, pageable)
-                .map(this::convertMessageToDTO);
+        return loadHistory(null, conversationId, cursor, direction, limit);
     }
 
     @Override
     public void addReaction(AddReactionRequest request, Long userId) {
-        Message message = messageRepository.findByMessageId(request.getMessageId())
+        // Row lock: các reaction trên cùng message cập nhật stats lần lượt
+        Message message = messageRepository.findByMessageIdForUpdate(request.getMessageId())
                 .orElseThrow(() -> new AppException("Message not found"));
 
         User user = userRepository.findById(userId)
@@ -531,11 +566,23 @@ public class MessageServiceImpl implements MessageService {
 
         // Check if reaction already exists
         var existingReaction = messageReactionRepository.findByMessageAndUser(message, user);
+        List<ReactionDelta> deltas = new ArrayList<>(2);
+        String action;
 
         if (existingReaction.isPresent()) {
             MessageReaction reaction = existingReaction.get();
+            ReactionType previousType = reaction.getType();
+            if (previousType == request.getType()) {
+                return;
+            }
+
             reaction.setType(request.getType());
             messageReactionRepository.save(reaction);
+
+            reactionAggregator.decrement(message.getId(), previousType, userId);
+            reactionAggregator.increment(message.getId(), request.getType(), userId, LocalDateTime.now());
+            deltas.add(reactionDelta(request.getMessageId(), userId, previousType, -1));
+            action = "CHANGE";
         } else {
             MessageReaction reaction = MessageReaction.builder()
                     .message(message)
@@ -543,54 +590,57 @@ public class MessageServiceImpl implements MessageService {
                     .type(request.getType())
                     .build();
             messageReactionRepository.save(reaction);
-        }
 
-        // Broadcast reaction update
-        List<MessageReactionDTO> reactions = getMessageReactions(request.getMessageId());
-
-        Map<String, Object> responseData = new HashMap<>();
-        responseData.put("messageId", request.getMessageId());
-        responseData.put("reactions", reactions);
-
-        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
-                .type("REACTION")
-                .action("ADD")
-                .data(responseData)
-                .senderId(userId)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        String destination = message.getRoom() != null ?
-                "/topic/room/" + message.getRoom().getId() :
-                "/topic/conversation/" + message.getConversation().getId();
+            reactionAggregator.increment(message.getId(), request.getType(), userId, LocalDateTime.now());
+            action = "ADD";
+        }
+        deltas.add(reactionDelta(request.getMessageId(), userId, request.getType(), 1));
 
-        messagingTemplate.convertAndSend(destination, response);
+        broadcastReactionDeltas(message, action, deltas, userId);
 
         log.info("Reaction {} added to message {} by user {}", request.getType(), request.getMessageId(), userId);
     }
 
     @Override
     public void removeReaction(String messageId, Long userId) {
-        Message message = messageRepository.findByMessageId(messageId)
+        Message message = messageRepository.findByMessageIdForUpdate(messageId)
                 .orElseThrow(() -> new AppException("Message not found"));
 
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new AppException("User not found"));
 
-        messageReactionRepository.findByMessageAndUser(message, user)
-                .ifPresent(messageReactionRepository::delete);
+        var existingReaction = messageReactionRepository.findByMessageAndUser(message, user);
+        if (existingReaction.isEmpty()) {
+            return;
+        }
 
-        // Broadcast reaction update
-        List<MessageReactionDTO> reactions = getMessageReactions(messageId);
+        ReactionType type = existingReaction.get().getType();
+        messageReactionRepository.delete(existingReaction.get());
+        reactionAggregator.decrement(message.getId(), type, userId);
 
-        Map<String, Object> responseData = new HashMap<>();
-        responseData.put("messageId", messageId);
-        responseData.put("reactions", reactions);
+        broadcastReactionDeltas(message, "REMOVE", List.of(reactionDelta(messageId, userId, type, -1)), userId);
 
-        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
+        log.info("Reaction removed from message {} by user {}", messageId, userId);
+    }
+
+    private static ReactionDelta reactionDelta(String messageId, Long userId, ReactionType type, int delta) {
+        return ReactionDelta.builder()
+                .messageId(messageId)
+                .userId(userId)
+                .type(type)
+                .emoji(type.getEmoji())
+                .delta(delta)
+                .build();
+    }
+
+    /**
+     * Chỉ gửi phần thay đổi (+1 / -1 theo loại), client cộng vào count đang hiển thị thay vì nhận lại cả danh sách
+     */
+    private void broadcastReactionDeltas(Message message, String action, List<ReactionDelta> deltas, Long userId) {
+        WebSocketResponse<List<ReactionDelta>> response = WebSocketResponse.<List<ReactionDelta>>builder()
                 .type("REACTION")
-                .action("REMOVE")
-                .data(responseData)
+                .action(action)
+                .data(deltas)
                 .senderId(userId)
                 .timestamp(LocalDateTime.now())
                 .build();
@@ -599,49 +649,15 @@ public class MessageServiceImpl implements MessageService {
                 "/topic/room/" + message.getRoom().getId() :
                 "/topic/conversation/" + message.getConversation().getId();
 
-        messagingTemplate.convertAndSend(destination, response);
-
-        log.info("Reaction removed from message {} by user {}", messageId, userId);
+        broadcastOutbox.append(destination, response);
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<MessageReactionDTO> getMessageReactions(String messageId) {
-        Message message = messageRepository.findByMessageId(messageId)
-                .orElse(null);
-
-        if (message == null) {
-            return new ArrayList<>();
-        }
-
-        return message.getReactions().stream()
-                .collect(Collectors.groupingBy(MessageReaction::getType))
-                .entrySet().stream()
-                .map(entry -> {
-                    List<UserSummaryDTO> users = entry.getValue().stream()
-                            .map(reaction -> convertToUserSummary(reaction.getUser()))
-                            .collect(Collectors.toList());
-
-                    // Check if current user reacted with this type
-                    boolean currentUserReacted = false;
-                    if (getCurrentUserId() != null) {
-                        currentUserReacted = entry.getValue().stream()
-                                .anyMatch(reaction -> reaction.getUser().getId().equals(getCurrentUserId()));
-                    }
-
-                    return MessageReactionDTO.builder()
-                            .type(entry.getKey())
-                            .emoji(entry.getKey().getEmoji())
-                            .count((long) entry.getValue().size())
-                            .users(users)
-                            .currentUserReacted(currentUserReacted)
-                            .lastReactionAt(entry.getValue().stream()
-                                    .map(MessageReaction::getCreatedAt)
-                                    .max(LocalDateTime::compareTo)
-                                    .orElse(null))
-                            .build();
-                })
-                .collect(Collectors.toList());
+        return messageRepository.findByMessageId(messageId)
+                .map(message -> messageAssembler.assembleReactions(message.getId()))
+                .orElseGet(ArrayList::new);
     }
 
     @Override
@@ -659,70 +675,35 @@ public class MessageServiceImpl implements MessageService {
                 "/topic/room/" + message.getRoomId() :
                 "/topic/conversation/" + message.getConversationId();
 
-        // Sử dụng safe broadcast thay vì direct call
-        safeBroadcast.safeConvertAndSend(destination, response);
-        log.debug("Message broadcasted to {}", destination);
-    }
-
-    @Override
-    public void notifyTyping(Long roomId, Long conversationId, Long userId, String username, boolean isTyping) {
-        TypingIndicator indicator = TypingIndicator.builder()
-                .userId(userId)
-                .username(username)
-                .roomId(roomId)
-                .conversationId(conversationId)
-                .isTyping(isTyping)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        WebSocketResponse<TypingIndicator> response = WebSocketResponse.<TypingIndicator>builder()
-                .type("TYPING")
-                .action(isTyping ? "START" : "STOP")
-                .data(indicator)
-                .senderId(userId)
-                .senderUsername(username)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        String destination = roomId != null ?
-                "/topic/room/" + roomId :
-                "/topic/conversation/" + conversationId;
-
-        messagingTemplate.convertAndSend(destination, response);
-
-        log.debug("Typing notification sent: {} {} in {}", username, isTyping ? "started" : "stopped", destination);
+        // Gửi sau commit, theo thứ tự trên lane của destination (BroadcastOutbox)
+        String scope = message.getRoomId() != null ? MessageSendMetrics.ROOM : MessageSendMetrics.CONVERSATION;
+        broadcastOutbox.append(destination,
+                () -> sendMetrics.broadcast(scope, () -> safeBroadcast.safeSendPreEncoded(destination, response)));
+        log.debug("Message queued for broadcast to {}", destination);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<ChatMessage> searchMessages(String keyword, Long userId, int page, int size) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-
-        Page<Message> messages = messageRepository.findByContentContainingIgnoreCaseAndIsDeletedFalse(keyword, pageable);
-
-        return messages.map(this::convertMessageToDTO);
+        // Chỉ tìm trong các room/conversation user đang tham gia
+        return searchIndexed(keyword,
+                roomMemberRepository.findActiveRoomIdsByUser(userId),
+                conversationRepository.findAllUserConversationIds(userId),
+                page, size);
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<ChatMessage> searchMessagesInRoom(Long roomId, String keyword, Long userId, int page, int size) {
-        Room room = roomRepository.findById(roomId)
+        roomRepository.findById(roomId)
                 .orElseThrow(() -> new AppException("Room not found"));
 
         // Check if user is member
-        boolean isMember = room.getMembers().stream()
-                .anyMatch(member -> member.getUser().getId().equals(userId));
-
-        if (!isMember) {
+        if (roomMemberRepository.findActiveRoomMember(roomId, userId).isEmpty()) {
             throw new AppException("You are not a member of this room");
         }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
-
-        Page<Message> messages = messageRepository.findByRoomIdAndContentContainingIgnoreCaseAndIsDeletedFalse(
-                roomId, keyword, pageable);
-
-        return messages.map(this::convertMessageToDTO);
+        return searchIndexed(keyword, List.of(roomId), List.of(), page, size);
     }
 
     @Override
@@ -737,12 +718,17 @@ public class MessageServiceImpl implements MessageService {
             throw new AppException("You are not a participant in this conversation");
         }
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
+        return searchIndexed(keyword, List.of(), List.of(conversationId), page, size);
+    }
+
+    private Page<ChatMessage> searchIndexed(String keyword, Collection<Long> roomIds, Collection<Long> conversationIds,
+                                            int page, int size) {
+        MessageSearchResult result = messageSearchService.search(keyword, roomIds, conversationIds, page, size);
 
-        Page<Message> messages = messageRepository.findByConversationIdAndContentContainingIgnoreCaseAndIsDeletedFalse(
-                conversationId, keyword, pageable);
+        List<ChatMessage> messages = messageAssembler.assembleByIds(result.getMessageIds());
+        messages.forEach(message -> message.setHighlight(messageSearchService.highlight(keyword, message.getContent())));
 
-        return messages.map(this::convertMessageToDTO);
+        return new PageImpl<>(messages, PageRequest.of(page, size), result.getTotalHits());
     }
 
     @Override
@@ -789,7 +775,7 @@ public class MessageServiceImpl implements MessageService {
         message = messageRepository.save(message);
 
         // Convert to DTO and broadcast
-        ChatMessage chatMessage = convertMessageToDTO(message);
+        ChatMessage chatMessage = messageAssembler.assemble(message);
 
         // Broadcast pin/unpin update
         WebSocketResponse<ChatMessage> response = WebSocketResponse.<ChatMessage>builder()
@@ -805,7 +791,7 @@ public class MessageServiceImpl implements MessageService {
                 "/topic/room/" + message.getRoom().getId() :
                 "/topic/conversation/" + message.getConversation().getId();
 
-        messagingTemplate.convertAndSend(destination, response);
+        broadcastOutbox.append(destination, response);
 
         log.info("Message {} {} by user {}", messageId, pinned ? "pinned" : "unpinned", userId);
     }
@@ -813,7 +799,7 @@ public class MessageServiceImpl implements MessageService {
     @Override
     @Transactional(readOnly = true)
     public List<ChatMessage> getPinnedMessages(Long roomId, Long conversationId, Long userId) {
-        List<Message> pinnedMessages;
+        List<Long> pinnedMessageIds;
 
         if (roomId != null) {
             Room room = roomRepository.findById(roomId)
@@ -827,7 +813,7 @@ public class MessageServiceImpl implements MessageService {
                 throw new AppException("You are not a member of this room");
             }
 
-            pinnedMessages = messageRepository.findPinnedMessagesByRoomId(roomId);
+            pinnedMessageIds = messageRepository.findPinnedIdsByRoomId(roomId);
         } else if (conversationId != null) {
             Conversation conversation = conversationRepository.findById(conversationId)
                     .orElseThrow(() -> new AppException("Conversation not found"));
@@ -838,14 +824,12 @@ public class MessageServiceImpl implements MessageService {
                 throw new AppException("You are not a participant in this conversation");
             }
 
-            pinnedMessages = messageRepository.findPinnedMessagesByConversationId(conversationId);
+            pinnedMessageIds = messageRepository.findPinnedIdsByConversationId(conversationId);
         } else {
             throw new AppException("Either roomId or conversationId must be provided");
         }
 
-        return pinnedMessages.stream()
-                .map(this::convertMessageToDTO)
-                .collect(Collectors.toList());
+        return messageAssembler.assembleByIds(pinnedMessageIds);
     }
 
     @Override
@@ -873,218 +857,120 @@ public class MessageServiceImpl implements MessageService {
             throw new AppException("You don't have access to this message");
         }
 
-        // Count messages newer than target message (for pagination calculation)
-        Long newerMessagesCount;
-        if (roomId != null) {
-            newerMessagesCount = messageRepository.countMessagesNewerThanInRoom(
-                    roomId, targetMessage.getCreatedAt());
-        } else {
-            newerMessagesCount = messageRepository.countMessagesNewerThanInConversation(
-                    conversationId, targetMessage.getCreatedAt());
-        }
-
-        // Calculate page number (0-based)
-        int pageNumber = (int) (newerMessagesCount / pageSize);
-
-        // Calculate position within page
-        int positionInPage = (int) (newerMessagesCount % pageSize);
-
+        // Client nhảy tới message bằng cursor (history?direction=AROUND), không cần đếm số message mới hơn
         Map<String, Object> result = new HashMap<>();
         result.put("messageId", messageId);
-        result.put("pageNumber", pageNumber);
-        result.put("positionInPage", positionInPage);
+        result.put("cursor", MessageCursor.of(targetMessage).encode());
         result.put("pageSize", pageSize);
         result.put("roomId", roomId);
         result.put("conversationId", conversationId);
-        result.put("totalNewerMessages", newerMessagesCount);
 
         return result;
     }
 
     // Helper methods
-    private Long getCurrentUserId() {
-        try {
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
-                return ((UserPrincipal) authentication.getPrincipal()).getId();
+    private MessageHistoryResponse loadHistory(Long roomId, Long conversationId, String cursorValue,
+                                               HistoryDirection direction, int limit) {
+        int pageLimit = Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+        HistoryDirection mode = direction != null ? direction : HistoryDirection.BEFORE;
+
+        List<Long> ids;
+        boolean hasOlder;
+        boolean hasNewer;
+
+        if (cursorValue == null || cursorValue.isBlank()) {
+            // Không có cursor: trang mới nhất
+            ids = new ArrayList<>(findLatestIds(roomId, conversationId, pageLimit + 1));
+            hasOlder = ids.size() > pageLimit;
+            hasNewer = false;
+            trim(ids, pageLimit);
+        } else {
+            MessageCursor cursor = MessageCursor.decode(cursorValue);
+            switch (mode) {
+                case AFTER -> {
+                    ids = new ArrayList<>(findIdsAfter(roomId, conversationId, cursor, pageLimit + 1));
+                    hasNewer = ids.size() > pageLimit;
+                    hasOlder = true;
+                    trim(ids, pageLimit);
+                    Collections.reverse(ids);
+                }
+                case AROUND -> {
+                    int newerLimit = pageLimit / 2;
+                    int olderLimit = pageLimit - newerLimit;
+                    // id + 1: cùng createdAt thì "id < anchorId + 1" nghĩa là lấy cả chính message anchor
+                    MessageCursor inclusive = new MessageCursor(cursor.getCreatedAt(), cursor.getId() + 1);
+                    List<Long> older = new ArrayList<>(findIdsBefore(roomId, conversationId, inclusive, olderLimit + 1));
+                    List<Long> newer = new ArrayList<>(findIdsAfter(roomId, conversationId, cursor, newerLimit + 1));
+                    hasOlder = older.size() > olderLimit;
+                    hasNewer = newer.size() > newerLimit;
+                    trim(older, olderLimit);
+                    trim(newer, newerLimit);
+                    Collections.reverse(newer);
+                    ids = newer;
+                    ids.addAll(older);
+                }
+                default -> {
+                    ids = new ArrayList<>(findIdsBefore(roomId, conversationId, cursor, pageLimit + 1));
+                    hasOlder = ids.size() > pageLimit;
+                    hasNewer = true;
+                    trim(ids, pageLimit);
+                }
             }
-        } catch (Exception e) {
-            // Ignore
         }
-        return null;
-    }
 
-    private String buildChatKey(Long roomId, Long conversationId) {
-        if (roomId != null) {
-            return "room:" + roomId;
-        } else if (conversationId != null) {
-            return "conversation:" + conversationId;
-        }
-        throw new IllegalArgumentException("Either roomId or conversationId must be provided");
-    }
-
-    private ChatMessage convertMessageToDTO(Message message) {
-        List<MessageReactionDTO> reactions = getMessageReactions(message.getMessageId());
-
-        // Xử lý reply message trước
-        ChatMessage replyToMessage = null;
-        String replyToSenderName = null;
-
-        if (message.getReplyTo() != null) {
-            Message replyMsg = message.getReplyTo();
-            replyToMessage = ChatMessage.builder()
-                    .id(replyMsg.getMessageId()) // Sử dụng messageId cho frontend
-                    .content(replyMsg.getContent())
-                    .senderName(replyMsg.getSender().getFullName())
-                    .senderUsername(replyMsg.getSender().getUsername())
-                    .timestamp(replyMsg.getCreatedAt())
-                    .build();
+        // Cursor lấy từ chính message đã load: id bị xoá giữa hai query thì ids và content lệch nhau
+        List<Message> messages = messageAssembler.loadByIds(ids);
+        List<ChatMessage> content = messageAssembler.assemble(messages);
 
-            replyToSenderName = replyMsg.getSender().getFullName();
+        String newerCursor = null;
+        String olderCursor = null;
+        if (!messages.isEmpty()) {
+            newerCursor = MessageCursor.of(messages.get(0)).encode();
+            olderCursor = MessageCursor.of(messages.get(messages.size() - 1)).encode();
         }
 
-        // Get pinned by user info if message is pinned
-        String pinnedByUsername = null;
-        if (message.getIsPinned() && message.getPinnedBy() != null) {
-            User pinnedByUser = userRepository.findById(message.getPinnedBy()).orElse(null);
-            if (pinnedByUser != null) {
-                pinnedByUsername = pinnedByUser.getUsername();
-            }
-        }
-
-        ChatMessage chatMessage = ChatMessage.builder()
-                .id(message.getMessageId())
-                .content(message.getContent())
-                .senderId(message.getSender().getId())
-                .senderName(message.getSender().getFullName())
-                .senderUsername(message.getSender().getUsername())
-                .senderAvatar(message.getSender().getAvatarUrl())
-                .type(message.getType())
-                .status(message.getStatus())
-                .timestamp(message.getCreatedAt())
-                .roomId(message.getRoom() != null ? message.getRoom().getId() : null)
-                .conversationId(message.getConversation() != null ? message.getConversation().getId() : null)
-                .replyToId(message.getReplyTo() != null ? message.getReplyTo().getMessageId() : null) // Frontend nhận UUID
-                .replyToMessage(replyToMessage)
-                .replyToSenderName(replyToSenderName)
-                .isEdited(message.getIsEdited())
-                .editedAt(message.getEditedAt())
-                .isPinned(message.getIsPinned())
-                .pinnedAt(message.getPinnedAt())
-                .pinnedByUsername(pinnedByUsername)
+        return MessageHistoryResponse.builder()
+                .content(content)
+                .olderCursor(olderCursor)
+                .newerCursor(newerCursor)
+                .hasOlder(hasOlder)
+                .hasNewer(hasNewer)
                 .build();
-
-        // Set reactions
-        chatMessage.setReactions(reactions);
-
-        return chatMessage;
     }
 
-    private UserSummaryDTO convertToUserSummary(User user) {
-        return UserSummaryDTO.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .fullName(user.getFullName())
-                .avatarUrl(user.getAvatarUrl())
-                .isOnline(user.getIsOnline())
-                .lastSeen(user.getLastSeen())
-                .bio(user.getBio())
-                .build();
+    private List<Long> findLatestIds(Long roomId, Long conversationId, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        return roomId != null
+                ? messageRepository.findLatestIdsInRoom(roomId, pageable)
+                : messageRepository.findLatestIdsInConversation(conversationId, pageable);
     }
 
-    private void broadcastBatchReadStatusUpdate(List<String> messageIds, Long readerId) {
-        User reader = userRepository.findById(readerId).orElse(null);
-        if (reader == null || messageIds.isEmpty()) return;
-
-        Map<String, Object> batchReadData = Map.of(
-                "messageIds", messageIds,
-                "readerId", readerId,
-                "readerName", reader.getFullName(),
-                "timestamp", LocalDateTime.now()
-        );
-
-        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
-                .type("MESSAGE_BATCH_READ")
-                .action("UPDATE")
-                .data(batchReadData)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        // Find the sender of the first message to send notification
-        messageRepository.findByMessageId(messageIds.get(0)).ifPresent(message -> {
-            messagingTemplate.convertAndSendToUser(
-                    message.getSender().getUsername(),
-                    "/queue/read-receipts",
-                    response
-            );
-        });
+    private List<Long> findIdsBefore(Long roomId, Long conversationId, MessageCursor cursor, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        return roomId != null
+                ? messageRepository.findIdsInRoomBefore(roomId, cursor.getCreatedAt(), cursor.getId(), pageable)
+                : messageRepository.findIdsInConversationBefore(conversationId, cursor.getCreatedAt(), cursor.getId(), pageable);
     }
 
-    // Simplified broadcast methods for 1:1 conversations only
-    private void broadcastStatusUpdate(String messageId, MessageStatus status) {
-        Map<String, Object> statusData = Map.of(
-                "messageId", messageId,
-                "status", status.name(),
-                "timestamp", LocalDateTime.now()
-        );
-
-        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
-                .type("MESSAGE_STATUS")
-                .action("UPDATE")
-                .data(statusData)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        Message message = messageRepository.findByMessageId(messageId).orElse(null);
-        if (message != null && message.getSender() != null) {
-            // Send to sender for status feedback
-            messagingTemplate.convertAndSendToUser(
-                    message.getSender().getUsername(),
-                    "/queue/message-status",
-                    response
-            );
-        }
+    private List<Long> findIdsAfter(Long roomId, Long conversationId, MessageCursor cursor, int limit) {
+        Pageable pageable = PageRequest.of(0, limit);
+        return roomId != null
+                ? messageRepository.findIdsInRoomAfter(roomId, cursor.getCreatedAt(), cursor.getId(), pageable)
+                : messageRepository.findIdsInConversationAfter(conversationId, cursor.getCreatedAt(), cursor.getId(), pageable);
     }
 
-    private void broadcastReadStatusUpdate(String messageId, Long readerId) {
-        Message message = messageRepository.findByMessageId(messageId).orElse(null);
-        if (message == null) {
-            log.warn("Cannot find message {} for read receipt broadcast", messageId);
-            return;
+    private static void trim(List<Long> ids, int limit) {
+        if (ids.size() > limit) {
+            ids.subList(limit, ids.size()).clear();
         }
+    }
 
-        User reader = userRepository.findById(readerId).orElse(null);
-        if (reader == null) {
-            log.warn("Cannot find reader {} for read receipt broadcast", readerId);
-            return;
+    private String buildChatKey(Long roomId, Long conversationId) {
+        if (roomId != null) {
+            return "room:" + roomId;
+        } else if (conversationId != null) {
+            return "conversation:" + conversationId;
         }
-
-        Map<String, Object> readData = Map.of(
-                "messageId", messageId,
-                "readerId", readerId,
-                "readerName", reader.getFullName(),
-                "timestamp", LocalDateTime.now(),
-                "status", "READ"
-        );
-
-        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
-                .type("MESSAGE_READ")
-                .action("UPDATE")
-                .data(readData)
-                .timestamp(LocalDateTime.now())
-                .build();
-
-        // Send to message sender
-        String senderUsername = message.getSender().getUsername();
-        String destination = "/user/" + senderUsername + "/queue/read-receipts";
-
-        log.info("Broadcasting read receipt to {}: message {} read by {}",
-                destination, messageId, reader.getFullName());
-
-        messagingTemplate.convertAndSendToUser(
-                senderUsername,
-                "/queue/read-receipts",
-                response
-        );
+        throw new IllegalArgumentException("Either roomId or conversationId must be provided");
     }
 }
\ No newline at end of file
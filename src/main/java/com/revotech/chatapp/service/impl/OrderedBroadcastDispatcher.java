@@ -0,0 +1,101 @@
+package com.revotech.chatapp.service.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch broadcast theo lane: mỗi destination (room / conversation) luôn rơi vào cùng một lane,
+ * mỗi lane là một thread duy nhất nên frame của một chat đi ra đúng thứ tự commit,
+ * còn các chat khác nhau được gửi song song trên các lane khác.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderedBroadcastDispatcher {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.broadcast.dispatch-lanes:8}")
+    private int laneCount;
+
+    private ThreadPoolExecutor[] lanes;
+
+    @PostConstruct
+    public void start() {
+        lanes = new ThreadPoolExecutor[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "broadcast-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        Gauge.builder("chat.broadcast.dispatch.backlog", this, OrderedBroadcastDispatcher::backlog)
+                .description("Broadcasts committed but not yet handed to the broker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gửi theo thứ tự trên lane của destination; các delivery trong list giữ nguyên thứ tự
+     */
+    public void dispatch(String destination, Runnable delivery) {
+        lane(destination).execute(() -> deliver(destination, delivery));
+    }
+
+    public void dispatchAll(List<OutboxEntry> entries) {
+        for (OutboxEntry entry : entries) {
+            dispatch(entry.destination(), entry.delivery());
+        }
+    }
+
+    int backlog() {
+        return Arrays.stream(lanes).mapToInt(lane -> lane.getQueue().size()).sum();
+    }
+
+    private ThreadPoolExecutor lane(String destination) {
+        return lanes[Math.floorMod(destination.hashCode(), lanes.length)];
+    }
+
+    private static void deliver(String destination, Runnable delivery) {
+        try {
+            delivery.run();
+        } catch (Exception e) {
+            // Một frame lỗi không được chặn các frame sau trên cùng lane
+            log.error("Broadcast to {} failed: {}", destination, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(5, TimeUnit.SECONDS)) {
+                    lane.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Arrays.stream(lanes).forEach(ThreadPoolExecutor::shutdownNow);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public record OutboxEntry(String destination, Runnable delivery) {
+    }
+}
@@ -0,0 +1,282 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.OnlineUser;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import com.revotech.chatapp.repository.RoomMemberRepository;
+import com.revotech.chatapp.repository.RoomMemberRepository.Membership;
+import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.repository.UserRepository.PresenceLink;
+import com.revotech.chatapp.service.PresenceService;
+import com.revotech.chatapp.service.SessionStore;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presence engine.
+ *
+ * Chuyển trạng thái online / offline chỉ được ghi vào pendingChanges; PresenceFlushTask gom chúng theo chu kỳ:
+ * - OFFLINE chờ offline-grace-ms, reconnect trong khoảng đó (deploy, đổi mạng, F5) thì không ai thấy gì
+ * - mỗi watcher đang online nhận một frame PRESENCE/DIFF tại /user/queue/presence chứa mọi thay đổi
+ *   của những người có trong contact, conversation hoặc room chung với họ - thay cho /topic/user-status gửi cho tất cả
+ * - isOnline / lastSeen được ghi xuống DB bằng bulk update cho cả batch
+ * - trạng thái đã công bố nằm trong SessionStore (chung cho mọi node), nên reconnect sang node khác
+ *   không bị công bố lại, và node cũ không giữ trạng thái ONLINE cũ của user
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceServiceImpl implements PresenceService {
+
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    private final UserRepository userRepository;
+    private final RoomMemberRepository roomMemberRepository;
+    private final WebSocketSafeBroadcast safeBroadcast;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final SessionStore sessionStore;
+    private final UserDirectory userDirectory;
+
+    @Value("${app.presence.offline-grace-ms:5000}")
+    private long offlineGraceMs;
+
+    // userId -> thay đổi mới nhất chưa công bố
+    private final Map<Long, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+
+    private Counter framesCounter;
+    private Counter suppressedCounter;
+
+    @PostConstruct
+    public void init() {
+        framesCounter = Counter.builder("chat.presence.frames")
+                .description("Presence diff frames sent to watchers")
+                .register(meterRegistry);
+        suppressedCounter = Counter.builder("chat.presence.suppressed")
+                .description("Presence transitions cancelled by a reconnect within the grace period")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void markOnline(Long userId) {
+        pendingChanges.put(userId, new PendingChange(true, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void markOffline(Long userId) {
+        pendingChanges.put(userId, new PendingChange(false, System.currentTimeMillis()));
+    }
+
+    @Override
+    public int flushChanges() {
+        return flush(false);
+    }
+
+    /**
+     * ignoreGrace: lúc shutdown, OFFLINE còn trong grace cũng được công bố - node này sẽ không còn tick nào nữa
+     */
+    private int flush(boolean ignoreGrace) {
+        if (pendingChanges.isEmpty()) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<Long, Boolean> changes = new HashMap<>();
+
+        for (Map.Entry<Long, PendingChange> entry : pendingChanges.entrySet()) {
+            PendingChange change = entry.getValue();
+            if (!ignoreGrace && !change.online() && now - change.at() < offlineGraceMs) {
+                continue; // còn trong grace, có thể reconnect
+            }
+            // Chỉ xoá đúng thay đổi đã đọc - markOnline/markOffline mới hơn sẽ được xử lý ở tick sau
+            if (!pendingChanges.remove(entry.getKey(), change)) {
+                continue;
+            }
+
+            if (!change.online() && isOnlineElsewhere(entry.getKey())) {
+                suppressedCounter.increment();
+                continue;
+            }
+
+            if (!announce(entry.getKey(), change.online())) {
+                suppressedCounter.increment();
+                continue;
+            }
+            changes.put(entry.getKey(), change.online());
+        }
+
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        persist(changes);
+        int frames = publish(changes);
+        log.debug("Presence flush: {} changes, {} frames", changes.size(), frames);
+        return changes.size();
+    }
+
+    /**
+     * false nếu trạng thái này đã được công bố (bởi node này hoặc node khác)
+     */
+    private boolean announce(Long userId, boolean online) {
+        try {
+            return sessionStore.announce(userId, online);
+        } catch (Exception e) {
+            // Store lỗi: công bố thừa còn hơn bỏ sót
+            log.warn("Could not record announced presence of user {}: {}", userId, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Multi-node: user có thể đã reconnect vào node khác trong lúc grace
+     */
+    private boolean isOnlineElsewhere(Long userId) {
+        try {
+            return sessionStore.isOnline(userId);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void persist(Map<Long, Boolean> changes) {
+        List<Long> online = new ArrayList<>();
+        List<Long> offline = new ArrayList<>();
+        changes.forEach((userId, isOnline) -> (isOnline ? online : offline).add(userId));
+        LocalDateTime now = LocalDateTime.now();
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (List<Long> chunk : chunks(online)) {
+                    userRepository.updatePresence(chunk, true, now);
+                }
+                for (List<Long> chunk : chunks(offline)) {
+                    userRepository.updatePresence(chunk, false, now);
+                }
+            });
+        } catch (Exception e) {
+            // Chỉ là trạng thái hiển thị; lần connect / disconnect sau sẽ ghi lại
+            log.error("Failed to persist presence for {} users", changes.size(), e);
+        }
+    }
+
+    private int publish(Map<Long, Boolean> changes) {
+        Map<Long, Set<Long>> subjectsByWatcher = findWatchers(changes.keySet());
+
+        subjectsByWatcher.keySet().retainAll(sessionStore.filterOnline(subjectsByWatcher.keySet()));
+        if (subjectsByWatcher.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> userIds = new HashSet<>(subjectsByWatcher.keySet());
+        userIds.addAll(changes.keySet());
+        Map<Long, UserDirectory.Entry> users = userDirectory.getAll(userIds);
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, OnlineUser> diffs = new HashMap<>();
+        changes.forEach((userId, isOnline) -> diffs.put(userId, OnlineUser.builder()
+                .userId(userId)
+                .username(username(users, userId))
+                .status(isOnline ? "ONLINE" : "OFFLINE")
+                .lastSeen(isOnline ? null : now)
+                .build()));
+
+        int frames = 0;
+        for (Map.Entry<Long, Set<Long>> entry : subjectsByWatcher.entrySet()) {
+            String watcher = username(users, entry.getKey());
+            if (watcher == null) {
+                continue;
+            }
+
+            List<OnlineUser> batch = entry.getValue().stream().map(diffs::get).toList();
+            WebSocketResponse<List<OnlineUser>> response = WebSocketResponse.<List<OnlineUser>>builder()
+                    .type("PRESENCE")
+                    .action("DIFF")
+                    .data(batch)
+                    .timestamp(now)
+                    .build();
+
+            safeBroadcast.safeConvertAndSendToUser(watcher, "/queue/presence", response);
+            frames++;
+        }
+
+        framesCounter.increment(frames);
+        return frames;
+    }
+
+    /**
+     * watcher -> các subject đã thay đổi mà watcher cần biết (contact, conversation 1-1, room chung)
+     */
+    private Map<Long, Set<Long>> findWatchers(Collection<Long> subjectIds) {
+        Map<Long, Set<Long>> subjectsByWatcher = new HashMap<>();
+
+        for (List<Long> chunk : chunks(subjectIds)) {
+            List<PresenceLink> links = new ArrayList<>();
+            links.addAll(userRepository.findContactWatchers(chunk));
+            links.addAll(userRepository.findContactsOfSubjects(chunk));
+            links.addAll(userRepository.findConversationWatchersAsFirst(chunk));
+            links.addAll(userRepository.findConversationWatchersAsSecond(chunk));
+            for (PresenceLink link : links) {
+                addLink(subjectsByWatcher, link.getWatcherId(), link.getSubjectId());
+            }
+
+            // Room chung: room của subject -> member của room
+            Map<Long, List<Long>> subjectsByRoom = new HashMap<>();
+            for (Membership membership : roomMemberRepository.findActiveMembershipsByUsers(chunk)) {
+                subjectsByRoom.computeIfAbsent(membership.getRoomId(), id -> new ArrayList<>()).add(membership.getUserId());
+            }
+            for (List<Long> rooms : chunks(subjectsByRoom.keySet())) {
+                for (Membership member : roomMemberRepository.findActiveMembershipsByRooms(rooms)) {
+                    for (Long subjectId : subjectsByRoom.get(member.getRoomId())) {
+                        addLink(subjectsByWatcher, member.getUserId(), subjectId);
+                    }
+                }
+            }
+        }
+        return subjectsByWatcher;
+    }
+
+    private static void addLink(Map<Long, Set<Long>> subjectsByWatcher, Long watcherId, Long subjectId) {
+        if (watcherId != null && !watcherId.equals(subjectId)) {
+            subjectsByWatcher.computeIfAbsent(watcherId, id -> new HashSet<>()).add(subjectId);
+        }
+    }
+
+    private static String username(Map<Long, UserDirectory.Entry> users, Long userId) {
+        UserDirectory.Entry user = users.get(userId);
+        return user != null ? user.username() : null;
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> list = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += QUERY_CHUNK_SIZE) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + QUERY_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flush(true);
+        } catch (Exception e) {
+            log.warn("Could not flush presence on shutdown: {}", e.getMessage());
+        }
+    }
+
+    private record PendingChange(boolean online, long at) {
+    }
+}
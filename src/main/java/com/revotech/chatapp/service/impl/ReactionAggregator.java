@@ -0,0 +1,183 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.MessageReaction;
+import com.revotech.chatapp.model.entity.MessageReactionStat;
+import com.revotech.chatapp.model.enums.ReactionType;
+import com.revotech.chatapp.repository.MessageReactionRepository;
+import com.revotech.chatapp.repository.MessageReactionRepository.UserReaction;
+import com.revotech.chatapp.repository.MessageReactionStatRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregate reaction theo (message, type) trong bảng message_reaction_stats: count + vài reactor gần nhất.
+ *
+ * Add / remove chỉ đọc-sửa-ghi đúng một row stat thay vì load lại toàn bộ reaction của message;
+ * caller phải giữ row lock của message (MessageRepository.findByMessageIdForUpdate) để các thay đổi
+ * trên cùng message không đè nhau. Page tin nhắn chỉ cần một query stats cho cả page.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReactionAggregator {
+
+    private final MessageReactionStatRepository statRepository;
+    private final MessageReactionRepository messageReactionRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.reactions.recent-users:3}")
+    private int recentUsers;
+
+    @Value("${app.reactions.rebuild-batch-size:500}")
+    private int rebuildBatchSize;
+
+    public void increment(Long messageId, ReactionType type, Long userId, LocalDateTime reactedAt) {
+        MessageReactionStat stat = statRepository.findByMessageIdAndType(messageId, type)
+                .orElseGet(() -> MessageReactionStat.builder()
+                        .messageId(messageId)
+                        .type(type)
+                        .count(0L)
+                        .build());
+
+        List<Long> recent = new ArrayList<>(recentUserIds(stat));
+        recent.remove(userId);
+        recent.add(0, userId);
+
+        stat.setCount(stat.getCount() + 1);
+        stat.setRecentUserIds(formatIds(recent.subList(0, Math.min(recent.size(), recentUsers))));
+        stat.setLastReactionAt(reactedAt);
+        statRepository.save(stat);
+    }
+
+    /**
+     * Gọi sau khi reaction đã bị xoá / đổi type, để query bù recent list không còn thấy reaction cũ
+     */
+    public void decrement(Long messageId, ReactionType type, Long userId) {
+        Optional<MessageReactionStat> existing = statRepository.findByMessageIdAndType(messageId, type);
+        if (existing.isEmpty()) {
+            log.debug("No reaction stat for message {} type {}, skipping decrement", messageId, type);
+            return;
+        }
+
+        MessageReactionStat stat = existing.get();
+        long count = stat.getCount() - 1;
+        if (count <= 0) {
+            statRepository.delete(stat);
+            return;
+        }
+
+        List<Long> recent = new ArrayList<>(recentUserIds(stat));
+        if (recent.remove(userId) && recent.size() < Math.min(count, recentUsers)) {
+            recent = messageReactionRepository.findRecentUserIds(messageId, type, PageRequest.of(0, recentUsers));
+        }
+
+        stat.setCount(count);
+        stat.setRecentUserIds(formatIds(recent));
+        statRepository.save(stat);
+    }
+
+    /**
+     * Stats của cả page trong một query, nhóm theo message id
+     */
+    public Map<Long, List<MessageReactionStat>> load(Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return Map.of();
+        }
+        return statRepository.findByMessageIdIn(messageIds).stream()
+                .collect(Collectors.groupingBy(MessageReactionStat::getMessageId, LinkedHashMap::new, Collectors.toList()));
+    }
+
+    /**
+     * Loại reaction của user trên từng message (mỗi user tối đa một reaction / message)
+     */
+    public Map<Long, ReactionType> reactionsOf(Long userId, Collection<Long> messageIds) {
+        if (userId == null || messageIds.isEmpty()) {
+            return Map.of();
+        }
+        return messageReactionRepository.findUserReactions(userId, messageIds).stream()
+                .collect(Collectors.toMap(UserReaction::getMessageId, UserReaction::getType, (a, b) -> a));
+    }
+
+    /**
+     * Dựng lại toàn bộ stats từ message_reactions, mỗi batch message một transaction;
+     * aggregate chạy trong DB, không load reaction lên app
+     */
+    public long rebuild() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long rebuilt = 0;
+        Long afterId = 0L;
+
+        while (true) {
+            List<Long> batch = messageReactionRepository.findReactedMessageIdsAfter(afterId, PageRequest.of(0, rebuildBatchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            transactionTemplate.executeWithoutResult(status -> {
+                statRepository.deleteByMessageIdIn(batch);
+                statRepository.insertAggregated(batch, recentUsers);
+            });
+
+            rebuilt += batch.size();
+            afterId = batch.get(batch.size() - 1);
+        }
+
+        log.info("Rebuilt reaction stats for {} messages", rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Stats từ danh sách reaction đã sắp xếp mới nhất trước (thứ tự của findByMessageIdIn), tính trong bộ nhớ
+     */
+    static List<MessageReactionStat> aggregate(List<MessageReaction> reactions, int recentUsers) {
+        Map<Long, Map<ReactionType, MessageReactionStat>> stats = new LinkedHashMap<>();
+        Map<MessageReactionStat, List<Long>> recent = new IdentityHashMap<>();
+
+        for (MessageReaction reaction : reactions) {
+            Long messageId = reaction.getMessage().getId();
+            MessageReactionStat stat = stats.computeIfAbsent(messageId, id -> new EnumMap<>(ReactionType.class))
+                    .computeIfAbsent(reaction.getType(), type -> MessageReactionStat.builder()
+                            .messageId(messageId)
+                            .type(type)
+                            .count(0L)
+                            .lastReactionAt(reaction.getCreatedAt())
+                            .build());
+
+            stat.setCount(stat.getCount() + 1);
+            List<Long> userIds = recent.computeIfAbsent(stat, s -> new ArrayList<>(recentUsers));
+            if (userIds.size() < recentUsers) {
+                userIds.add(reaction.getUser().getId());
+            }
+        }
+
+        recent.forEach((stat, userIds) -> stat.setRecentUserIds(formatIds(userIds)));
+        return stats.values().stream()
+                .flatMap(byType -> byType.values().stream())
+                .collect(Collectors.toList());
+    }
+
+    static List<Long> recentUserIds(MessageReactionStat stat) {
+        String ids = stat.getRecentUserIds();
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(ids.split(","))
+                .map(Long::valueOf)
+                .toList();
+    }
+
+    private static String formatIds(List<Long> ids) {
+        return ids.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+    }
+}
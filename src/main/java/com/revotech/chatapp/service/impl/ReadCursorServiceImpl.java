@@ -0,0 +1,157 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.RoomMemberRepository;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Read cursor per RoomMember (lastReadMessageId).
+ *
+ * Các lần advance được gộp trong bộ nhớ (giữ id lớn nhất) và ReadCursorFlushTask ghi xuống DB
+ * theo chu kỳ, nên scroll trong room đông người không sinh ra một UPDATE cho mỗi event.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReadCursorServiceImpl implements ReadCursorService {
+
+    private final RoomMemberRepository roomMemberRepository;
+    private final MessageRepository messageRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final UnreadCounterStore unreadCounterStore;
+
+    // Cursor chưa flush: key (roomId, userId) -> messageId lớn nhất
+    private final Map<CursorKey, Long> pendingCursors = new ConcurrentHashMap<>();
+
+    @Override
+    public void advance(Long roomId, Long userId, Long messageId) {
+        if (roomId == null || userId == null || messageId == null) {
+            return;
+        }
+        pendingCursors.merge(new CursorKey(roomId, userId), messageId, Math::max);
+        // Cursor dừng giữa chừng - không biết còn bao nhiêu, lần đọc sau tính lại
+        unreadCounterStore.invalidate(userId, UnreadCounterStore.roomKey(roomId));
+    }
+
+    @Override
+    public void advanceToLatest(Long roomId, Long userId) {
+        List<Long> latest = messageRepository.findLatestIdsInRoom(roomId, PageRequest.of(0, 1));
+        if (!latest.isEmpty()) {
+            pendingCursors.merge(new CursorKey(roomId, userId), latest.get(0), Math::max);
+        }
+        unreadCounterStore.set(userId, UnreadCounterStore.roomKey(roomId), 0);
+    }
+
+    @Override
+    public Long getLastReadMessageId(Long roomId, Long userId) {
+        Long pending = pendingCursors.get(new CursorKey(roomId, userId));
+        Long persisted = roomMemberRepository.findLastReadMessageId(roomId, userId).orElse(null);
+
+        if (pending == null) {
+            return persisted;
+        }
+        return persisted == null ? pending : Math.max(pending, persisted);
+    }
+
+    @Override
+    public Long getUnreadCount(Long roomId, Long userId) {
+        String chatKey = UnreadCounterStore.roomKey(roomId);
+        Long cached = unreadCounterStore.get(userId, chatKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        Long count = countUnread(roomId, userId);
+        unreadCounterStore.set(userId, chatKey, count);
+        return count;
+    }
+
+    @Override
+    public Map<Long, Long> getUnreadRoomCounts(Collection<Long> roomIds, Long userId) {
+        Map<String, Long> counters = unreadCounterStore.getAll(userId);
+        Map<Long, Long> counts = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long roomId : roomIds) {
+            Long cached = counters.get(UnreadCounterStore.roomKey(roomId));
+            if (cached != null) {
+                counts.put(roomId, cached);
+            } else if (pendingCursors.containsKey(new CursorKey(roomId, userId))) {
+                // Cursor chưa flush nằm trong bộ nhớ, query theo cursor trong DB sẽ đếm thừa: đếm riêng (vài room vừa đọc)
+                counts.put(roomId, getUnreadCount(roomId, userId));
+            } else {
+                missing.add(roomId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, Long> counted = messageRepository.countUnreadByRoomAfterReadCursor(missing, userId).stream()
+                    .collect(Collectors.toMap(MessageRepository.RoomUnread::getRoomId, MessageRepository.RoomUnread::getUnread));
+            for (Long roomId : missing) {
+                long count = counted.getOrDefault(roomId, 0L);
+                counts.put(roomId, count);
+                unreadCounterStore.set(userId, UnreadCounterStore.roomKey(roomId), count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Long countUnread(Long roomId, Long userId) {
+        Long lastRead = getLastReadMessageId(roomId, userId);
+        return messageRepository.countUnreadInRoomAfter(roomId, lastRead != null ? lastRead : 0L, userId);
+    }
+
+    @Override
+    public int flushPendingCursors() {
+        if (pendingCursors.isEmpty()) {
+            return 0;
+        }
+
+        Map<CursorKey, Long> snapshot = new HashMap<>(pendingCursors);
+        LocalDateTime now = LocalDateTime.now();
+
+        Integer updated = new TransactionTemplate(transactionManager).execute(status -> {
+            int count = 0;
+            for (Map.Entry<CursorKey, Long> entry : snapshot.entrySet()) {
+                count += roomMemberRepository.advanceReadCursor(
+                        entry.getKey().roomId(), entry.getKey().userId(), entry.getValue(), now);
+            }
+            return count;
+        });
+
+        // Chỉ xoá nếu chưa có advance mới hơn trong lúc flush
+        snapshot.forEach(pendingCursors::remove);
+
+        log.debug("Flushed {} read cursors ({} rows updated)", snapshot.size(), updated);
+        return snapshot.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            flushPendingCursors();
+        } catch (Exception e) {
+            log.warn("Could not flush read cursors on shutdown: {}", e.getMessage());
+        }
+    }
+
+    private record CursorKey(Long roomId, Long userId) {
+    }
+}
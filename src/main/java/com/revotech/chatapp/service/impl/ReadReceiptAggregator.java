@@ -0,0 +1,398 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.MessageRepository.ReceiptTarget;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind engine cho trạng thái DELIVERED / READ của tin nhắn 1:1.
+ *
+ * Thay cho các CompletableFuture + Thread.sleep: receipt được đưa vào một timer wheel
+ * do một thread duy nhất quay theo tick. Mỗi tick gom các receipt đến hạn theo
+ * (conversation, reader, status), ghi bằng một UPDATE ... WHERE id IN (...) cho mỗi nhóm
+ * và gửi một frame cho mỗi nhóm (MESSAGE_BATCH_READ / MESSAGE_STATUS).
+ * Tin nhắn room không có status per-message: READ chỉ đẩy read cursor của member.
+ *
+ * Receipt với delay d tick được flush ở tick thứ d+1 sau lần enqueue (không bao giờ sớm hơn delay, trễ tối đa
+ * một tick). Wheel đủ lớn cho delay dài nhất trong cấu hình; khi shutdown các receipt còn chờ được flush ngay.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReadReceiptAggregator {
+
+    private static final int MIN_WHEEL_SIZE = 64; // power of two
+    private static final int MAX_WHEEL_SIZE = 1 << 16;
+    private static final int MAX_RESOLVE_ATTEMPTS = 3;
+
+    private final MessageRepository messageRepository;
+    private final UserDirectory userDirectory;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+    private final ReadCursorService readCursorService;
+    private final UnreadCounterStore unreadCounterStore;
+
+    @Value("${app.receipts.tick-ms:100}")
+    private long tickMs;
+
+    @Value("${app.receipts.delivered-delay-ms:200}")
+    private long deliveredDelayMs;
+
+    @Value("${app.receipts.read-delay-ms:1000}")
+    private long readDelayMs;
+
+    @Value("${app.receipts.max-pending:10000}")
+    private int maxPending;
+
+    // Producers chỉ ghi vào incoming; wheel chỉ do thread tick truy cập nên không cần lock
+    private final Queue<PendingReceipt> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private ArrayDeque<PendingReceipt>[] wheel;
+    private int wheelMask;
+    private long maxDelayTicks;
+    // Chỉ thread tick ghi; producers đọc để tính tick đến hạn
+    private volatile long currentTick;
+    private volatile boolean stopping;
+
+    private ScheduledExecutorService scheduler;
+    private TransactionTemplate transactionTemplate;
+    private Counter droppedCounter;
+    private Counter updatedCounter;
+    private Counter framesCounter;
+    private Timer flushTimer;
+
+    @PostConstruct
+    public void start() {
+        init();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "receipt-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Tách khỏi start() để test quay wheel bằng tick() thay cho scheduler
+    @SuppressWarnings("unchecked")
+    void init() {
+        maxDelayTicks = Math.max(delayTicks(deliveredDelayMs), delayTicks(readDelayMs));
+        // Receipt đến hạn xa nhất cách tick đang quay tối đa maxDelayTicks slot
+        int wheelSize = MIN_WHEEL_SIZE;
+        while (wheelSize <= maxDelayTicks) {
+            wheelSize <<= 1;
+        }
+        if (wheelSize > MAX_WHEEL_SIZE) {
+            throw new IllegalStateException("Receipt delays of " + maxDelayTicks + " ticks are too long for tick-ms " + tickMs);
+        }
+        wheel = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        wheelMask = wheelSize - 1;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Gauge.builder("chat.receipts.backlog", backlog, AtomicInteger::get)
+                .description("Receipts waiting in the aggregator")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("chat.receipts.dropped")
+                .description("Receipts rejected because the backlog was full")
+                .register(meterRegistry);
+        updatedCounter = Counter.builder("chat.receipts.updated")
+                .description("Message rows updated by receipt flushes")
+                .register(meterRegistry);
+        framesCounter = Counter.builder("chat.receipts.frames")
+                .description("Receipt frames sent to clients")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.receipts.flush")
+                .description("Time spent flushing one tick of receipts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Recipient có session online - đánh dấu DELIVERED sau delivered-delay
+     */
+    public void scheduleDelivered(String messageId, Long recipientId) {
+        enqueue(messageId, recipientId, MessageStatus.DELIVERED, deliveredDelayMs);
+    }
+
+    /**
+     * Recipient đang xem conversation / message visible - đánh dấu READ sau read-delay
+     */
+    public void scheduleRead(String messageId, Long readerId) {
+        enqueue(messageId, readerId, MessageStatus.READ, readDelayMs);
+    }
+
+    /**
+     * Client đã báo đọc rõ ràng - flush ở tick kế tiếp
+     */
+    public void markRead(Collection<String> messageIds, Long readerId) {
+        for (String messageId : messageIds) {
+            enqueue(messageId, readerId, MessageStatus.READ, 0);
+        }
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    private void enqueue(String messageId, Long userId, MessageStatus status, long delayMs) {
+        if (backlog.incrementAndGet() > maxPending) {
+            backlog.decrementAndGet();
+            droppedCounter.increment();
+            log.warn("Receipt backlog full ({}), dropping {} for message {}", maxPending, status, messageId);
+            return;
+        }
+        long delayTicks = delayTicks(delayMs);
+        if (delayTicks > maxDelayTicks) {
+            backlog.decrementAndGet();
+            throw new IllegalArgumentException("Receipt delay " + delayMs + " ms exceeds the configured maximum");
+        }
+        incoming.add(new PendingReceipt(messageId, userId, status, dueTick(delayTicks), 0));
+    }
+
+    // Enqueue giữa tick k và k+1: tick k+1 mới là tick đầu tiên sau enqueue, d tick sau đó mới đến hạn
+    private long dueTick(long delayTicks) {
+        return currentTick + 1 + delayTicks;
+    }
+
+    private long delayTicks(long delayMs) {
+        return (delayMs + tickMs - 1) / tickMs;
+    }
+
+    void tick() {
+        try {
+            long tick = currentTick + 1;
+            currentTick = tick;
+
+            // 1. Đưa receipt mới vào đúng slot của wheel; receipt enqueue ngay lúc tick bắt đầu có thể đã quá hạn
+            PendingReceipt pending;
+            while ((pending = incoming.poll()) != null) {
+                wheel[(int) (Math.max(pending.dueTick, tick) & wheelMask)].add(pending);
+            }
+
+            // 2. Lấy slot đến hạn
+            ArrayDeque<PendingReceipt> due = wheel[(int) (tick & wheelMask)];
+            if (due.isEmpty()) {
+                return;
+            }
+            List<PendingReceipt> batch = new ArrayList<>(due);
+            due.clear();
+            backlog.addAndGet(-batch.size());
+
+            flushTimer.record(() -> flush(batch));
+        } catch (Exception e) {
+            log.error("Error flushing read receipts: {}", e.getMessage(), e);
+        }
+    }
+
+    private void flush(List<PendingReceipt> batch) {
+        // Coalesce: một message + một user chỉ giữ trạng thái cao nhất
+        Map<String, PendingReceipt> coalesced = new LinkedHashMap<>();
+        for (PendingReceipt receipt : batch) {
+            coalesced.merge(receipt.messageId + ":" + receipt.userId, receipt,
+                    (a, b) -> a.status.ordinal() >= b.status.ordinal() ? a : b);
+        }
+
+        Set<String> messageIds = coalesced.values().stream()
+                .map(receipt -> receipt.messageId)
+                .collect(Collectors.toSet());
+
+        Map<String, ReceiptTarget> targets = messageRepository.findReceiptTargets(messageIds).stream()
+                .collect(Collectors.toMap(ReceiptTarget::getMessageId, Function.identity()));
+
+        // Group theo (conversation, reader, status)
+        Map<GroupKey, List<ReceiptTarget>> groups = new LinkedHashMap<>();
+        for (PendingReceipt receipt : coalesced.values()) {
+            ReceiptTarget target = targets.get(receipt.messageId);
+            if (target == null) {
+                // Transaction gửi tin có thể chưa commit - thử lại ở tick sau
+                retry(receipt);
+                continue;
+            }
+            if (target.getRoomId() != null) {
+                // Room không có trạng thái per-message, READ chỉ đẩy read cursor của member
+                if (receipt.status == MessageStatus.READ && !target.getSenderId().equals(receipt.userId)) {
+                    readCursorService.advance(target.getRoomId(), receipt.userId, target.getId());
+                }
+                continue;
+            }
+            if (target.getConversationId() == null ||
+                    target.getSenderId().equals(receipt.userId) ||
+                    target.getStatus() == null ||
+                    target.getStatus().ordinal() >= receipt.status.ordinal() ||
+                    target.getStatus() == MessageStatus.FAILED) {
+                continue;
+            }
+            groups.computeIfAbsent(new GroupKey(target.getConversationId(), receipt.userId, receipt.status),
+                    k -> new ArrayList<>()).add(target);
+        }
+
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        Map<GroupKey, Integer> updatedByGroup = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> groups.forEach((key, groupTargets) -> {
+            List<Long> ids = groupTargets.stream().map(ReceiptTarget::getId).collect(Collectors.toList());
+            int updated = messageRepository.updateStatusByIdIn(ids, key.status, statusesBelow(key.status));
+            updatedCounter.increment(updated);
+            updatedByGroup.put(key, updated);
+        }));
+
+        // Unread counter của reader giảm đúng số row vừa chuyển sang READ
+        updatedByGroup.forEach((key, updated) -> {
+            if (key.status == MessageStatus.READ && updated > 0) {
+                unreadCounterStore.decrement(key.userId,
+                        UnreadCounterStore.conversationKey(key.conversationId), updated);
+            }
+        });
+
+        Set<Long> readerIds = groups.keySet().stream()
+                .filter(key -> key.status == MessageStatus.READ)
+                .map(key -> key.userId)
+                .collect(Collectors.toSet());
+        Map<Long, UserDirectory.Entry> readers = readerIds.isEmpty()
+                ? Map.of()
+                : userDirectory.getAll(readerIds);
+
+        groups.forEach((key, groupTargets) -> broadcast(key, groupTargets, readers.get(key.userId)));
+    }
+
+    private void broadcast(GroupKey key, List<ReceiptTarget> groupTargets, UserDirectory.Entry reader) {
+        List<String> messageIds = groupTargets.stream()
+                .map(ReceiptTarget::getMessageId)
+                .collect(Collectors.toList());
+        String senderUsername = groupTargets.get(0).getSenderUsername();
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("messageIds", messageIds);
+        data.put("conversationId", key.conversationId);
+        data.put("status", key.status.name());
+        data.put("timestamp", LocalDateTime.now());
+
+        String type;
+        String destination;
+        if (key.status == MessageStatus.READ) {
+            data.put("readerId", key.userId);
+            data.put("readerName", reader != null ? reader.fullName() : null);
+            type = "MESSAGE_BATCH_READ";
+            destination = "/queue/read-receipts";
+        } else {
+            type = "MESSAGE_STATUS";
+            destination = "/queue/message-status";
+        }
+
+        WebSocketResponse<Map<String, Object>> response = WebSocketResponse.<Map<String, Object>>builder()
+                .type(type)
+                .action("UPDATE")
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        try {
+            messagingTemplate.convertAndSendToUser(senderUsername, destination, response);
+            framesCounter.increment();
+        } catch (Exception e) {
+            log.warn("Failed to send {} to {}: {}", type, senderUsername, e.getMessage());
+        }
+    }
+
+    private void retry(PendingReceipt receipt) {
+        if (stopping || receipt.attempts + 1 >= MAX_RESOLVE_ATTEMPTS) {
+            log.debug("Dropping receipt for unknown message {}", receipt.messageId);
+            return;
+        }
+        backlog.incrementAndGet();
+        incoming.add(new PendingReceipt(receipt.messageId, receipt.userId, receipt.status, dueTick(0), receipt.attempts + 1));
+    }
+
+    private static List<MessageStatus> statusesBelow(MessageStatus status) {
+        List<MessageStatus> result = new ArrayList<>();
+        for (MessageStatus candidate : MessageStatus.values()) {
+            if (candidate != MessageStatus.FAILED && candidate.ordinal() < status.ordinal()) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Dừng wheel rồi flush mọi receipt còn chờ (kể cả chưa đến hạn) trên thread shutdown
+     */
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                    // Tick đang chạy vẫn giữ wheel, không flush song song với nó
+                    log.warn("Receipt aggregator did not stop in time, dropping {} pending receipts", backlog.get());
+                    return;
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while stopping receipt aggregator, dropping {} pending receipts", backlog.get());
+                return;
+            }
+        }
+
+        List<PendingReceipt> pending = new ArrayList<>();
+        PendingReceipt receipt;
+        while ((receipt = incoming.poll()) != null) {
+            pending.add(receipt);
+        }
+        for (ArrayDeque<PendingReceipt> slot : wheel) {
+            pending.addAll(slot);
+            slot.clear();
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        backlog.addAndGet(-pending.size());
+
+        log.info("Flushing {} pending receipts on shutdown", pending.size());
+        try {
+            flush(pending);
+        } catch (Exception e) {
+            log.error("Error flushing read receipts on shutdown: {}", e.getMessage(), e);
+        }
+    }
+
+    private record PendingReceipt(String messageId, Long userId, MessageStatus status,
+                                  long dueTick, int attempts) {
+    }
+
+    private record GroupKey(Long conversationId, Long userId, MessageStatus status) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.revotech.chatapp.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revotech.chatapp.model.dto.ClusterEnvelope;
+import com.revotech.chatapp.service.ClusterBackplane;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Backplane qua Redis pub/sub: mỗi node publish frame broker lên một channel chung
+ * và deliver lại cho session local các frame do node khác publish.
+ */
+@Service
+@ConditionalOnProperty(name = "app.websocket.broker.mode", havingValue = "redis")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisClusterBackplane implements ClusterBackplane {
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.websocket.broker.redis-channel:chat:broker}")
+    private String channel;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        log.info("Redis broker backplane on channel {}", channel);
+    }
+
+    @PreDestroy
+    public void close() throws Exception {
+        listenerContainer.destroy();
+    }
+
+    @Override
+    public void publish(ClusterEnvelope envelope) {
+        try {
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(envelope));
+        } catch (Exception e) {
+            // Node khác sẽ lỡ frame này, session local vẫn nhận bình thường
+            log.error("Failed to publish {} to Redis backplane: {}", envelope.getDestination(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEnvelope> listener) {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                String json = new String(message.getBody(), StandardCharsets.UTF_8);
+                listener.accept(objectMapper.readValue(json, ClusterEnvelope.class));
+            } catch (Exception e) {
+                log.warn("Dropping malformed backplane frame: {}", e.getMessage());
+            }
+        }, new ChannelTopic(channel));
+    }
+}
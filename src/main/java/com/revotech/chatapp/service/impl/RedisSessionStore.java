@@ -0,0 +1,267 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.SessionStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Session store trong Redis, user chia vào SHARDS shard theo userId % SHARDS:
+ * - {chat:sessions:N}:online     set userId đang online của shard N
+ * - {chat:sessions:N}:user:{id}  set sessionId của user, hết hạn sau ttl nếu không có connect mới
+ * - {chat:sessions:N}:announced  set userId đã được công bố ONLINE (PresenceService), dùng chung giữa các node
+ *
+ * Connect / disconnect là một Lua script (một round trip, atomic) thay cho 3-4 command riêng lẻ.
+ * Mỗi shard một hash tag: script chỉ chạm key của shard của user nên chạy trong một slot trên Redis Cluster,
+ * còn tải chia đều cho SHARDS slot thay vì dồn vào một. Thao tác trên toàn bộ user (count, filter, orphan)
+ * pipeline một command cho mỗi shard. SHARDS phải giống nhau trên mọi node.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.data.redis.host")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisSessionStore implements SessionStore {
+
+    static final int SHARDS = 16;
+
+    // Số userId mỗi lần SSCAN / pipeline EXISTS khi dọn orphan
+    private static final int ORPHAN_SCAN_BATCH = 500;
+
+    // KEYS[1] = session set, KEYS[2] = online set; ARGV = sessionId, ttl (s), userId
+    private static final DefaultRedisScript<Long> ADD_SESSION = new DefaultRedisScript<>(
+            "redis.call('SADD', KEYS[1], ARGV[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return redis.call('SADD', KEYS[2], ARGV[3])", Long.class);
+
+    private static final DefaultRedisScript<Long> REMOVE_SESSION = new DefaultRedisScript<>(
+            "redis.call('SREM', KEYS[1], ARGV[1]) " +
+            "if redis.call('SCARD', KEYS[1]) > 0 then return 0 end " +
+            "return redis.call('SREM', KEYS[2], ARGV[2])", Long.class);
+
+    private static final DefaultRedisScript<Long> REMOVE_ALL_SESSIONS = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "return redis.call('SREM', KEYS[2], ARGV[1])", Long.class);
+
+    // KEYS[1] = session set, KEYS[2] = online set; ARGV = userId.
+    // Kiểm tra lại trong script để không xoá nhầm user vừa reconnect sau lần EXISTS
+    private static final DefaultRedisScript<Long> REMOVE_ORPHAN = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "return redis.call('SREM', KEYS[2], ARGV[1])", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // chat.session.redis{operation}: round-trip của từng thao tác
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean addSession(Long userId, String sessionId, Duration ttl) {
+        Long added = timed("add_session", () -> redisTemplate.execute(ADD_SESSION,
+                List.of(sessionsKey(userId), onlineKey(shard(userId))),
+                sessionId, Long.toString(ttl.toSeconds()), userId.toString()));
+        return added != null && added > 0;
+    }
+
+    @Override
+    public boolean removeSession(Long userId, String sessionId) {
+        Long removed = timed("remove_session", () -> redisTemplate.execute(REMOVE_SESSION,
+                List.of(sessionsKey(userId), onlineKey(shard(userId))), sessionId, userId.toString()));
+        return removed != null && removed > 0;
+    }
+
+    @Override
+    public boolean removeAllSessions(Long userId) {
+        Long removed = timed("remove_all_sessions", () -> redisTemplate.execute(REMOVE_ALL_SESSIONS,
+                List.of(sessionsKey(userId), onlineKey(shard(userId))), userId.toString()));
+        return removed != null && removed > 0;
+    }
+
+    @Override
+    public Set<String> getSessions(Long userId) {
+        Set<String> sessions = timed("get_sessions", () -> redisTemplate.opsForSet().members(sessionsKey(userId)));
+        return sessions != null ? sessions : Set.of();
+    }
+
+    @Override
+    public boolean isOnline(Long userId) {
+        return Boolean.TRUE.equals(timed("is_online",
+                () -> redisTemplate.opsForSet().isMember(onlineKey(shard(userId)), userId.toString())));
+    }
+
+    @Override
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+
+        // SMISMEMBER: mỗi shard có mặt trong trang một command, cả trang trong một pipeline
+        Map<Integer, List<Long>> byShard = userIds.stream()
+                .distinct()
+                .collect(Collectors.groupingBy(RedisSessionStore::shard));
+        List<Integer> shards = new ArrayList<>(byShard.keySet());
+        List<Object> results = timed("filter_online", () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Integer shard : shards) {
+                byte[][] members = byShard.get(shard).stream()
+                        .map(id -> bytes(id.toString()))
+                        .toArray(byte[][]::new);
+                connection.setCommands().sMIsMember(bytes(onlineKey(shard)), members);
+            }
+            return null;
+        }));
+
+        Set<Long> online = new HashSet<>();
+        for (int i = 0; i < shards.size(); i++) {
+            List<Long> ids = byShard.get(shards.get(i));
+            List<?> flags = (List<?>) results.get(i);
+            for (int j = 0; j < ids.size(); j++) {
+                if (Boolean.TRUE.equals(flags.get(j))) {
+                    online.add(ids.get(j));
+                }
+            }
+        }
+        return online;
+    }
+
+    @Override
+    public long onlineCount() {
+        List<Object> sizes = timed("online_count", () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                connection.setCommands().sCard(bytes(onlineKey(shard)));
+            }
+            return null;
+        }));
+        return sizes.stream().mapToLong(size -> size != null ? (Long) size : 0L).sum();
+    }
+
+    @Override
+    public Set<Long> onlineUserIds() {
+        List<Object> members = timed("online_ids", () -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int shard = 0; shard < SHARDS; shard++) {
+                connection.setCommands().sMembers(bytes(onlineKey(shard)));
+            }
+            return null;
+        }));
+        Set<Long> ids = new HashSet<>();
+        for (Object shardMembers : members) {
+            ids.addAll(toIds((Collection<?>) shardMembers));
+        }
+        return ids;
+    }
+
+    @Override
+    public Set<Long> removeOrphans() {
+        // SSCAN theo batch thay vì SMEMBERS cả set: mỗi command chỉ chặn Redis trong một batch
+        return timed("remove_orphans", () -> {
+            Set<Long> removed = new HashSet<>();
+            for (int shard = 0; shard < SHARDS; shard++) {
+                String onlineKey = onlineKey(shard);
+                List<String> batch = new ArrayList<>(ORPHAN_SCAN_BATCH);
+                try (Cursor<String> cursor = redisTemplate.opsForSet().scan(onlineKey,
+                        ScanOptions.scanOptions().count(ORPHAN_SCAN_BATCH).build())) {
+                    while (cursor.hasNext()) {
+                        batch.add(cursor.next());
+                        if (batch.size() == ORPHAN_SCAN_BATCH) {
+                            removed.addAll(removeOrphans(onlineKey, batch));
+                            batch.clear();
+                        }
+                    }
+                }
+                removed.addAll(removeOrphans(onlineKey, batch));
+            }
+            return removed;
+        });
+    }
+
+    private Set<Long> removeOrphans(String onlineKey, List<String> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+
+        // EXISTS cả batch trong một round trip, chỉ user không còn session nào mới chạy script xoá
+        List<Object> exists = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String userId : userIds) {
+                connection.keyCommands().exists(bytes(sessionsKey(Long.valueOf(userId))));
+            }
+            return null;
+        });
+
+        Set<Long> removed = new HashSet<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            if (!Boolean.FALSE.equals(exists.get(i))) {
+                continue;
+            }
+            String userId = userIds.get(i);
+            Long count = redisTemplate.execute(REMOVE_ORPHAN,
+                    List.of(sessionsKey(Long.valueOf(userId)), onlineKey), userId);
+            if (count != null && count > 0) {
+                removed.add(Long.valueOf(userId));
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean announce(Long userId, boolean online) {
+        Long changed = timed("announce", () -> online
+                ? redisTemplate.opsForSet().add(announcedKey(userId), userId.toString())
+                : redisTemplate.opsForSet().remove(announcedKey(userId), userId.toString()));
+        return changed != null && changed > 0;
+    }
+
+    private static Set<Long> toIds(Collection<?> members) {
+        if (members == null) {
+            return Set.of();
+        }
+        return members.stream()
+                .map(id -> Long.valueOf(id.toString()))
+                .collect(Collectors.toSet());
+    }
+
+    static int shard(Long userId) {
+        return (int) Math.floorMod(userId, (long) SHARDS);
+    }
+
+    // Hash tag theo shard: mọi key của một user nằm cùng slot với online set của shard đó
+    private static String shardTag(int shard) {
+        return "{chat:sessions:" + shard + "}";
+    }
+
+    static String onlineKey(int shard) {
+        return shardTag(shard) + ":online";
+    }
+
+    static String sessionsKey(Long userId) {
+        return shardTag(shard(userId)) + ":user:" + userId;
+    }
+
+    static String announcedKey(Long userId) {
+        return shardTag(shard(userId)) + ":announced";
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        return timers.computeIfAbsent(operation, op -> Timer.builder("chat.session.redis")
+                        .description("Redis round-trip time of session operations")
+                        .tag("operation", op)
+                        .register(meterRegistry))
+                .record(call);
+    }
+}
@@ -0,0 +1,88 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.UnreadCounterStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Unread counters trong Redis: một hash per user (chat:unread:{userId}), field = chatKey.
+ */
+@Service
+@ConditionalOnProperty(name = "spring.data.redis.host")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisUnreadCounterStore implements UnreadCounterStore {
+
+    private static final String KEY_PREFIX = "chat:unread:";
+
+    // Tăng field trên nhiều hash trong một round trip, bỏ qua field chưa tồn tại
+    private static final DefaultRedisScript<Long> INCREMENT_IF_PRESENT = new DefaultRedisScript<>(
+            "local n = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "  if redis.call('HEXISTS', key, ARGV[1]) == 1 then " +
+            "    redis.call('HINCRBY', key, ARGV[1], 1) n = n + 1 " +
+            "  end " +
+            "end " +
+            "return n", Long.class);
+
+    private static final DefaultRedisScript<Long> DECREMENT_FLOORED = new DefaultRedisScript<>(
+            "local v = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if not v then return -1 end " +
+            "local n = math.max(0, tonumber(v) - tonumber(ARGV[2])) " +
+            "redis.call('HSET', KEYS[1], ARGV[1], n) " +
+            "return n", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Override
+    public Long get(Long userId, String chatKey) {
+        Object value = redisTemplate.opsForHash().get(key(userId), chatKey);
+        return value != null ? Long.parseLong(value.toString()) : null;
+    }
+
+    @Override
+    public Map<String, Long> getAll(Long userId) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key(userId));
+        Map<String, Long> result = new HashMap<>(entries.size());
+        entries.forEach((field, value) -> result.put(field.toString(), Long.parseLong(value.toString())));
+        return result;
+    }
+
+    @Override
+    public void set(Long userId, String chatKey, long value) {
+        redisTemplate.opsForHash().put(key(userId), chatKey, Long.toString(Math.max(0, value)));
+    }
+
+    @Override
+    public void incrementIfPresent(Collection<Long> userIds, String chatKey) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = userIds.stream().map(this::key).collect(Collectors.toList());
+        redisTemplate.execute(INCREMENT_IF_PRESENT, keys, chatKey);
+    }
+
+    @Override
+    public void decrement(Long userId, String chatKey, long delta) {
+        redisTemplate.execute(DECREMENT_FLOORED, List.of(key(userId)), chatKey, Long.toString(delta));
+    }
+
+    @Override
+    public void invalidate(Long userId, String chatKey) {
+        redisTemplate.opsForHash().delete(key(userId), chatKey);
+    }
+
+    private String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+}
@@ -6,7 +6,6 @@ import com.revotech.chatapp.model.dto.RoomDTO;
 import com.revotech.chatapp.model.dto.RoomMemberDTO;
 import com.revotech.chatapp.model.dto.UserSummaryDTO;
 import com.revotech.chatapp.model.dto.request.CreateRoomRequest;
-import com.revotech.chatapp.model.entity.Message;
 import com.revotech.chatapp.model.entity.Room;
 import com.revotech.chatapp.model.entity.RoomMember;
 import com.revotech.chatapp.model.entity.User;
@@ -15,6 +14,7 @@ import com.revotech.chatapp.repository.MessageRepository;
 import com.revotech.chatapp.repository.RoomMemberRepository;
 import com.revotech.chatapp.repository.RoomRepository;
 import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.service.ReadCursorService;
 import com.revotech.chatapp.service.RoomService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -30,6 +30,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -42,6 +43,9 @@ public class RoomServiceImpl implements RoomService {
     private final RoomMemberRepository roomMemberRepository;
     private final UserRepository userRepository;
     private final MessageRepository messageRepository;
+    private final MessageAssembler messageAssembler;
+    private final ReadCursorService readCursorService;
+    private final UserDirectory userDirectory;
 
     @Override
     public RoomDTO createRoom(CreateRoomRequest request, Long creatorId) {
@@ -138,9 +142,10 @@ public class RoomServiceImpl implements RoomService {
                 .filter(room -> room != null)
                 .collect(Collectors.toList());
 
-        // Step 3: Convert sang DTO
+        // Step 3: Unread của cả page trong một lần đọc counter, rồi convert sang DTO
+        Map<Long, Long> unreadCounts = readCursorService.getUnreadRoomCounts(roomIds, userId);
         List<RoomDTO> roomDTOs = roomsWithMembers.stream()
-                .map(room -> convertToDTO(room, userId))
+                .map(room -> convertToDTO(room, userId, unreadCounts.get(room.getId())))
                 .collect(Collectors.toList());
 
         return new PageImpl<>(roomDTOs, pageable, roomPage.getTotalElements());
@@ -262,8 +267,13 @@ public class RoomServiceImpl implements RoomService {
             throw new AppException("You are not a member of this room");
         }
 
+        // Tên / avatar từ UserDirectory (không lazy-load từng User), online hỏi session store một lần cho cả list
+        Map<Long, UserSummaryDTO> users = userDirectory.summaries(activeMembers.stream()
+                .map(member -> member.getUser().getId())
+                .collect(Collectors.toList()));
+
         return activeMembers.stream()
-                .map(this::convertMemberToDTO)
+                .map(member -> convertMemberToDTO(member, users.get(member.getUser().getId())))
                 .collect(Collectors.toList());
     }
 
@@ -340,6 +350,10 @@ public class RoomServiceImpl implements RoomService {
 
     // Helper methods
     private RoomDTO convertToDTO(Room room, Long currentUserId) {
+        return convertToDTO(room, currentUserId, null);
+    }
+
+    private RoomDTO convertToDTO(Room room, Long currentUserId, Long knownUnreadCount) {
         // FIX: Sử dụng repository query thay vì truy cập trực tiếp collection
         List<RoomMember> activeMembers = roomMemberRepository.findActiveRoomMembers(room.getId());
 
@@ -355,16 +369,21 @@ public class RoomServiceImpl implements RoomService {
 
         // Get last message
         ChatMessage lastMessage = messageRepository.findTopByRoomIdOrderByCreatedAtDesc(room.getId())
-                .map(this::convertMessageToDTO)
+                .map(messageAssembler::assemble)
                 .orElse(null);
 
+        // Get unread count
+        Long unreadCount = 0L;
+        if (userRole != null) {
+            unreadCount = knownUnreadCount != null
+                    ? knownUnreadCount
+                    : readCursorService.getUnreadCount(room.getId(), currentUserId);
+        }
+
         // Get creator info
         UserSummaryDTO creator = null;
         if (room.getCreatedBy() != null) {
-            User creatorUser = userRepository.findById(room.getCreatedBy()).orElse(null);
-            if (creatorUser != null) {
-                creator = convertToUserSummary(creatorUser);
-            }
+            creator = userDirectory.summary(room.getCreatedBy());
         }
 
         return RoomDTO.builder()
@@ -383,15 +402,13 @@ public class RoomServiceImpl implements RoomService {
                 .lastActivityAt(room.getLastActivityAt())
                 .memberCount(memberCount)
                 .lastMessage(lastMessage)
-                .unreadCount(0L) // Implement unread count logic
+                .unreadCount(unreadCount)
                 .isJoined(userRole != null)
                 .userRole(userRole)
                 .build();
     }
 
-    private RoomMemberDTO convertMemberToDTO(RoomMember member) {
-        UserSummaryDTO user = convertToUserSummary(member.getUser());
-
+    private RoomMemberDTO convertMemberToDTO(RoomMember member, UserSummaryDTO user) {
         return RoomMemberDTO.builder()
                 .id(member.getId())
                 .user(user)
@@ -400,70 +417,9 @@ public class RoomServiceImpl implements RoomService {
                 .isPinned(member.getIsPinned())
                 .joinedAt(member.getJoinedAt())
                 .lastReadAt(member.getLastReadAt())
+                .lastReadMessageId(member.getLastReadMessageId())
                 .leftAt(member.getLeftAt())
-                .isOnline(member.getUser().getIsOnline())
-                .build();
-    }
-
-    private UserSummaryDTO convertToUserSummary(User user) {
-        return UserSummaryDTO.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .fullName(user.getFullName())
-                .avatarUrl(user.getAvatarUrl())
-                .isOnline(user.getIsOnline())
-                .lastSeen(user.getLastSeen())
-                .bio(user.getBio())
-                .build();
-    }
-
-    private ChatMessage convertMessageToDTO(com.revotech.chatapp.model.entity.Message message) {
-        // Xử lý reply message trước
-        ChatMessage replyToMessage = null;
-        String replyToSenderName = null;
-
-        if (message.getReplyTo() != null) {
-            Message replyMsg = message.getReplyTo();
-            replyToMessage = ChatMessage.builder()
-                    .id(replyMsg.getMessageId()) // Sử dụng messageId cho frontend
-                    .content(replyMsg.getContent())
-                    .senderName(replyMsg.getSender().getFullName())
-                    .senderUsername(replyMsg.getSender().getUsername())
-                    .timestamp(replyMsg.getCreatedAt())
-                    .build();
-
-            replyToSenderName = replyMsg.getSender().getFullName();
-        }
-
-        // Get pinned by user info if message is pinned
-        String pinnedByUsername = null;
-        if (message.getIsPinned() && message.getPinnedBy() != null) {
-            User pinnedByUser = userRepository.findById(message.getPinnedBy()).orElse(null);
-            if (pinnedByUser != null) {
-                pinnedByUsername = pinnedByUser.getUsername();
-            }
-        }
-
-        return ChatMessage.builder()
-                .id(message.getMessageId())
-                .content(message.getContent())
-                .senderId(message.getSender().getId())
-                .senderName(message.getSender().getFullName())
-                .senderUsername(message.getSender().getUsername())
-                .senderAvatar(message.getSender().getAvatarUrl())
-                .type(message.getType())
-                .status(message.getStatus())
-                .timestamp(message.getCreatedAt())
-                .roomId(message.getRoom() != null ? message.getRoom().getId() : null)
-                .conversationId(message.getConversation() != null ? message.getConversation().getId() : null)
-                .replyToId(message.getReplyTo() != null ? message.getReplyTo().getMessageId() : null) // Frontend nhận UUID
-                .replyToMessage(replyToMessage)
-                .replyToSenderName(replyToSenderName)
-                .isEdited(message.getIsEdited())
-                .editedAt(message.getEditedAt())
-                .isPinned(message.getIsPinned())
-                .pinnedAt(message.getPinnedAt())
-                .pinnedByUsername(pinnedByUsername)
+                .isOnline(user != null ? user.getIsOnline() : null)
                 .build();
     }
-}
\ No newline at end of file
+}
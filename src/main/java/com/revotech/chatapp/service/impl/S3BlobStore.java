@@ -0,0 +1,222 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Blob trên object storage S3-compatible (AWS S3, MinIO, Ceph RGW...), path-style URL {endpoint}/{bucket}/{prefix}{key}.
+ * Request ký bằng AWS Signature V4 với java.net.http, không kéo SDK vào; body không ký (UNSIGNED-PAYLOAD)
+ * để upload không phải đọc file thêm một lần chỉ để hash.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+@Slf4j
+public class S3BlobStore implements BlobStore {
+
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String prefix;
+    private final String accessKey;
+    private final String secretKey;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+
+    public S3BlobStore(@Value("${app.storage.s3.endpoint}") String endpoint,
+                       @Value("${app.storage.s3.region:us-east-1}") String region,
+                       @Value("${app.storage.s3.bucket}") String bucket,
+                       @Value("${app.storage.s3.prefix:}") String prefix,
+                       @Value("${app.storage.s3.access-key}") String accessKey,
+                       @Value("${app.storage.s3.secret-key}") String secretKey,
+                       @Value("${app.storage.s3.request-timeout-ms:300000}") long requestTimeoutMs) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        log.info("Blob store on S3-compatible storage {}/{}", this.endpoint, bucket);
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        HttpResponse<Void> response = send(request("PUT", key)
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofFile(source)), HttpResponse.BodyHandlers.discarding());
+        check(response, "PUT", key);
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return stat(key) != null;
+    }
+
+    @Override
+    public BlobInfo stat(String key) throws IOException {
+        HttpResponse<Void> response = send(request("HEAD", key)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return null;
+        }
+        check(response, "HEAD", key);
+
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        long lastModified = response.headers().firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli())
+                .orElse(0L);
+        return new BlobInfo(size, lastModified);
+    }
+
+    @Override
+    public InputStream open(String key, long start, long length) throws IOException {
+        HttpResponse<InputStream> response = send(request("GET", key)
+                .header("Range", "bytes=" + start + "-" + (start + length - 1))
+                .GET(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() / 100 != 2) {
+            response.body().close();
+        }
+        check(response, "GET", key);
+        return response.body();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        HttpResponse<Void> response = send(request("DELETE", key).DELETE(), HttpResponse.BodyHandlers.discarding());
+        // S3 trả 204 cả khi key không tồn tại
+        if (response.statusCode() != 404) {
+            check(response, "DELETE", key);
+        }
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return null;
+    }
+
+    private HttpRequest.Builder request(String method, String key) {
+        BlobStore.validateKey(key);
+        String path = "/" + uriEncode(bucket) + "/" + uriEncode(prefix + key);
+        Instant now = Instant.now();
+
+        Map<String, String> signedHeaders = new TreeMap<>();
+        signedHeaders.put("host", endpoint.getRawAuthority());
+        signedHeaders.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        signedHeaders.put("x-amz-date", AMZ_DATE.format(now));
+
+        return HttpRequest.newBuilder(URI.create(endpoint + path))
+                .timeout(requestTimeout)
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", AMZ_DATE.format(now))
+                .header("Authorization", authorization(method, path, "", signedHeaders, UNSIGNED_PAYLOAD,
+                        now, region, accessKey, secretKey));
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest.Builder request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return httpClient.send(request.build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling object storage", e);
+        }
+    }
+
+    private static void check(HttpResponse<?> response, String method, String key) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Object storage " + method + " " + key + " failed with status " + response.statusCode());
+        }
+    }
+
+    /**
+     * Header Authorization theo AWS Signature V4. headers: tên viết thường, đã sort, gồm host
+     */
+    static String authorization(String method, String canonicalPath, String canonicalQuery,
+                                Map<String, String> headers, String payloadHash, Instant now,
+                                String region, String accessKey, String secretKey) {
+        String amzDate = AMZ_DATE.format(now);
+        String dateStamp = amzDate.substring(0, 8);
+        String scope = dateStamp + "/" + region + "/s3/aws4_request";
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        headers.forEach((name, value) -> canonicalHeaders.append(name).append(':').append(value.trim()).append('\n'));
+        String signedHeaderNames = String.join(";", headers.keySet());
+
+        String canonicalRequest = method + "\n" + canonicalPath + "\n" + canonicalQuery + "\n"
+                + canonicalHeaders + "\n" + signedHeaderNames + "\n" + payloadHash;
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + HexFormat.of().formatHex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), dateStamp);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaderNames + ", Signature=" + signature;
+    }
+
+    // RFC 3986: giữ nguyên A-Z a-z 0-9 - _ . ~ (key không chứa '/', prefix có thể chứa)
+    static String uriEncode(String value) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || c == '/') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
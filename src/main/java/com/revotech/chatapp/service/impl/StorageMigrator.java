@@ -0,0 +1,161 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.FileAttachment;
+import com.revotech.chatapp.model.entity.StoredBlob;
+import com.revotech.chatapp.repository.FileAttachmentRepository;
+import com.revotech.chatapp.repository.StoredBlobRepository;
+import com.revotech.chatapp.service.BlobStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Chuyển upload lưu theo layout cũ (đường dẫn đầy đủ trong file_path / thumbnail_path / preview_path /
+ * stored_blobs.path, file phẳng trong upload-dir hoặc upload-dir/blobs) vào BlobStore hiện tại, thay đường dẫn
+ * bằng key = tên file.
+ *
+ * Chạy lại được bất cứ lúc nào: giá trị đã là key (không chứa '/') bị bỏ qua; file đã được chuyển trước đó
+ * (bởi attachment khác cùng blob, hoặc lần chạy bị ngắt trước khi commit) chỉ cần đổi key.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StorageMigrator {
+
+    private final FileAttachmentRepository fileAttachmentRepository;
+    private final StoredBlobRepository storedBlobRepository;
+    private final BlobStore blobStore;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.storage.migration.batch-size:100}")
+    private int batchSize;
+
+    public boolean hasLegacyPaths() {
+        return !fileAttachmentRepository.findWithLegacyPaths(PageRequest.of(0, 1)).isEmpty()
+                || !storedBlobRepository.findWithLegacyPaths(PageRequest.of(0, 1)).isEmpty();
+    }
+
+    /**
+     * Mỗi batch một transaction; row đã chuyển không còn khớp query nên luôn đọc trang đầu
+     */
+    public int migrate() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long startNanos = System.nanoTime();
+        int migrated = 0;
+
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> {
+                List<FileAttachment> attachments = fileAttachmentRepository.findWithLegacyPaths(PageRequest.of(0, batchSize));
+                for (FileAttachment attachment : attachments) {
+                    attachment.setStorageKey(moveToStore(attachment.getStorageKey()));
+                    attachment.setThumbnailKey(moveToStore(attachment.getThumbnailKey()));
+                    attachment.setPreviewKey(moveToStore(attachment.getPreviewKey()));
+                }
+                fileAttachmentRepository.saveAll(attachments);
+                return attachments.size();
+            });
+            if (batch == null || batch == 0) {
+                break;
+            }
+            migrated += batch;
+            log.info("Moved {} attachments into the blob store", migrated);
+        }
+
+        while (true) {
+            Integer batch = transactionTemplate.execute(status -> {
+                List<StoredBlob> blobs = storedBlobRepository.findWithLegacyPaths(PageRequest.of(0, batchSize));
+                for (StoredBlob blob : blobs) {
+                    blob.setStorageKey(moveToStore(blob.getStorageKey()));
+                }
+                storedBlobRepository.saveAll(blobs);
+                return blobs.size();
+            });
+            if (batch == null || batch == 0) {
+                break;
+            }
+            migrated += batch;
+        }
+
+        log.info("Storage migration finished: {} rows in {} ms", migrated, (System.nanoTime() - startNanos) / 1_000_000);
+        return migrated;
+    }
+
+    /**
+     * Copy mọi blob attachment đang tham chiếu từ source sang store hiện tại (vd. local -> s3), key giữ nguyên.
+     * Blob đã có ở đích bị bỏ qua nên chạy lại sau khi bị ngắt chỉ copy phần còn thiếu
+     */
+    public int copyFrom(BlobStore source) {
+        long startNanos = System.nanoTime();
+        int copied = 0;
+        Long afterId = 0L;
+
+        while (true) {
+            List<FileAttachment> attachments = fileAttachmentRepository.findByIdAfter(afterId, PageRequest.of(0, batchSize));
+            if (attachments.isEmpty()) {
+                break;
+            }
+            for (FileAttachment attachment : attachments) {
+                for (String key : new String[]{attachment.getStorageKey(), attachment.getThumbnailKey(), attachment.getPreviewKey()}) {
+                    if (copy(source, key)) {
+                        copied++;
+                    }
+                }
+            }
+            afterId = attachments.get(attachments.size() - 1).getId();
+            log.info("Copied {} blobs so far (attachment id {})", copied, afterId);
+        }
+
+        log.info("Blob copy finished: {} blobs in {} ms", copied, (System.nanoTime() - startNanos) / 1_000_000);
+        return copied;
+    }
+
+    private boolean copy(BlobStore source, String key) {
+        if (key == null || key.contains("/")) {
+            return false;
+        }
+        try {
+            Path local = source.localPath(key);
+            if (local == null || !Files.isRegularFile(local) || blobStore.exists(key)) {
+                return false;
+            }
+            blobStore.put(key, local);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to copy blob " + key, e);
+        }
+    }
+
+    private String moveToStore(String value) {
+        if (value == null || !value.contains("/")) {
+            return value;
+        }
+
+        Path legacy = Paths.get(value);
+        String key = legacy.getFileName().toString();
+        try {
+            if (Files.isRegularFile(legacy)) {
+                if (!blobStore.exists(key)) {
+                    blobStore.put(key, legacy);
+                }
+                // Local backend đã rename; object storage để lại bản trên đĩa node
+                Files.deleteIfExists(legacy);
+            } else if (!blobStore.exists(key)) {
+                log.warn("Legacy file {} is missing, recording key {} anyway", legacy, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move " + legacy + " into the blob store", e);
+        }
+        return key;
+    }
+}
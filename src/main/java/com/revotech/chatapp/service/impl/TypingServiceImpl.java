@@ -0,0 +1,185 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.config.BroadcastFanoutMetrics;
+import com.revotech.chatapp.config.SlowConsumerGuard;
+import com.revotech.chatapp.model.dto.TypingIndicator;
+import com.revotech.chatapp.model.dto.TypingSnapshot;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import com.revotech.chatapp.service.TypingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typing state per chat.
+ *
+ * START / STOP chỉ cập nhật tập người đang nhập của chat; TypingSnapshotTask gửi tối đa một frame
+ * TYPING/SNAPSHOT cho mỗi chat mỗi chu kỳ, và chỉ khi tập đó thay đổi. START lặp lại của cùng user
+ * chỉ gia hạn TTL, nên room đông người không còn một lần fan-out cho mỗi phím gõ.
+ * Entry tự hết hạn sau ttl-ms kể cả khi client không gửi STOP (mất kết nối, đóng tab).
+ *
+ * Nhiều node (broker mode redis / local / relay): mỗi node chỉ giữ typer của session nối vào nó và
+ * snapshot mang nodeId, client gộp theo node thay vì thay cả tập. Tập khác rỗng được gửi lại mỗi
+ * refresh-ms để client bỏ được tập của node đã chết sau expiresInMs, và subscriber mới nhận được trạng thái.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TypingServiceImpl implements TypingService {
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final BroadcastFanoutMetrics subscriptions;
+
+    @Value("${app.typing.ttl-ms:6000}")
+    private long ttlMs;
+
+    // Nhỏ hơn ttl-ms, nếu không client bỏ tập của node giữa hai lần gửi lại
+    @Value("${app.typing.refresh-ms:3000}")
+    private long refreshMs;
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // destination -> trạng thái typing của chat
+    private final Map<String, ChatTyping> chats = new ConcurrentHashMap<>();
+
+    @Override
+    public void updateTyping(Long roomId, Long conversationId, Long userId, String username, boolean isTyping) {
+        if (userId == null || (roomId == null && conversationId == null)) {
+            return;
+        }
+
+        String destination = roomId != null ?
+                "/topic/room/" + roomId :
+                "/topic/conversation/" + conversationId;
+
+        if (isTyping) {
+            long expiresAt = System.currentTimeMillis() + ttlMs;
+            chats.compute(destination, (key, chat) -> {
+                ChatTyping typing = chat != null ? chat : new ChatTyping(roomId, conversationId);
+                if (typing.typers.put(userId, new Typer(username, expiresAt)) == null) {
+                    typing.dirty = true;
+                }
+                return typing;
+            });
+        } else {
+            chats.computeIfPresent(destination, (key, chat) -> {
+                if (chat.typers.remove(userId) != null) {
+                    chat.dirty = true;
+                }
+                return chat;
+            });
+        }
+    }
+
+    @Override
+    public int publishSnapshots() {
+        long now = System.currentTimeMillis();
+        int published = 0;
+
+        for (String destination : chats.keySet()) {
+            WebSocketResponse<TypingSnapshot> snapshot = takeSnapshot(destination, now, hasSubscribers(destination));
+            if (snapshot == null) {
+                continue;
+            }
+
+            messagingTemplate.convertAndSend(destination, snapshot,
+                    Map.of(SlowConsumerGuard.FRAME_CLASS_HEADER, SlowConsumerGuard.TRANSIENT_FRAME));
+            published++;
+        }
+
+        if (published > 0) {
+            log.debug("Published {} typing snapshots", published);
+        }
+        return published;
+    }
+
+    /**
+     * Bỏ entry hết hạn; trả về frame cần gửi nếu tập người đang nhập khác lần gửi trước, hoặc tập
+     * khác rỗng đã tới lúc gửi lại. Không có subscriber thì không coi như đã gửi: dirty giữ nguyên.
+     * Chat không còn ai nhập và đã gửi snapshot rỗng (hoặc không ai nghe) thì bị xoá khỏi map.
+     */
+    private WebSocketResponse<TypingSnapshot> takeSnapshot(String destination, long now, boolean deliver) {
+        AtomicReference<WebSocketResponse<TypingSnapshot>> result = new AtomicReference<>();
+        chats.computeIfPresent(destination, (key, chat) -> {
+            if (chat.typers.values().removeIf(typer -> typer.expiresAt() <= now)) {
+                chat.dirty = true;
+            }
+
+            if (!deliver) {
+                return chat.typers.isEmpty() ? null : chat;
+            }
+
+            Set<Long> current = new HashSet<>(chat.typers.keySet());
+            boolean changed = chat.dirty && !current.equals(chat.lastPublished);
+            boolean refresh = !current.isEmpty() && now - chat.lastPublishedAt >= refreshMs;
+            chat.dirty = false;
+            if (changed || refresh) {
+                chat.lastPublished = current;
+                chat.lastPublishedAt = now;
+                result.set(toResponse(chat));
+            }
+
+            return chat.typers.isEmpty() && chat.lastPublished.isEmpty() ? null : chat;
+        });
+        return result.get();
+    }
+
+    private boolean hasSubscribers(String destination) {
+        // Chỉ simple broker biết đủ subscriber (của node này); các mode cluster luôn gửi
+        return !"simple".equalsIgnoreCase(brokerMode) || subscriptions.subscriberCount(destination) > 0;
+    }
+
+    private WebSocketResponse<TypingSnapshot> toResponse(ChatTyping chat) {
+        LocalDateTime now = LocalDateTime.now();
+        List<TypingIndicator> users = new ArrayList<>(chat.typers.size());
+        chat.typers.forEach((userId, typer) -> users.add(TypingIndicator.builder()
+                .userId(userId)
+                .username(typer.username())
+                .roomId(chat.roomId)
+                .conversationId(chat.conversationId)
+                .isTyping(true)
+                .timestamp(now)
+                .build()));
+
+        return WebSocketResponse.<TypingSnapshot>builder()
+                .type("TYPING")
+                .action("SNAPSHOT")
+                .data(TypingSnapshot.builder()
+                        .roomId(chat.roomId)
+                        .conversationId(chat.conversationId)
+                        .nodeId(nodeId)
+                        .expiresInMs(ttlMs)
+                        .users(users)
+                        .timestamp(now)
+                        .build())
+                .timestamp(now)
+                .build();
+    }
+
+    private static final class ChatTyping {
+        private final Long roomId;
+        private final Long conversationId;
+        private final Map<Long, Typer> typers = new ConcurrentHashMap<>();
+        private volatile boolean dirty;
+        private Set<Long> lastPublished = Set.of();
+        private long lastPublishedAt;
+
+        private ChatTyping(Long roomId, Long conversationId) {
+            this.roomId = roomId;
+            this.conversationId = conversationId;
+        }
+    }
+
+    private record Typer(String username, long expiresAt) {
+    }
+}
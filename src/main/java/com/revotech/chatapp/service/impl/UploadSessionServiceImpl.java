@@ -0,0 +1,344 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.exception.AppException;
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.UploadSessionStatus;
+import com.revotech.chatapp.model.dto.request.CreateUploadRequest;
+import com.revotech.chatapp.model.entity.UploadSession;
+import com.revotech.chatapp.model.enums.UploadState;
+import com.revotech.chatapp.repository.UploadSessionRepository;
+import com.revotech.chatapp.service.FileService;
+import com.revotech.chatapp.service.UploadSessionService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * File của session được cấp phát đủ kích thước lúc tạo, mỗi chunk ghi bằng FileChannel positional write
+ * vào đúng vị trí của nó nên các chunk ghi song song không cần khoá. Chỉ bước đánh dấu chunk vào bitmap
+ * (sau khi force xuống đĩa) khoá row session, trong một transaction rất ngắn.
+ *
+ * Complete cũng không giữ row lock trong lúc hash file: đánh dấu COMPLETING và commit, đưa file vào BlobStore
+ * ngoài transaction, rồi xoá session trong một transaction ngắn thứ hai.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    // receivedChunks tối đa 8192 byte
+    private static final int MAX_CHUNKS = 8192 * 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int EXPIRE_BATCH_SIZE = 500;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileService fileService;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.storage.upload-dir}")
+    private String uploadDir;
+
+    @Value("${app.storage.chunked.chunk-size:5242880}")
+    private int chunkSize;
+
+    @Value("${app.storage.chunked.max-file-size:524288000}")
+    private long maxFileSize;
+
+    @Value("${app.storage.chunked.session-ttl-ms:86400000}")
+    private long sessionTtlMs;
+
+    @Value("${app.storage.chunked.max-sessions-per-user:5}")
+    private int maxSessionsPerUser;
+
+    @Value("${app.storage.chunked.complete-timeout-ms:600000}")
+    private long completeTimeoutMs;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public UploadSessionStatus create(CreateUploadRequest request, Long userId) {
+        long size = request.getSize();
+        if (size > maxFileSize) {
+            throw new AppException("File size exceeds maximum allowed size");
+        }
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        if (chunkCount > MAX_CHUNKS) {
+            throw new AppException("File has too many chunks, increase app.storage.chunked.chunk-size");
+        }
+        if (uploadSessionRepository.countByUserId(userId) >= maxSessionsPerUser) {
+            throw AppException.conflict("Too many unfinished uploads");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        Path data = dataPath(uploadId);
+        try {
+            Files.createDirectories(data.getParent());
+            try (RandomAccessFile file = new RandomAccessFile(data.toFile(), "rw")) {
+                file.setLength(size);
+            }
+        } catch (IOException e) {
+            log.error("Failed to allocate upload {}", uploadId, e);
+            throw new AppException("Failed to create upload: " + e.getMessage());
+        }
+
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .id(uploadId)
+                .userId(userId)
+                .fileName(request.getFileName())
+                .totalSize(size)
+                .chunkSize(chunkSize)
+                .chunkCount(chunkCount)
+                .receivedCount(0)
+                .receivedChunks(new byte[0])
+                .expiresAt(LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMs)))
+                .build());
+
+        log.debug("Upload {} created by user {}: {} bytes in {} chunks", uploadId, userId, size, chunkCount);
+        return toStatus(session);
+    }
+
+    @Override
+    public UploadSessionStatus writeChunk(String uploadId, long offset, InputStream body, Long userId) {
+        UploadSession session = find(uploadId, userId);
+        if (offset < 0 || offset >= session.getTotalSize() || offset % session.getChunkSize() != 0) {
+            throw new AppException("Offset must be a chunk boundary: multiple of " + session.getChunkSize());
+        }
+
+        int index = (int) (offset / session.getChunkSize());
+        if (BitSet.valueOf(session.getReceivedChunks()).get(index)) {
+            // Chunk gửi lại sau khi response trước bị mất: đã ghi rồi
+            return toStatus(session);
+        }
+
+        long length = Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+        try {
+            writeAt(dataPath(uploadId), offset, length, body);
+        } catch (NoSuchFileException e) {
+            throw AppException.notFound("Upload not found: " + uploadId);
+        } catch (IOException e) {
+            log.warn("Failed to write chunk {} of upload {}: {}", index, uploadId, e.getMessage());
+            throw new AppException("Failed to write chunk: " + e.getMessage());
+        }
+
+        UploadSession updated = transactionTemplate.execute(status -> {
+            UploadSession locked = uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .orElseThrow(() -> AppException.notFound("Upload not found: " + uploadId));
+            BitSet received = BitSet.valueOf(locked.getReceivedChunks());
+            if (!received.get(index)) {
+                received.set(index);
+                locked.setReceivedChunks(received.toByteArray());
+                locked.setReceivedCount(locked.getReceivedCount() + 1);
+            }
+            locked.setExpiresAt(LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMs)));
+            return uploadSessionRepository.save(locked);
+        });
+        return toStatus(updated);
+    }
+
+    @Override
+    public UploadSessionStatus getStatus(String uploadId, Long userId) {
+        return toStatus(find(uploadId, userId));
+    }
+
+    @Override
+    public FileMessage complete(String uploadId, Long userId) {
+        Path data = dataPath(uploadId);
+
+        // 1. Transaction ngắn: đủ chunk thì đánh dấu COMPLETING, chunk / complete / cancel khác không chờ lúc hash
+        String fileName = transactionTemplate.execute(status -> {
+            UploadSession locked = findForUpdate(uploadId, userId);
+            LocalDateTime now = LocalDateTime.now();
+            requireNotCompleting(locked, now);
+            int missing = locked.getChunkCount() - locked.getReceivedCount();
+            if (missing > 0) {
+                throw AppException.conflict("Upload incomplete: " + missing + " chunk(s) missing");
+            }
+
+            locked.setState(UploadState.COMPLETING);
+            locked.setExpiresAt(now.plus(Duration.ofMillis(completeTimeoutMs)));
+            uploadSessionRepository.save(locked);
+            return locked.getFileName();
+        });
+
+        // 2. Hash + nhận dạng + đưa vào BlobStore, không giữ transaction
+        FileMessage fileMessage;
+        try {
+            fileMessage = fileService.importFile(data, fileName, userId);
+        } catch (RuntimeException e) {
+            // Trả session về UPLOADING để có thể complete lại hoặc cancel
+            transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .ifPresent(session -> {
+                        session.setState(UploadState.UPLOADING);
+                        session.setExpiresAt(LocalDateTime.now().plus(Duration.ofMillis(sessionTtlMs)));
+                        uploadSessionRepository.save(session);
+                    }));
+            throw e;
+        }
+
+        // 3. Transaction ngắn: xoá session, file xoá sau commit
+        transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.findByIdForUpdate(uploadId)
+                .ifPresent(session -> {
+                    uploadSessionRepository.delete(session);
+                    deleteAfterCommit(data);
+                }));
+        log.info("Upload {} completed by user {}", uploadId, userId);
+        return fileMessage;
+    }
+
+    @Override
+    public void cancel(String uploadId, Long userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            UploadSession locked = findForUpdate(uploadId, userId);
+            requireNotCompleting(locked, LocalDateTime.now());
+            uploadSessionRepository.delete(locked);
+            deleteAfterCommit(dataPath(uploadId));
+        });
+    }
+
+    // COMPLETING quá expiresAt: lần complete trước bị gián đoạn, cho phép làm lại
+    private static void requireNotCompleting(UploadSession session, LocalDateTime now) {
+        if (session.getState() == UploadState.COMPLETING && session.getExpiresAt().isAfter(now)) {
+            throw AppException.conflict("Upload is already being completed");
+        }
+    }
+
+    @Override
+    public int expireAbandoned() {
+        LocalDateTime now = LocalDateTime.now();
+        int expired = 0;
+        for (String uploadId : uploadSessionRepository.findExpiredIds(now, PageRequest.of(0, EXPIRE_BATCH_SIZE))) {
+            // Khoá lại row: chunk vừa đến có thể đã gia hạn session
+            Boolean removed = transactionTemplate.execute(status -> uploadSessionRepository.findByIdForUpdate(uploadId)
+                    .filter(session -> session.getExpiresAt().isBefore(now))
+                    .map(session -> {
+                        uploadSessionRepository.delete(session);
+                        deleteAfterCommit(dataPath(uploadId));
+                        return true;
+                    })
+                    .orElse(false));
+            if (Boolean.TRUE.equals(removed)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private static void writeAt(Path data, long offset, long length, InputStream body) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(body);
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                if (source.read(buffer) < 0) {
+                    throw new AppException("Chunk is shorter than " + length + " bytes");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+            if (source.read(ByteBuffer.allocate(1)) >= 0) {
+                throw new AppException("Chunk is longer than " + length + " bytes");
+            }
+
+            // Chunk chỉ được tính là đã nhận khi dữ liệu đã xuống đĩa
+            channel.force(false);
+        }
+    }
+
+    private UploadSession find(String uploadId, Long userId) {
+        return uploadSessionRepository.findById(uploadId)
+                .filter(session -> session.getUserId().equals(userId))
+                .orElseThrow(() -> AppException.notFound("Upload not found: " + uploadId));
+    }
+
+    private UploadSession findForUpdate(String uploadId, Long userId) {
+        return uploadSessionRepository.findByIdForUpdate(uploadId)
+                .filter(session -> session.getUserId().equals(userId))
+                .orElseThrow(() -> AppException.notFound("Upload not found: " + uploadId));
+    }
+
+    private Path dataPath(String uploadId) {
+        // uploadId đến từ URL: chỉ chấp nhận UUID để không thoát ra ngoài thư mục sessions
+        try {
+            UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            throw AppException.notFound("Upload not found: " + uploadId);
+        }
+        return Paths.get(uploadDir, "sessions", uploadId + ".part");
+    }
+
+    private static UploadSessionStatus toStatus(UploadSession session) {
+        BitSet received = BitSet.valueOf(session.getReceivedChunks());
+        int firstMissing = received.nextClearBit(0);
+        long committedOffset = Math.min(session.getTotalSize(), (long) firstMissing * session.getChunkSize());
+
+        List<Long> missingOffsets = new ArrayList<>(session.getChunkCount() - session.getReceivedCount());
+        for (int i = firstMissing; i < session.getChunkCount(); i = received.nextClearBit(i + 1)) {
+            missingOffsets.add((long) i * session.getChunkSize());
+        }
+
+        long receivedBytes = (long) session.getReceivedCount() * session.getChunkSize();
+        if (received.get(session.getChunkCount() - 1)) {
+            // Chunk cuối ngắn hơn chunkSize
+            receivedBytes -= (long) session.getChunkCount() * session.getChunkSize() - session.getTotalSize();
+        }
+
+        return UploadSessionStatus.builder()
+                .uploadId(session.getId())
+                .fileName(session.getFileName())
+                .size(session.getTotalSize())
+                .chunkSize(session.getChunkSize())
+                .committedOffset(committedOffset)
+                .receivedBytes(receivedBytes)
+                .missingOffsets(missingOffsets)
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+
+    private static void deleteAfterCommit(Path data) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    Files.deleteIfExists(data);
+                } catch (IOException e) {
+                    log.warn("Failed to delete upload data {}: {}", data, e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -21,6 +21,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -31,6 +32,7 @@ public class UserContactServiceImpl implements UserContactService {
 
     private final UserContactRepository userContactRepository;
     private final UserRepository userRepository;
+    private final UserDirectory userDirectory;
 
     @Override
     public UserListResponse getAllUsers(Long currentUserId, String keyword, int page, int size) {
@@ -48,17 +50,7 @@ public class UserContactServiceImpl implements UserContactService {
             usersPage = userRepository.findAllUsersExcludingCurrent(currentUserId, pageable);
         }
 
-        List<UserSummaryDTO> userSummaries = usersPage.getContent().stream()
-                .map(user -> UserSummaryDTO.builder()
-                        .id(user.getId())
-                        .username(user.getUsername())
-                        .fullName(user.getFullName())
-                        .avatarUrl(user.getAvatarUrl())
-                        .isOnline(user.getIsOnline())
-                        .lastSeen(user.getLastSeen())
-                        .bio(user.getBio())
-                        .build())
-                .collect(Collectors.toList());
+        List<UserSummaryDTO> userSummaries = userDirectory.summariesOf(usersPage.getContent());
 
         return UserListResponse.builder()
                 .users(userSummaries)
@@ -222,15 +214,17 @@ public class UserContactServiceImpl implements UserContactService {
 
         Page<UserContact> contacts = userContactRepository.findUserContactsByStatus(userId, status, pageable);
 
-        return contacts.map(this::convertToDTO);
+        Map<Long, UserSummaryDTO> users = contactSummaries(contacts.getContent());
+        return contacts.map(contact -> convertToDTO(contact, users));
     }
 
     @Override
     @Transactional(readOnly = true)
     public List<UserContactDTO> getFavoriteContacts(Long userId) {
         List<UserContact> favorites = userContactRepository.findFavoriteContacts(userId);
+        Map<Long, UserSummaryDTO> users = contactSummaries(favorites);
         return favorites.stream()
-                .map(this::convertToDTO)
+                .map(contact -> convertToDTO(contact, users))
                 .collect(Collectors.toList());
     }
 
@@ -238,8 +232,9 @@ public class UserContactServiceImpl implements UserContactService {
     @Transactional(readOnly = true)
     public List<UserContactDTO> getPendingFriendRequests(Long userId) {
         List<UserContact> pendingRequests = userContactRepository.findPendingFriendRequests(userId);
+        Map<Long, UserSummaryDTO> users = contactSummaries(pendingRequests);
         return pendingRequests.stream()
-                .map(this::convertToDTO)
+                .map(contact -> convertToDTO(contact, users))
                 .collect(Collectors.toList());
     }
 
@@ -255,10 +250,9 @@ public class UserContactServiceImpl implements UserContactService {
         Pageable pageable = PageRequest.of(page, size);
         Page<User> users = userRepository.searchUsers(keyword, pageable);
 
-        List<UserSummaryDTO> userSummaries = users.getContent().stream()
+        List<UserSummaryDTO> userSummaries = userDirectory.summariesOf(users.getContent().stream()
                 .filter(user -> !user.getId().equals(currentUserId)) // Exclude current user
-                .map(this::convertToUserSummary)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
 
         return UserListResponse.builder()
                 .users(userSummaries)
@@ -283,9 +277,7 @@ public class UserContactServiceImpl implements UserContactService {
         Pageable pageable = PageRequest.of(page, size);
         Page<User> suggestedUsers = userRepository.findUsersExcluding(existingContactIds, pageable);
 
-        List<UserSummaryDTO> userSummaries = suggestedUsers.getContent().stream()
-                .map(this::convertToUserSummary)
-                .collect(Collectors.toList());
+        List<UserSummaryDTO> userSummaries = userDirectory.summariesOf(suggestedUsers.getContent());
 
         return UserListResponse.builder()
                 .users(userSummaries)
@@ -315,8 +307,8 @@ public class UserContactServiceImpl implements UserContactService {
     }
 
     // Helper methods
-    private UserContactDTO convertToDTO(UserContact userContact) {
-        UserSummaryDTO contactUser = convertToUserSummary(userContact.getContact());
+    private UserContactDTO convertToDTO(UserContact userContact, Map<Long, UserSummaryDTO> users) {
+        UserSummaryDTO contactUser = users.get(userContact.getContact().getId());
 
         return UserContactDTO.builder()
                 .id(userContact.getId())
@@ -329,15 +321,10 @@ public class UserContactServiceImpl implements UserContactService {
                 .build();
     }
 
-    private UserSummaryDTO convertToUserSummary(User user) {
-        return UserSummaryDTO.builder()
-                .id(user.getId())
-                .username(user.getUsername())
-                .fullName(user.getFullName())
-                .avatarUrl(user.getAvatarUrl())
-                .isOnline(user.getIsOnline())
-                .lastSeen(user.getLastSeen())
-                .bio(user.getBio())
-                .build();
+    // Contact là lazy proxy: chỉ đọc id, tên / avatar / online lấy từ UserDirectory cho cả list
+    private Map<Long, UserSummaryDTO> contactSummaries(List<UserContact> contacts) {
+        return userDirectory.summaries(contacts.stream()
+                .map(contact -> contact.getContact().getId())
+                .collect(Collectors.toList()));
     }
 }
\ No newline at end of file
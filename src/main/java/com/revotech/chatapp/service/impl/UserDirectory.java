@@ -0,0 +1,161 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.UserSummaryDTO;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.repository.UserRepository.DirectoryRow;
+import com.revotech.chatapp.service.SessionStore;
+import com.revotech.chatapp.util.LongObjectCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Thông tin hiển thị của user (username, fullName, avatar) theo id, thay cho việc load cả entity User
+ * chỉ để lấy tên. Load lazy theo batch bằng projection query, giữ tối đa max-size entry (CLOCK eviction),
+ * evict khi profile thay đổi qua UserDirectoryEvictionListener.
+ *
+ * Cache là local per node: profile đổi trên node khác chỉ được thấy sau khi entry bị evict.
+ */
+@Component
+@Slf4j
+public class UserDirectory {
+
+    private static final int QUERY_CHUNK_SIZE = 1000;
+
+    private final UserRepository userRepository;
+    private final SessionStore sessionStore;
+    private final LongObjectCache<Entry> entries;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public UserDirectory(UserRepository userRepository,
+                         SessionStore sessionStore,
+                         @Value("${app.user-directory.max-size:100000}") int maxSize,
+                         MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.sessionStore = sessionStore;
+        this.entries = new LongObjectCache<>(maxSize);
+
+        Gauge.builder("chat.user.directory.size", entries, LongObjectCache::size)
+                .description("Users held by the user directory cache")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("chat.user.directory.lookups").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("chat.user.directory.lookups").tag("result", "miss").register(meterRegistry);
+    }
+
+    public Entry get(Long userId) {
+        return userId != null ? getAll(List.of(userId)).get(userId) : null;
+    }
+
+    /**
+     * Entry của mọi id tìm thấy; các id chưa có trong cache được load trong một query mỗi 1000 id
+     */
+    public Map<Long, Entry> getAll(Collection<Long> userIds) {
+        Map<Long, Entry> result = new HashMap<>(userIds.size() * 2);
+        List<Long> missing = new ArrayList<>();
+
+        for (Long userId : userIds) {
+            if (userId == null || result.containsKey(userId)) {
+                continue;
+            }
+            Entry entry = entries.get(userId);
+            if (entry != null) {
+                result.put(userId, entry);
+            } else {
+                missing.add(userId);
+            }
+        }
+
+        hitCounter.increment(result.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        missCounter.increment(missing.size());
+
+        for (int i = 0; i < missing.size(); i += QUERY_CHUNK_SIZE) {
+            List<Long> chunk = missing.subList(i, Math.min(missing.size(), i + QUERY_CHUNK_SIZE));
+            for (DirectoryRow row : userRepository.findDirectoryRows(chunk)) {
+                Entry entry = new Entry(row.getId(), row.getUsername(), row.getFullName(), row.getAvatarUrl());
+                entries.put(row.getId(), entry);
+                result.put(row.getId(), entry);
+            }
+        }
+        return result;
+    }
+
+    public String username(Long userId) {
+        Entry entry = get(userId);
+        return entry != null ? entry.username() : null;
+    }
+
+    public UserSummaryDTO summary(Long userId) {
+        return userId != null ? summaries(List.of(userId)).get(userId) : null;
+    }
+
+    /**
+     * Summary cho list view: thông tin hiển thị từ cache, trạng thái online hỏi session store một lần cho cả list
+     */
+    public Map<Long, UserSummaryDTO> summaries(Collection<Long> userIds) {
+        Map<Long, Entry> found = getAll(userIds);
+        if (found.isEmpty()) {
+            return Map.of();
+        }
+
+        Set<Long> online = sessionStore.filterOnline(found.keySet());
+        Map<Long, UserSummaryDTO> result = new HashMap<>(found.size() * 2);
+        found.forEach((userId, entry) -> result.put(userId, entry.toSummary(online.contains(userId))));
+        return result;
+    }
+
+    /**
+     * Summary cho các user đã load sẵn (kết quả của query tìm kiếm / phân trang), giữ nguyên thứ tự
+     */
+    public List<UserSummaryDTO> summariesOf(List<User> users) {
+        for (User user : users) {
+            entries.put(user.getId(), Entry.of(user));
+        }
+
+        Set<Long> online = sessionStore.filterOnline(users.stream().map(User::getId).toList());
+        return users.stream()
+                .map(user -> Entry.of(user).toSummary(online.contains(user.getId())))
+                .toList();
+    }
+
+    /**
+     * Bỏ entry nếu thông tin hiển thị đã khác bản đang cache (update chỉ chạm lastSeen / password thì giữ)
+     */
+    public void refresh(User user) {
+        Entry cached = entries.get(user.getId());
+        if (cached != null && !cached.equals(Entry.of(user))) {
+            entries.remove(user.getId());
+            log.debug("Evicted directory entry of user {}", user.getId());
+        }
+    }
+
+    public void invalidate(Long userId) {
+        entries.remove(userId);
+    }
+
+    public record Entry(Long id, String username, String fullName, String avatarUrl) {
+
+        static Entry of(User user) {
+            return new Entry(user.getId(), user.getUsername(), user.getFullName(), user.getAvatarUrl());
+        }
+
+        UserSummaryDTO toSummary(Boolean isOnline) {
+            return UserSummaryDTO.builder()
+                    .id(id)
+                    .username(username)
+                    .fullName(fullName)
+                    .avatarUrl(avatarUrl)
+                    .isOnline(isOnline)
+                    .build();
+        }
+    }
+}
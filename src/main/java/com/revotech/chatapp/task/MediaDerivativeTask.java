@@ -0,0 +1,30 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.impl.MediaDerivativePipeline;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MediaDerivativeTask {
+
+    private final MediaDerivativePipeline mediaDerivativePipeline;
+
+    /**
+     * Ảnh còn PENDING (hàng đợi từng đầy hoặc node restart trước khi xử lý xong) được đưa lại vào pipeline
+     */
+    @Scheduled(fixedDelayString = "${app.media.retry-interval-ms:60000}")
+    public void resubmitPending() {
+        try {
+            int submitted = mediaDerivativePipeline.resubmitPending();
+            if (submitted > 0) {
+                log.info("Resubmitted {} pending images to the derivative pipeline", submitted);
+            }
+        } catch (Exception e) {
+            log.error("Error resubmitting pending image derivatives", e);
+        }
+    }
+}
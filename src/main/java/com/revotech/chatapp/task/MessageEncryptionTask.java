@@ -0,0 +1,36 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.impl.MessageEncryptionMigrator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageEncryptionTask implements ApplicationRunner {
+
+    // java -jar chatapp.jar --encrypt-messages (sau khi bật encryption hoặc đổi key)
+    private static final String RESEAL_OPTION = "encrypt-messages";
+
+    private final MessageEncryptionMigrator messageEncryptionMigrator;
+
+    /**
+     * Quét toàn bảng messages nên chỉ chạy khi được yêu cầu; message mới luôn được lưu theo cấu hình hiện tại
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(RESEAL_OPTION)) {
+            return;
+        }
+        try {
+            log.info("Re-sealing stored message content (--{})", RESEAL_OPTION);
+            messageEncryptionMigrator.reseal();
+        } catch (Exception e) {
+            // Batch đã commit giữ nguyên, chạy lại để xử lý phần còn lại
+            log.error("Message encryption migration failed", e);
+        }
+    }
+}
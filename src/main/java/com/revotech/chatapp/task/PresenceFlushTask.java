@@ -0,0 +1,27 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.PresenceService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceFlushTask {
+
+    private final PresenceService presenceService;
+
+    /**
+     * Công bố các thay đổi online / offline đã qua debounce và ghi lastSeen theo batch
+     */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:1000}")
+    public void flushPresence() {
+        try {
+            presenceService.flushChanges();
+        } catch (Exception e) {
+            log.error("Error flushing presence changes", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.impl.ReactionAggregator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReactionStatsMaintenanceTask implements ApplicationRunner {
+
+    // java -jar chatapp.jar --rebuild-reaction-stats
+    private static final String REBUILD_OPTION = "rebuild-reaction-stats";
+
+    private final ReactionAggregator reactionAggregator;
+
+    /**
+     * Backfill message_reaction_stats từ message_reactions, chỉ khi được yêu cầu: chạy one-shot trên một node,
+     * không tự chạy lúc startup của mọi node. Lần đầu deploy bảng stats đã được seed bởi chatapp.sql
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(REBUILD_OPTION)) {
+            log.info("Rebuilding reaction stats (--{})", REBUILD_OPTION);
+            reactionAggregator.rebuild();
+        }
+    }
+}
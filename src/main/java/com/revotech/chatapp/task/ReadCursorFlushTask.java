@@ -0,0 +1,27 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.ReadCursorService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReadCursorFlushTask {
+
+    private final ReadCursorService readCursorService;
+
+    /**
+     * Ghi các read cursor đã gộp trong bộ nhớ xuống room_members
+     */
+    @Scheduled(fixedDelayString = "${app.read-cursor.flush-interval-ms:5000}")
+    public void flushReadCursors() {
+        try {
+            readCursorService.flushPendingCursors();
+        } catch (Exception e) {
+            log.error("Error flushing read cursors", e);
+        }
+    }
+}
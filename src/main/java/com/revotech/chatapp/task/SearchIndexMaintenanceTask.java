@@ -0,0 +1,58 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.MessageSearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndexMaintenanceTask implements ApplicationRunner {
+
+    // java -jar chatapp.jar --rebuild-search-index
+    private static final String REBUILD_OPTION = "rebuild-search-index";
+
+    private final MessageSearchService messageSearchService;
+
+    @Value("${app.search.rebuild-on-empty:true}")
+    private boolean rebuildOnEmpty;
+
+    /**
+     * Cold start: dựng index từ database khi được yêu cầu hoặc khi index còn trống
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(REBUILD_OPTION)) {
+            log.info("Rebuilding message search index (--{})", REBUILD_OPTION);
+            messageSearchService.rebuildIndex();
+        } else if (rebuildOnEmpty && messageSearchService.isIndexEmpty()) {
+            log.info("Message search index is empty, rebuilding from database");
+            messageSearchService.rebuildIndex();
+        }
+    }
+
+    /**
+     * Mở searcher mới để tin vừa gửi/sửa/xoá xuất hiện trong kết quả search
+     */
+    @Scheduled(fixedDelayString = "${app.search.refresh-interval-ms:1000}")
+    public void refreshSearcher() {
+        messageSearchService.refresh();
+    }
+
+    /**
+     * Ghi index xuống đĩa theo chu kỳ thay vì commit mỗi lần gửi tin
+     */
+    @Scheduled(fixedDelayString = "${app.search.commit-interval-ms:30000}")
+    public void commitIndex() {
+        try {
+            messageSearchService.commit();
+        } catch (Exception e) {
+            log.error("Error committing message search index", e);
+        }
+    }
+}
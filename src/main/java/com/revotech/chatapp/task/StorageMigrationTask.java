@@ -0,0 +1,45 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.impl.LocalBlobStore;
+import com.revotech.chatapp.service.impl.StorageMigrator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StorageMigrationTask implements ApplicationRunner {
+
+    // java -jar chatapp.jar --migrate-storage
+    private static final String MIGRATE_OPTION = "migrate-storage";
+
+    // Chuyển sang object storage: app.storage.backend=s3 và --copy-storage-from=/opt/chatapp/uploads/store
+    private static final String COPY_FROM_OPTION = "copy-storage-from";
+
+    private final StorageMigrator storageMigrator;
+
+    /**
+     * Đưa upload còn lưu theo đường dẫn đĩa (trước khi có BlobStore) vào store hiện tại, hoặc copy toàn bộ blob
+     * từ một store local sang store hiện tại. Chỉ chạy khi được yêu cầu, trên một instance: khởi động bình
+     * thường của mọi node trong cluster không tự migrate
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            if (args.containsOption(COPY_FROM_OPTION)) {
+                String root = args.getOptionValues(COPY_FROM_OPTION).get(0);
+                log.info("Copying blobs from local store {} (--{})", root, COPY_FROM_OPTION);
+                storageMigrator.copyFrom(new LocalBlobStore(root));
+            } else if (args.containsOption(MIGRATE_OPTION)) {
+                log.info("Migrating uploads into the blob store (--{})", MIGRATE_OPTION);
+                storageMigrator.migrate();
+            }
+        } catch (Exception e) {
+            // Row chưa chuyển vẫn giữ đường dẫn cũ, chạy lại để xử lý phần còn lại
+            log.error("Storage migration failed", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.TypingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TypingSnapshotTask {
+
+    private final TypingService typingService;
+
+    /**
+     * Gộp các thay đổi typing trong chu kỳ thành một snapshot cho mỗi chat
+     */
+    @Scheduled(fixedDelayString = "${app.typing.interval-ms:500}")
+    public void publishTypingSnapshots() {
+        try {
+            typingService.publishSnapshots();
+        } catch (Exception e) {
+            log.error("Error publishing typing snapshots", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.MessageService;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import com.revotech.chatapp.service.UserSessionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UnreadCounterReconcileTask {
+
+    private static final String ROOM_PREFIX = "room:";
+    private static final String CONVERSATION_PREFIX = "conversation:";
+
+    private final UnreadCounterStore unreadCounterStore;
+    private final ReadCursorService readCursorService;
+    private final MessageService messageService;
+    private final UserSessionService userSessionService;
+
+    /**
+     * Tính lại counter của user đang online từ DB để sửa drift (tin bị xoá, increment bị lỡ...)
+     */
+    @Scheduled(fixedDelayString = "${app.unread.reconcile-interval-ms:300000}")
+    public void reconcileUnreadCounters() {
+        int repaired = 0;
+        for (Long userId : userSessionService.getOnlineUserIds()) {
+            for (Map.Entry<String, Long> entry : unreadCounterStore.getAll(userId).entrySet()) {
+                try {
+                    Long actual = countFromDatabase(userId, entry.getKey());
+                    if (actual == null) {
+                        unreadCounterStore.invalidate(userId, entry.getKey());
+                    } else if (!actual.equals(entry.getValue())) {
+                        unreadCounterStore.set(userId, entry.getKey(), actual);
+                        repaired++;
+                    }
+                } catch (Exception e) {
+                    log.error("Error reconciling unread counter {} for user {}", entry.getKey(), userId, e);
+                }
+            }
+        }
+
+        if (repaired > 0) {
+            log.info("Repaired {} drifted unread counters", repaired);
+        }
+    }
+
+    private Long countFromDatabase(Long userId, String chatKey) {
+        if (chatKey.startsWith(ROOM_PREFIX)) {
+            return readCursorService.countUnread(Long.parseLong(chatKey.substring(ROOM_PREFIX.length())), userId);
+        }
+        if (chatKey.startsWith(CONVERSATION_PREFIX)) {
+            return messageService.countUnreadInConversation(
+                    Long.parseLong(chatKey.substring(CONVERSATION_PREFIX.length())), userId);
+        }
+        return null;
+    }
+}
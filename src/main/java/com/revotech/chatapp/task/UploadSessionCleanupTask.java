@@ -0,0 +1,30 @@
+package com.revotech.chatapp.task;
+
+import com.revotech.chatapp.service.UploadSessionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionCleanupTask {
+
+    private final UploadSessionService uploadSessionService;
+
+    /**
+     * Upload theo chunk bị bỏ dở (client không gửi chunk nào trong session-ttl): xoá session và file đã cấp phát
+     */
+    @Scheduled(fixedDelayString = "${app.storage.chunked.cleanup-interval-ms:600000}")
+    public void expireAbandonedUploads() {
+        try {
+            int expired = uploadSessionService.expireAbandoned();
+            if (expired > 0) {
+                log.info("Expired {} abandoned chunked uploads", expired);
+            }
+        } catch (Exception e) {
+            log.error("Error expiring abandoned chunked uploads", e);
+        }
+    }
+}
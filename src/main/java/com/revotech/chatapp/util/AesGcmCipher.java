@@ -0,0 +1,167 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.exception.EncryptionException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * AES-GCM cho chuỗi ngắn (nội dung message), kết quả là Base64 của:
+ *
+ * <pre>version(1) | keyIdLength(1) | keyId | nonce(12) | ciphertext + tag(16)</pre>
+ *
+ * Nonce ngẫu nhiên cho mỗi lần encrypt; key id nằm trong envelope nên có thể đổi key active mà dữ liệu cũ
+ * vẫn giải mã được bằng key cũ. associatedData (vd. messageId) được xác thực nhưng không lưu: ciphertext
+ * bị chép sang row khác sẽ không giải mã được.
+ *
+ * Cipher được cache theo thread: Cipher.getInstance tốn hơn cả encrypt một message ngắn, và init lại với
+ * cùng key thì SunJCE bỏ qua bước key expansion. AES-NI / CLMUL intrinsics của HotSpot áp dụng cho
+ * provider mặc định này.
+ */
+public class AesGcmCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte VERSION = 1;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final Pattern KEY_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionException("AES/GCM is not available", e);
+        }
+    });
+
+    // SecureRandom dùng chung bị lock khi nhiều thread cùng sinh nonce
+    private static final ThreadLocal<SecureRandom> RANDOMS = ThreadLocal.withInitial(SecureRandom::new);
+
+    private final Map<String, SecretKey> keys;
+    private final String activeKeyId;
+    private final byte[] activeKeyIdBytes;
+
+    /**
+     * @param keys        mọi key còn dùng để giải mã, theo key id
+     * @param activeKeyId key dùng để encrypt, null nếu chỉ giải mã
+     */
+    public AesGcmCipher(Map<String, SecretKey> keys, String activeKeyId) {
+        keys.keySet().forEach(AesGcmCipher::validateKeyId);
+        if (activeKeyId != null && !keys.containsKey(activeKeyId)) {
+            throw new IllegalArgumentException("No key configured for active key id " + activeKeyId);
+        }
+        this.keys = Map.copyOf(keys);
+        this.activeKeyId = activeKeyId;
+        this.activeKeyIdBytes = activeKeyId != null ? activeKeyId.getBytes(StandardCharsets.US_ASCII) : null;
+    }
+
+    public String activeKeyId() {
+        return activeKeyId;
+    }
+
+    public String encrypt(String plainText, String associatedData) {
+        if (activeKeyId == null) {
+            throw new EncryptionException("No active encryption key");
+        }
+
+        byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+        int headerLength = 2 + activeKeyIdBytes.length;
+        byte[] envelope = new byte[headerLength + NONCE_LENGTH + plain.length + TAG_BITS / 8];
+        envelope[0] = VERSION;
+        envelope[1] = (byte) activeKeyIdBytes.length;
+        System.arraycopy(activeKeyIdBytes, 0, envelope, 2, activeKeyIdBytes.length);
+        byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOMS.get().nextBytes(nonce);
+        System.arraycopy(nonce, 0, envelope, headerLength, NONCE_LENGTH);
+
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keys.get(activeKeyId), new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            cipher.doFinal(plain, 0, plain.length, envelope, headerLength + NONCE_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionException("Encryption failed", e);
+        }
+        return Base64.getEncoder().encodeToString(envelope);
+    }
+
+    public String decrypt(String encoded, String associatedData) {
+        byte[] envelope = decode(encoded);
+        String keyId = keyIdOf(envelope);
+        SecretKey key = keys.get(keyId);
+        if (key == null) {
+            throw new EncryptionException("Unknown encryption key id " + keyId);
+        }
+
+        int nonceOffset = 2 + envelope[1];
+        int dataOffset = nonceOffset + NONCE_LENGTH;
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, envelope, nonceOffset, NONCE_LENGTH));
+            cipher.updateAAD(associatedData.getBytes(StandardCharsets.UTF_8));
+            // Plaintext ghi đè lên vùng nonce trở đi, không cấp thêm buffer
+            int length = cipher.doFinal(envelope, dataOffset, envelope.length - dataOffset, envelope, nonceOffset);
+            return new String(envelope, nonceOffset, length, StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionException("Decryption failed for key id " + keyId, e);
+        }
+    }
+
+    /**
+     * Key id đã dùng để encrypt, để biết row nào cần encrypt lại khi đổi key
+     */
+    public String keyIdOf(String encoded) {
+        return keyIdOf(decode(encoded));
+    }
+
+    public static SecretKey parseKey(String base64) {
+        byte[] key = Base64.getDecoder().decode(base64.trim());
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes, got " + key.length);
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+
+    public static String generateKey() {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256, RANDOMS.get());
+            return Base64.getEncoder().encodeToString(keyGenerator.generateKey().getEncoded());
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionException("Failed to generate encryption key", e);
+        }
+    }
+
+    public static void validateKeyId(String keyId) {
+        if (keyId == null || !KEY_ID.matcher(keyId).matches()) {
+            throw new IllegalArgumentException("Invalid encryption key id: " + keyId);
+        }
+    }
+
+    private static byte[] decode(String encoded) {
+        byte[] envelope;
+        try {
+            envelope = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new EncryptionException("Encrypted value is not Base64", e);
+        }
+        if (envelope.length < 2 || envelope[0] != VERSION || envelope[1] < 1
+                || envelope.length < 2 + envelope[1] + NONCE_LENGTH + TAG_BITS / 8) {
+            throw new EncryptionException("Unsupported encrypted value");
+        }
+        return envelope;
+    }
+
+    private static String keyIdOf(byte[] envelope) {
+        return new String(envelope, 2, envelope[1], StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,205 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.model.dto.FileDownload;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Ghi file ra HTTP response: Range (206 / 416), conditional request (ETag / Last-Modified -> 304),
+ * Cache-Control immutable vì file lưu theo tên UUID không bao giờ bị ghi đè.
+ *
+ * Body không đi qua heap: trên Tomcat giao cho sendfile của connector (kernel copy thẳng file -> socket),
+ * ngoài ra FileChannel.transferTo vào output stream của response. Blob không nằm trên đĩa local (object storage)
+ * thì chỉ đọc đúng range được yêu cầu từ store rồi copy sang response.
+ */
+@Component
+@Slf4j
+public class FileStreamer {
+
+    // Tomcat request attributes (org.apache.catalina.Globals)
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final long sendfileThreshold;
+    private final String cacheControl;
+
+    // chat.file.downloads{mode=sendfile|channel|stream|not_modified|unsatisfiable}
+    private final Counter sendfileDownloads;
+    private final Counter channelDownloads;
+    private final Counter streamDownloads;
+    private final Counter notModified;
+    private final Counter unsatisfiable;
+
+    public FileStreamer(@Value("${app.storage.download.sendfile-threshold:49152}") long sendfileThreshold,
+                        @Value("${app.storage.download.cache-max-age:31536000}") long cacheMaxAge,
+                        MeterRegistry meterRegistry) {
+        this.sendfileThreshold = sendfileThreshold;
+        // private: download cần đăng nhập, shared cache không được giữ
+        this.cacheControl = "private, max-age=" + cacheMaxAge + ", immutable";
+        this.sendfileDownloads = downloadCounter(meterRegistry, "sendfile");
+        this.channelDownloads = downloadCounter(meterRegistry, "channel");
+        this.streamDownloads = downloadCounter(meterRegistry, "stream");
+        this.notModified = downloadCounter(meterRegistry, "not_modified");
+        this.unsatisfiable = downloadCounter(meterRegistry, "unsatisfiable");
+    }
+
+    public void stream(FileDownload file, boolean inline,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // If-None-Match / If-Modified-Since -> 304, If-Match / If-Unmodified-Since -> 412; set luôn ETag, Last-Modified
+        if (new ServletWebRequest(request, response).checkNotModified(file.getEtag(), file.getLastModified())) {
+            notModified.increment();
+            return;
+        }
+
+        long size = file.getSize();
+        long start = 0;
+        long length = size;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && rangeApplies(request, file)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    length = ranges.get(0).getRangeEnd(size) - start + 1;
+                    if (start >= size || length <= 0) {
+                        throw new IllegalArgumentException("Range starts beyond end of file");
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                unsatisfiable.increment();
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+
+            // Multi-range (multipart/byteranges) không hỗ trợ: trả cả file, RFC 9110 cho phép bỏ qua Range
+            if (ranges.size() == 1) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+            }
+        }
+
+        response.setContentType(contentType(file, request));
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, (inline ? ContentDisposition.inline() : ContentDisposition.attachment())
+                .filename(file.getOriginalFileName(), StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        if (file.getPath() == null) {
+            streamDownloads.increment();
+            copy(file, start, length, response);
+            return;
+        }
+
+        if (length >= sendfileThreshold && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Connector gửi file sau khi servlet trả về
+            request.setAttribute(SENDFILE_FILENAME, file.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            sendfileDownloads.increment();
+            return;
+        }
+
+        channelDownloads.increment();
+        transfer(file, start, length, response);
+    }
+
+    private void transfer(FileDownload file, long start, long length, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+        } catch (IOException e) {
+            // Player seek / đóng tab giữa chừng: response đã commit, không còn gì để báo lỗi
+            if (response.isCommitted()) {
+                log.debug("Download of {} aborted: {}", file.getFileName(), e.getMessage());
+                return;
+            }
+            throw e;
+        }
+    }
+
+    private void copy(FileDownload file, long start, long length, HttpServletResponse response) throws IOException {
+        try (InputStream in = file.getSource().open(start, length)) {
+            in.transferTo(response.getOutputStream());
+        } catch (IOException e) {
+            if (response.isCommitted()) {
+                log.debug("Download of {} aborted: {}", file.getFileName(), e.getMessage());
+                return;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * If-Range: chỉ trả một phần khi bản client đang giữ vẫn là bản hiện tại, ngược lại trả cả file
+     */
+    private static boolean rangeApplies(HttpServletRequest request, FileDownload file) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.getEtag());
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date >= 0 && date / 1000 == file.getLastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String contentType(FileDownload file, HttpServletRequest request) {
+        if (file.getMimeType() != null) {
+            return file.getMimeType();
+        }
+        String detected = request.getServletContext().getMimeType(file.getFileName());
+        return detected != null ? detected : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static Counter downloadCounter(MeterRegistry meterRegistry, String mode) {
+        return Counter.builder("chat.file.downloads")
+                .description("File downloads by delivery mode")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,257 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.model.enums.ImageVariant;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sinh các bản thu nhỏ của một ảnh bằng ImageIO.
+ *
+ * - Đọc kích thước từ header trước khi decode, ảnh vượt maxPixels bị từ chối (decompression bomb)
+ * - Ảnh lớn được decode với subsampling nên không bao giờ giữ bitmap full-size trong heap
+ * - Xoay / lật theo EXIF Orientation (ảnh chụp từ điện thoại) trước khi thu nhỏ, vì EXIF không được giữ lại
+ * - Thu nhỏ dần (mỗi bước /2) rồi bilinear tới kích thước cuối, bản nhỏ hơn dựng từ bản lớn hơn
+ * - Encode lại từ pixel nên EXIF / GPS / ICC của file gốc không đi theo
+ *
+ * Ảnh có alpha ghi PNG, còn lại JPEG.
+ */
+public final class ImageDerivativeGenerator {
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private static final int APP1_MARKER = 0xE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    public record Derivative(ImageVariant variant, Path path, int width, int height) {
+    }
+
+    public record Result(int width, int height, List<Derivative> derivatives) {
+    }
+
+    private ImageDerivativeGenerator() {
+    }
+
+    /**
+     * Ghi mỗi variant thành {baseName}_{suffix}.jpg|png trong targetDir
+     */
+    public static Result generate(Path source, Path targetDir, String baseName, long maxPixels) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            if (in == null) {
+                throw new IOException("Cannot open image " + source.getFileName());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + source.getFileName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+                int orientation = orientation(source);
+
+                List<ImageVariant> variants = new ArrayList<>(List.of(ImageVariant.values()));
+                variants.sort(Comparator.comparingInt(ImageVariant::getMaxSide).reversed());
+
+                // Giữ gấp đôi kích thước variant lớn nhất để bước thu nhỏ cuối vẫn mượt
+                int subsampling = Math.max(1, Math.max(width, height) / (variants.get(0).getMaxSide() * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage current = orient(reader.read(0, param), orientation);
+
+                List<Derivative> derivatives = new ArrayList<>(variants.size());
+                for (ImageVariant variant : variants) {
+                    current = scaleToFit(current, variant.getMaxSide());
+                    boolean alpha = current.getColorModel().hasAlpha();
+                    Path target = targetDir.resolve(baseName + "_" + variant.getSuffix() + (alpha ? ".png" : ".jpg"));
+                    write(current, target, alpha);
+                    derivatives.add(new Derivative(variant, target, current.getWidth(), current.getHeight()));
+                }
+                // Orientation 5-8 xoay 90°: kích thước hiển thị là chiều ngược lại
+                return orientation >= 5 ? new Result(height, width, derivatives) : new Result(width, height, derivatives);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Tag Orientation (0x0112) trong IFD0 của APP1 Exif; 1 (không xoay) khi không phải JPEG hoặc EXIF hỏng.
+     * Đọc thẳng các marker đầu file: metadata của ImageIO từ chối JPEG có APP1 đứng trước APP0 (JFIF)
+     */
+    static int orientation(Path source) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return 1;
+                }
+                if (marker == 0xFF00 + APP1_MARKER) {
+                    byte[] data = in.readNBytes(length);
+                    int orientation = exifOrientation(data);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                } else {
+                    in.skipNBytes(length);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // EXIF lỗi không làm hỏng derivative, chỉ mất thông tin xoay
+            return 1;
+        }
+    }
+
+    // data = "Exif\0\0" + TIFF header + IFD0
+    private static int exifOrientation(byte[] data) {
+        if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+        if (tiff.getShort(0) == 0x4949) {
+            tiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (tiff.getShort(0) != 0x4D4D) {
+            return 0;
+        }
+
+        int ifd = tiff.getInt(4);
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return 0;
+        }
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return 0;
+            }
+            if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                int value = tiff.getShort(entry + 8) & 0xFFFF;
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Áp EXIF Orientation lên pixel: 2-4 lật / xoay 180°, 5-8 xoay 90° (có thể kèm lật)
+     */
+    static BufferedImage orient(BufferedImage source, int orientation) {
+        int w = source.getWidth();
+        int h = source.getHeight();
+        // AffineTransform(m00, m10, m01, m11, m02, m12)
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> null;
+        };
+        if (transform == null) {
+            return source;
+        }
+
+        boolean swap = orientation >= 5;
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage target = new BufferedImage(swap ? h : w, swap ? w : h, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    static BufferedImage scaleToFit(BufferedImage source, int maxSide) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        double scale = Math.min(1.0, (double) maxSide / longest);
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height, type);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                // JPEG không có alpha: nền trắng thay vì đen cho pixel trong suốt của GIF
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static void write(BufferedImage image, Path target, boolean png) throws IOException {
+        Files.deleteIfExists(target);
+        if (png) {
+            if (!ImageIO.write(image, "png", target.toFile())) {
+                throw new IOException("No PNG writer available");
+            }
+            return;
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.revotech.chatapp.util;
+
+import java.util.Arrays;
+
+/**
+ * Cache long -> V có giới hạn kích thước, key không bị box thành Long.
+ *
+ * Chia 16 segment theo hash của key, mỗi segment là long[] keys + Object[] values (open addressing,
+ * linear probing, load factor tối đa 0.5) với lock riêng. Segment đầy thì bỏ một entry theo CLOCK
+ * (second chance): entry được đọc kể từ lần quét trước được giữ lại.
+ */
+public class LongObjectCache<V> {
+
+    private static final int SEGMENT_BITS = 4;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public LongObjectCache(int maxSize) {
+        int perSegment = Math.max(8, (maxSize + segments.length - 1) / segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = mix(key);
+        return (V) segment(hash).get(key, hash);
+    }
+
+    public void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        long hash = mix(key);
+        segment(hash).put(key, hash, value);
+    }
+
+    public void remove(long key) {
+        long hash = mix(key);
+        segment(hash).remove(key, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segment(long hash) {
+        // Bit cao chọn segment, bit thấp chọn slot
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    // MurmurHash3 fmix64: id tuần tự vẫn rải đều
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Segment {
+        private final int capacity;
+        private final int mask;
+        private final long[] keys;
+        private final Object[] values;   // null = slot trống
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            int length = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.mask = length - 1;
+            this.keys = new long[length];
+            this.values = new Object[length];
+            this.referenced = new boolean[length];
+        }
+
+        synchronized Object get(long key, long hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            referenced[slot] = true;
+            return values[slot];
+        }
+
+        synchronized void put(long key, long hash, Object value) {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                values[slot] = value;
+                referenced[slot] = true;
+                return;
+            }
+
+            if (size >= capacity) {
+                evictOne();
+            }
+
+            slot = (int) hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = false;
+            size++;
+        }
+
+        synchronized void remove(long key, long hash) {
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            Arrays.fill(values, null);
+            Arrays.fill(referenced, false);
+            size = 0;
+        }
+
+        private int find(long key, long hash) {
+            int slot = (int) hash & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void evictOne() {
+            while (true) {
+                hand = (hand + 1) & mask;
+                if (values[hand] == null) {
+                    continue;
+                }
+                if (referenced[hand]) {
+                    referenced[hand] = false;
+                    continue;
+                }
+                delete(hand);
+                return;
+            }
+        }
+
+        // Backward-shift deletion: kéo các entry phía sau về lỗ trống để chuỗi probe không bị đứt
+        private void delete(int slot) {
+            int gap = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == null) {
+                    break;
+                }
+                int home = (int) mix(keys[next]) & mask;
+                boolean movable = next > gap
+                        ? home <= gap || home > next
+                        : home <= gap && home > next;
+                if (movable) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    referenced[gap] = referenced[next];
+                    gap = next;
+                }
+            }
+            values[gap] = null;
+            referenced[gap] = false;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.exception.AppException;
+import com.revotech.chatapp.model.entity.Message;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor cho keyset pagination: (createdAt, id) của một message.
+ * Client chỉ nhận chuỗi opaque, không tự ghép.
+ */
+@Getter
+@AllArgsConstructor
+public class MessageCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final LocalDateTime createdAt;
+    private final Long id;
+
+    public static MessageCursor of(Message message) {
+        return new MessageCursor(message.getCreatedAt(), message.getId());
+    }
+
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            return new MessageCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new AppException("Invalid cursor");
+        }
+    }
+}
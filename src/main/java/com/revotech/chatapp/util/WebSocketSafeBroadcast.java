@@ -1,20 +1,43 @@
 package com.revotech.chatapp.util;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
 
 /**
  * Utility class để xử lý WebSocket broadcast một cách an toàn
  * Tránh lỗi IllegalStateException khi session đã bị đóng
  */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class WebSocketSafeBroadcast {
 
     private final SimpMessageSendingOperations messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    // chat.broadcast.failures{reason=session_closed|state|error}
+    private final Counter sessionClosedFailures;
+    private final Counter stateFailures;
+    private final Counter errorFailures;
+
+    public WebSocketSafeBroadcast(SimpMessageSendingOperations messagingTemplate, ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.sessionClosedFailures = failureCounter(meterRegistry, "session_closed");
+        this.stateFailures = failureCounter(meterRegistry, "state");
+        this.errorFailures = failureCounter(meterRegistry, "error");
+    }
 
     /**
      * Gửi message đến một destination cụ thể với error handling
@@ -25,11 +48,14 @@ public class WebSocketSafeBroadcast {
             log.debug("Message successfully sent to destination: {}", destination);
         } catch (IllegalStateException e) {
             if (e.getMessage() != null && e.getMessage().contains("WebSocket session has been closed")) {
+                sessionClosedFailures.increment();
                 log.debug("WebSocket session closed, skipping broadcast to destination: {}", destination);
             } else {
+                stateFailures.increment();
                 log.warn("WebSocket state error during broadcast to {}: {}", destination, e.getMessage());
             }
         } catch (Exception e) {
+            errorFailures.increment();
             log.error("Unexpected error during broadcast to destination {}: {}", destination, e.getMessage());
         }
     }
@@ -43,21 +69,94 @@ public class WebSocketSafeBroadcast {
             log.debug("Message successfully sent to user {} at destination: {}", user, destination);
         } catch (IllegalStateException e) {
             if (e.getMessage() != null && e.getMessage().contains("WebSocket session has been closed")) {
+                sessionClosedFailures.increment();
                 log.debug("WebSocket session closed, skipping broadcast to user {} at destination: {}", user, destination);
             } else {
+                stateFailures.increment();
                 log.warn("WebSocket state error during broadcast to user {} at {}: {}", user, destination, e.getMessage());
             }
         } catch (Exception e) {
+            errorFailures.increment();
             log.error("Unexpected error during broadcast to user {} at destination {}: {}", user, destination, e.getMessage());
         }
     }
 
     /**
-     * Batch gửi message đến nhiều destinations
+     * Serialize payload một lần thành JSON body (cùng ObjectMapper với broker converter).
+     * Byte[] này được dùng chung cho mọi destination, mọi subscriber session và cluster relay -
+     * mỗi recipient chỉ còn tốn header STOMP của riêng nó.
+     */
+    public Message<byte[]> preEncode(Object payload) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new MessageConversionException("Could not encode broadcast payload", e);
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        // build() đóng băng header: message dùng lại cho nhiều destination, template sẽ copy header chứ không sửa
+        return MessageBuilder.withPayload(body).setHeaders(accessor).build();
+    }
+
+    /**
+     * Gửi payload đã encode sẵn, không qua message converter
+     */
+    public void safeSendEncoded(String destination, Message<byte[]> encoded) {
+        try {
+            messagingTemplate.send(destination, encoded);
+            log.debug("Pre-encoded message successfully sent to destination: {}", destination);
+        } catch (IllegalStateException e) {
+            if (e.getMessage() != null && e.getMessage().contains("WebSocket session has been closed")) {
+                sessionClosedFailures.increment();
+                log.debug("WebSocket session closed, skipping broadcast to destination: {}", destination);
+            } else {
+                stateFailures.increment();
+                log.warn("WebSocket state error during broadcast to {}: {}", destination, e.getMessage());
+            }
+        } catch (Exception e) {
+            errorFailures.increment();
+            log.error("Unexpected error during broadcast to destination {}: {}", destination, e.getMessage());
+        }
+    }
+
+    /**
+     * Encode một lần rồi gửi đến destination
+     */
+    public void safeSendPreEncoded(String destination, Object payload) {
+        Message<byte[]> encoded;
+        try {
+            encoded = preEncode(payload);
+        } catch (MessageConversionException e) {
+            errorFailures.increment();
+            log.error("Could not encode broadcast to destination {}: {}", destination, e.getMessage());
+            return;
+        }
+        safeSendEncoded(destination, encoded);
+    }
+
+    /**
+     * Batch gửi message đến nhiều destinations - payload chỉ được serialize một lần
      */
     public void safeBatchConvertAndSend(String[] destinations, Object payload) {
+        Message<byte[]> encoded;
+        try {
+            encoded = preEncode(payload);
+        } catch (MessageConversionException e) {
+            errorFailures.increment();
+            log.error("Could not encode batch broadcast: {}", e.getMessage());
+            return;
+        }
         for (String destination : destinations) {
-            safeConvertAndSend(destination, payload);
+            safeSendEncoded(destination, encoded);
         }
     }
-}
\ No newline at end of file
+
+    private static Counter failureCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("chat.broadcast.failures")
+                .description("Broadcasts that threw and were swallowed")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
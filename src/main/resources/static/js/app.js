@@ -675,6 +675,12 @@ document.getElementById('fileInput').addEventListener('change', function (e) {
     }
 });
 
+// File lớn đi theo chunk (resumable), file nhỏ gửi một request
+const CHUNKED_UPLOAD_THRESHOLD = 8 * 1024 * 1024;
+const MAX_UPLOAD_SIZE = 500 * 1024 * 1024;
+const UPLOAD_PARALLELISM = 3;
+const CHUNK_RETRIES = 5;
+
 async function uploadFile(file) {
     if (!file) return;
 
@@ -684,51 +690,116 @@ async function uploadFile(file) {
         return;
     }
 
-    if (file.size > 50 * 1024 * 1024) {
-        alert('File quá lớn! Kích thước tối đa là 50MB.');
+    const maxSize = file.size > CHUNKED_UPLOAD_THRESHOLD ? MAX_UPLOAD_SIZE : 50 * 1024 * 1024;
+    if (file.size > maxSize) {
+        alert(`File quá lớn! Kích thước tối đa là ${maxSize / 1024 / 1024}MB.`);
         return;
     }
 
-    const formData = new FormData();
-    formData.append('file', file);
-
     try {
-        const response = await fetch('/api/files/upload', {
-            method: 'POST',
-            headers: {
-                'Authorization': 'Bearer ' + token
-            },
-            body: formData
-        });
-
-        if (response.ok) {
-            const fileMessage = await response.json();
-
-            const chatMessage = {
-                content: `Đã gửi một file: ${fileMessage.originalFileName}`,
-                type: 'FILE',
-                fileUploadId: fileMessage.id
-            };
-
-            // Send via WebSocket
-            if (window.wsManager && window.chatManager) {
-                const chatInfo = window.chatManager.getCurrentChatInfo();
-                if (chatInfo.type && chatInfo.id) {
-                    window.wsManager.sendMessage(chatInfo.type, chatInfo.id, chatMessage);
-                }
+        const fileMessage = file.size > CHUNKED_UPLOAD_THRESHOLD
+            ? await uploadChunked(file, token)
+            : await uploadWhole(file, token);
+
+        const chatMessage = {
+            content: `Đã gửi một file: ${fileMessage.originalFileName}`,
+            type: 'FILE',
+            fileUploadId: fileMessage.id
+        };
+
+        // Send via WebSocket
+        if (window.wsManager && window.chatManager) {
+            const chatInfo = window.chatManager.getCurrentChatInfo();
+            if (chatInfo.type && chatInfo.id) {
+                window.wsManager.sendMessage(chatInfo.type, chatInfo.id, chatMessage);
             }
-
-            document.getElementById('fileInput').value = '';
-        } else {
-            const error = await response.text();
-            alert('Upload thất bại: ' + error);
         }
+
+        document.getElementById('fileInput').value = '';
     } catch (error) {
         console.error('Upload error:', error);
         alert('Upload thất bại: ' + error.message);
     }
 }
 
+async function uploadWhole(file, token) {
+    // Gửi nguyên nội dung file (không multipart): server stream thẳng vào storage
+    const response = await fetch('/api/files/upload', {
+        method: 'POST',
+        headers: {
+            'Authorization': 'Bearer ' + token,
+            'Content-Type': file.type || 'application/octet-stream',
+            'X-File-Name': encodeURIComponent(file.name)
+        },
+        body: file
+    });
+
+    if (!response.ok) {
+        throw new Error(await response.text());
+    }
+    return response.json();
+}
+
+async function uploadChunked(file, token) {
+    const headers = { 'Authorization': 'Bearer ' + token };
+    // Chọn lại cùng file (kể cả sau khi reload trang) thì tiếp tục session cũ, chỉ gửi các chunk còn thiếu
+    const resumeKey = `upload:${file.name}:${file.size}:${file.lastModified}`;
+
+    let status = null;
+    const savedId = localStorage.getItem(resumeKey);
+    if (savedId) {
+        const response = await fetch(`/api/files/uploads/${savedId}`, { headers });
+        status = response.ok ? await response.json() : null;
+    }
+
+    if (!status) {
+        const response = await fetch('/api/files/uploads', {
+            method: 'POST',
+            headers: { ...headers, 'Content-Type': 'application/json' },
+            body: JSON.stringify({ fileName: file.name, size: file.size })
+        });
+        if (!response.ok) {
+            throw new Error(await response.text());
+        }
+        status = await response.json();
+        localStorage.setItem(resumeKey, status.uploadId);
+    }
+
+    const pending = [...status.missingOffsets];
+    const sendChunk = async (offset) => {
+        const chunk = file.slice(offset, Math.min(offset + status.chunkSize, file.size));
+        for (let attempt = 1; ; attempt++) {
+            try {
+                const response = await fetch(`/api/files/uploads/${status.uploadId}?offset=${offset}`, {
+                    method: 'PUT',
+                    headers: { ...headers, 'Content-Type': 'application/octet-stream' },
+                    body: chunk
+                });
+                if (response.ok) return;
+                // 4xx (session hết hạn, offset sai) không retry được
+                if (response.status < 500) throw Object.assign(new Error(await response.text()), { fatal: true });
+            } catch (error) {
+                if (error.fatal || attempt >= CHUNK_RETRIES) throw error;
+            }
+            await new Promise(resolve => setTimeout(resolve, Math.min(1000 * 2 ** attempt, 15000)));
+        }
+    };
+
+    const workers = Array.from({ length: UPLOAD_PARALLELISM }, async () => {
+        while (pending.length > 0) {
+            await sendChunk(pending.shift());
+        }
+    });
+    await Promise.all(workers);
+
+    const response = await fetch(`/api/files/uploads/${status.uploadId}/complete`, { method: 'POST', headers });
+    if (!response.ok) {
+        throw new Error(await response.text());
+    }
+    localStorage.removeItem(resumeKey);
+    return response.json();
+}
+
 // Utility Functions
 function formatTime(dateString) {
     if (!dateString) return '';
@@ -5,8 +5,12 @@ class ChatManager {
         this.currentChatId = null;
         this.currentChatKey = null;
         this.typingUsers = new Set();
+        // nodeId -> { users, expiresAt }: mỗi node chỉ gửi người đang nhập qua node đó
+        this.typingByNode = new Map();
+        this.typingExpiryTimer = null;
         this.typingTimer = null;
         this.isCurrentlyTyping = false;
+        this.lastTypingSentAt = 0;
     }
 
     async openConversation(conversationId, title) {
@@ -103,6 +107,8 @@ class ChatManager {
 
         // Clear typing users
         this.typingUsers.clear();
+        this.typingByNode.clear();
+        clearTimeout(this.typingExpiryTimer);
         this.updateTypingIndicator();
     }
 
@@ -128,6 +134,13 @@ class ChatManager {
     }
 
     handleMessageUpdate(response) {
+        if (response.type === 'REACTION') {
+            if (window.messageManager) {
+                window.messageManager.applyReactionDeltas(response.data);
+            }
+            return;
+        }
+
         switch (response.action) {
             case 'SEND':
                 if (window.showMessage) {
@@ -249,14 +262,18 @@ class ChatManager {
 
         window.wsManager.sendTyping(this.currentChatType, this.currentChatId, false);
         this.isCurrentlyTyping = false;
+        this.lastTypingSentAt = 0;
     }
 
     handleTypingInput() {
         if (!window.wsManager || !window.wsManager.isConnected()) return;
 
-        if (!this.isCurrentlyTyping) {
+        // Server tự bỏ trạng thái typing sau vài giây - gõ liên tục thì gửi lại START định kỳ
+        const now = Date.now();
+        if (!this.isCurrentlyTyping || now - this.lastTypingSentAt > 3000) {
             this.sendTyping();
             this.isCurrentlyTyping = true;
+            this.lastTypingSentAt = now;
         }
 
         clearTimeout(this.typingTimer);
@@ -308,10 +325,51 @@ class ChatManager {
         }
     }
 
+    // Gộp snapshot của các node, bỏ node không gửi lại trong expiresInMs (node đã chết)
+    mergeTypingSnapshots() {
+        const now = Date.now();
+        let nextExpiry = Infinity;
+        const merged = new Set();
+        for (const [nodeId, entry] of this.typingByNode) {
+            if (entry.expiresAt <= now) {
+                this.typingByNode.delete(nodeId);
+                continue;
+            }
+            entry.users.forEach(user => merged.add(user));
+            nextExpiry = Math.min(nextExpiry, entry.expiresAt);
+        }
+        this.typingUsers = merged;
+        this.updateTypingIndicator();
+
+        clearTimeout(this.typingExpiryTimer);
+        if (nextExpiry !== Infinity) {
+            this.typingExpiryTimer = setTimeout(() => this.mergeTypingSnapshots(), nextExpiry - now);
+        }
+    }
+
     handleTypingNotification(response) {
         console.log('Processing typing notification:', response);
 
         try {
+            // Snapshot từ server: danh sách đầy đủ người đang nhập trong chat, của một node
+            if (response.type === 'TYPING' && response.action === 'SNAPSHOT' && response.data) {
+                const data = response.data;
+                const users = (data.users || [])
+                    .filter(user => !window.currentUser || user.userId !== window.currentUser.id)
+                    .map(user => user.username || user.fullName);
+                const nodeId = data.nodeId || 'default';
+                if (users.length > 0) {
+                    this.typingByNode.set(nodeId, {
+                        users: users,
+                        expiresAt: Date.now() + (data.expiresInMs || 6000)
+                    });
+                } else {
+                    this.typingByNode.delete(nodeId);
+                }
+                this.mergeTypingSnapshots();
+                return;
+            }
+
             let userId, username, isTyping;
 
             // Parse WebSocket response structure
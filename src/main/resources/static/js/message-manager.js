@@ -3,6 +3,8 @@ class MessageManager {
     constructor() {
         this.currentMessageForReaction = null;
         this.replyingToMessage = null;
+        // messageId -> reactions đang hiển thị, để cộng delta từ server
+        this.reactionsByMessage = new Map();
         this.setupReplyUI();
     }
 
@@ -104,6 +106,7 @@ class MessageManager {
             const messageId = message.id;
             const statusIcon = this.getStatusIcon(message.status);
             const reactions = message.reactions || [];
+            this.reactionsByMessage.set(messageId, reactions);
 
             // Reply content if this message is replying to another
             const replyContent = message.replyToId ? this.createReplyContent(message, message.replyToMessage) : '';
@@ -409,6 +412,8 @@ class MessageManager {
             return;
         }
 
+        this.reactionsByMessage.set(messageId, reactions);
+
         const reactionsContainer = document.getElementById(`reactions-${messageId}`);
         if (reactionsContainer) {
             reactionsContainer.innerHTML = `
@@ -418,6 +423,40 @@ class MessageManager {
         }
     }
 
+    // Delta (+1 / -1 theo loại) từ REACTION broadcast, cộng vào reactions đang hiển thị
+    applyReactionDeltas(deltas) {
+        if (!Array.isArray(deltas)) {
+            return;
+        }
+
+        const currentUserId = window.currentUser ? window.currentUser.id : null;
+        const changedMessages = new Set();
+
+        deltas.forEach(change => {
+            const reactions = this.reactionsByMessage.get(change.messageId) || [];
+            let reaction = reactions.find(r => r.type === change.type);
+            if (!reaction && change.delta > 0) {
+                reaction = { type: change.type, emoji: change.emoji, count: 0, users: [], currentUserReacted: false };
+                reactions.push(reaction);
+            }
+            if (!reaction) {
+                return;
+            }
+
+            reaction.count += change.delta;
+            if (change.userId === currentUserId) {
+                reaction.currentUserReacted = change.delta > 0;
+            }
+            this.reactionsByMessage.set(change.messageId, reactions.filter(r => r.count > 0));
+            changedMessages.add(change.messageId);
+        });
+
+        changedMessages.forEach(messageId => this.handleReactionUpdate({
+            messageId: messageId,
+            reactions: this.reactionsByMessage.get(messageId)
+        }));
+    }
+
     updateMessage(message) {
         const messageElement = document.querySelector(`[data-message-id="${message.id}"]`);
         if (messageElement) {
@@ -457,6 +496,10 @@ class MessageManager {
 
         if (data && data.messageId && data.status) {
             this.updateMessageStatus(data.messageId, data.status, data.readBy, data.readerId);
+        } else if (data && Array.isArray(data.messageIds) && data.status) {
+            // Server gom nhiều message vào một frame
+            data.messageIds.forEach(messageId =>
+                this.updateMessageStatus(messageId, data.status, data.readBy, data.readerId));
         }
     }
 
@@ -269,20 +269,21 @@ class PinManager {
     }
 
     async loadMessagePage(pageInfo) {
-        const { pageNumber, roomId, conversationId } = pageInfo;
+        const { cursor, roomId, conversationId, pageSize } = pageInfo;
 
         try {
             let messagesResponse;
             const token = window.authToken || window.authManager?.getAuthToken();
+            const query = `cursor=${encodeURIComponent(cursor)}&direction=AROUND&limit=${pageSize || 50}`;
 
             if (roomId) {
-                messagesResponse = await fetch(`/api/rooms/${roomId}/messages?page=${pageNumber}&size=50`, {
+                messagesResponse = await fetch(`/api/rooms/${roomId}/messages/history?${query}`, {
                     headers: {
                         'Authorization': 'Bearer ' + token
                     }
                 });
             } else if (conversationId) {
-                messagesResponse = await fetch(`/api/conversations/${conversationId}/messages?page=${pageNumber}&size=50`, {
+                messagesResponse = await fetch(`/api/conversations/${conversationId}/messages/history?${query}`, {
                     headers: {
                         'Authorization': 'Bearer ' + token
                     }
@@ -297,14 +298,11 @@ class PinManager {
                 wrapper.innerHTML = '';
                 wrapper.appendChild(typingIndicator);
 
+                // AROUND trả về cả tin nhắn trước và sau message cần tới
                 if (window.displayMessages) {
                     window.displayMessages(data.content || [], false);
                 }
 
-                if (pageNumber > 0) {
-                    await this.loadContextMessages(roomId, conversationId, pageNumber);
-                }
-
             } else {
                 throw new Error('Không thể tải trang tin nhắn');
             }
@@ -315,41 +313,6 @@ class PinManager {
         }
     }
 
-    async loadContextMessages(roomId, conversationId, targetPage) {
-        const contextPage = Math.max(0, targetPage - 1);
-
-        try {
-            let messagesResponse;
-            const token = window.authToken || window.authManager?.getAuthToken();
-
-            if (roomId) {
-                messagesResponse = await fetch(`/api/rooms/${roomId}/messages?page=${contextPage}&size=50`, {
-                    headers: {
-                        'Authorization': 'Bearer ' + token
-                    }
-                });
-            } else if (conversationId) {
-                messagesResponse = await fetch(`/api/conversations/${conversationId}/messages?page=${contextPage}&size=50`, {
-                    headers: {
-                        'Authorization': 'Bearer ' + token
-                    }
-                });
-            }
-
-            if (messagesResponse && messagesResponse.ok) {
-                const data = await messagesResponse.json();
-                const contextMessages = data.content || [];
-
-                for (const message of contextMessages.reverse()) {
-                    this.prependMessage(message);
-                }
-            }
-
-        } catch (error) {
-            console.error('Error loading context messages:', error);
-        }
-    }
-
     prependMessage(message) {
         const wrapper = document.getElementById('messagesWrapper');
         const firstMessage = wrapper.querySelector('.message');
@@ -103,13 +103,13 @@ class WebSocketManager {
         this.clearGlobalSubscriptions();
 
         try {
-            // Subscribe to user status updates (NEW)
-            const userStatusSub = this.stompClient.subscribe('/topic/user-status', (message) => {
+            // Presence diff theo batch: chỉ các user trong contact / conversation / room chung
+            const userStatusSub = this.stompClient.subscribe('/user/queue/presence', (message) => {
                 try {
-                    const userStatus = JSON.parse(message.body);
-                    this.handleUserStatusUpdate(userStatus);
+                    const response = JSON.parse(message.body);
+                    (response.data || []).forEach(userStatus => this.handleUserStatusUpdate(userStatus));
                 } catch (error) {
-                    console.error('Error parsing user status update:', error);
+                    console.error('Error parsing presence update:', error);
                 }
             });
             this.globalSubscriptions.set('userStatus', userStatusSub);
@@ -136,7 +136,7 @@ class WebSocketManager {
                         if (window.handleReadReceiptUpdate) {
                             window.handleReadReceiptUpdate(response.data);
                         }
-                    } else if (response.type === 'BATCH_READ_RECEIPT_UPDATE') {
+                    } else if (response.type === 'BATCH_READ_RECEIPT_UPDATE' || response.type === 'MESSAGE_BATCH_READ') {
                         if (window.handleBatchReadReceiptUpdate) {
                             window.handleBatchReadReceiptUpdate(response.data);
                         }
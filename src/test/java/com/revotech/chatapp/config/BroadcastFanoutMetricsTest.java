@@ -0,0 +1,65 @@
+package com.revotech.chatapp.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BroadcastFanoutMetricsTest {
+
+	private SimpleMeterRegistry meterRegistry;
+	private BroadcastFanoutMetrics metrics;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		metrics = new BroadcastFanoutMetrics(meterRegistry);
+	}
+
+	@Test
+	void recordsLocalSubscribersPerBroadcast() {
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/room/1")));
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s2", "sub-0", "/topic/room/1")));
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s2", "sub-1", "/topic/conversation/7")));
+
+		metrics.preSend(frame(SimpMessageType.MESSAGE, null, null, "/topic/room/1"), null);
+
+		DistributionSummary room = meterRegistry.get("chat.broadcast.fanout").tag("destination", "room").summary();
+		assertThat(room.count()).isEqualTo(1);
+		assertThat(room.totalAmount()).isEqualTo(2);
+		assertThat(meterRegistry.get("chat.websocket.subscriptions").gauge().value()).isEqualTo(3);
+	}
+
+	@Test
+	void unsubscribeAndDisconnectReleaseSubscriptions() {
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s1", "sub-0", "/topic/room/1")));
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s1", "sub-1", "/topic/room/2")));
+		metrics.onSubscribe(new SessionSubscribeEvent(this, frame(SimpMessageType.SUBSCRIBE, "s2", "sub-0", "/topic/room/1")));
+
+		metrics.onUnsubscribe(new SessionUnsubscribeEvent(this, frame(SimpMessageType.UNSUBSCRIBE, "s1", "sub-1", null)));
+		metrics.onDisconnect(new SessionDisconnectEvent(this, frame(SimpMessageType.DISCONNECT, "s2", null, null),
+				"s2", CloseStatus.NORMAL));
+
+		assertThat(metrics.subscriberCount("/topic/room/1")).isEqualTo(1);
+		assertThat(metrics.subscriberCount("/topic/room/2")).isZero();
+		assertThat(meterRegistry.get("chat.websocket.subscriptions").gauge().value()).isEqualTo(1);
+	}
+
+	private static Message<byte[]> frame(SimpMessageType type, String sessionId, String subscriptionId, String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId(subscriptionId);
+		accessor.setDestination(destination);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+}
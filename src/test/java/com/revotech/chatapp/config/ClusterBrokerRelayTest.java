@@ -0,0 +1,117 @@
+package com.revotech.chatapp.config;
+
+import com.revotech.chatapp.service.impl.LocalClusterBackplane;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nhiều "node" (simple broker + ClusterBrokerRelay) trong một JVM nối qua LocalClusterBackplane
+ */
+class ClusterBrokerRelayTest {
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	@AfterEach
+	void stopNodes() {
+		nodes.forEach(Node::stop);
+	}
+
+	@Test
+	void sessionOnOneNodeReceivesMessageSentOnAnotherExactlyOnce() {
+		Node nodeA = startNode();
+		Node nodeB = startNode();
+		Node nodeC = startNode();
+
+		nodeA.subscribe("session-a", "/topic/room/1");
+		nodeB.subscribe("session-b", "/topic/room/1");
+		nodeC.subscribe("session-c", "/topic/room/2");
+
+		nodeB.send("/topic/room/1", "hello");
+
+		assertThat(nodeA.received("session-a")).containsExactly("hello");
+		assertThat(nodeB.received("session-b")).containsExactly("hello");
+		assertThat(nodeC.received("session-c")).isEmpty();
+	}
+
+	@Test
+	void relayedFramesAreNotPublishedAgain() {
+		Node nodeA = startNode();
+		Node nodeB = startNode();
+		nodeA.subscribe("session-a", "/topic/room/1");
+		nodeB.subscribe("session-b", "/topic/room/1");
+
+		nodeA.send("/topic/room/1", "one");
+		nodeB.send("/topic/room/1", "two");
+
+		assertThat(nodeA.received("session-a")).containsExactly("one", "two");
+		assertThat(nodeB.received("session-b")).containsExactly("one", "two");
+	}
+
+	private Node startNode() {
+		Node node = new Node();
+		nodes.add(node);
+		return node;
+	}
+
+	private static class Node {
+		private final ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+		private final ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+		private final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		private final LocalClusterBackplane backplane = new LocalClusterBackplane();
+		private final SimpleBrokerMessageHandler broker;
+		private final List<Message<?>> outbound = new CopyOnWriteArrayList<>();
+
+		Node() {
+			brokerChannel.addInterceptor(new ClusterBrokerRelay(backplane, () -> brokerChannel));
+			clientOutbound.subscribe(outbound::add);
+			broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic", "/queue"));
+			broker.start();
+		}
+
+		void subscribe(String sessionId, String destination) {
+			// Simple broker chỉ gửi cho session đã CONNECT
+			SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+			connect.setSessionId(sessionId);
+			clientInbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+			accessor.setSessionId(sessionId);
+			accessor.setSubscriptionId("sub-" + sessionId);
+			accessor.setDestination(destination);
+			clientInbound.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+		}
+
+		void send(String destination, String payload) {
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+			accessor.setDestination(destination);
+			brokerChannel.send(MessageBuilder.createMessage(
+					payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders()));
+		}
+
+		List<String> received(String sessionId) {
+			return outbound.stream()
+					.filter(message -> SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE)
+					.filter(message -> sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())))
+					.map(message -> new String((byte[]) message.getPayload(), StandardCharsets.UTF_8))
+					.toList();
+		}
+
+		void stop() {
+			broker.stop();
+			backplane.close();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.revotech.chatapp.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Frame đi qua clientOutboundChannel -> GuardedSubProtocolWebSocketHandler -> STOMP -> socket mà lần ghi đầu tiên
+ * bị kẹt (client đọc chậm), nên các frame sau dồn lại trong buffer của session như khi chạy thật
+ */
+class SlowConsumerGuardTest {
+
+	private SimpleMeterRegistry meterRegistry;
+	private SlowConsumerGuard guard;
+	private ExecutorSubscribableChannel clientOutbound;
+	private GuardedSubProtocolWebSocketHandler handler;
+	private WebSocketSession socket;
+	private final CountDownLatch writing = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		meterRegistry = new SimpleMeterRegistry();
+		guard = new SlowConsumerGuard(meterRegistry);
+		ReflectionTestUtils.setField(guard, "typingDropDepth", 2);
+		ReflectionTestUtils.setField(guard, "disconnectDepth", 4);
+
+		clientOutbound = new ExecutorSubscribableChannel();
+		clientOutbound.addInterceptor(guard);
+		handler = new GuardedSubProtocolWebSocketHandler(new ExecutorSubscribableChannel(), clientOutbound, guard);
+		handler.setDefaultProtocolHandler(new StompSubProtocolHandler());
+		handler.setSendTimeLimit(60_000);
+		handler.setSendBufferSizeLimit(1024 * 1024);
+		handler.start();
+
+		socket = mock(WebSocketSession.class);
+		when(socket.getId()).thenReturn("s1");
+		when(socket.isOpen()).thenReturn(true);
+		when(socket.getAttributes()).thenReturn(new ConcurrentHashMap<>());
+		doAnswer(invocation -> {
+			writing.countDown();
+			release.await();
+			return null;
+		}).doNothing().when(socket).sendMessage(any());
+		handler.afterConnectionEstablished(socket);
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		writer.shutdownNow();
+		handler.stop();
+	}
+
+	@Test
+	void dropsTypingFramesOnceFramesPileUpInTheSessionBuffer() throws Exception {
+		startSlowWrite();
+		assertThat(clientOutbound.send(frame(false))).isTrue();
+		assertThat(clientOutbound.send(frame(false))).isTrue();
+		assertThat(guard.getDeepestQueues(10)).containsEntry("s1", 2);
+
+		// 2 frame trong buffer: typing bị bỏ, chat vẫn đi
+		assertThat(clientOutbound.send(frame(true))).isFalse();
+		assertThat(clientOutbound.send(frame(false))).isTrue();
+		assertThat(meterRegistry.counter("chat.websocket.frames.dropped", "reason", "slow-consumer").count()).isEqualTo(1);
+		assertThat(guard.getDeepestQueues(10)).containsEntry("s1", 3);
+	}
+
+	@Test
+	void disconnectsWhenTheBufferKeepsGrowing() throws Exception {
+		startSlowWrite();
+		for (int i = 0; i < 4; i++) {
+			clientOutbound.send(frame(false));
+		}
+
+		assertThat(clientOutbound.send(frame(false))).isFalse();
+		assertThat(clientOutbound.send(frame(false))).isFalse();
+		verify(socket, times(1)).close(CloseStatus.SESSION_NOT_RELIABLE);
+		assertThat(meterRegistry.counter("chat.websocket.sessions.disconnected", "reason", "slow-consumer").count()).isEqualTo(1);
+	}
+
+	@Test
+	void writtenFramesLeaveTheBufferAndClosedSessionsAreUntracked() throws Exception {
+		Future<?> slowWrite = startSlowWrite();
+		clientOutbound.send(frame(false));
+		clientOutbound.send(frame(true));
+
+		release.countDown();
+		slowWrite.get(5, TimeUnit.SECONDS);
+
+		assertThat(guard.getDeepestQueues(10)).containsEntry("s1", 0);
+		verify(socket, times(3)).sendMessage(any());
+
+		handler.afterConnectionClosed(socket, CloseStatus.NORMAL);
+		assertThat(guard.getDeepestQueues(10)).isEmpty();
+	}
+
+	@Test
+	void brokerConfigurationUsesTheGuardedHandlerWithTransportLimits() {
+		AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.register(Broker.class);
+		context.refresh();
+		try {
+			assertThat(context.getBean("subProtocolWebSocketHandler"))
+					.isInstanceOfSatisfying(GuardedSubProtocolWebSocketHandler.class, guarded -> {
+						assertThat(guarded.getSendTimeLimit()).isEqualTo(1234);
+						assertThat(guarded.getSendBufferSizeLimit()).isEqualTo(4321);
+						assertThat(guarded.getProtocolHandlers()).isNotEmpty();
+						assertThat(guarded.isRunning()).isTrue();
+					});
+		} finally {
+			context.close();
+		}
+	}
+
+	@Configuration
+	@EnableWebSocketMessageBroker
+	static class Broker implements WebSocketMessageBrokerConfigurer {
+		@Bean
+		SlowConsumerGuard slowConsumerGuard() {
+			return new SlowConsumerGuard(new SimpleMeterRegistry());
+		}
+
+		@Bean
+		static BeanPostProcessor guardedSubProtocolWebSocketHandler(BeanFactory beanFactory) {
+			return WebSocketConfig.guardedSubProtocolWebSocketHandler(beanFactory);
+		}
+
+		@Override
+		public void registerStompEndpoints(StompEndpointRegistry registry) {
+			registry.addEndpoint("/ws").withSockJS();
+		}
+
+		@Override
+		public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+			registration.setSendTimeLimit(1234).setSendBufferSizeLimit(4321);
+		}
+	}
+
+	// Thread outbound ghi frame đầu tiên và kẹt trong socket; nó cũng là thread sẽ flush buffer khi được nhả
+	private Future<?> startSlowWrite() throws InterruptedException {
+		Future<?> future = writer.submit(() -> clientOutbound.send(frame(false)));
+		assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+		return future;
+	}
+
+	private static Message<byte[]> frame(boolean typing) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId("s1");
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination("/topic/room/1");
+		if (typing) {
+			accessor.setNativeHeader(SlowConsumerGuard.FRAME_CLASS_HEADER, SlowConsumerGuard.TRANSIENT_FRAME);
+		}
+		return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+	}
+}
@@ -0,0 +1,109 @@
+package com.revotech.chatapp.repository;
+
+import com.revotech.chatapp.model.entity.*;
+import com.revotech.chatapp.model.enums.*;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+class FileAttachmentRepositoryTest {
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private FileAttachmentRepository fileAttachmentRepository;
+
+	@Test
+	void onlyUploaderAndMembersOfTheChatCanAccessAnAttachment() {
+		User uploader = user("uploader");
+		User member = user("member");
+		User formerMember = user("former");
+		User participant = user("participant");
+		User stranger = user("stranger");
+
+		Room room = Room.builder().name("files").type(RoomType.GROUP).createdBy(uploader.getId()).build();
+		entityManager.persist(room);
+		entityManager.persist(RoomMember.builder().room(room).user(member).role(RoomRole.MEMBER).build());
+		entityManager.persist(RoomMember.builder().room(room).user(formerMember).role(RoomRole.MEMBER)
+				.leftAt(LocalDateTime.now()).build());
+
+		Conversation conversation = Conversation.builder().type(ConversationType.DIRECT)
+				.participant1Id(uploader.getId()).participant2Id(participant.getId()).build();
+		entityManager.persist(conversation);
+
+		Long inRoom = attachment(uploader, message(uploader, room, null));
+		Long inConversation = attachment(uploader, message(uploader, null, conversation));
+		entityManager.flush();
+
+		assertThat(fileAttachmentRepository.canAccess(inRoom, uploader.getId())).isTrue();
+		assertThat(fileAttachmentRepository.canAccess(inRoom, member.getId())).isTrue();
+		assertThat(fileAttachmentRepository.canAccess(inRoom, formerMember.getId())).isFalse();
+		assertThat(fileAttachmentRepository.canAccess(inRoom, participant.getId())).isFalse();
+		assertThat(fileAttachmentRepository.canAccess(inRoom, stranger.getId())).isFalse();
+
+		assertThat(fileAttachmentRepository.canAccess(inConversation, participant.getId())).isTrue();
+		assertThat(fileAttachmentRepository.canAccess(inConversation, member.getId())).isFalse();
+		assertThat(fileAttachmentRepository.canAccess(inConversation, stranger.getId())).isFalse();
+	}
+
+	@Test
+	void derivativeIsClaimedByOneWorkerAndStaleClaimsAreReleased() {
+		User uploader = user("uploader");
+		Long id = attachment(uploader, null);
+		entityManager.createQuery("UPDATE FileAttachment fa SET fa.derivativeStatus = :status")
+				.setParameter("status", DerivativeStatus.PENDING)
+				.executeUpdate();
+
+		LocalDateTime claimedAt = LocalDateTime.now();
+		assertThat(fileAttachmentRepository.claimDerivative(id, claimedAt)).isEqualTo(1);
+		assertThat(fileAttachmentRepository.claimDerivative(id, claimedAt)).isZero();
+
+		assertThat(fileAttachmentRepository.releaseStaleDerivativeClaims(claimedAt.minusMinutes(1))).isZero();
+		assertThat(fileAttachmentRepository.releaseStaleDerivativeClaims(claimedAt.plusMinutes(1))).isEqualTo(1);
+		assertThat(fileAttachmentRepository.claimDerivative(id, claimedAt)).isEqualTo(1);
+	}
+
+	private User user(String name) {
+		User user = User.builder().username(name).email(name + "@example.com").password("secret").fullName(name).build();
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Message message(User sender, Room room, Conversation conversation) {
+		Message message = Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.room(room)
+				.conversation(conversation)
+				.sender(sender)
+				.content("file")
+				.type(MessageType.FILE)
+				.build();
+		entityManager.persist(message);
+		return message;
+	}
+
+	private Long attachment(User uploader, Message message) {
+		FileAttachment attachment = FileAttachment.builder()
+				.message(message)
+				.fileName(UUID.randomUUID() + ".pdf")
+				.originalFileName("file.pdf")
+				.storageKey(UUID.randomUUID().toString())
+				.fileType(FileType.DOCUMENT)
+				.fileSize(10L)
+				.uploadedBy(uploader)
+				.build();
+		entityManager.persist(attachment);
+		return attachment.getId();
+	}
+}
@@ -0,0 +1,66 @@
+package com.revotech.chatapp.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class TokenAuthenticatorTest {
+
+	private static final String SECRET = "test-secret-0123456789012345678901234567890123456789012345678901234567890123";
+
+	private JwtTokenUtil jwtTokenUtil;
+	private UserDetailsService userDetailsService;
+	private PrincipalCache principalCache;
+	private TokenAuthenticator tokenAuthenticator;
+
+	@BeforeEach
+	void setUp() {
+		jwtTokenUtil = new JwtTokenUtil(SECRET, 3600, 86400);
+		userDetailsService = mock(UserDetailsService.class);
+		principalCache = new PrincipalCache(60, 100, new SimpleMeterRegistry());
+		tokenAuthenticator = new TokenAuthenticator(jwtTokenUtil, userDetailsService, principalCache);
+
+		when(userDetailsService.loadUserByUsername("alice")).thenReturn(new UserPrincipal(
+				1L, "alice", "alice@example.com", "Alice", "hash", true, null,
+				List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+	}
+
+	@Test
+	void loadsPrincipalOnceThenServesFromCache() {
+		String token = jwtTokenUtil.generateAccessToken("alice");
+
+		UsernamePasswordAuthenticationToken first = tokenAuthenticator.authenticate(token);
+		UsernamePasswordAuthenticationToken second = tokenAuthenticator.authenticate(token);
+
+		assertThat(first.getName()).isEqualTo("alice");
+		assertThat(second.getPrincipal()).isSameAs(first.getPrincipal());
+		verify(userDetailsService, times(1)).loadUserByUsername("alice");
+	}
+
+	@Test
+	void evictionForcesReload() {
+		String token = jwtTokenUtil.generateAccessToken("alice");
+		tokenAuthenticator.authenticate(token);
+
+		principalCache.evict("alice");
+		tokenAuthenticator.authenticate(token);
+
+		verify(userDetailsService, times(2)).loadUserByUsername("alice");
+	}
+
+	@Test
+	void rejectsTamperedToken() {
+		String token = jwtTokenUtil.generateAccessToken("alice");
+
+		assertThat(tokenAuthenticator.authenticate(token + "x")).isNull();
+		verifyNoInteractions(userDetailsService);
+	}
+}
@@ -0,0 +1,213 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.StoredBlob;
+import com.revotech.chatapp.repository.StoredBlobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+@Import({BlobRegistry.class, BlobRegistryTest.Storage.class})
+// acquire tạo row trong transaction riêng và release xoá file sau commit: test chạy transaction thật
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BlobRegistryTest {
+
+	@TempDir
+	static Path dir;
+
+	// put (S3: upload) không được chạy trong transaction / dưới row lock
+	static final List<Boolean> putInTransaction = new CopyOnWriteArrayList<>();
+
+	@TestConfiguration
+	static class Storage {
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		LocalBlobStore blobStore() {
+			return new LocalBlobStore(dir.resolve("store").toString()) {
+				@Override
+				public void put(String key, Path source) throws IOException {
+					putInTransaction.add(TransactionSynchronizationManager.isActualTransactionActive());
+					super.put(key, source);
+				}
+			};
+		}
+	}
+
+	@Autowired
+	private BlobRegistry blobRegistry;
+
+	@Autowired
+	private StoredBlobRepository storedBlobRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private LocalBlobStore blobStore;
+
+	@Test
+	void identicalUploadsShareOneBlobUntilLastReleased() throws Exception {
+		putInTransaction.clear();
+		String checksum = "a".repeat(64);
+		Path blobPath = blobStore.localPath(checksum);
+		Path first = Files.writeString(dir.resolve("first.part"), "same bytes");
+		Path second = Files.writeString(dir.resolve("second.part"), "same bytes");
+		Path thumbnailSource = Files.writeString(dir.resolve("thumb.part"), "thumb");
+		String thumbnail = checksum + "_thumb.jpg";
+		blobStore.put(thumbnail, thumbnailSource);
+
+		BlobRegistry.Acquired stored = stageAndAcquire(checksum, first, 10);
+		BlobRegistry.Acquired deduplicated = stageAndAcquire(checksum, second, 10);
+
+		assertThat(stored.deduplicated()).isFalse();
+		assertThat(deduplicated.deduplicated()).isTrue();
+		assertThat(deduplicated.storageKey()).isEqualTo(stored.storageKey()).isEqualTo(checksum);
+		assertThat(blobPath).isEqualTo(dir.resolve("store/aa/aa").resolve(checksum)).hasContent("same bytes");
+		assertThat(first).doesNotExist();
+		// Bản thứ hai không được move, caller tự xoá file tạm
+		assertThat(second).exists();
+		assertThat(storedBlobRepository.findAll()).extracting(StoredBlob::getRefCount).containsExactly(2L);
+		assertThat(putInTransaction).isNotEmpty().containsOnly(false);
+
+		assertThat(inTransaction(() -> blobRegistry.release(checksum, List.of(thumbnail)))).isTrue();
+		assertThat(blobPath).exists();
+		assertThat(blobStore.exists(thumbnail)).isTrue();
+
+		assertThat(inTransaction(() -> blobRegistry.release(checksum, List.of(thumbnail)))).isTrue();
+		assertThat(blobPath).doesNotExist();
+		assertThat(blobStore.exists(thumbnail)).isFalse();
+		assertThat(storedBlobRepository.count()).isZero();
+	}
+
+	@Test
+	void releaseOfUntrackedChecksumIsLeftToCaller() throws Exception {
+		assertThat(inTransaction(() -> blobRegistry.release("b".repeat(64), List.of()))).isFalse();
+	}
+
+	@Test
+	void blobFileMissingOnDiskIsRestoredByNextUpload() throws Exception {
+		String checksum = "c".repeat(64);
+		Path blobPath = blobStore.localPath(checksum);
+		Path first = Files.writeString(dir.resolve("first.part"), "content");
+		stageAndAcquire(checksum, first, 7);
+		Files.delete(blobPath);
+
+		Path second = Files.writeString(dir.resolve("second.part"), "content");
+		BlobRegistry.Acquired acquired = stageAndAcquire(checksum, second, 7);
+
+		assertThat(acquired.deduplicated()).isFalse();
+		assertThat(blobPath).hasContent("content");
+		inTransaction(() -> blobRegistry.release(checksum, List.of()));
+		inTransaction(() -> blobRegistry.release(checksum, List.of()));
+	}
+
+	@Test
+	void blobReleasedWhileStagingIsStoredAgain() throws Exception {
+		String checksum = "d".repeat(64);
+		Path first = Files.writeString(dir.resolve("first.part"), "again");
+		stageAndAcquire(checksum, first, 5);
+
+		// Upload thứ hai thấy blob đã có, rồi reference cuối bị release trước khi nó khoá được row
+		Path second = Files.writeString(dir.resolve("second.part"), "again");
+		BlobRegistry.Staged staged = blobRegistry.stage(checksum, second, 5);
+		assertThat(staged.uploaded()).isFalse();
+		inTransaction(() -> blobRegistry.release(checksum, List.of()));
+		assertThat(blobStore.exists(checksum)).isFalse();
+
+		BlobRegistry.Acquired acquired = inTransaction(() -> blobRegistry.acquire(staged));
+
+		assertThat(acquired.deduplicated()).isFalse();
+		assertThat(blobStore.localPath(checksum)).hasContent("again");
+		inTransaction(() -> blobRegistry.release(checksum, List.of()));
+	}
+
+	@Test
+	void uploadBetweenLastReleaseCommitAndBlobDeletionKeepsItsContent() throws Exception {
+		String checksum = "e".repeat(64);
+		Path blobPath = blobStore.localPath(checksum);
+		stageAndAcquire(checksum, Files.writeString(dir.resolve("first.part"), "shared"), 6);
+		Path second = Files.writeString(dir.resolve("second.part"), "shared");
+
+		// Upload thứ hai (thread khác) chạy trọn vẹn sau khi release commit, trước khi blob bị xoá sau commit
+		ExecutorService uploader = Executors.newSingleThreadExecutor();
+		AtomicReference<Future<BlobRegistry.Acquired>> upload = new AtomicReference<>();
+		try {
+			inTransaction(() -> {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+					@Override
+					public void afterCommit() {
+						upload.set(uploader.submit(() -> stageAndAcquire(checksum, second, 6)));
+						try {
+							upload.get().get(5, TimeUnit.SECONDS);
+						} catch (Exception ignored) {
+							// kiểm tra bên dưới
+						}
+					}
+				});
+				return blobRegistry.release(checksum, List.of());
+			});
+		} finally {
+			uploader.shutdownNow();
+		}
+
+		assertThat(upload.get().get(5, TimeUnit.SECONDS).storageKey()).isEqualTo(checksum);
+		assertThat(blobPath).hasContent("shared");
+		assertThat(storedBlobRepository.findByChecksum(checksum)).get()
+				.extracting(StoredBlob::getRefCount).isEqualTo(1L);
+
+		inTransaction(() -> blobRegistry.release(checksum, List.of()));
+		assertThat(blobPath).doesNotExist();
+		assertThat(storedBlobRepository.findByChecksum(checksum)).isEmpty();
+	}
+
+	private BlobRegistry.Acquired stageAndAcquire(String checksum, Path incoming, long size) throws Exception {
+		BlobRegistry.Staged staged = blobRegistry.stage(checksum, incoming, size);
+		return inTransaction(() -> blobRegistry.acquire(staged));
+	}
+
+	private <T> T inTransaction(ThrowingSupplier<T> action) {
+		return new TransactionTemplate(transactionManager).execute(status -> {
+			try {
+				return action.get();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	interface ThrowingSupplier<T> {
+		T get() throws Exception;
+	}
+}
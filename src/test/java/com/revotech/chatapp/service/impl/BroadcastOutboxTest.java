@@ -0,0 +1,89 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BroadcastOutboxTest {
+
+	private SimpleMeterRegistry meterRegistry;
+	private OrderedBroadcastDispatcher dispatcher;
+	private BroadcastOutbox outbox;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		dispatcher = new OrderedBroadcastDispatcher(meterRegistry);
+		ReflectionTestUtils.setField(dispatcher, "laneCount", 4);
+		dispatcher.start();
+		outbox = new BroadcastOutbox(dispatcher, mock(WebSocketSafeBroadcast.class), meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		dispatcher.shutdown();
+	}
+
+	@Test
+	void dispatchesOnlyAfterCommitInAppendOrder() throws Exception {
+		List<Integer> delivered = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(100);
+
+		TransactionSynchronizationManager.initSynchronization();
+		for (int i = 0; i < 100; i++) {
+			int seq = i;
+			outbox.append("/topic/room/1", () -> {
+				delivered.add(seq);
+				done.countDown();
+			});
+		}
+		assertThat(delivered).isEmpty();
+
+		complete(TransactionSynchronization.STATUS_COMMITTED);
+
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(delivered).isSorted().hasSize(100);
+	}
+
+	@Test
+	void discardsOnRollback() throws Exception {
+		List<Integer> delivered = new CopyOnWriteArrayList<>();
+
+		TransactionSynchronizationManager.initSynchronization();
+		outbox.append("/topic/conversation/7", () -> delivered.add(1));
+		complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+		// Dispatch không-transaction trên cùng lane làm mốc: chạy xong thì lane đã trống
+		CountDownLatch marker = new CountDownLatch(1);
+		outbox.append("/topic/conversation/7", marker::countDown);
+		assertThat(marker.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(delivered).isEmpty();
+		assertThat(meterRegistry.counter("chat.broadcast.outbox.discarded").count()).isEqualTo(1);
+	}
+
+	private static void complete(int status) {
+		List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		TransactionSynchronizationManager.clearSynchronization();
+		if (status == TransactionSynchronization.STATUS_COMMITTED) {
+			synchronizations.forEach(TransactionSynchronization::afterCommit);
+		}
+		synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+	}
+}
@@ -0,0 +1,203 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.config.EncryptionConfig;
+import com.revotech.chatapp.model.dto.ConversationDTO;
+import com.revotech.chatapp.model.dto.request.SendMessageRequest;
+import com.revotech.chatapp.model.dto.response.ConversationListResponse;
+import com.revotech.chatapp.model.entity.Conversation;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.ConversationType;
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.repository.*;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.service.MessageSearchService;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import com.revotech.chatapp.service.UserSessionService;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.transaction.TestTransaction;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+@Import({EncryptionConfig.class, EncryptionServiceImpl.class, MessageAssembler.class, ReactionAggregator.class,
+		UserDirectory.class, InMemorySessionStore.class, SimpleMeterRegistry.class, MessageSendMetrics.class})
+class ConversationServiceImplTest {
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private RoomRepository roomRepository;
+
+	@Autowired
+	private ConversationRepository conversationRepository;
+
+	@Autowired
+	private MessageReactionRepository messageReactionRepository;
+
+	@Autowired
+	private RoomMemberRepository roomMemberRepository;
+
+	@Autowired
+	private MessageAssembler messageAssembler;
+
+	@Autowired
+	private ReactionAggregator reactionAggregator;
+
+	@Autowired
+	private MessageSendMetrics sendMetrics;
+
+	@Autowired
+	private UserDirectory userDirectory;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	private UnreadCounterStore unreadCounterStore;
+	private ConversationServiceImpl conversationService;
+	private User alice;
+
+	@BeforeEach
+	void setUp() {
+		unreadCounterStore = spy(new InMemoryUnreadCounterStore());
+		MessageServiceImpl messageService = new MessageServiceImpl(messageRepository, userRepository, roomRepository,
+				conversationRepository, messageReactionRepository, roomMemberRepository, mock(UserSessionService.class),
+				mock(WebSocketSafeBroadcast.class), messageAssembler, reactionAggregator, mock(ReadReceiptAggregator.class),
+				mock(ReadCursorService.class), unreadCounterStore, mock(MessageSearchService.class), sendMetrics,
+				mock(BroadcastOutbox.class), encryptionService);
+		conversationService = new ConversationServiceImpl(conversationRepository, messageRepository, userRepository,
+				messageService, unreadCounterStore, mock(MessageSearchService.class), messageAssembler, sendMetrics,
+				userDirectory, encryptionService);
+
+		alice = user("alice");
+	}
+
+	@Test
+	void totalUnreadReadsAllCountersOnceAndCountsMissesInOneQuery() {
+		Conversation withBob = conversation(user("bob"));
+		Conversation withCarol = conversation(user("carol"));
+		Conversation withDave = conversation(user("dave"));
+		message(withBob, MessageStatus.SENT);
+		message(withBob, MessageStatus.SENT);
+		message(withCarol, MessageStatus.READ);
+		message(withCarol, MessageStatus.DELIVERED);
+		entityManager.flush();
+
+		// Counter đã có được dùng nguyên (kể cả khi khác DB), các conversation khác đếm từ DB
+		unreadCounterStore.set(alice.getId(), UnreadCounterStore.conversationKey(withBob.getId()), 5);
+		clearInvocations(unreadCounterStore);
+
+		ConversationListResponse response = conversationService.getUserConversations(alice.getId(), 0, 10);
+
+		assertThat(response.getTotalUnreadCount()).isEqualTo(6);
+		Map<Long, Long> unreadById = response.getConversations().stream()
+				.collect(Collectors.toMap(ConversationDTO::getId, ConversationDTO::getUnreadCount));
+		assertThat(unreadById).containsOnly(
+				Map.entry(withBob.getId(), 5L), Map.entry(withCarol.getId(), 1L), Map.entry(withDave.getId(), 0L));
+
+		verify(unreadCounterStore, times(1)).getAll(alice.getId());
+		verify(unreadCounterStore, never()).get(any(), anyString());
+		assertThat(unreadCounterStore.getAll(alice.getId())).containsOnly(
+				Map.entry(UnreadCounterStore.conversationKey(withBob.getId()), 5L),
+				Map.entry(UnreadCounterStore.conversationKey(withCarol.getId()), 1L),
+				Map.entry(UnreadCounterStore.conversationKey(withDave.getId()), 0L));
+	}
+
+	@Test
+	void unreadCounterIsNotIncrementedBeforeCommitOrOnRollback() {
+		User bob = user("bob");
+		Conversation conversation = conversation(bob);
+		String chatKey = UnreadCounterStore.conversationKey(conversation.getId());
+		unreadCounterStore.set(alice.getId(), chatKey, 0);
+
+		conversationService.sendMessageToConversation(request(conversation), bob.getId());
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isZero();
+
+		TestTransaction.flagForRollback();
+		TestTransaction.end();
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isZero();
+	}
+
+	@Test
+	void unreadCounterIsIncrementedAfterCommit() {
+		User bob = user("bob");
+		Conversation conversation = conversation(bob);
+		String chatKey = UnreadCounterStore.conversationKey(conversation.getId());
+		unreadCounterStore.set(alice.getId(), chatKey, 0);
+
+		conversationService.sendMessageToConversation(request(conversation), bob.getId());
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isZero();
+
+		TestTransaction.flagForCommit();
+		TestTransaction.end();
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isEqualTo(1);
+	}
+
+	private SendMessageRequest request(Conversation conversation) {
+		return SendMessageRequest.builder()
+				.conversationId(conversation.getId())
+				.content("hello")
+				.type(MessageType.CHAT)
+				.build();
+	}
+
+	// Tên có hậu tố ngẫu nhiên: test commit để lại dữ liệu trong DB dùng chung
+	private User user(String name) {
+		String username = name + "-" + UUID.randomUUID().toString().substring(0, 8);
+		User user = User.builder()
+				.username(username)
+				.email(username + "@example.com")
+				.password("secret")
+				.fullName(name)
+				.build();
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Conversation conversation(User participant) {
+		Conversation conversation = Conversation.builder()
+				.type(ConversationType.DIRECT)
+				.participant1Id(alice.getId())
+				.participant2Id(participant.getId())
+				.build();
+		entityManager.persist(conversation);
+		return conversation;
+	}
+
+	private void message(Conversation conversation, MessageStatus status) {
+		entityManager.persist(Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.conversation(conversation)
+				.sender(userRepository.getReferenceById(conversation.getParticipant2Id()))
+				.content("hi")
+				.type(MessageType.CHAT)
+				.status(status)
+				.build());
+	}
+}
@@ -0,0 +1,111 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.entity.FileAttachment;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.repository.FileAttachmentRepository;
+import com.revotech.chatapp.repository.StoredBlobRepository;
+import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.service.FileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false",
+		"app.storage.upload-dir=unused",
+		"app.storage.max-file-size=1024",
+		"app.storage.allowed-types=text/"
+})
+@Import({FileServiceImpl.class, BlobRegistry.class, FileServiceImplTest.Storage.class})
+// Upload tự mở transaction sau khi copy xong: test không được bọc trong transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FileServiceImplTest {
+
+	@TempDir
+	static Path dir;
+
+	@TestConfiguration
+	static class Storage {
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		LocalBlobStore blobStore() {
+			return new LocalBlobStore(dir.resolve("store").toString());
+		}
+
+		@Bean
+		MediaDerivativePipeline mediaDerivativePipeline() {
+			return mock(MediaDerivativePipeline.class);
+		}
+	}
+
+	@Autowired
+	private FileService fileService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private FileAttachmentRepository fileAttachmentRepository;
+
+	@Autowired
+	private StoredBlobRepository storedBlobRepository;
+
+	@Test
+	void streamIsCopiedOutsideAnyTransactionThenRegistered() {
+		FileServiceImpl target = AopTestUtils.getTargetObject(fileService);
+		ReflectionTestUtils.setField(target, "uploadDir", dir.toString());
+		User user = userRepository.save(User.builder()
+				.username("uploader").email("uploader@example.com").password("secret").fullName("Uploader").build());
+
+		List<Boolean> transactionActive = new ArrayList<>();
+		byte[] content = "plain text notes".getBytes(StandardCharsets.UTF_8);
+		InputStream body = new FilterInputStream(new ByteArrayInputStream(content)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				transactionActive.add(TransactionSynchronizationManager.isActualTransactionActive());
+				return super.read(b, off, len);
+			}
+		};
+
+		FileMessage first = fileService.uploadStream(body, "notes.txt", user.getId());
+		FileMessage second = fileService.uploadStream(new ByteArrayInputStream(content), "copy.txt", user.getId());
+
+		assertThat(transactionActive).isNotEmpty().containsOnly(false);
+		List<FileAttachment> attachments = fileAttachmentRepository.findAll();
+		assertThat(attachments).extracting(FileAttachment::getOriginalFileName)
+				.containsExactlyInAnyOrder("notes.txt", "copy.txt");
+		assertThat(attachments).extracting(FileAttachment::getMessage).containsOnlyNulls();
+		assertThat(first.getFileName()).isNotEqualTo(second.getFileName());
+		assertThat(storedBlobRepository.findAll()).singleElement()
+				.satisfies(blob -> assertThat(blob.getRefCount()).isEqualTo(2));
+	}
+}
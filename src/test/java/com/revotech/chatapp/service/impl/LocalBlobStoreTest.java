@@ -0,0 +1,64 @@
+package com.revotech.chatapp.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalBlobStoreTest {
+
+	@TempDir
+	Path dir;
+
+	private LocalBlobStore store;
+
+	@BeforeEach
+	void setUp() {
+		store = new LocalBlobStore(dir.resolve("store").toString());
+	}
+
+	@Test
+	void shardsHexKeysByTheirOwnPrefixAndOtherKeysByHash() {
+		String checksum = "3fa9" + "0".repeat(60);
+		assertThat(store.localPath(checksum)).isEqualTo(dir.resolve("store/3f/a9").resolve(checksum));
+		// Derivative nằm cùng thư mục với blob của nó
+		assertThat(store.localPath(checksum + "_thumb.jpg").getParent()).isEqualTo(store.localPath(checksum).getParent());
+
+		Path other = store.localPath("voice note.ogg");
+		assertThat(dir.resolve("store").relativize(other).getNameCount()).isEqualTo(3);
+		assertThat(other.getParent().getFileName().toString()).matches("[0-9a-f]{2}");
+	}
+
+	@Test
+	void putMovesTheSourceAndOpenReadsExactRange() throws IOException {
+		Path source = Files.writeString(dir.resolve("incoming.part"), "0123456789");
+		String key = "c0ffee" + "1".repeat(58);
+
+		store.put(key, source);
+
+		assertThat(source).doesNotExist();
+		assertThat(store.exists(key)).isTrue();
+		assertThat(store.stat(key).size()).isEqualTo(10);
+		try (InputStream in = store.open(key, 3, 4)) {
+			assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("3456");
+		}
+
+		store.delete(key);
+		assertThat(store.exists(key)).isFalse();
+		assertThat(store.stat(key)).isNull();
+	}
+
+	@Test
+	void rejectsKeysThatEscapeTheStore() {
+		assertThatThrownBy(() -> store.localPath("../../etc/passwd")).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> store.localPath("..")).isInstanceOf(IllegalArgumentException.class);
+	}
+}
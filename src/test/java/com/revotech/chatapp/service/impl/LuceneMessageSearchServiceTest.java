@@ -0,0 +1,162 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.MessageSearchResult;
+import com.revotech.chatapp.model.entity.Conversation;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.Room;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.util.AesGcmCipher;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LuceneMessageSearchServiceTest {
+
+	@TempDir
+	Path indexDir;
+
+	private LuceneMessageSearchService searchService;
+
+	@BeforeEach
+	void open() throws Exception {
+		searchService = new LuceneMessageSearchService(Mockito.mock(MessageRepository.class),
+				new EncryptionServiceImpl(new AesGcmCipher(Map.of(), null), false));
+		ReflectionTestUtils.setField(searchService, "indexDir", indexDir.toString());
+		ReflectionTestUtils.setField(searchService, "maxHighlightLength", 300);
+		searchService.init();
+
+		index(1L, room(10L), null, "Họp team lúc 3 giờ chiều nay");
+		index(2L, room(10L), null, "deployment pipeline is broken again");
+		index(3L, room(20L), null, "deployment finished");
+		index(4L, null, conversation(30L), "see the <b>deploy</b> notes");
+		searchService.refresh();
+	}
+
+	@AfterEach
+	void close() {
+		searchService.shutdown();
+	}
+
+	@Test
+	void prefixQueryIsScopedToGivenChats() {
+		MessageSearchResult result = searchService.search("deploy*", List.of(10L), List.of(30L), 0, 20);
+
+		// newest first, room 20 is out of scope
+		assertThat(result.getMessageIds()).containsExactly(4L, 2L);
+		assertThat(result.getTotalHits()).isEqualTo(2);
+	}
+
+	@Test
+	void phraseQueryAndDiacriticFolding() {
+		assertThat(searchService.search("\"pipeline is broken\"", List.of(10L), List.of(), 0, 20).getMessageIds())
+				.containsExactly(2L);
+		assertThat(searchService.search("\"broken pipeline\"", List.of(10L), List.of(), 0, 20).getMessageIds())
+				.isEmpty();
+		assertThat(searchService.search("hop chieu", List.of(10L), List.of(), 0, 20).getMessageIds())
+				.containsExactly(1L);
+	}
+
+	@Test
+	void highlightsAreHtmlEscaped() {
+		assertThat(searchService.highlight("notes", "see the <b>deploy</b> notes"))
+				.isEqualTo("see the &lt;b&gt;deploy&lt;&#x2F;b&gt; <mark>notes</mark>");
+		assertThat(searchService.highlight("deploy*", "deployment pipeline is broken again"))
+				.isEqualTo("<mark>deployment</mark> pipeline is broken again");
+	}
+
+	@Test
+	void contentIsNotStoredInIndex() throws Exception {
+		searchService.commit();
+
+		try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+			StoredFields storedFields = reader.storedFields();
+			for (int doc = 0; doc < reader.maxDoc(); doc++) {
+				assertThat(storedFields.document(doc).getFields())
+						.extracting(IndexableField::name)
+						.containsExactly("id");
+			}
+		}
+	}
+
+	@Test
+	void reopenedIndexIsKept() throws Exception {
+		searchService.commit();
+		searchService.shutdown();
+		searchService.init();
+
+		assertThat(searchService.isIndexEmpty()).isFalse();
+	}
+
+	@Test
+	void deletedMessagesDisappear() {
+		searchService.removeMessage(2L);
+		searchService.refresh();
+
+		assertThat(searchService.search("pipeline", List.of(10L), List.of(), 0, 20).getMessageIds()).isEmpty();
+	}
+
+	@Test
+	void legacyIndexWithStoredContentIsDropped(@TempDir Path legacyDir) throws Exception {
+		try (IndexWriter writer = new IndexWriter(FSDirectory.open(legacyDir), new IndexWriterConfig())) {
+			Document document = new Document();
+			document.add(new StringField("id", "1", Field.Store.YES));
+			document.add(new TextField("content", "plaintext secret", Field.Store.YES));
+			writer.addDocument(document);
+		}
+
+		LuceneMessageSearchService legacy = new LuceneMessageSearchService(Mockito.mock(MessageRepository.class),
+				new EncryptionServiceImpl(new AesGcmCipher(Map.of(), null), false));
+		ReflectionTestUtils.setField(legacy, "indexDir", legacyDir.toString());
+		legacy.init();
+		try {
+			assertThat(legacy.isIndexEmpty()).isTrue();
+		} finally {
+			legacy.shutdown();
+		}
+	}
+
+	private void index(Long id, Room room, Conversation conversation, String content) {
+		searchService.indexMessage(Message.builder()
+				.id(id)
+				.messageId(UUID.randomUUID().toString())
+				.room(room)
+				.conversation(conversation)
+				.sender(User.builder().id(1L).build())
+				.content(content)
+				.type(MessageType.CHAT)
+				.isDeleted(false)
+				.createdAt(LocalDateTime.now().plusSeconds(id))
+				.build());
+	}
+
+	private static Room room(Long id) {
+		return Room.builder().id(id).build();
+	}
+
+	private static Conversation conversation(Long id) {
+		return Conversation.builder().id(id).build();
+	}
+}
@@ -0,0 +1,184 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.config.EncryptionConfig;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.entity.*;
+import com.revotech.chatapp.model.enums.FileType;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.ReactionType;
+import com.revotech.chatapp.model.enums.RoomType;
+import com.revotech.chatapp.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.generate_statistics=true",
+		// Pool của H2 để auto-commit bật, phải để Hibernate tự tắt thì rollback sau mỗi test mới có tác dụng
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+@Import({MessageAssembler.class, ReactionAggregator.class, UserDirectory.class, InMemorySessionStore.class, SimpleMeterRegistry.class,
+		EncryptionConfig.class, EncryptionServiceImpl.class})
+class MessageAssemblerTest {
+
+	private static final int MESSAGE_COUNT = 60;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private MessageAssembler messageAssembler;
+
+	@Autowired
+	private ReactionAggregator reactionAggregator;
+
+	private Long roomId;
+
+	@BeforeEach
+	void seed() {
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			User user = User.builder()
+					.username("user" + i)
+					.email("user" + i + "@example.com")
+					.password("secret")
+					.fullName("User " + i)
+					.build();
+			entityManager.persist(user);
+			users.add(user);
+		}
+
+		Room room = Room.builder()
+				.name("general")
+				.type(RoomType.GROUP)
+				.createdBy(users.get(0).getId())
+				.build();
+		entityManager.persist(room);
+		roomId = room.getId();
+
+		LocalDateTime base = LocalDateTime.now().minusDays(1);
+		Message previous = null;
+		for (int i = 0; i < MESSAGE_COUNT; i++) {
+			User sender = users.get(i % users.size());
+			Message message = Message.builder()
+					.messageId(UUID.randomUUID().toString())
+					.room(room)
+					.sender(sender)
+					.content("message " + i)
+					.type(i % 7 == 0 ? MessageType.FILE : MessageType.CHAT)
+					.replyTo(i % 3 == 0 ? previous : null)
+					.isPinned(i % 5 == 0)
+					.pinnedBy(i % 5 == 0 ? users.get(1).getId() : null)
+					.pinnedAt(i % 5 == 0 ? base : null)
+					.build();
+			entityManager.persist(message);
+			// createdAt do @CreationTimestamp sinh ra, chỉnh lại để thứ tự ổn định
+			message.setCreatedAt(base.plusSeconds(i));
+
+			if (message.getType() == MessageType.FILE) {
+				entityManager.persist(FileAttachment.builder()
+						.message(message)
+						.fileName("file" + i + ".png")
+						.originalFileName("file" + i + ".png")
+						.storageKey("file" + i + ".png")
+						.fileType(FileType.IMAGE)
+						.fileSize(1024L)
+						.mimeType("image/png")
+						.uploadedBy(sender)
+						.build());
+			}
+
+			for (int r = 0; r < i % 3; r++) {
+				entityManager.persist(MessageReaction.builder()
+						.message(message)
+						.user(users.get((i + r + 1) % users.size()))
+						.type(ReactionType.values()[r])
+						.build());
+			}
+			previous = message;
+		}
+
+		entityManager.flush();
+		reactionAggregator.rebuild();
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	@Test
+	void queryCountPerPageDoesNotGrowWithPageSize() {
+		long smallPageStatements = countStatements(5);
+		long largePageStatements = countStatements(40);
+
+		// ids page + count + messages + reply targets + reaction stats + users chưa có trong UserDirectory
+		assertThat(smallPageStatements).isLessThanOrEqualTo(6);
+		// Cùng 5 user: directory đã warm nên page lớn không cần query user nào
+		assertThat(largePageStatements).isLessThanOrEqualTo(smallPageStatements - 1);
+	}
+
+	@Test
+	void assemblesReactionsRepliesPinsAndAttachments() {
+		Page<ChatMessage> page = messageAssembler.assemblePage(
+				messageRepository.findIdsByRoomId(roomId, PageRequest.of(0, MESSAGE_COUNT)));
+
+		assertThat(page.getTotalElements()).isEqualTo(MESSAGE_COUNT);
+		assertThat(page.getContent()).hasSize(MESSAGE_COUNT);
+
+		// Newest first
+		ChatMessage newest = page.getContent().get(0);
+		assertThat(newest.getContent()).isEqualTo("message " + (MESSAGE_COUNT - 1));
+
+		ChatMessage withEverything = page.getContent().stream()
+				.filter(message -> message.getContent().equals("message 35"))
+				.findFirst()
+				.orElseThrow();
+		// 35: FILE (35 % 7), pinned (35 % 5), two reaction types (35 % 3)
+		assertThat(withEverything.getFileAttachment()).isNotNull();
+		assertThat(withEverything.getFileAttachment().getDownloadUrl()).startsWith("/api/files/");
+		assertThat(withEverything.getPinnedByUsername()).isEqualTo("user1");
+		assertThat(withEverything.getReactions()).hasSize(2);
+		assertThat(withEverything.getSenderUsername()).isEqualTo("user0");
+
+		ChatMessage reply = page.getContent().stream()
+				.filter(message -> message.getContent().equals("message 3"))
+				.findFirst()
+				.orElseThrow();
+		assertThat(reply.getReplyToMessage()).isNotNull();
+		assertThat(reply.getReplyToMessage().getContent()).isEqualTo("message 2");
+		assertThat(reply.getReplyToSenderName()).isEqualTo("User 2");
+	}
+
+	private long countStatements(int pageSize) {
+		entityManager.clear();
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		Page<ChatMessage> page = messageAssembler.assemblePage(
+				messageRepository.findIdsByRoomId(roomId, PageRequest.of(0, pageSize)));
+		assertThat(page.getContent()).hasSize(pageSize);
+
+		return statistics.getPrepareStatementCount();
+	}
+}
@@ -0,0 +1,157 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.config.EncryptionConfig;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.Room;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.RoomType;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.util.AesGcmCipher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false",
+		"app.encryption.enabled=true",
+		"app.encryption.key-id=k2",
+		"app.encryption.secret-key=" + MessageEncryptionMigratorTest.NEW_KEY,
+		"app.encryption.retired-keys=k1:" + MessageEncryptionMigratorTest.OLD_KEY,
+		"app.encryption.migration.batch-size=2"
+})
+@Import({MessageEncryptionMigrator.class, EncryptionConfig.class, EncryptionServiceImpl.class, MessageAssembler.class,
+		ReactionAggregator.class, UserDirectory.class, InMemorySessionStore.class, SimpleMeterRegistry.class})
+class MessageEncryptionMigratorTest {
+
+	static final String OLD_KEY = "AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=";
+	static final String NEW_KEY = "ICEiIyQlJicoKSorLC0uLzAxMjM0NTY3ODk6Ozw9Pj8=";
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	@Autowired
+	private AesGcmCipher messageCipher;
+
+	@Autowired
+	private MessageEncryptionMigrator migrator;
+
+	@Autowired
+	private MessageAssembler messageAssembler;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void encryptsPlaintextAndRotatedRowsUnderTheActiveKey() {
+		User user = User.builder().username("crypto").email("crypto@example.com").password("secret").fullName("Crypto").build();
+		entityManager.persist(user);
+		Room room = Room.builder().name("secret").type(RoomType.GROUP).createdBy(user.getId()).build();
+		entityManager.persist(room);
+
+		AesGcmCipher oldCipher = new AesGcmCipher(Map.of("k1", AesGcmCipher.parseKey(OLD_KEY)), "k1");
+		List<Long> ids = new ArrayList<>();
+		// 0, 1: plaintext từ trước khi bật encryption; 2: encrypt bằng key đã retire; 3: gửi sau khi bật
+		for (int i = 0; i < 4; i++) {
+			Message message = Message.builder()
+					.messageId(UUID.randomUUID().toString())
+					.room(room)
+					.sender(user)
+					.content("tin nhắn " + i)
+					.type(MessageType.CHAT)
+					.build();
+			if (i == 2) {
+				message.setEncryptedContent(oldCipher.encrypt(message.getContent(), message.getMessageId()));
+				message.setContent(null);
+			} else if (i == 3) {
+				encryptionService.seal(message);
+			}
+			entityManager.persist(message);
+			ids.add(message.getId());
+		}
+		entityManager.flush();
+		entityManager.clear();
+
+		assertThat(migrator.reseal()).isEqualTo(3);
+		entityManager.clear();
+
+		for (Message message : messageRepository.findAllById(ids)) {
+			assertThat(message.getContent()).isNull();
+			assertThat(messageCipher.keyIdOf(message.getEncryptedContent())).isEqualTo("k2");
+			assertThat(encryptionService.needsReseal(message)).isFalse();
+		}
+		assertThat(migrator.reseal()).isZero();
+
+		entityManager.clear();
+		List<ChatMessage> assembled = messageAssembler.assembleByIds(ids);
+		assertThat(assembled).extracting(ChatMessage::getContent)
+				.containsExactly("tin nhắn 0", "tin nhắn 1", "tin nhắn 2", "tin nhắn 3");
+	}
+
+	@Test
+	void editCommittedDuringResealIsKept() {
+		User user = User.builder().username("racer").email("racer@example.com").password("secret").fullName("Racer").build();
+		entityManager.persist(user);
+		Room room = Room.builder().name("race").type(RoomType.GROUP).createdBy(user.getId()).build();
+		entityManager.persist(room);
+
+		Message message = Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.room(room)
+				.sender(user)
+				.content("bản cũ")
+				.type(MessageType.CHAT)
+				.build();
+		entityManager.persist(message);
+		entityManager.flush();
+		entityManager.clear();
+
+		Message edited = Message.builder().messageId(message.getMessageId()).content("bản mới").build();
+		encryptionService.seal(edited);
+
+		// Edit + pin của request khác commit giữa lúc migrator đọc row và lúc ghi
+		EncryptionService racing = new EncryptionServiceImpl(messageCipher, true) {
+			@Override
+			public boolean needsReseal(Message candidate) {
+				entityManager.createQuery("UPDATE Message m SET m.content = NULL, m.encryptedContent = :encrypted, " +
+								"m.isEdited = true, m.isPinned = true WHERE m.id = :id")
+						.setParameter("encrypted", edited.getEncryptedContent())
+						.setParameter("id", candidate.getId())
+						.executeUpdate();
+				return super.needsReseal(candidate);
+			}
+		};
+		MessageEncryptionMigrator racingMigrator = new MessageEncryptionMigrator(messageRepository, racing, transactionManager);
+		ReflectionTestUtils.setField(racingMigrator, "batchSize", 10);
+
+		assertThat(racingMigrator.reseal()).isZero();
+		entityManager.clear();
+
+		Message stored = messageRepository.findById(message.getId()).orElseThrow();
+		assertThat(stored.getEncryptedContent()).isEqualTo(edited.getEncryptedContent());
+		assertThat(stored.getIsEdited()).isTrue();
+		assertThat(stored.getIsPinned()).isTrue();
+		assertThat(encryptionService.contentOf(stored)).isEqualTo("bản mới");
+	}
+}
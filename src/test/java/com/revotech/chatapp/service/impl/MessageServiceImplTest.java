@@ -0,0 +1,276 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.config.EncryptionConfig;
+import com.revotech.chatapp.model.dto.ChatMessage;
+import com.revotech.chatapp.model.dto.request.SendMessageRequest;
+import com.revotech.chatapp.model.dto.response.MessageHistoryResponse;
+import com.revotech.chatapp.model.entity.Conversation;
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.ConversationType;
+import com.revotech.chatapp.model.enums.HistoryDirection;
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.repository.*;
+import com.revotech.chatapp.service.EncryptionService;
+import com.revotech.chatapp.service.MessageSearchService;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import com.revotech.chatapp.service.UserSessionService;
+import com.revotech.chatapp.util.MessageCursor;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false",
+		"app.encryption.enabled=true",
+		"app.encryption.key-id=k1",
+		"app.encryption.secret-key=" + MessageEncryptionMigratorTest.NEW_KEY
+})
+@Import({EncryptionConfig.class, EncryptionServiceImpl.class, MessageAssembler.class, ReactionAggregator.class,
+		UserDirectory.class, InMemorySessionStore.class, SimpleMeterRegistry.class, MessageSendMetrics.class})
+class MessageServiceImplTest {
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private RoomRepository roomRepository;
+
+	@Autowired
+	private ConversationRepository conversationRepository;
+
+	@Autowired
+	private MessageReactionRepository messageReactionRepository;
+
+	@Autowired
+	private RoomMemberRepository roomMemberRepository;
+
+	@Autowired
+	private MessageAssembler messageAssembler;
+
+	@Autowired
+	private ReactionAggregator reactionAggregator;
+
+	@Autowired
+	private MessageSendMetrics sendMetrics;
+
+	@Autowired
+	private EncryptionService encryptionService;
+
+	private MessageServiceImpl messageService;
+	private User alice;
+	private User bob;
+	private Conversation conversation;
+
+	@BeforeEach
+	void setUp() {
+		messageService = service(messageAssembler);
+
+		alice = user("alice");
+		bob = user("bob");
+		conversation = Conversation.builder()
+				.type(ConversationType.DIRECT)
+				.participant1Id(alice.getId())
+				.participant2Id(bob.getId())
+				.build();
+		entityManager.persist(conversation);
+		entityManager.flush();
+	}
+
+	@Test
+	void sendAndEditStoreOnlyCiphertextAndReadBackPlaintext() {
+		ChatMessage sent = messageService.sendMessageToConversation(SendMessageRequest.builder()
+				.conversationId(conversation.getId())
+				.content("xin chào")
+				.type(MessageType.CHAT)
+				.build(), alice.getId());
+		assertThat(sent.getContent()).isEqualTo("xin chào");
+
+		entityManager.flush();
+		entityManager.clear();
+		Message stored = messageRepository.findByMessageId(sent.getId()).orElseThrow();
+		String sentCiphertext = stored.getEncryptedContent();
+		assertThat(stored.getContent()).isNull();
+		assertThat(sentCiphertext).isNotNull().doesNotContain("xin chào");
+		assertThat(encryptionService.contentOf(stored)).isEqualTo("xin chào");
+
+		ChatMessage edited = messageService.editMessage(sent.getId(), "đã sửa", alice.getId());
+		assertThat(edited.getContent()).isEqualTo("đã sửa");
+
+		entityManager.flush();
+		entityManager.clear();
+		stored = messageRepository.findByMessageId(sent.getId()).orElseThrow();
+		assertThat(stored.getContent()).isNull();
+		assertThat(stored.getEncryptedContent()).isNotEqualTo(sentCiphertext);
+		assertThat(stored.getIsEdited()).isTrue();
+		assertThat(encryptionService.contentOf(stored)).isEqualTo("đã sửa");
+
+		entityManager.clear();
+		assertThat(messageAssembler.assembleByIds(List.of(stored.getId())))
+				.extracting(ChatMessage::getContent)
+				.containsExactly("đã sửa");
+	}
+
+	@Test
+	void beforeWalksBackwardsThroughTiedTimestamps() {
+		List<Message> m = history();
+
+		MessageHistoryResponse latest = conversationHistory(null, HistoryDirection.BEFORE, 3);
+		assertThat(ids(latest)).containsExactly("m6", "m5", "m4");
+		assertThat(latest.getHasOlder()).isTrue();
+		assertThat(latest.getHasNewer()).isFalse();
+		assertThat(latest.getNewerCursor()).isEqualTo(cursor(m.get(6)));
+		assertThat(latest.getOlderCursor()).isEqualTo(cursor(m.get(4)));
+
+		MessageHistoryResponse older = conversationHistory(latest.getOlderCursor(), HistoryDirection.BEFORE, 3);
+		assertThat(ids(older)).containsExactly("m3", "m2", "m1");
+		assertThat(older.getHasOlder()).isTrue();
+		assertThat(older.getHasNewer()).isTrue();
+
+		MessageHistoryResponse oldest = conversationHistory(older.getOlderCursor(), HistoryDirection.BEFORE, 3);
+		assertThat(ids(oldest)).containsExactly("m0");
+		assertThat(oldest.getHasOlder()).isFalse();
+		assertThat(oldest.getHasNewer()).isTrue();
+	}
+
+	@Test
+	void afterWalksForwardsAndReturnsNewestFirst() {
+		List<Message> m = history();
+
+		MessageHistoryResponse newer = conversationHistory(cursor(m.get(1)), HistoryDirection.AFTER, 3);
+		assertThat(ids(newer)).containsExactly("m4", "m3", "m2");
+		assertThat(newer.getHasNewer()).isTrue();
+		assertThat(newer.getHasOlder()).isTrue();
+
+		MessageHistoryResponse newest = conversationHistory(newer.getNewerCursor(), HistoryDirection.AFTER, 3);
+		assertThat(ids(newest)).containsExactly("m6", "m5");
+		assertThat(newest.getHasNewer()).isFalse();
+		assertThat(newest.getHasOlder()).isTrue();
+	}
+
+	@Test
+	void aroundIncludesTheAnchorAndSplitsTheLimit() {
+		List<Message> m = history();
+
+		MessageHistoryResponse middle = conversationHistory(cursor(m.get(3)), HistoryDirection.AROUND, 4);
+		assertThat(ids(middle)).containsExactly("m5", "m4", "m3", "m2");
+		assertThat(middle.getHasNewer()).isTrue();
+		assertThat(middle.getHasOlder()).isTrue();
+
+		MessageHistoryResponse edge = conversationHistory(cursor(m.get(6)), HistoryDirection.AROUND, 4);
+		assertThat(ids(edge)).containsExactly("m6", "m5");
+		assertThat(edge.getHasNewer()).isFalse();
+		assertThat(edge.getHasOlder()).isTrue();
+	}
+
+	@Test
+	void cursorsComeFromReturnedMessagesWhenOneDisappearsBetweenQueries() {
+		List<Message> m = history();
+		// m6 bị xoá hẳn sau query id, trước khi load message
+		MessageAssembler assembler = spy(messageAssembler);
+		doAnswer(invocation -> {
+			entityManager.createQuery("DELETE FROM Message m WHERE m.id = :id")
+					.setParameter("id", m.get(6).getId())
+					.executeUpdate();
+			return invocation.callRealMethod();
+		}).when(assembler).loadByIds(anyList());
+		messageService = service(assembler);
+
+		MessageHistoryResponse latest = conversationHistory(null, HistoryDirection.BEFORE, 3);
+		assertThat(ids(latest)).containsExactly("m5", "m4");
+		assertThat(latest.getNewerCursor()).isEqualTo(cursor(m.get(5)));
+		assertThat(latest.getOlderCursor()).isEqualTo(cursor(m.get(4)));
+
+		messageService = service(messageAssembler);
+		assertThat(ids(conversationHistory(latest.getOlderCursor(), HistoryDirection.BEFORE, 3)))
+				.containsExactly("m3", "m2", "m1");
+	}
+
+	private MessageServiceImpl service(MessageAssembler assembler) {
+		return new MessageServiceImpl(messageRepository, userRepository, roomRepository, conversationRepository,
+				messageReactionRepository, roomMemberRepository, Mockito.mock(UserSessionService.class),
+				Mockito.mock(WebSocketSafeBroadcast.class), assembler, reactionAggregator,
+				Mockito.mock(ReadReceiptAggregator.class), Mockito.mock(ReadCursorService.class),
+				Mockito.mock(UnreadCounterStore.class), Mockito.mock(MessageSearchService.class), sendMetrics,
+				Mockito.mock(BroadcastOutbox.class), encryptionService);
+	}
+
+	private MessageHistoryResponse conversationHistory(String cursor, HistoryDirection direction, int limit) {
+		return messageService.getConversationHistory(conversation.getId(), alice.getId(), cursor, direction, limit);
+	}
+
+	// m0..m6 theo id tăng dần; m1-m3 và m5-m6 cùng createdAt để kiểm tra tie-break theo id
+	private List<Message> history() {
+		LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+		int[] minutes = {0, 1, 1, 1, 2, 3, 3};
+		List<Message> messages = new ArrayList<>();
+		IntStream.range(0, minutes.length).forEach(i -> {
+			Message message = Message.builder()
+					.messageId("m" + i)
+					.conversation(conversation)
+					.sender(alice)
+					.content("message " + i)
+					.type(MessageType.CHAT)
+					.status(MessageStatus.SENT)
+					.build();
+			entityManager.persist(message);
+			messages.add(message);
+		});
+		entityManager.flush();
+		// createdAt là @CreationTimestamp: ghi đè sau khi insert
+		IntStream.range(0, minutes.length).forEach(i -> entityManager
+				.createQuery("UPDATE Message m SET m.createdAt = :createdAt WHERE m.id = :id")
+				.setParameter("createdAt", base.plusMinutes(minutes[i]))
+				.setParameter("id", messages.get(i).getId())
+				.executeUpdate());
+		entityManager.clear();
+		return messageRepository.findAllById(messages.stream().map(Message::getId).toList()).stream()
+				.sorted(Comparator.comparing(Message::getId))
+				.toList();
+	}
+
+	private static String cursor(Message message) {
+		return MessageCursor.of(message).encode();
+	}
+
+	private static List<String> ids(MessageHistoryResponse response) {
+		return response.getContent().stream().map(ChatMessage::getId).toList();
+	}
+
+	private User user(String username) {
+		User user = User.builder()
+				.username(username)
+				.email(username + "@example.com")
+				.password("secret")
+				.fullName(username)
+				.build();
+		entityManager.persist(user);
+		return user;
+	}
+}
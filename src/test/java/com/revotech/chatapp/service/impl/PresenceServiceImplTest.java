@@ -0,0 +1,198 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.dto.OnlineUser;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import com.revotech.chatapp.repository.RoomMemberRepository;
+import com.revotech.chatapp.repository.RoomMemberRepository.Membership;
+import com.revotech.chatapp.repository.UserRepository;
+import com.revotech.chatapp.repository.UserRepository.PresenceLink;
+import com.revotech.chatapp.service.SessionStore;
+import com.revotech.chatapp.util.WebSocketSafeBroadcast;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceImplTest {
+
+	private UserRepository userRepository;
+	private RoomMemberRepository roomMemberRepository;
+	private WebSocketSafeBroadcast safeBroadcast;
+	private SessionStore sessionStore;
+	private PresenceServiceImpl presenceService;
+
+	@BeforeEach
+	void setUp() {
+		userRepository = mock(UserRepository.class);
+		roomMemberRepository = mock(RoomMemberRepository.class);
+		safeBroadcast = mock(WebSocketSafeBroadcast.class);
+		sessionStore = mock(SessionStore.class);
+		Set<Long> announced = new HashSet<>();
+		when(sessionStore.announce(anyLong(), anyBoolean())).thenAnswer(invocation -> invocation.<Boolean>getArgument(1)
+				? announced.add(invocation.getArgument(0))
+				: announced.remove(invocation.<Long>getArgument(0)));
+		UserDirectory userDirectory = mock(UserDirectory.class);
+		when(userDirectory.getAll(anyCollection())).thenReturn(Map.of(
+				1L, new UserDirectory.Entry(1L, "alice", "Alice", null),
+				2L, new UserDirectory.Entry(2L, "bob", "Bob", null),
+				3L, new UserDirectory.Entry(3L, "carol", "Carol", null)));
+
+		presenceService = new PresenceServiceImpl(userRepository, roomMemberRepository, safeBroadcast,
+				mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), sessionStore, userDirectory);
+		ReflectionTestUtils.setField(presenceService, "offlineGraceMs", 60_000L);
+		presenceService.init();
+
+		// alice(1) và bob(2) là contact; carol(3) ở chung room 10 với alice
+		when(userRepository.findContactWatchers(anyCollection())).thenReturn(List.of(link(2L, 1L)));
+		when(roomMemberRepository.findActiveMembershipsByUsers(anyCollection())).thenReturn(List.of(membership(10L, 1L)));
+		when(roomMemberRepository.findActiveMembershipsByRooms(anyCollection()))
+				.thenReturn(List.of(membership(10L, 1L), membership(10L, 3L)));
+		presenceService.markOnline(2L);
+		presenceService.markOnline(3L);
+		online(1L, 2L, 3L);
+		presenceService.flushChanges();
+		clearInvocations(safeBroadcast, userRepository);
+	}
+
+	@Test
+	void reconnectWithinGraceIsNotAnnounced() {
+		presenceService.markOnline(1L);
+		presenceService.flushChanges();
+		clearInvocations(safeBroadcast, userRepository);
+
+		presenceService.markOffline(1L);
+		presenceService.markOnline(1L);
+
+		assertThat(presenceService.flushChanges()).isZero();
+		verifyNoInteractions(safeBroadcast);
+		verify(userRepository, never()).updatePresence(anyCollection(), any(), any());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void onlineDiffGoesOnlyToOnlineWatchers() {
+		online(1L, 2L);
+		presenceService.markOnline(1L);
+
+		assertThat(presenceService.flushChanges()).isEqualTo(1);
+
+		ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+		verify(safeBroadcast).safeConvertAndSendToUser(eq("bob"), eq("/queue/presence"), payload.capture());
+		verify(safeBroadcast, never()).safeConvertAndSendToUser(eq("carol"), anyString(), any());
+		verify(userRepository).updatePresence(eq(List.of(1L)), eq(true), any());
+
+		List<OnlineUser> diff = ((WebSocketResponse<List<OnlineUser>>) payload.getValue()).getData();
+		assertThat(diff).extracting(OnlineUser::getUserId, OnlineUser::getStatus).containsExactly(tuple(1L, "ONLINE"));
+	}
+
+	@Test
+	void offlineIsAnnouncedAfterGrace() {
+		presenceService.markOnline(1L);
+		presenceService.flushChanges();
+		clearInvocations(safeBroadcast, userRepository);
+
+		ReflectionTestUtils.setField(presenceService, "offlineGraceMs", 0L);
+		when(sessionStore.isOnline(1L)).thenReturn(false);
+		presenceService.markOffline(1L);
+
+		assertThat(presenceService.flushChanges()).isEqualTo(1);
+		verify(userRepository).updatePresence(eq(List.of(1L)), eq(false), any());
+		verify(safeBroadcast).safeConvertAndSendToUser(eq("bob"), eq("/queue/presence"), any());
+		verify(safeBroadcast).safeConvertAndSendToUser(eq("carol"), eq("/queue/presence"), any());
+	}
+
+	@Test
+	void shutdownAnnouncesOfflineStillInGrace() {
+		presenceService.markOnline(1L);
+		presenceService.flushChanges();
+		clearInvocations(safeBroadcast, userRepository);
+
+		when(sessionStore.isOnline(1L)).thenReturn(false);
+		presenceService.markOffline(1L);
+		assertThat(presenceService.flushChanges()).isZero();
+
+		presenceService.shutdown();
+
+		verify(userRepository).updatePresence(eq(List.of(1L)), eq(false), any());
+		verify(safeBroadcast).safeConvertAndSendToUser(eq("bob"), eq("/queue/presence"), any());
+	}
+
+	@Test
+	void reconnectToAnotherNodeUsesSharedAnnouncedState() {
+		// Hai node dùng chung một session store
+		SessionStore shared = new InMemorySessionStore();
+		PresenceServiceImpl nodeA = node(shared);
+		PresenceServiceImpl nodeB = node(shared);
+		online(1L, 2L, 3L);
+
+		shared.addSession(1L, "a1", null);
+		nodeA.markOnline(1L);
+		assertThat(nodeA.flushChanges()).isEqualTo(1);
+
+		// Mất kết nối ở A, vào lại ở B trong lúc grace: không ai công bố gì
+		shared.removeSession(1L, "a1");
+		nodeA.markOffline(1L);
+		shared.addSession(1L, "b1", null);
+		nodeB.markOnline(1L);
+		assertThat(nodeB.flushChanges()).isZero();
+		ReflectionTestUtils.setField(nodeA, "offlineGraceMs", 0L);
+		assertThat(nodeA.flushChanges()).isZero();
+
+		// Offline ở B rồi online lại ở A: A không còn giữ trạng thái ONLINE cũ nên vẫn công bố
+		shared.removeSession(1L, "b1");
+		nodeB.markOffline(1L);
+		ReflectionTestUtils.setField(nodeB, "offlineGraceMs", 0L);
+		assertThat(nodeB.flushChanges()).isEqualTo(1);
+		shared.addSession(1L, "a2", null);
+		nodeA.markOnline(1L);
+		assertThat(nodeA.flushChanges()).isEqualTo(1);
+	}
+
+	private PresenceServiceImpl node(SessionStore store) {
+		UserDirectory userDirectory = mock(UserDirectory.class);
+		when(userDirectory.getAll(anyCollection())).thenReturn(Map.of(
+				1L, new UserDirectory.Entry(1L, "alice", "Alice", null),
+				2L, new UserDirectory.Entry(2L, "bob", "Bob", null)));
+		PresenceServiceImpl node = new PresenceServiceImpl(userRepository, roomMemberRepository, safeBroadcast,
+				mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), store, userDirectory);
+		ReflectionTestUtils.setField(node, "offlineGraceMs", 60_000L);
+		node.init();
+		return node;
+	}
+
+	private void online(Long... userIds) {
+		Set<Long> online = Set.of(userIds);
+		when(sessionStore.filterOnline(anyCollection())).thenAnswer(invocation -> {
+			Set<Long> result = new HashSet<>(invocation.<Collection<Long>>getArgument(0));
+			result.retainAll(online);
+			return result;
+		});
+	}
+
+	private static PresenceLink link(Long watcherId, Long subjectId) {
+		return new PresenceLink() {
+			public Long getWatcherId() { return watcherId; }
+			public Long getSubjectId() { return subjectId; }
+		};
+	}
+
+	private static Membership membership(Long roomId, Long userId) {
+		return new Membership() {
+			public Long getRoomId() { return roomId; }
+			public Long getUserId() { return userId; }
+		};
+	}
+}
@@ -0,0 +1,140 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.*;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.ReactionType;
+import com.revotech.chatapp.model.enums.RoomType;
+import com.revotech.chatapp.repository.MessageReactionRepository;
+import com.revotech.chatapp.repository.MessageReactionStatRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+@Import(ReactionAggregator.class)
+class ReactionAggregatorTest {
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private MessageReactionRepository messageReactionRepository;
+
+	@Autowired
+	private MessageReactionStatRepository statRepository;
+
+	@Autowired
+	private ReactionAggregator reactionAggregator;
+
+	private Message message;
+	private final List<User> users = new ArrayList<>();
+
+	@BeforeEach
+	void seed() {
+		for (int i = 0; i < 5; i++) {
+			User user = User.builder()
+					.username("reactor" + i)
+					.email("reactor" + i + "@example.com")
+					.password("secret")
+					.fullName("Reactor " + i)
+					.build();
+			entityManager.persist(user);
+			users.add(user);
+		}
+
+		Room room = Room.builder()
+				.name("reactions")
+				.type(RoomType.GROUP)
+				.createdBy(users.get(0).getId())
+				.build();
+		entityManager.persist(room);
+
+		message = Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.room(room)
+				.sender(users.get(0))
+				.content("react to me")
+				.type(MessageType.CHAT)
+				.build();
+		entityManager.persist(message);
+		entityManager.flush();
+	}
+
+	@Test
+	void incrementalUpdatesMatchRebuild() {
+		LocalDateTime base = LocalDateTime.now().minusMinutes(10);
+		for (int i = 0; i < users.size(); i++) {
+			react(users.get(i), ReactionType.LIKE, base.plusSeconds(i));
+		}
+
+		MessageReactionStat like = stat(ReactionType.LIKE);
+		assertThat(like.getCount()).isEqualTo(5);
+		assertThat(ReactionAggregator.recentUserIds(like))
+				.containsExactly(users.get(4).getId(), users.get(3).getId(), users.get(2).getId());
+
+		// Người mới nhất bỏ reaction: recent list được bù từ message_reactions
+		unreact(users.get(4));
+		// Người thứ hai đổi sang LOVE
+		MessageReaction changed = messageReactionRepository.findByMessageAndUser(message, users.get(3)).orElseThrow();
+		changed.setType(ReactionType.LOVE);
+		messageReactionRepository.save(changed);
+		reactionAggregator.decrement(message.getId(), ReactionType.LIKE, users.get(3).getId());
+		reactionAggregator.increment(message.getId(), ReactionType.LOVE, users.get(3).getId(), base.plusSeconds(10));
+
+		like = stat(ReactionType.LIKE);
+		assertThat(like.getCount()).isEqualTo(3);
+		assertThat(ReactionAggregator.recentUserIds(like))
+				.containsExactly(users.get(2).getId(), users.get(1).getId(), users.get(0).getId());
+		assertThat(stat(ReactionType.LOVE).getCount()).isEqualTo(1);
+
+		unreact(users.get(3));
+		assertThat(statRepository.findByMessageIdAndType(message.getId(), ReactionType.LOVE)).isEmpty();
+
+		// Rebuild từ message_reactions cho ra đúng trạng thái đang có
+		List<Long> incremental = ReactionAggregator.recentUserIds(stat(ReactionType.LIKE));
+		reactionAggregator.rebuild();
+		entityManager.flush();
+		entityManager.clear();
+		assertThat(statRepository.findByMessageIdIn(List.of(message.getId())))
+				.singleElement()
+				.satisfies(stat -> {
+					assertThat(stat.getType()).isEqualTo(ReactionType.LIKE);
+					assertThat(stat.getCount()).isEqualTo(3);
+					assertThat(ReactionAggregator.recentUserIds(stat)).isEqualTo(incremental);
+				});
+	}
+
+	private void react(User user, ReactionType type, LocalDateTime at) {
+		MessageReaction reaction = messageReactionRepository.save(MessageReaction.builder()
+				.message(message)
+				.user(user)
+				.type(type)
+				.build());
+		// createdAt do @CreationTimestamp sinh ra, chỉnh lại để thứ tự ổn định
+		reaction.setCreatedAt(at);
+		reactionAggregator.increment(message.getId(), type, user.getId(), at);
+	}
+
+	private void unreact(User user) {
+		MessageReaction reaction = messageReactionRepository.findByMessageAndUser(message, user).orElseThrow();
+		messageReactionRepository.delete(reaction);
+		reactionAggregator.decrement(message.getId(), reaction.getType(), user.getId());
+	}
+
+	private MessageReactionStat stat(ReactionType type) {
+		return statRepository.findByMessageIdAndType(message.getId(), type).orElseThrow();
+	}
+}
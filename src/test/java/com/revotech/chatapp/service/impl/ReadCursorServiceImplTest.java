@@ -0,0 +1,223 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.Message;
+import com.revotech.chatapp.model.entity.Room;
+import com.revotech.chatapp.model.entity.RoomMember;
+import com.revotech.chatapp.model.entity.User;
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.RoomRole;
+import com.revotech.chatapp.model.enums.RoomType;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.RoomMemberRepository;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+class ReadCursorServiceImplTest {
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private RoomMemberRepository roomMemberRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private MessageRepository messages;
+	private UnreadCounterStore unreadCounterStore;
+	private ReadCursorServiceImpl readCursorService;
+	private User alice;
+	private User bob;
+	private Room room;
+	private String chatKey;
+
+	@BeforeEach
+	void setUp() {
+		// Repository là JDK proxy, không spy được: mock chuyển tiếp để đếm số query
+		messages = mock(MessageRepository.class, AdditionalAnswers.delegatesTo(messageRepository));
+		unreadCounterStore = spy(new InMemoryUnreadCounterStore());
+		readCursorService = new ReadCursorServiceImpl(roomMemberRepository, messages, transactionManager,
+				unreadCounterStore);
+
+		alice = user("alice");
+		bob = user("bob");
+		room = Room.builder().name("general").type(RoomType.GROUP).createdBy(bob.getId()).build();
+		entityManager.persist(room);
+		member(alice);
+		member(bob);
+		chatKey = UnreadCounterStore.roomKey(room.getId());
+	}
+
+	@Test
+	void cursorOnlyMovesForwardInMemoryAndInTheDatabase() {
+		Long first = message(bob);
+		Long second = message(bob);
+		Long third = message(bob);
+
+		readCursorService.advance(room.getId(), alice.getId(), second);
+		readCursorService.advance(room.getId(), alice.getId(), first);
+		assertThat(readCursorService.getLastReadMessageId(room.getId(), alice.getId())).isEqualTo(second);
+		assertThat(persistedCursor()).isNull();
+
+		assertThat(readCursorService.flushPendingCursors()).isEqualTo(1);
+		assertThat(persistedCursor()).isEqualTo(second);
+		assertThat(readCursorService.flushPendingCursors()).isZero();
+
+		// Cursor cũ hơn (event đến trễ) không kéo lùi cursor đã ghi
+		readCursorService.advance(room.getId(), alice.getId(), first);
+		assertThat(readCursorService.getLastReadMessageId(room.getId(), alice.getId())).isEqualTo(second);
+		readCursorService.flushPendingCursors();
+		assertThat(persistedCursor()).isEqualTo(second);
+
+		readCursorService.advance(room.getId(), alice.getId(), third);
+		readCursorService.flushPendingCursors();
+		assertThat(persistedCursor()).isEqualTo(third);
+	}
+
+	@Test
+	void unreadCountsOthersMessagesAfterTheCursorAndIsCached() {
+		Long first = message(bob);
+		message(alice);
+		message(bob);
+		Message deleted = messageRepository.findById(message(bob)).orElseThrow();
+		deleted.setIsDeleted(true);
+		message(bob);
+		entityManager.flush();
+
+		// Chưa có cursor: tất cả message của người khác, trừ message đã xoá
+		assertThat(readCursorService.getUnreadCount(room.getId(), alice.getId())).isEqualTo(3);
+		assertThat(readCursorService.getUnreadCount(room.getId(), alice.getId())).isEqualTo(3);
+		verify(messages, times(1)).countUnreadInRoomAfter(eq(room.getId()), anyLong(), eq(alice.getId()));
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isEqualTo(3);
+
+		// Advance giữa chừng bỏ counter, lần đọc sau đếm lại từ cursor chưa flush
+		readCursorService.advance(room.getId(), alice.getId(), first);
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isNull();
+		assertThat(readCursorService.getUnreadCount(room.getId(), alice.getId())).isEqualTo(2);
+		assertThat(readCursorService.countUnread(room.getId(), bob.getId())).isEqualTo(1);
+	}
+
+	@Test
+	void advanceToLatestClearsUnreadWithoutCounting() {
+		message(bob);
+		Long latest = message(bob);
+		unreadCounterStore.set(alice.getId(), chatKey, 2);
+
+		readCursorService.advanceToLatest(room.getId(), alice.getId());
+
+		assertThat(readCursorService.getUnreadCount(room.getId(), alice.getId())).isZero();
+		verify(messages, never()).countUnreadInRoomAfter(any(), any(), any());
+		assertThat(readCursorService.getLastReadMessageId(room.getId(), alice.getId())).isEqualTo(latest);
+		assertThat(readCursorService.countUnread(room.getId(), alice.getId())).isZero();
+
+		readCursorService.flushPendingCursors();
+		assertThat(persistedCursor()).isEqualTo(latest);
+	}
+
+	@Test
+	void unreadCountsOfManyRoomsReadCountersOnceAndCountMissesInOneQuery() {
+		Long first = message(room, bob);
+		message(room, alice);
+		message(room, bob);
+		message(room, bob);
+		readCursorService.advance(room.getId(), alice.getId(), first);
+		readCursorService.flushPendingCursors();
+
+		Room cached = room("cached");
+		unreadCounterStore.set(alice.getId(), UnreadCounterStore.roomKey(cached.getId()), 7);
+
+		// Cursor chưa flush chỉ có trong bộ nhớ
+		Room reading = room("reading");
+		Long seen = message(reading, bob);
+		message(reading, bob);
+		readCursorService.advance(reading.getId(), alice.getId(), seen);
+
+		Room quiet = room("quiet");
+		clearInvocations(messages, unreadCounterStore);
+
+		Map<Long, Long> counts = readCursorService.getUnreadRoomCounts(
+				List.of(room.getId(), cached.getId(), reading.getId(), quiet.getId()), alice.getId());
+
+		assertThat(counts).containsExactlyInAnyOrderEntriesOf(Map.of(
+				room.getId(), 2L, cached.getId(), 7L, reading.getId(), 1L, quiet.getId(), 0L));
+		verify(unreadCounterStore, times(1)).getAll(alice.getId());
+		verify(messages, times(1)).countUnreadByRoomAfterReadCursor(anyCollection(), eq(alice.getId()));
+		verify(messages, times(1)).countUnreadInRoomAfter(eq(reading.getId()), eq(seen), eq(alice.getId()));
+		verify(messages, never()).countUnreadInRoomAfter(eq(room.getId()), any(), any());
+		assertThat(unreadCounterStore.get(alice.getId(), chatKey)).isEqualTo(2);
+		assertThat(unreadCounterStore.get(alice.getId(), UnreadCounterStore.roomKey(quiet.getId()))).isZero();
+	}
+
+	private Long persistedCursor() {
+		entityManager.clear();
+		return roomMemberRepository.findLastReadMessageId(room.getId(), alice.getId()).orElse(null);
+	}
+
+	private User user(String name) {
+		String username = name + "-" + UUID.randomUUID().toString().substring(0, 8);
+		User user = User.builder()
+				.username(username)
+				.email(username + "@example.com")
+				.password("secret")
+				.fullName(name)
+				.build();
+		entityManager.persist(user);
+		return user;
+	}
+
+	private Room room(String name) {
+		Room other = Room.builder().name(name).type(RoomType.GROUP).createdBy(bob.getId()).build();
+		entityManager.persist(other);
+		member(other, alice);
+		member(other, bob);
+		return other;
+	}
+
+	private void member(User user) {
+		member(room, user);
+	}
+
+	private void member(Room target, User user) {
+		entityManager.persist(RoomMember.builder().room(target).user(user).role(RoomRole.MEMBER).build());
+	}
+
+	private Long message(User sender) {
+		return message(room, sender);
+	}
+
+	private Long message(Room target, User sender) {
+		Message message = Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.room(target)
+				.sender(sender)
+				.content("hi")
+				.type(MessageType.CHAT)
+				.status(MessageStatus.SENT)
+				.build();
+		entityManager.persist(message);
+		entityManager.flush();
+		return message.getId();
+	}
+}
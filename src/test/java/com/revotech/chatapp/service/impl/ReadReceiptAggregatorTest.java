@@ -0,0 +1,145 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.enums.MessageStatus;
+import com.revotech.chatapp.repository.MessageRepository;
+import com.revotech.chatapp.repository.MessageRepository.ReceiptTarget;
+import com.revotech.chatapp.service.ReadCursorService;
+import com.revotech.chatapp.service.UnreadCounterStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReadReceiptAggregatorTest {
+
+	private static final Long SENDER = 1L;
+	private static final Long READER = 2L;
+	private static final Long CONVERSATION = 30L;
+
+	private MessageRepository messageRepository;
+	private SimpMessageSendingOperations messagingTemplate;
+	private ReadReceiptAggregator aggregator;
+	private Map<String, ReceiptTarget> targets;
+
+	@BeforeEach
+	void setUp() {
+		messageRepository = mock(MessageRepository.class);
+		messagingTemplate = mock(SimpMessageSendingOperations.class);
+		targets = Stream.of(target(11L, "m1"), target(12L, "m2"), target(13L, "m3"))
+				.collect(Collectors.toMap(ReceiptTarget::getMessageId, Function.identity()));
+		when(messageRepository.findReceiptTargets(anyCollection())).thenAnswer(invocation -> {
+			Collection<String> messageIds = invocation.getArgument(0);
+			return messageIds.stream().map(targets::get).filter(t -> t != null).toList();
+		});
+		when(messageRepository.updateStatusByIdIn(anyCollection(), any(), anyCollection()))
+				.thenAnswer(invocation -> ((Collection<?>) invocation.getArgument(0)).size());
+
+		aggregator = new ReadReceiptAggregator(messageRepository, mock(UserDirectory.class), messagingTemplate,
+				mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), mock(ReadCursorService.class),
+				mock(UnreadCounterStore.class));
+		ReflectionTestUtils.setField(aggregator, "tickMs", 100L);
+		ReflectionTestUtils.setField(aggregator, "deliveredDelayMs", 200L);
+		ReflectionTestUtils.setField(aggregator, "readDelayMs", 1000L);
+		ReflectionTestUtils.setField(aggregator, "maxPending", 100);
+		// Không start scheduler: test tự quay wheel bằng tick()
+		aggregator.init();
+	}
+
+	@Test
+	void explicitReadsOfOneConversationAreFlushedAsOneUpdateAndFrame() {
+		aggregator.markRead(List.of("m1", "m2", "m3"), READER);
+
+		aggregator.tick();
+
+		verify(messageRepository).updateStatusByIdIn(
+				argThat(ids -> ids.containsAll(List.of(11L, 12L, 13L)) && ids.size() == 3),
+				eq(MessageStatus.READ), anyCollection());
+		verify(messagingTemplate).convertAndSendToUser(eq("sender"), eq("/queue/read-receipts"), any(Object.class));
+		assertThat(aggregator.getBacklog()).isZero();
+	}
+
+	@Test
+	void delayedReceiptFiresAfterExactlyItsDelayInTicks() {
+		aggregator.scheduleDelivered("m1", READER); // 200 ms = 2 tick
+		aggregator.scheduleRead("m2", READER); // 1000 ms = 10 tick
+
+		tick(2);
+		verify(messageRepository, never()).updateStatusByIdIn(anyCollection(), any(), anyCollection());
+
+		aggregator.tick();
+		verify(messageRepository).updateStatusByIdIn(eq(List.of(11L)), eq(MessageStatus.DELIVERED), anyCollection());
+
+		tick(7);
+		verify(messageRepository, never()).updateStatusByIdIn(anyCollection(), eq(MessageStatus.READ), anyCollection());
+
+		aggregator.tick();
+		verify(messageRepository).updateStatusByIdIn(eq(List.of(12L)), eq(MessageStatus.READ), anyCollection());
+	}
+
+	@Test
+	void wheelIsSizedForDelaysLongerThanDefaultWheel() {
+		ReflectionTestUtils.setField(aggregator, "readDelayMs", 10_000L); // 100 tick > 64 slot mặc định
+		aggregator.init();
+
+		aggregator.scheduleRead("m1", READER);
+		tick(100);
+		verify(messageRepository, never()).updateStatusByIdIn(anyCollection(), any(), anyCollection());
+
+		aggregator.tick();
+		verify(messageRepository).updateStatusByIdIn(eq(List.of(11L)), eq(MessageStatus.READ), anyCollection());
+	}
+
+	@Test
+	void unsupportedDelayIsRejected() {
+		ReflectionTestUtils.setField(aggregator, "readDelayMs", 60_000_000L);
+
+		assertThatThrownBy(() -> aggregator.init()).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void shutdownFlushesReceiptsThatAreNotDueYet() {
+		aggregator.scheduleRead("m1", READER);
+		aggregator.markRead(List.of("m2"), READER);
+		aggregator.tick(); // m2 flush, m1 còn 9 tick
+		clearInvocations(messageRepository);
+
+		aggregator.scheduleDelivered("m3", READER);
+		aggregator.shutdown();
+
+		verify(messageRepository).updateStatusByIdIn(eq(List.of(11L)), eq(MessageStatus.READ), anyCollection());
+		verify(messageRepository).updateStatusByIdIn(eq(List.of(13L)), eq(MessageStatus.DELIVERED), anyCollection());
+		assertThat(aggregator.getBacklog()).isZero();
+	}
+
+	private void tick(int ticks) {
+		for (int i = 0; i < ticks; i++) {
+			aggregator.tick();
+		}
+	}
+
+	private static ReceiptTarget target(Long id, String messageId) {
+		ReceiptTarget target = mock(ReceiptTarget.class);
+		when(target.getId()).thenReturn(id);
+		when(target.getMessageId()).thenReturn(messageId);
+		when(target.getConversationId()).thenReturn(CONVERSATION);
+		when(target.getRoomId()).thenReturn(null);
+		when(target.getSenderId()).thenReturn(SENDER);
+		when(target.getSenderUsername()).thenReturn("sender");
+		when(target.getStatus()).thenReturn(MessageStatus.SENT);
+		return target;
+	}
+}
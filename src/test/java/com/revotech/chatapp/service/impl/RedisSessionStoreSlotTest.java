@@ -0,0 +1,121 @@
+package com.revotech.chatapp.service.impl;
+
+import io.lettuce.core.cluster.SlotHash;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Không cần Docker: kiểm tra key mà từng Lua script nhận (đủ KEYS, cùng một slot Redis Cluster) và user chia đều các slot.
+// Nội dung script chạy trên Redis thật trong RedisSessionStoreTest
+class RedisSessionStoreSlotTest {
+
+	private static final Pattern KEY_REF = Pattern.compile("KEYS\\[(\\d+)]");
+
+	private StringRedisTemplate redisTemplate;
+	private SetOperations<String, String> setOperations;
+	private RedisSessionStore store;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		redisTemplate = mock(StringRedisTemplate.class);
+		setOperations = mock(SetOperations.class);
+		when(redisTemplate.opsForSet()).thenReturn(setOperations);
+		store = new RedisSessionStore(redisTemplate, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void sessionScriptsTouchOneSlotPerUser() {
+		store.addSession(42L, "s1", Duration.ofMinutes(5));
+		store.removeSession(42L, "s1");
+		store.removeAllSessions(42L);
+		store.announce(42L, true);
+
+		ArgumentCaptor<RedisScript<Long>> scripts = scriptCaptor();
+		ArgumentCaptor<List<String>> keys = keysCaptor();
+		verify(redisTemplate, times(3)).execute(scripts.capture(), keys.capture(), any(Object[].class));
+
+		for (int i = 0; i < 3; i++) {
+			assertKeysMatchScript(scripts.getAllValues().get(i), keys.getAllValues().get(i));
+			assertThat(keys.getAllValues().get(i)).containsExactly(
+					RedisSessionStore.sessionsKey(42L), RedisSessionStore.onlineKey(RedisSessionStore.shard(42L)));
+		}
+		verify(setOperations).add(RedisSessionStore.announcedKey(42L), "42");
+		assertThat(slot(RedisSessionStore.announcedKey(42L))).isEqualTo(slot(RedisSessionStore.sessionsKey(42L)));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void orphanScriptUsesTheOnlineSetOfTheUsersShard() {
+		Cursor<String> empty = mock(Cursor.class);
+		Cursor<String> shardOfSeven = mock(Cursor.class);
+		when(shardOfSeven.hasNext()).thenReturn(true, false);
+		when(shardOfSeven.next()).thenReturn("7");
+		when(setOperations.scan(anyString(), any())).thenReturn(empty);
+		when(setOperations.scan(eq(RedisSessionStore.onlineKey(RedisSessionStore.shard(7L))), any()))
+				.thenReturn(shardOfSeven);
+		when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(false));
+		when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+
+		assertThat(store.removeOrphans()).containsExactly(7L);
+
+		ArgumentCaptor<RedisScript<Long>> scripts = scriptCaptor();
+		ArgumentCaptor<List<String>> keys = keysCaptor();
+		verify(redisTemplate).execute(scripts.capture(), keys.capture(), any(Object[].class));
+		assertKeysMatchScript(scripts.getValue(), keys.getValue());
+		assertThat(keys.getValue()).containsExactly(
+				RedisSessionStore.sessionsKey(7L), RedisSessionStore.onlineKey(RedisSessionStore.shard(7L)));
+		verify(setOperations, times(RedisSessionStore.SHARDS)).scan(anyString(), any());
+	}
+
+	@Test
+	void usersSpreadOverOneSlotPerShard() {
+		Set<Integer> slots = LongStream.rangeClosed(1, 1000)
+				.mapToObj(id -> slot(RedisSessionStore.sessionsKey(id)))
+				.collect(Collectors.toSet());
+
+		assertThat(slots).hasSize(RedisSessionStore.SHARDS);
+	}
+
+	private static void assertKeysMatchScript(RedisScript<Long> script, List<String> keys) {
+		int highest = 0;
+		Matcher matcher = KEY_REF.matcher(script.getScriptAsString());
+		while (matcher.find()) {
+			highest = Math.max(highest, Integer.parseInt(matcher.group(1)));
+		}
+		assertThat(keys).hasSize(highest);
+		assertThat(keys.stream().map(RedisSessionStoreSlotTest::slot).distinct()).hasSize(1);
+	}
+
+	private static int slot(String key) {
+		return SlotHash.getSlot(key);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArgumentCaptor<RedisScript<Long>> scriptCaptor() {
+		return (ArgumentCaptor) ArgumentCaptor.forClass(RedisScript.class);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static ArgumentCaptor<List<String>> keysCaptor() {
+		return (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+	}
+}
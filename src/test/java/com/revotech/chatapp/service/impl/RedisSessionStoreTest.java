@@ -0,0 +1,109 @@
+package com.revotech.chatapp.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Chạy các Lua script trên Redis thật; bỏ qua khi máy không có Docker
+@Testcontainers(disabledWithoutDocker = true)
+class RedisSessionStoreTest {
+
+	private static final Duration TTL = Duration.ofMinutes(5);
+
+	@Container
+	static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+			.withExposedPorts(6379);
+
+	private static LettuceConnectionFactory connectionFactory;
+	private static StringRedisTemplate redisTemplate;
+
+	private RedisSessionStore store;
+
+	@BeforeAll
+	static void connect() {
+		connectionFactory = new LettuceConnectionFactory(
+				new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+		connectionFactory.afterPropertiesSet();
+		connectionFactory.start();
+		redisTemplate = new StringRedisTemplate(connectionFactory);
+	}
+
+	@AfterAll
+	static void disconnect() {
+		connectionFactory.destroy();
+	}
+
+	@BeforeEach
+	void setUp() {
+		redisTemplate.execute(connection -> {
+			connection.serverCommands().flushAll();
+			return null;
+		}, true);
+		store = new RedisSessionStore(redisTemplate, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void userStaysOnlineUntilLastSessionIsRemoved() {
+		assertThat(store.addSession(1L, "s1", TTL)).isTrue();
+		assertThat(store.addSession(1L, "s2", TTL)).isFalse();
+		assertThat(store.getSessions(1L)).containsExactlyInAnyOrder("s1", "s2");
+
+		assertThat(store.removeSession(1L, "s1")).isFalse();
+		assertThat(store.isOnline(1L)).isTrue();
+
+		assertThat(store.removeSession(1L, "s2")).isTrue();
+		assertThat(store.isOnline(1L)).isFalse();
+		assertThat(store.onlineCount()).isZero();
+	}
+
+	@Test
+	void removeAllSessionsTakesUserOffline() {
+		store.addSession(1L, "s1", TTL);
+		store.addSession(1L, "s2", TTL);
+		store.addSession(2L, "s3", TTL);
+
+		assertThat(store.removeAllSessions(1L)).isTrue();
+
+		assertThat(store.getSessions(1L)).isEmpty();
+		assertThat(store.filterOnline(List.of(1L, 2L, 3L))).containsExactly(2L);
+	}
+
+	@Test
+	void announcedStateIsReportedOnlyOnChange() {
+		assertThat(store.announce(1L, true)).isTrue();
+		assertThat(store.announce(1L, true)).isFalse();
+		assertThat(store.announce(1L, false)).isTrue();
+		assertThat(store.announce(1L, false)).isFalse();
+	}
+
+	@Test
+	void orphansAreRemovedAcrossScanBatches() {
+		// Mỗi shard nhiều hơn một batch SSCAN; user chẵn mất session set (hết hạn), user lẻ vẫn online
+		LongStream.rangeClosed(1, 8400).forEach(id -> store.addSession(id, "s" + id, TTL));
+		LongStream.rangeClosed(1, 8400).filter(id -> id % 2 == 0)
+				.forEach(id -> redisTemplate.delete(RedisSessionStore.sessionsKey(id)));
+
+		Set<Long> removed = store.removeOrphans();
+
+		assertThat(removed).hasSize(4200).allMatch(id -> id % 2 == 0);
+		assertThat(store.onlineCount()).isEqualTo(4200);
+		assertThat(store.onlineUserIds()).allMatch(id -> id % 2 == 1);
+		assertThat(store.removeOrphans()).isEmpty();
+	}
+}
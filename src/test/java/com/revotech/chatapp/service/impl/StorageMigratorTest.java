@@ -0,0 +1,122 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.model.entity.*;
+import com.revotech.chatapp.model.enums.FileType;
+import com.revotech.chatapp.model.enums.MessageType;
+import com.revotech.chatapp.model.enums.RoomType;
+import com.revotech.chatapp.repository.FileAttachmentRepository;
+import com.revotech.chatapp.repository.StoredBlobRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false"
+})
+@Import({StorageMigrator.class, StorageMigratorTest.Storage.class})
+class StorageMigratorTest {
+
+	@TempDir
+	static Path dir;
+
+	@TestConfiguration
+	static class Storage {
+		@Bean
+		LocalBlobStore blobStore() {
+			return new LocalBlobStore(dir.resolve("store").toString());
+		}
+	}
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private StorageMigrator storageMigrator;
+
+	@Autowired
+	private LocalBlobStore blobStore;
+
+	@Autowired
+	private FileAttachmentRepository fileAttachmentRepository;
+
+	@Autowired
+	private StoredBlobRepository storedBlobRepository;
+
+	@Test
+	void movesFlatUploadsAndSharedBlobsIntoTheStore() throws Exception {
+		String checksum = "ab12" + "0".repeat(60);
+		Path uploads = Files.createDirectories(dir.resolve("uploads/blobs")).getParent();
+		Path legacyFile = Files.writeString(uploads.resolve("5e1f-legacy.pdf"), "legacy pdf");
+		Path legacyThumb = Files.writeString(uploads.resolve("5e1f-legacy_thumb.jpg"), "thumb");
+		Path blob = Files.writeString(uploads.resolve("blobs").resolve(checksum), "shared image");
+
+		User user = User.builder().username("migrator").email("migrator@example.com").password("secret").fullName("Migrator").build();
+		entityManager.persist(user);
+		Room room = Room.builder().name("files").type(RoomType.GROUP).createdBy(user.getId()).build();
+		entityManager.persist(room);
+
+		Long legacyId = attachment(user, room, legacyFile.toString(), legacyThumb.toString(), null);
+		// Hai attachment dùng chung một blob đã dedup
+		Long firstId = attachment(user, room, blob.toString(), null, checksum);
+		Long secondId = attachment(user, room, blob.toString(), null, checksum);
+		entityManager.persist(StoredBlob.builder().checksum(checksum).storageKey(blob.toString()).refCount(2L).size(12L).build());
+		entityManager.flush();
+
+		assertThat(storageMigrator.hasLegacyPaths()).isTrue();
+		assertThat(storageMigrator.migrate()).isEqualTo(4);
+		entityManager.clear();
+
+		FileAttachment legacy = fileAttachmentRepository.findById(legacyId).orElseThrow();
+		assertThat(legacy.getStorageKey()).isEqualTo("5e1f-legacy.pdf");
+		assertThat(legacy.getThumbnailKey()).isEqualTo("5e1f-legacy_thumb.jpg");
+		assertThat(blobStore.localPath("5e1f-legacy.pdf")).hasContent("legacy pdf");
+		assertThat(blobStore.localPath("5e1f-legacy_thumb.jpg")).hasContent("thumb");
+
+		assertThat(fileAttachmentRepository.findById(firstId).orElseThrow().getStorageKey()).isEqualTo(checksum);
+		assertThat(fileAttachmentRepository.findById(secondId).orElseThrow().getStorageKey()).isEqualTo(checksum);
+		assertThat(storedBlobRepository.findByChecksumForUpdate(checksum).orElseThrow().getStorageKey()).isEqualTo(checksum);
+		assertThat(blobStore.localPath(checksum)).hasContent("shared image");
+
+		assertThat(legacyFile).doesNotExist();
+		assertThat(blob).doesNotExist();
+		assertThat(storageMigrator.hasLegacyPaths()).isFalse();
+		assertThat(storageMigrator.migrate()).isZero();
+	}
+
+	private Long attachment(User user, Room room, String path, String thumbnailPath, String checksum) {
+		Message message = Message.builder()
+				.messageId(UUID.randomUUID().toString())
+				.room(room)
+				.sender(user)
+				.content("file")
+				.type(MessageType.FILE)
+				.build();
+		entityManager.persist(message);
+
+		FileAttachment attachment = FileAttachment.builder()
+				.message(message)
+				.fileName(UUID.randomUUID() + ".bin")
+				.originalFileName("file.bin")
+				.storageKey(path)
+				.thumbnailKey(thumbnailPath)
+				.fileType(FileType.DOCUMENT)
+				.fileSize(10L)
+				.checksum(checksum)
+				.uploadedBy(user)
+				.build();
+		entityManager.persist(attachment);
+		return attachment.getId();
+	}
+}
@@ -0,0 +1,250 @@
+package com.revotech.chatapp.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.revotech.chatapp.config.BroadcastFanoutMetrics;
+import com.revotech.chatapp.config.ClusterBrokerRelay;
+import com.revotech.chatapp.model.dto.TypingSnapshot;
+import com.revotech.chatapp.model.dto.response.WebSocketResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TypingServiceImplTest {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+	private SimpMessageSendingOperations messagingTemplate;
+	private BroadcastFanoutMetrics subscriptions;
+	private TypingServiceImpl typingService;
+	private final List<Node> nodes = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+		messagingTemplate = mock(SimpMessageSendingOperations.class);
+		subscriptions = new BroadcastFanoutMetrics(new SimpleMeterRegistry());
+		subscribe(subscriptions, "s1", "/topic/room/1");
+
+		typingService = typingService(messagingTemplate, subscriptions, "simple");
+	}
+
+	@AfterEach
+	void stopNodes() {
+		nodes.forEach(Node::stop);
+	}
+
+	@Test
+	void coalescesRepeatedStartsIntoOneSnapshot() {
+		for (int i = 0; i < 20; i++) {
+			typingService.updateTyping(1L, null, 10L, "alice", true);
+			typingService.updateTyping(1L, null, 11L, "bob", true);
+		}
+
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(typingService.publishSnapshots()).isZero();
+
+		TypingSnapshot snapshot = lastSnapshot("/topic/room/1");
+		assertThat(snapshot.getUsers()).extracting("username").containsExactlyInAnyOrder("alice", "bob");
+	}
+
+	@Test
+	void expiredTypersAreRemovedWithoutStop() {
+		ReflectionTestUtils.setField(typingService, "ttlMs", 0L);
+		typingService.updateTyping(1L, null, 10L, "alice", true);
+
+		// Entry đã hết hạn ngay ở tick đầu: không có gì thay đổi so với tập rỗng ban đầu
+		assertThat(typingService.publishSnapshots()).isZero();
+		verifyNoInteractions(messagingTemplate);
+	}
+
+	@Test
+	void stopPublishesEmptySnapshot() {
+		typingService.updateTyping(1L, null, 10L, "alice", true);
+		typingService.publishSnapshots();
+		typingService.updateTyping(1L, null, 10L, "alice", false);
+
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(lastSnapshot("/topic/room/1").getUsers()).isEmpty();
+	}
+
+	@Test
+	void skipsChatsWithoutSubscribers() {
+		typingService.updateTyping(2L, null, 10L, "alice", true);
+
+		assertThat(typingService.publishSnapshots()).isZero();
+		verifyNoInteractions(messagingTemplate);
+	}
+
+	@Test
+	void snapshotSkippedWithoutSubscribersIsSentOnceSomeoneSubscribes() {
+		typingService.updateTyping(2L, null, 10L, "alice", true);
+		assertThat(typingService.publishSnapshots()).isZero();
+
+		subscribe(subscriptions, "s2", "/topic/room/2");
+
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(lastSnapshot("/topic/room/2").getUsers()).extracting("username").containsExactly("alice");
+	}
+
+	@Test
+	void nonEmptySnapshotIsRepublishedEveryRefresh() {
+		ReflectionTestUtils.setField(typingService, "refreshMs", 0L);
+		typingService.updateTyping(1L, null, 10L, "alice", true);
+
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(lastSnapshot("/topic/room/1").getExpiresInMs()).isEqualTo(60_000L);
+
+		typingService.updateTyping(1L, null, 10L, "alice", false);
+		assertThat(typingService.publishSnapshots()).isEqualTo(1);
+		assertThat(typingService.publishSnapshots()).isZero();
+	}
+
+	@Test
+	void clientMergesTypersFromTwoNodesBehindLocalBackplane() {
+		Node nodeA = startNode();
+		Node nodeB = startNode();
+		nodeA.subscribe("session-a", "/topic/room/1");
+
+		// alice nối vào node A, bob vào node B: mỗi node chỉ biết typer của mình
+		nodeA.typingService.updateTyping(1L, null, 10L, "alice", true);
+		nodeB.typingService.updateTyping(1L, null, 11L, "bob", true);
+		nodeA.typingService.publishSnapshots();
+		nodeB.typingService.publishSnapshots();
+
+		List<JsonNode> snapshots = nodeA.snapshots("session-a");
+		assertThat(snapshots).hasSize(2);
+		assertThat(snapshots).extracting(snapshot -> snapshot.path("nodeId").asText()).doesNotHaveDuplicates();
+		assertThat(merge(snapshots)).containsExactlyInAnyOrder("alice", "bob");
+
+		nodeB.typingService.updateTyping(1L, null, 11L, "bob", false);
+		nodeB.typingService.publishSnapshots();
+
+		assertThat(merge(nodeA.snapshots("session-a"))).containsExactly("alice");
+	}
+
+	// Cùng cách gộp với chat-manager.js: snapshot mới nhất của mỗi node thay tập của node đó
+	private static Set<String> merge(List<JsonNode> snapshots) {
+		Map<String, Set<String>> byNode = new HashMap<>();
+		for (JsonNode snapshot : snapshots) {
+			Set<String> users = new HashSet<>();
+			snapshot.path("users").forEach(user -> users.add(user.path("username").asText()));
+			byNode.put(snapshot.path("nodeId").asText(), users);
+		}
+		Set<String> merged = new HashSet<>();
+		byNode.values().forEach(merged::addAll);
+		return merged;
+	}
+
+	private static TypingServiceImpl typingService(SimpMessageSendingOperations messagingTemplate,
+													BroadcastFanoutMetrics subscriptions, String brokerMode) {
+		TypingServiceImpl service = new TypingServiceImpl(messagingTemplate, subscriptions);
+		ReflectionTestUtils.setField(service, "ttlMs", 60_000L);
+		ReflectionTestUtils.setField(service, "refreshMs", 60_000L);
+		ReflectionTestUtils.setField(service, "brokerMode", brokerMode);
+		return service;
+	}
+
+	private Node startNode() {
+		Node node = new Node();
+		nodes.add(node);
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private TypingSnapshot lastSnapshot(String destination) {
+		ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+		verify(messagingTemplate, atLeastOnce()).convertAndSend(eq(destination), payload.capture(), anyMap());
+		WebSocketResponse<TypingSnapshot> response = (WebSocketResponse<TypingSnapshot>) payload.getValue();
+		assertThat(response.getAction()).isEqualTo("SNAPSHOT");
+		return response.getData();
+	}
+
+	private static void subscribe(BroadcastFanoutMetrics subscriptions, String sessionId, String destination) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		accessor.setSessionId(sessionId);
+		accessor.setSubscriptionId("sub-" + sessionId);
+		accessor.setDestination(destination);
+		subscriptions.onSubscribe(new SessionSubscribeEvent(new Object(),
+				MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders())));
+	}
+
+	// Simple broker + ClusterBrokerRelay + TypingServiceImpl, nối với các node khác qua LocalClusterBackplane
+	private static class Node {
+		private final ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+		private final ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+		private final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		private final LocalClusterBackplane backplane = new LocalClusterBackplane();
+		private final SimpleBrokerMessageHandler broker;
+		private final List<Message<?>> outbound = new CopyOnWriteArrayList<>();
+		private final TypingServiceImpl typingService;
+
+		Node() {
+			brokerChannel.addInterceptor(new ClusterBrokerRelay(backplane, () -> brokerChannel));
+			clientOutbound.subscribe(outbound::add);
+			broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic", "/queue"));
+			broker.start();
+
+			SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+			MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+			converter.setObjectMapper(OBJECT_MAPPER);
+			template.setMessageConverter(converter);
+			typingService = typingService(template, new BroadcastFanoutMetrics(new SimpleMeterRegistry()), "local");
+		}
+
+		void subscribe(String sessionId, String destination) {
+			SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+			connect.setSessionId(sessionId);
+			clientInbound.send(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+			accessor.setSessionId(sessionId);
+			accessor.setSubscriptionId("sub-" + sessionId);
+			accessor.setDestination(destination);
+			clientInbound.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+		}
+
+		List<JsonNode> snapshots(String sessionId) {
+			return outbound.stream()
+					.filter(message -> SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE)
+					.filter(message -> sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())))
+					.map(message -> read((byte[]) message.getPayload()).path("data"))
+					.toList();
+		}
+
+		private static JsonNode read(byte[] payload) {
+			try {
+				return OBJECT_MAPPER.readTree(payload);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		void stop() {
+			broker.stop();
+			backplane.close();
+		}
+	}
+}
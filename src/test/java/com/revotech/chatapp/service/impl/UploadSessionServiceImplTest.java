@@ -0,0 +1,227 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.exception.AppException;
+import com.revotech.chatapp.model.dto.FileMessage;
+import com.revotech.chatapp.model.dto.UploadSessionStatus;
+import com.revotech.chatapp.model.dto.request.CreateUploadRequest;
+import com.revotech.chatapp.model.entity.UploadSession;
+import com.revotech.chatapp.model.enums.UploadState;
+import com.revotech.chatapp.repository.UploadSessionRepository;
+import com.revotech.chatapp.service.FileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest(properties = {
+		"spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.properties.hibernate.connection.provider_disables_autocommit=false",
+		"app.storage.upload-dir=unused",
+		"app.storage.chunked.chunk-size=4"
+})
+@Import({UploadSessionServiceImpl.class, UploadSessionServiceImplTest.Mocks.class})
+// Đánh dấu chunk và complete chạy transaction riêng, file bị xoá sau commit: test chạy transaction thật
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UploadSessionServiceImplTest {
+
+	private static final Long USER_ID = 7L;
+	private static final byte[] CONTENT = "0123456789abcdefghij!".getBytes(StandardCharsets.UTF_8); // 6 chunk, chunk cuối 1 byte
+
+	@TestConfiguration
+	static class Mocks {
+		@Bean
+		FileService fileService() {
+			return mock(FileService.class);
+		}
+	}
+
+	@Autowired
+	private UploadSessionServiceImpl uploadSessionService;
+
+	@Autowired
+	private UploadSessionRepository uploadSessionRepository;
+
+	@Autowired
+	private FileService fileService;
+
+	@TempDir
+	Path dir;
+
+	@BeforeEach
+	void setUp() {
+		ReflectionTestUtils.setField(uploadSessionService, "uploadDir", dir.toString());
+		uploadSessionRepository.deleteAll();
+		reset(fileService);
+	}
+
+	@Test
+	void chunksWrittenOutOfOrderAndInParallelAssembleTheFile() throws Exception {
+		UploadSessionStatus created = create();
+		assertThat(created.getChunkSize()).isEqualTo(4);
+		assertThat(created.getMissingOffsets()).containsExactly(0L, 4L, 8L, 12L, 16L, 20L);
+		assertThat(dir.resolve("sessions").resolve(created.getUploadId() + ".part")).hasSize(CONTENT.length);
+
+		// Chunk đầu và chunk cuối trước: committedOffset chỉ tính phần liên tục từ đầu
+		put(created.getUploadId(), 20);
+		UploadSessionStatus partial = put(created.getUploadId(), 0);
+		assertThat(partial.getCommittedOffset()).isEqualTo(4);
+		assertThat(partial.getReceivedBytes()).isEqualTo(5);
+		assertThat(partial.getMissingOffsets()).containsExactly(4L, 8L, 12L, 16L);
+
+		CompletableFuture.allOf(IntStream.of(4, 8, 12, 16)
+				.mapToObj(offset -> CompletableFuture.runAsync(() -> put(created.getUploadId(), offset)))
+				.toArray(CompletableFuture[]::new)).join();
+
+		UploadSessionStatus status = uploadSessionService.getStatus(created.getUploadId(), USER_ID);
+		assertThat(status.getCommittedOffset()).isEqualTo(CONTENT.length);
+		assertThat(status.getReceivedBytes()).isEqualTo(CONTENT.length);
+		assertThat(status.getMissingOffsets()).isEmpty();
+
+		AtomicReference<byte[]> imported = new AtomicReference<>();
+		when(fileService.importFile(any(), eq("video.mp4"), eq(USER_ID))).thenAnswer(invocation -> {
+			imported.set(Files.readAllBytes(invocation.getArgument(0, Path.class)));
+			return FileMessage.builder().id(99L).build();
+		});
+
+		assertThat(uploadSessionService.complete(created.getUploadId(), USER_ID).getId()).isEqualTo(99L);
+		assertThat(imported.get()).isEqualTo(CONTENT);
+		assertThat(uploadSessionRepository.count()).isZero();
+		assertThat(dir.resolve("sessions").resolve(created.getUploadId() + ".part")).doesNotExist();
+	}
+
+	@Test
+	void completeImportsOutsideTheTransactionWhileSessionIsMarkedCompleting() {
+		String uploadId = uploaded();
+		AtomicReference<Boolean> transactionActive = new AtomicReference<>();
+		when(fileService.importFile(any(), eq("video.mp4"), eq(USER_ID))).thenAnswer(invocation -> {
+			transactionActive.set(TransactionSynchronizationManager.isActualTransactionActive());
+			// Row đã commit COMPLETING và không bị khoá: complete / cancel khác bị từ chối ngay thay vì chờ
+			assertThat(uploadSessionRepository.findById(uploadId).orElseThrow().getState())
+					.isEqualTo(UploadState.COMPLETING);
+			assertThatThrownBy(() -> uploadSessionService.complete(uploadId, USER_ID))
+					.hasMessageContaining("already being completed");
+			assertThatThrownBy(() -> uploadSessionService.cancel(uploadId, USER_ID))
+					.hasMessageContaining("already being completed");
+			return FileMessage.builder().id(99L).build();
+		});
+
+		assertThat(uploadSessionService.complete(uploadId, USER_ID).getId()).isEqualTo(99L);
+
+		assertThat(transactionActive.get()).isFalse();
+		verify(fileService, times(1)).importFile(any(), any(), any());
+		assertThat(uploadSessionRepository.count()).isZero();
+		assertThat(dir.resolve("sessions").resolve(uploadId + ".part")).doesNotExist();
+	}
+
+	@Test
+	void failedImportReturnsSessionToUploadingSoCompleteCanBeRetried() {
+		String uploadId = uploaded();
+		when(fileService.importFile(any(), any(), any()))
+				.thenThrow(new AppException("File type not allowed"))
+				.thenReturn(FileMessage.builder().id(99L).build());
+
+		assertThatThrownBy(() -> uploadSessionService.complete(uploadId, USER_ID))
+				.hasMessageContaining("not allowed");
+		assertThat(uploadSessionRepository.findById(uploadId).orElseThrow().getState())
+				.isEqualTo(UploadState.UPLOADING);
+		assertThat(dir.resolve("sessions").resolve(uploadId + ".part")).exists();
+
+		assertThat(uploadSessionService.complete(uploadId, USER_ID).getId()).isEqualTo(99L);
+		assertThat(uploadSessionRepository.count()).isZero();
+	}
+
+	@Test
+	void interruptedCompleteCanBeRetriedAfterTimeout() {
+		String uploadId = uploaded();
+		UploadSession session = uploadSessionRepository.findById(uploadId).orElseThrow();
+		session.setState(UploadState.COMPLETING);
+		session.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+		uploadSessionRepository.save(session);
+		when(fileService.importFile(any(), any(), any())).thenReturn(FileMessage.builder().id(99L).build());
+
+		assertThat(uploadSessionService.complete(uploadId, USER_ID).getId()).isEqualTo(99L);
+		assertThat(uploadSessionRepository.count()).isZero();
+	}
+
+	@Test
+	void resentChunkIsIgnoredAndBadChunksAreRejected() {
+		UploadSessionStatus created = create();
+		String uploadId = created.getUploadId();
+
+		put(uploadId, 0);
+		assertThat(put(uploadId, 0).getReceivedBytes()).isEqualTo(4);
+
+		assertThatThrownBy(() -> uploadSessionService.writeChunk(uploadId, 2, chunk(2, 6), USER_ID))
+				.isInstanceOf(AppException.class);
+		assertThatThrownBy(() -> uploadSessionService.writeChunk(uploadId, 4, chunk(4, 6), USER_ID))
+				.hasMessageContaining("shorter");
+		assertThatThrownBy(() -> uploadSessionService.writeChunk(uploadId, 4, chunk(4, 9), USER_ID))
+				.hasMessageContaining("longer");
+		assertThatThrownBy(() -> uploadSessionService.writeChunk(uploadId, 4, chunk(4, 8), 8L))
+				.isInstanceOf(AppException.class);
+		assertThatThrownBy(() -> uploadSessionService.complete(uploadId, USER_ID))
+				.hasMessageContaining("5 chunk(s) missing");
+
+		assertThat(uploadSessionService.getStatus(uploadId, USER_ID).getMissingOffsets())
+				.containsExactly(4L, 8L, 12L, 16L, 20L);
+		verifyNoInteractions(fileService);
+	}
+
+	@Test
+	void abandonedSessionsExpire() {
+		UploadSessionStatus abandoned = create();
+		UploadSessionStatus active = create();
+		UploadSession session = uploadSessionRepository.findById(abandoned.getUploadId()).orElseThrow();
+		session.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+		uploadSessionRepository.save(session);
+
+		assertThat(uploadSessionService.expireAbandoned()).isEqualTo(1);
+
+		assertThat(uploadSessionRepository.findAll()).extracting(UploadSession::getId)
+				.containsExactly(active.getUploadId());
+		assertThat(dir.resolve("sessions").resolve(abandoned.getUploadId() + ".part")).doesNotExist();
+		assertThat(dir.resolve("sessions").resolve(active.getUploadId() + ".part")).exists();
+	}
+
+	private String uploaded() {
+		String uploadId = create().getUploadId();
+		IntStream.iterate(0, offset -> offset < CONTENT.length, offset -> offset + 4).forEach(offset -> put(uploadId, offset));
+		return uploadId;
+	}
+
+	private UploadSessionStatus create() {
+		return uploadSessionService.create(new CreateUploadRequest("video.mp4", (long) CONTENT.length), USER_ID);
+	}
+
+	private UploadSessionStatus put(String uploadId, int offset) {
+		return uploadSessionService.writeChunk(uploadId, offset,
+				chunk(offset, Math.min(offset + 4, CONTENT.length)), USER_ID);
+	}
+
+	private static ByteArrayInputStream chunk(int from, int to) {
+		return new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, from, to));
+	}
+}
@@ -0,0 +1,78 @@
+package com.revotech.chatapp.service.impl;
+
+import com.revotech.chatapp.service.PresenceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class UserSessionServiceImplTest {
+
+	private PresenceService presenceService;
+	private UserSessionServiceImpl userSessionService;
+
+	@BeforeEach
+	void setUp() {
+		presenceService = mock(PresenceService.class);
+		userSessionService = new UserSessionServiceImpl(presenceService, new InMemorySessionStore(),
+				mock(UserDirectory.class));
+	}
+
+	@Test
+	void onlyFirstAndLastSessionChangePresence() {
+		userSessionService.markUserOnline(1L, "tab-1");
+		userSessionService.markUserOnline(1L, "tab-2");
+		userSessionService.markUserOffline(1L, "tab-1");
+
+		verify(presenceService, times(1)).markOnline(1L);
+		verify(presenceService, never()).markOffline(any());
+		assertThat(userSessionService.getUserSessions(1L)).containsExactly("tab-2");
+
+		userSessionService.markUserOffline(1L, "tab-2");
+
+		verify(presenceService).markOffline(1L);
+		assertThat(userSessionService.isUserOnline(1L)).isFalse();
+	}
+
+	@Test
+	void filterOnlineAnswersForWholeList() {
+		userSessionService.markUserOnline(1L, "s1");
+		userSessionService.markUserOnline(3L, "s3");
+
+		assertThat(userSessionService.filterOnline(List.of(1L, 2L, 3L, 4L))).containsExactlyInAnyOrder(1L, 3L);
+		assertThat(userSessionService.getOnlineUserCount()).isEqualTo(2);
+	}
+
+	@Test
+	void reconnectStormLeavesConsistentState() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		CountDownLatch done = new CountDownLatch(8);
+		for (int t = 0; t < 8; t++) {
+			int thread = t;
+			pool.execute(() -> {
+				for (int i = 0; i < 500; i++) {
+					String sessionId = "s-" + thread + "-" + i;
+					userSessionService.markUserOnline(1L, sessionId);
+					userSessionService.markUserOffline(1L, sessionId);
+				}
+				done.countDown();
+			});
+		}
+		assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+		pool.shutdown();
+
+		// Mỗi lần online đều có đúng một lần offline tương ứng
+		assertThat(userSessionService.isUserOnline(1L)).isFalse();
+		assertThat(userSessionService.getUserSessions(1L)).isEmpty();
+		int onlines = mockingDetails(presenceService).getInvocations().stream()
+				.filter(invocation -> invocation.getMethod().getName().equals("markOnline")).toList().size();
+		verify(presenceService, times(onlines)).markOffline(1L);
+	}
+}
@@ -0,0 +1,59 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.exception.EncryptionException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AesGcmCipherTest {
+
+	private final SecretKey oldKey = AesGcmCipher.parseKey(AesGcmCipher.generateKey());
+	private final SecretKey newKey = AesGcmCipher.parseKey(AesGcmCipher.generateKey());
+
+	@Test
+	void roundTripsUtf8WithFreshNonces() {
+		AesGcmCipher cipher = new AesGcmCipher(Map.of("k1", newKey), "k1");
+		String content = "Họp team lúc 3 giờ chiều nay 🚀";
+
+		String first = cipher.encrypt(content, "message-1");
+		String second = cipher.encrypt(content, "message-1");
+
+		assertThat(first).isNotEqualTo(second);
+		assertThat(cipher.decrypt(first, "message-1")).isEqualTo(content);
+		assertThat(cipher.decrypt(second, "message-1")).isEqualTo(content);
+		assertThat(cipher.decrypt(cipher.encrypt("", "message-2"), "message-2")).isEmpty();
+	}
+
+	@Test
+	void rejectsCiphertextMovedToAnotherMessageOrTamperedWith() {
+		AesGcmCipher cipher = new AesGcmCipher(Map.of("k1", newKey), "k1");
+		String sealed = cipher.encrypt("transfer 100", "message-1");
+
+		assertThatThrownBy(() -> cipher.decrypt(sealed, "message-2")).isInstanceOf(EncryptionException.class);
+
+		byte[] raw = Base64.getDecoder().decode(sealed);
+		raw[raw.length - 1] ^= 1;
+		String tampered = Base64.getEncoder().encodeToString(raw);
+		assertThatThrownBy(() -> cipher.decrypt(tampered, "message-1")).isInstanceOf(EncryptionException.class);
+	}
+
+	@Test
+	void retiredKeysStillDecryptAfterRotation() {
+		String sealedWithOldKey = new AesGcmCipher(Map.of("k1", oldKey), "k1").encrypt("old message", "message-1");
+
+		AesGcmCipher rotated = new AesGcmCipher(Map.of("k1", oldKey, "k2", newKey), "k2");
+		assertThat(rotated.keyIdOf(sealedWithOldKey)).isEqualTo("k1");
+		assertThat(rotated.decrypt(sealedWithOldKey, "message-1")).isEqualTo("old message");
+		assertThat(rotated.keyIdOf(rotated.encrypt("new message", "message-2"))).isEqualTo("k2");
+
+		AesGcmCipher withoutOldKey = new AesGcmCipher(Map.of("k2", newKey), "k2");
+		assertThatThrownBy(() -> withoutOldKey.decrypt(sealedWithOldKey, "message-1"))
+				.isInstanceOf(EncryptionException.class)
+				.hasMessageContaining("k1");
+	}
+}
@@ -0,0 +1,115 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.model.dto.FileDownload;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileStreamerTest {
+
+	@TempDir
+	Path dir;
+
+	private FileStreamer streamer;
+	private FileDownload file;
+	private byte[] content;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		streamer = new FileStreamer(49152, 31536000, new SimpleMeterRegistry());
+		content = new byte[1000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		Path path = Files.write(dir.resolve("3f1c.mp4"), content);
+		file = FileDownload.builder()
+				.path(path)
+				.fileName("3f1c.mp4")
+				.originalFileName("clip.mp4")
+				.mimeType("video/mp4")
+				.size(content.length)
+				.etag("\"abc123\"")
+				.lastModified(Files.getLastModifiedTime(path).toMillis())
+				.build();
+	}
+
+	@Test
+	void servesWholeFileWithValidatorsAndImmutableCaching() throws Exception {
+		MockHttpServletResponse response = download(new MockHttpServletRequest("GET", "/api/files/1/download"));
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(response.getContentAsByteArray()).isEqualTo(content);
+		assertThat(response.getHeader("ETag")).isEqualTo("\"abc123\"");
+		assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+		assertThat(response.getHeader("Cache-Control")).contains("immutable");
+		assertThat(response.getContentType()).isEqualTo("video/mp4");
+	}
+
+	@Test
+	void servesRequestedByteRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/1/download");
+		request.addHeader("Range", "bytes=100-199");
+		MockHttpServletResponse response = download(request);
+
+		assertThat(response.getStatus()).isEqualTo(206);
+		assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 100-199/1000");
+		assertThat(response.getContentLengthLong()).isEqualTo(100);
+		assertThat(response.getContentAsByteArray()).startsWith((byte) 100).hasSize(100);
+
+		// Suffix range: 10 byte cuối
+		request = new MockHttpServletRequest("GET", "/api/files/1/download");
+		request.addHeader("Range", "bytes=-10");
+		assertThat(download(request).getHeader("Content-Range")).isEqualTo("bytes 990-999/1000");
+	}
+
+	@Test
+	void conditionalAndInvalidRangeRequests() throws Exception {
+		MockHttpServletRequest cached = new MockHttpServletRequest("GET", "/api/files/1/download");
+		cached.addHeader("If-None-Match", "\"abc123\"");
+		MockHttpServletResponse notModified = download(cached);
+		assertThat(notModified.getStatus()).isEqualTo(304);
+		assertThat(notModified.getContentAsByteArray()).isEmpty();
+
+		MockHttpServletRequest beyondEnd = new MockHttpServletRequest("GET", "/api/files/1/download");
+		beyondEnd.addHeader("Range", "bytes=5000-");
+		MockHttpServletResponse unsatisfiable = download(beyondEnd);
+		assertThat(unsatisfiable.getStatus()).isEqualTo(416);
+		assertThat(unsatisfiable.getHeader("Content-Range")).isEqualTo("bytes */1000");
+
+		// If-Range với ETag cũ: file đã đổi, trả cả file
+		MockHttpServletRequest stale = new MockHttpServletRequest("GET", "/api/files/1/download");
+		stale.addHeader("Range", "bytes=0-9");
+		stale.addHeader("If-Range", "\"old\"");
+		MockHttpServletResponse full = download(stale);
+		assertThat(full.getStatus()).isEqualTo(200);
+		assertThat(full.getContentAsByteArray()).hasSize(1000);
+	}
+
+	@Test
+	void handsLargeFilesToContainerSendfile() throws Exception {
+		streamer = new FileStreamer(100, 31536000, new SimpleMeterRegistry());
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/1/download");
+		request.setAttribute(FileStreamer.SENDFILE_SUPPORT, Boolean.TRUE);
+		request.addHeader("Range", "bytes=200-");
+		MockHttpServletResponse response = download(request);
+
+		assertThat(response.getStatus()).isEqualTo(206);
+		assertThat(response.getContentAsByteArray()).isEmpty();
+		assertThat(request.getAttribute(FileStreamer.SENDFILE_START)).isEqualTo(200L);
+		assertThat(request.getAttribute(FileStreamer.SENDFILE_END)).isEqualTo(1000L);
+	}
+
+	private MockHttpServletResponse download(MockHttpServletRequest request) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		streamer.stream(file, false, request, response);
+		return response;
+	}
+}
@@ -0,0 +1,158 @@
+package com.revotech.chatapp.util;
+
+import com.revotech.chatapp.model.enums.ImageVariant;
+import com.revotech.chatapp.util.ImageDerivativeGenerator.Derivative;
+import com.revotech.chatapp.util.ImageDerivativeGenerator.Result;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageDerivativeGeneratorTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void downscalesKeepingAspectRatioAndStripsExif() throws Exception {
+		Path source = dir.resolve("photo.jpg");
+		Files.write(source, withExif(jpeg(3000, 2000)));
+
+		Result result = ImageDerivativeGenerator.generate(source, dir, "photo", 50_000_000L);
+
+		assertThat(result.width()).isEqualTo(3000);
+		assertThat(result.height()).isEqualTo(2000);
+		assertThat(result.derivatives()).extracting(Derivative::variant)
+				.containsExactly(ImageVariant.PREVIEW, ImageVariant.THUMBNAIL);
+
+		Derivative preview = result.derivatives().get(0);
+		Derivative thumbnail = result.derivatives().get(1);
+		assertThat(preview.width()).isEqualTo(1280);
+		assertThat(preview.height()).isEqualTo(853);
+		assertThat(thumbnail.width()).isEqualTo(320);
+		assertThat(thumbnail.height()).isEqualTo(213);
+		assertThat(thumbnail.path().getFileName().toString()).isEqualTo("photo_thumb.jpg");
+
+		BufferedImage written = ImageIO.read(thumbnail.path().toFile());
+		assertThat(written.getWidth()).isEqualTo(320);
+		assertThat(Files.size(thumbnail.path())).isLessThan(Files.size(source));
+		assertThat(new String(Files.readAllBytes(thumbnail.path()), StandardCharsets.ISO_8859_1)).doesNotContain("Exif");
+	}
+
+	@Test
+	void rotatesByExifOrientationBeforeScaling() throws Exception {
+		// Ảnh chụp dọc lưu nằm ngang + Orientation 6: nửa trái (đỏ) phải lên trên sau khi xoay 90° theo chiều kim đồng hồ
+		BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.RED);
+		graphics.fillRect(0, 0, 150, 200);
+		graphics.setColor(Color.BLUE);
+		graphics.fillRect(150, 0, 150, 200);
+		graphics.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpeg", out);
+		Path source = dir.resolve("portrait.jpg");
+		Files.write(source, withApp1(out.toByteArray(), exifOrientation(6)));
+
+		Result result = ImageDerivativeGenerator.generate(source, dir, "portrait", 50_000_000L);
+
+		assertThat(result.width()).isEqualTo(200);
+		assertThat(result.height()).isEqualTo(300);
+		BufferedImage thumbnail = ImageIO.read(result.derivatives().get(1).path().toFile());
+		assertThat(thumbnail.getWidth()).isEqualTo(200);
+		assertThat(thumbnail.getHeight()).isEqualTo(300);
+		assertThat(new Color(thumbnail.getRGB(100, 20)).getRed()).isGreaterThan(200);
+		assertThat(new Color(thumbnail.getRGB(100, 280)).getBlue()).isGreaterThan(200);
+	}
+
+	@Test
+	void orientationTransformsMapCornersLikeExif() {
+		// Pixel (0,0) đánh dấu; vị trí sau transform theo bảng Orientation của EXIF
+		BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, Color.WHITE.getRGB());
+		int[][] expected = {{0, 0}, {3, 0}, {3, 1}, {0, 1}, {0, 0}, {1, 0}, {1, 3}, {0, 3}};
+
+		for (int orientation = 1; orientation <= 8; orientation++) {
+			BufferedImage oriented = ImageDerivativeGenerator.orient(image, orientation);
+			int[] corner = expected[orientation - 1];
+			assertThat(oriented.getRGB(corner[0], corner[1]))
+					.as("orientation %d", orientation)
+					.isEqualTo(Color.WHITE.getRGB());
+			assertThat(oriented.getWidth()).isEqualTo(orientation >= 5 ? 2 : 4);
+		}
+	}
+
+	@Test
+	void keepsTransparencyAndNeverUpscales() throws Exception {
+		BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+		Path source = dir.resolve("sticker.png");
+		ImageIO.write(image, "png", source.toFile());
+
+		Result result = ImageDerivativeGenerator.generate(source, dir, "sticker", 50_000_000L);
+
+		assertThat(result.derivatives()).allSatisfy(derivative -> {
+			assertThat(derivative.path().getFileName().toString()).endsWith(".png");
+			assertThat(derivative.width()).isEqualTo(200);
+			assertThat(derivative.height()).isEqualTo(100);
+		});
+	}
+
+	@Test
+	void rejectsImagesAbovePixelLimitBeforeDecoding() throws Exception {
+		Path source = dir.resolve("huge.jpg");
+		Files.write(source, jpeg(2000, 2000));
+
+		assertThatThrownBy(() -> ImageDerivativeGenerator.generate(source, dir, "huge", 1_000_000L))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("too large");
+	}
+
+	private static byte[] jpeg(int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+		graphics.fillRect(0, 0, width, height);
+		graphics.dispose();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpeg", out);
+		return out.toByteArray();
+	}
+
+	private static byte[] withExif(byte[] jpeg) {
+		return withApp1(jpeg, "Exif\0\0GPS 21.0285 N 105.8542 E".getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	// APP1 Exif, TIFF big-endian, IFD0 chỉ có tag Orientation (SHORT)
+	private static byte[] exifOrientation(int orientation) {
+		return new byte[]{'E', 'x', 'i', 'f', 0, 0,
+				'M', 'M', 0, 42, 0, 0, 0, 8,
+				0, 1,
+				0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+				0, 0, 0, 0};
+	}
+
+	// Chèn một APP1 segment (EXIF) ngay sau SOI, như ảnh chụp từ điện thoại
+	private static byte[] withApp1(byte[] jpeg, byte[] payload) {
+		int length = payload.length + 2;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(jpeg, 0, 2);
+		out.write(0xFF);
+		out.write(0xE1);
+		out.write(length >> 8);
+		out.write(length & 0xFF);
+		out.write(payload, 0, payload.length);
+		out.write(jpeg, 2, jpeg.length - 2);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,52 @@
+package com.revotech.chatapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongObjectCacheTest {
+
+	@Test
+	void behavesLikeMapUnderRandomPutsAndRemoves() {
+		LongObjectCache<String> cache = new LongObjectCache<>(1_000_000);
+		Map<Long, String> expected = new HashMap<>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(5_000);
+			if (random.nextInt(3) == 0) {
+				cache.remove(key);
+				expected.remove(key);
+			} else {
+				cache.put(key, "v" + i);
+				expected.put(key, "v" + i);
+			}
+		}
+
+		assertThat(cache.size()).isEqualTo(expected.size());
+		for (long key = 0; key < 5_000; key++) {
+			assertThat(cache.get(key)).isEqualTo(expected.get(key));
+		}
+	}
+
+	@Test
+	void evictsWhenFullAndKeepsRecentlyReadEntries() {
+		LongObjectCache<Long> cache = new LongObjectCache<>(1_600);
+		for (long id = 1; id <= 1_600; id++) {
+			cache.put(id, id);
+		}
+		// Entry hot được đọc lại giữa các đợt insert nên luôn còn second chance
+		for (long id = 1_601; id <= 10_000; id++) {
+			cache.get(7L);
+			cache.put(id, id);
+		}
+
+		assertThat(cache.size()).isLessThanOrEqualTo(1_600);
+		assertThat(cache.get(7L)).isEqualTo(7L);
+		assertThat(cache.get(10_000L)).isEqualTo(10_000L);
+	}
+}
@@ -0,0 +1,42 @@
+package com.revotech.chatapp.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WebSocketSafeBroadcastTest {
+
+	@Test
+	void batchBroadcastSharesOneEncodedBody() {
+		MessageChannel brokerChannel = mock(MessageChannel.class);
+		when(brokerChannel.send(any())).thenReturn(true);
+		WebSocketSafeBroadcast broadcast = new WebSocketSafeBroadcast(
+				new SimpMessagingTemplate(brokerChannel), new ObjectMapper(), new SimpleMeterRegistry());
+
+		broadcast.safeBatchConvertAndSend(new String[]{"/topic/room/1", "/topic/room/2"}, Map.of("type", "MESSAGE"));
+
+		ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+		verify(brokerChannel, times(2)).send(sent.capture());
+		List<Message<?>> messages = sent.getAllValues();
+
+		assertThat(messages.get(0).getPayload()).isSameAs(messages.get(1).getPayload());
+		assertThat(new String((byte[]) messages.get(0).getPayload(), StandardCharsets.UTF_8)).isEqualTo("{\"type\":\"MESSAGE\"}");
+		assertThat(SimpMessageHeaderAccessor.getDestination(messages.get(0).getHeaders())).isEqualTo("/topic/room/1");
+		assertThat(SimpMessageHeaderAccessor.getDestination(messages.get(1).getHeaders())).isEqualTo("/topic/room/2");
+		assertThat(SimpMessageHeaderAccessor.wrap(messages.get(1)).getContentType()).isEqualTo(MimeTypeUtils.APPLICATION_JSON);
+	}
+}